@@ -0,0 +1,412 @@
+package maestro.coordination
+
+import ch.qos.logback.classic.Level
+import io.grpc.ManagedChannel
+import io.grpc.inprocess.InProcessChannelBuilder
+import io.grpc.inprocess.InProcessServerBuilder
+import io.grpc.stub.StreamObserver
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.longs.LongArrays
+import maestro.coordination.proto.ClaimAreaRequest
+import maestro.coordination.proto.ConnectRequest
+import maestro.coordination.proto.CoordinationGrpc
+import maestro.coordination.proto.HeartbeatRequest
+import maestro.coordination.proto.Position
+import maestro.coordination.proto.ProgressReport
+import maestro.coordination.proto.ReleaseAreaRequest
+import maestro.coordination.proto.SessionEvent
+import maestro.coordination.proto.SessionMessage
+import maestro.utils.Loggers
+import java.util.Random
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.system.exitProcess
+
+/**
+ * Load test for [CoordinationServer]. Serves the coordinator over an in-process transport and
+ * drives it with synthetic workers, each on its own session, claiming areas, reporting progress
+ * and sending heartbeats at fixed rates whether or not earlier requests were answered yet. Reports
+ * latency percentiles and throughput per kind of request, and how often claims conflicted.
+ *
+ * Given a --max-p99-ms or --max-conflict-rate, exits with status 1 when the run exceeds it, so it
+ * can gate changes to the coordinator:
+ *
+ * ```
+ * ./gradlew :common:coordinatorLoadTest --args="--workers=200 --duration=60 --max-p99-ms=50"
+ * ```
+ */
+fun main(args: Array<String>) {
+    val options =
+        try {
+            LoadTestOptions.parse(args)
+        } catch (e: IllegalArgumentException) {
+            System.err.println(e.message)
+            System.err.println(LoadTestOptions.USAGE)
+            exitProcess(2)
+        }
+    exitProcess(if (CoordinatorLoadTest(options).run()) 0 else 1)
+}
+
+data class LoadTestOptions(
+    val workers: Int = 50,
+    val durationSeconds: Int = 30,
+    /** Run before measuring starts, so sessions are open and the JIT has warmed up */
+    val warmupSeconds: Int = 5,
+    /** Per worker */
+    val claimsPerSecond: Double = 1.0,
+    val progressPerSecond: Double = 2.0,
+    val heartbeatsPerSecond: Double = 1.0,
+    /** Workers start at random spots up to this far from the origin, in blocks */
+    val spread: Int = 1024,
+    /** Workers claim at random spots up to this far from where they started, in blocks */
+    val roam: Int = 64,
+    val claimRadius: Double = 16.0,
+    /** Threads the synthetic workers send from */
+    val threads: Int = 4,
+    val seed: Long = 1,
+    val maxP99Ms: Double? = null,
+    val maxConflictRate: Double? = null,
+) {
+    companion object {
+        const val USAGE =
+            "Options: --workers=N --duration=S --warmup=S --claims=PER_S --progress=PER_S " +
+                "--heartbeats=PER_S --spread=BLOCKS --roam=BLOCKS --claim-radius=BLOCKS " +
+                "--threads=N --seed=N --max-p99-ms=MS --max-conflict-rate=FRACTION"
+
+        fun parse(args: Array<String>): LoadTestOptions {
+            var options = LoadTestOptions()
+            for (arg in args) {
+                val (key, value) =
+                    arg.removePrefix("--").split('=', limit = 2).takeIf { it.size == 2 && arg.startsWith("--") }
+                        ?: throw IllegalArgumentException("Expected --option=value, got $arg")
+                fun int() = value.toIntOrNull() ?: throw IllegalArgumentException("$key: not a number: $value")
+                fun double() = value.toDoubleOrNull() ?: throw IllegalArgumentException("$key: not a number: $value")
+                options =
+                    when (key) {
+                        "workers" -> options.copy(workers = int())
+                        "duration" -> options.copy(durationSeconds = int())
+                        "warmup" -> options.copy(warmupSeconds = int())
+                        "claims" -> options.copy(claimsPerSecond = double())
+                        "progress" -> options.copy(progressPerSecond = double())
+                        "heartbeats" -> options.copy(heartbeatsPerSecond = double())
+                        "spread" -> options.copy(spread = int())
+                        "roam" -> options.copy(roam = int())
+                        "claim-radius" -> options.copy(claimRadius = double())
+                        "threads" -> options.copy(threads = int())
+                        "seed" -> options.copy(seed = int().toLong())
+                        "max-p99-ms" -> options.copy(maxP99Ms = double())
+                        "max-conflict-rate" -> options.copy(maxConflictRate = double())
+                        else -> throw IllegalArgumentException("Unknown option --$key")
+                    }
+            }
+            return options
+        }
+    }
+}
+
+/** Request latencies of one kind, in nanos */
+class LatencyRecorder {
+    private val samples = LongArrayList()
+
+    @Synchronized
+    fun record(nanos: Long) {
+        samples.add(nanos)
+    }
+
+    @Synchronized
+    fun count(): Int = samples.size
+
+    /** @return the latency below which the given fraction of requests were answered, in millis */
+    @Synchronized
+    fun percentileMs(fraction: Double): Double {
+        if (samples.isEmpty) {
+            return 0.0
+        }
+        LongArrays.quickSort(samples.elements(), 0, samples.size)
+        val index = ((samples.size - 1) * fraction).toInt()
+        return samples.getLong(index) / 1_000_000.0
+    }
+}
+
+class CoordinatorLoadTest(
+    private val options: LoadTestOptions,
+) {
+    private enum class Kind { CONNECT, CLAIM, RELEASE, PROGRESS, HEARTBEAT }
+
+    private class Sent(
+        val kind: Kind,
+        val nanos: Long,
+        val center: Position? = null,
+    )
+
+    private val latencies = Kind.entries.associateWith { LatencyRecorder() }
+    private val granted = AtomicLong()
+    private val denied = AtomicLong()
+    private val errors = AtomicInteger()
+
+    @Volatile
+    private var measuring = false
+
+    /** @return whether the run stayed within the limits given */
+    fun run(): Boolean {
+        // the coordinator logs every connect and claim; that would be what gets measured
+        (Loggers.Coord.get() as ch.qos.logback.classic.Logger).level = Level.WARN
+
+        val name = "coordinator-load-test-${System.nanoTime()}"
+        val server = CoordinationServer()
+        server.start(InProcessServerBuilder.forName(name), goal = Int.MAX_VALUE)
+        val channel = InProcessChannelBuilder.forName(name).build()
+        val scheduler = Executors.newScheduledThreadPool(options.threads)
+        val random = Random(options.seed)
+
+        try {
+            val workers = List(options.workers) { SyntheticWorker("worker-$it", channel, random) }
+            CompletableFuture.allOf(*workers.map { it.connect() }.toTypedArray()).get(30, TimeUnit.SECONDS)
+            workers.forEach { it.schedule(scheduler, random) }
+
+            Thread.sleep(options.warmupSeconds * 1000L)
+            measuring = true
+            val start = System.nanoTime()
+            Thread.sleep(options.durationSeconds * 1000L)
+            measuring = false
+            val elapsedSeconds = (System.nanoTime() - start) / 1e9
+
+            scheduler.shutdownNow()
+            val unanswered = workers.sumOf { it.pending.size }
+            workers.forEach { it.close() }
+            return report(elapsedSeconds, unanswered)
+        } finally {
+            scheduler.shutdownNow()
+            channel.shutdownNow()
+            server.stop()
+        }
+    }
+
+    private fun report(
+        elapsedSeconds: Double,
+        unanswered: Int,
+    ): Boolean {
+        println(
+            "Coordinator load test: ${options.workers} workers, %.1fs measured after %ds warmup".format(
+                elapsedSeconds,
+                options.warmupSeconds,
+            ),
+        )
+        println(
+            "%-10s %10s %10s %9s %9s %9s %9s".format("request", "count", "per_s", "p50_ms", "p90_ms", "p99_ms", "max_ms"),
+        )
+        for ((kind, recorder) in latencies) {
+            if (kind == Kind.CONNECT || recorder.count() == 0) {
+                continue
+            }
+            println(
+                "%-10s %10d %10.1f %9.3f %9.3f %9.3f %9.3f".format(
+                    kind.name.lowercase(),
+                    recorder.count(),
+                    recorder.count() / elapsedSeconds,
+                    recorder.percentileMs(0.5),
+                    recorder.percentileMs(0.9),
+                    recorder.percentileMs(0.99),
+                    recorder.percentileMs(1.0),
+                ),
+            )
+        }
+        val claims = granted.get() + denied.get()
+        val conflictRate = if (claims == 0L) 0.0 else denied.get().toDouble() / claims
+        println("claims granted ${granted.get()}, denied ${denied.get()}, conflict rate %.3f".format(conflictRate))
+        println("unanswered at end $unanswered, stream errors ${errors.get()}")
+
+        var passed = errors.get() == 0
+        options.maxP99Ms?.let { limit ->
+            for ((kind, recorder) in latencies) {
+                val p99 = recorder.percentileMs(0.99)
+                if (kind != Kind.CONNECT && p99 > limit) {
+                    println("FAIL: ${kind.name.lowercase()} p99 %.3fms exceeds %.3fms".format(p99, limit))
+                    passed = false
+                }
+            }
+        }
+        options.maxConflictRate?.let { limit ->
+            if (conflictRate > limit) {
+                println("FAIL: conflict rate %.3f exceeds %.3f".format(conflictRate, limit))
+                passed = false
+            }
+        }
+        return passed
+    }
+
+    private inner class SyntheticWorker(
+        private val id: String,
+        channel: ManagedChannel,
+        random: Random,
+    ) : StreamObserver<SessionEvent> {
+        private val homeX = random.nextInt(2 * options.spread + 1) - options.spread
+        private val homeZ = random.nextInt(2 * options.spread + 1) - options.spread
+        private val requestIds = AtomicLong()
+        val pending = ConcurrentHashMap<Long, Sent>()
+        private val connected = CompletableFuture<Unit>()
+
+        /** The area this worker holds, released once it is granted the next */
+        @Volatile
+        private var claim: Position? = null
+
+        @Volatile
+        private var collected = 0
+
+        private val stream: StreamObserver<SessionMessage> = CoordinationGrpc.newStub(channel).session(this)
+
+        fun connect(): CompletableFuture<Unit> {
+            send(
+                Kind.CONNECT,
+                SessionMessage.newBuilder().setConnect(
+                    ConnectRequest
+                        .newBuilder()
+                        .setWorkerId(id)
+                        .setWorkerName(id),
+                ),
+            )
+            return connected
+        }
+
+        fun schedule(
+            scheduler: ScheduledExecutorService,
+            random: Random,
+        ) {
+            fun every(
+                perSecond: Double,
+                action: () -> Unit,
+            ) {
+                if (perSecond <= 0) {
+                    return
+                }
+                val periodNanos = (1e9 / perSecond).toLong()
+                // spread out, so workers don't all send at the same instant
+                val delay = (random.nextDouble() * periodNanos).toLong()
+                scheduler.scheduleAtFixedRate(action, delay, periodNanos, TimeUnit.NANOSECONDS)
+            }
+
+            val claimRandom = Random(random.nextLong())
+            every(options.claimsPerSecond) { claim(claimRandom) }
+            every(options.progressPerSecond) { progress() }
+            every(options.heartbeatsPerSecond) { heartbeat() }
+        }
+
+        private fun claim(random: Random) {
+            val center =
+                Position
+                    .newBuilder()
+                    .setX(homeX + random.nextInt(2 * options.roam + 1) - options.roam)
+                    .setY(64)
+                    .setZ(homeZ + random.nextInt(2 * options.roam + 1) - options.roam)
+                    .build()
+            send(
+                Kind.CLAIM,
+                SessionMessage.newBuilder().setClaimArea(
+                    ClaimAreaRequest
+                        .newBuilder()
+                        .setWorkerId(id)
+                        .setCenter(center)
+                        .setRadius(options.claimRadius),
+                ),
+                center,
+            )
+        }
+
+        private fun release(center: Position) {
+            send(
+                Kind.RELEASE,
+                SessionMessage.newBuilder().setReleaseArea(
+                    ReleaseAreaRequest
+                        .newBuilder()
+                        .setWorkerId(id)
+                        .setCenter(center),
+                ),
+            )
+        }
+
+        private fun progress() {
+            collected++
+            send(
+                Kind.PROGRESS,
+                SessionMessage.newBuilder().setProgress(
+                    ProgressReport
+                        .newBuilder()
+                        .setWorkerId(id)
+                        .setResourceType("minecraft:diamond_ore")
+                        .setQuantity(1)
+                        .setTotalCollected(collected),
+                ),
+            )
+        }
+
+        private fun heartbeat() {
+            send(
+                Kind.HEARTBEAT,
+                SessionMessage.newBuilder().setHeartbeat(
+                    HeartbeatRequest
+                        .newBuilder()
+                        .setWorkerId(id)
+                        .setTimestamp(System.currentTimeMillis()),
+                ),
+            )
+        }
+
+        private fun send(
+            kind: Kind,
+            message: SessionMessage.Builder,
+            center: Position? = null,
+        ) {
+            val requestId = requestIds.incrementAndGet()
+            pending[requestId] = Sent(kind, System.nanoTime(), center)
+            try {
+                synchronized(stream) {
+                    stream.onNext(message.setRequestId(requestId).build())
+                }
+            } catch (e: Exception) {
+                pending.remove(requestId)
+                errors.incrementAndGet()
+            }
+        }
+
+        override fun onNext(event: SessionEvent) {
+            // goal status pushes aren't answers to anything
+            val sent = pending.remove(event.requestId) ?: return
+            if (measuring) {
+                latencies.getValue(sent.kind).record(System.nanoTime() - sent.nanos)
+            }
+            when (sent.kind) {
+                Kind.CONNECT -> connected.complete(Unit)
+                Kind.CLAIM -> {
+                    val granted = event.claimArea.granted
+                    if (granted) {
+                        // like a miner moving on, it gives up the old area once it has the new one
+                        claim?.let { release(it) }
+                        claim = sent.center
+                    }
+                    if (measuring) {
+                        (if (granted) this@CoordinatorLoadTest.granted else denied).incrementAndGet()
+                    }
+                }
+                else -> {}
+            }
+        }
+
+        override fun onError(t: Throwable) {
+            errors.incrementAndGet()
+            connected.completeExceptionally(t)
+        }
+
+        override fun onCompleted() {}
+
+        fun close() {
+            synchronized(stream) {
+                stream.onCompleted()
+            }
+        }
+    }
+}
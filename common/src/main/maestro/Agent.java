@@ -22,7 +22,9 @@ import maestro.event.GameEventHandler;
 import maestro.gui.GuiClick;
 import maestro.input.InputController;
 import maestro.pathing.BlockStateInterface;
+import maestro.pathing.PathfindingScheduler;
 import maestro.pathing.TaskCoordinator;
+import maestro.pathing.precompute.BlockStateFlags;
 import maestro.player.PlayerContext;
 import maestro.selection.SelectionManager;
 import maestro.task.*;
@@ -55,6 +57,7 @@ public class Agent {
                 .addShutdownHook(
                         new Thread(
                                 () -> {
+                                    PathfindingScheduler.shutdown();
                                     threadPool.shutdown();
                                     try {
                                         if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -137,6 +140,9 @@ public class Agent {
         // fail!
         this.playerContext = new PlayerContext(this, mc);
 
+        // Off the main thread, so the first search doesn't wait for it
+        threadPool.execute(BlockStateFlags::init);
+
         // Register this agent in the global registry
         allAgents.add(this);
 
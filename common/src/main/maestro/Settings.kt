@@ -163,6 +163,18 @@ class Settings {
             description = "Penalty for walking on water (uses hunger)"
         }
 
+    /**
+     * Cost added for stepping where another agent's path puts it at about the same time, so agents
+     * sharing tunnels take turns or route around each other instead of bumping into each other. 0
+     * ignores other agents' paths.
+     */
+    @JvmField
+    val pathReservationPenalty =
+        Setting(20.0) {
+            category = SettingCategory.PATHFINDING
+            description = "Penalty for crossing other agents' paths"
+        }
+
     /**
      * Don't allow breaking blocks next to liquids.
      *
@@ -729,6 +741,57 @@ class Settings {
             description = "Max chunk border fetches before stopping"
         }
 
+    /**
+     * Goals at least this many blocks away are first routed chunk by chunk over the world cache,
+     * and the block-level search then follows that route a stretch at a time instead of heading
+     * straight for the goal. 0 disables it.
+     */
+    @JvmField
+    val pathingRouteMinDistance =
+        Setting(256) {
+            category = SettingCategory.PATHFINDING
+            description = "Min goal distance for chunk-level routing"
+        }
+
+    /**
+     * What moves outside the corridor around a chunk-level route cost, as a multiple of their usual
+     * cost. 1.0 lets the block-level search stray from the route freely.
+     */
+    @JvmField
+    val pathingRouteCorridorPenalty =
+        Setting(2.0) {
+            category = SettingCategory.PATHFINDING
+            description = "Cost multiplier for leaving the planned route"
+        }
+
+    /**
+     * Start a search for the same goal as the last one from what that one found, rather than from
+     * scratch. Nodes near blocks that changed since are searched again; the rest is kept. Only a
+     * search that reached the goal is repaired, and only when neither it nor the next one steered
+     * around path reservations: costs that depend on when the search ran can't be kept. Since
+     * [pathReservationPenalty] is on by default, that means repair only happens while no other agent,
+     * in this process or through the coordinator, has a reservation in the dimension; set the
+     * penalty to 0 to keep repairing with several agents around.
+     */
+    @JvmField
+    val pathingIncrementalReplan =
+        Setting(true) {
+            category = SettingCategory.PATHFINDING
+            description = "Repair the last search instead of starting over"
+        }
+
+    /**
+     * Read loaded chunk sections into flat arrays of block state ids the first time a search needs
+     * them, and look blocks up there rather than in the chunk's palettes. Sections are read again
+     * after a block in them changes.
+     */
+    @JvmField
+    val pathingSectionSnapshots =
+        Setting(true) {
+            category = SettingCategory.PATHFINDING
+            description = "Read chunk sections into flat arrays for pathing"
+        }
+
     /**
      * Set to 1.0 to effectively disable this feature
      */
@@ -918,6 +981,18 @@ class Settings {
             description = "Pathing map load factor"
         }
 
+    /**
+     * Keep search nodes in parallel primitive arrays rather than one object each. Takes well under
+     * half the memory per node, which matters for searches of millions of nodes. Such a search
+     * can't be repaired by the next one or captured for the debug view.
+     */
+    @JvmField
+    val pathingCompactNodes =
+        Setting(false) {
+            category = SettingCategory.PATHFINDING
+            description = "Store search nodes in primitive arrays"
+        }
+
     /**
      * How far are you allowed to fall onto solid ground (without a water bucket)? 3 won't deal any
      * damage. But if you just want to get down the mountain quickly, and you have Feather Falling
@@ -1034,6 +1109,37 @@ class Settings {
             description = "Plan ahead failure timeout (ms)"
         }
 
+    /**
+     * Number of worker threads shared by all agents for path searches. Read when the first search
+     * is submitted, so changes need a restart
+     */
+    @JvmField
+    val pathingThreads =
+        Setting(maxOf(2, Runtime.getRuntime().availableProcessors() / 2)) {
+            category = SettingCategory.PATHFINDING
+            description = "Pathfinding worker threads"
+        }
+
+    /** Maximum number of searches a single agent may have running at once */
+    @JvmField
+    val pathingSearchesPerAgent =
+        Setting(1) {
+            category = SettingCategory.PATHFINDING
+            description = "Concurrent path searches per agent"
+        }
+
+    /**
+     * How many goal biases a search tries at once, each on its own thread, taking the path of
+     * whichever reaches the goal first. 1 searches on one thread, going from one bias to the next
+     * as time runs on; up to 5 are tried at once.
+     */
+    @JvmField
+    val pathingPortfolioSize =
+        Setting(1) {
+            category = SettingCategory.PATHFINDING
+            description = "Goal biases searched in parallel per search"
+        }
+
     /** For debugging, consider nodes much, much slower */
     @JvmField
     val slowPath =
@@ -2399,15 +2505,15 @@ class Settings {
         }
 
     /**
-     * Distance to scan every tick for updates. Expanding this beyond player reach distance (i.e.
-     * setting it to 6 or above) is only necessary in very large schematics where rescanning the
-     * whole thing is costly.
+     * Distance to re-check every tick for updates. The builder already tracks changes through block
+     * change and chunk events; this also catches blocks a server changes without telling the client,
+     * around the player where it matters most.
      */
     @JvmField
     val builderTickScanRadius =
         Setting(5) {
             category = SettingCategory.BUILDING
-            description = "Builder scan radius per tick"
+            description = "Builder re-check radius per tick, on top of block change events (0 to disable)"
         }
 
     /**
@@ -3123,6 +3229,65 @@ class Settings {
             description = "Area claim radius (blocks)"
         }
 
+    /**
+     * Half the side of the square the coordinator splits into work units, centered where it was
+     * started. Workers mine the units they are handed instead of claiming areas. 0 disables this.
+     */
+    @JvmField
+    val coordinationWorkAreaRadius =
+        Setting(256) {
+            category = SettingCategory.COORDINATION
+            description = "Work area radius around the coordinator (blocks, 0 to disable)"
+        }
+
+    /** Side of one work unit (blocks), rounded up to whole chunks */
+    @JvmField
+    val coordinationWorkUnitSize =
+        Setting(32) {
+            category = SettingCategory.COORDINATION
+            description = "Work unit size (blocks)"
+        }
+
+    /** Longest progress reports are held back to be sent together (milliseconds) */
+    @JvmField
+    val coordinationProgressInterval =
+        Setting(1000L) {
+            category = SettingCategory.COORDINATION
+            description = "Progress report interval (ms)"
+        }
+
+    /** Collected items after which held back progress reports are sent right away */
+    @JvmField
+    val coordinationProgressBatch =
+        Setting(64) {
+            category = SettingCategory.COORDINATION
+            description = "Progress report batch size (items)"
+        }
+
+    /** Keep coordinator claims, progress and work units on disk so a restarted coordinator resumes */
+    @JvmField
+    val coordinationPersistState =
+        Setting(true) {
+            category = SettingCategory.COORDINATION
+            description = "Persist coordinator state across restarts"
+        }
+
+    /** Share packed chunks with other agents through the coordinator */
+    @JvmField
+    val coordinationShareCache =
+        Setting(true) {
+            category = SettingCategory.COORDINATION
+            description = "Share the world cache with other agents"
+        }
+
+    /** Radius around the player, in chunks, of chunks shared by other agents to merge in */
+    @JvmField
+    val coordinationCacheRadius =
+        Setting(8) {
+            category = SettingCategory.COORDINATION
+            description = "Shared cache radius (chunks)"
+        }
+
     // JAVA-ONLY SETTINGS (NOT SERIALIZABLE)
 
     /**
@@ -1,6 +1,6 @@
 package maestro.behavior
 
-import maestro.pathing.calc.AStarPathFinder
+import maestro.pathing.calc.AbstractNodeCostSearch
 import maestro.pathing.calc.IPath
 import maestro.pathing.goals.Goal
 import maestro.pathing.path.IPathExecutor
@@ -83,7 +83,7 @@ interface IPathingBehavior : IBehavior {
     fun getPath(): Optional<IPath> = Optional.ofNullable(getCurrent()).map { it.path }
 
     /** @return The current pathfinder being executed */
-    fun getInProgress(): Optional<out AStarPathFinder?>
+    fun getInProgress(): Optional<out AbstractNodeCostSearch?>
 
     /** @return The current path executor */
     fun getCurrent(): IPathExecutor?
@@ -1,17 +1,26 @@
 package maestro.behavior
 
 import maestro.Agent
+import maestro.event.events.BlockChangeEvent
 import maestro.event.events.PathEvent
 import maestro.event.events.PlayerUpdateEvent
 import maestro.event.events.RenderEvent
 import maestro.event.events.TickEvent
 import maestro.event.events.type.EventState
+import maestro.pathing.PathReservation
+import maestro.pathing.PathReservations
+import maestro.pathing.PathfindingScheduler
 import maestro.pathing.PathingCommandContext
 import maestro.pathing.PreferredPaths
 import maestro.pathing.calc.AStarPathFinder
 import maestro.pathing.calc.AbstractNodeCostSearch
+import maestro.pathing.calc.CachedChunkGraph
+import maestro.pathing.calc.ChunkRoute
+import maestro.pathing.calc.CompactAStarPathFinder
 import maestro.pathing.calc.IPath
+import maestro.pathing.calc.PortfolioPathFinder
 import maestro.pathing.goals.Goal
+import maestro.pathing.goals.GoalChunk
 import maestro.pathing.goals.GoalXZ
 import maestro.pathing.movement.CalculationContext
 import maestro.pathing.movement.CompositeMovementProvider
@@ -25,6 +34,7 @@ import maestro.pathing.recovery.MovementFailureMemory
 import maestro.rendering.IGoalRenderPos
 import maestro.rendering.PathRenderer
 import maestro.task.PathingCommand
+import maestro.utils.BackgroundExecutors
 import maestro.utils.Loggers
 import maestro.utils.PackedBlockPos
 import maestro.utils.PathCalculationResult
@@ -33,11 +43,14 @@ import net.minecraft.core.BlockPos
 import org.slf4j.Logger
 import java.util.ArrayList
 import java.util.Optional
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
 import java.util.function.Function
 import java.util.function.ToDoubleFunction
 import kotlin.concurrent.Volatile
 import kotlin.math.abs
+import kotlin.math.hypot
 
 class PathingBehavior(
     agent: Agent,
@@ -60,6 +73,15 @@ class PathingBehavior(
     @JvmField
     val failureMemory: MovementFailureMemory
 
+    /**
+     * Where this agent's path takes it, for other agents' searches to steer around. Replaced from
+     * the tick thread, read from their path calculation threads.
+     */
+    @Volatile
+    var reservation: PathReservation? = null
+        private set
+    private var reservedFor: PathExecutor? = null
+
     // eta
     private var ticksElapsedSoFar = 0
     private var startPosition: PackedBlockPos? = null
@@ -75,12 +97,29 @@ class PathingBehavior(
     private var inProgress: AbstractNodeCostSearch? = null
     private val pathCalcLock = Any()
 
+    /** The last search to finish, which the next one for the same goal repairs; under [pathCalcLock] */
+    private var lastSearch: AbstractNodeCostSearch? = null
+
     private val pathPlanLock = Any()
 
     private var lastAutoJump = false
 
     private var expectedSegmentStart: PackedBlockPos? = null
 
+    /**
+     * The chunk-level route to [routeGoal], planned once and followed by the searches along it; null
+     * with [routeGoal] set if planning one failed. Only touched under [pathCalcLock].
+     */
+    private var route: ChunkRoute? = null
+    private var routeGoal: Goal? = null
+
+    /**
+     * A route being planned off the tick thread for [plannedGoal]; searches go straight for their
+     * goal until it's done. Only touched under [pathCalcLock].
+     */
+    private var planning: CompletableFuture<ChunkRoute?>? = null
+    private var plannedGoal: Goal? = null
+
     private val toDispatch = LinkedBlockingQueue<PathEvent>()
 
     init {
@@ -105,6 +144,42 @@ class PathingBehavior(
         )
     }
 
+    /**
+     * Reserves the rest of the current path when it changes, and again every so often since the
+     * agent rarely keeps to the schedule its movement costs predict. Without a path, the agent
+     * reserves the spot it stands on, and only posts again once it moves or the reservation is
+     * about to lapse.
+     */
+    private fun updateReservation() {
+        val executor = current
+        if (executor != null && executor === reservedFor && ticksElapsedSoFar % RESERVATION_REFRESH_TICKS != 0) {
+            return
+        }
+        val player = ctx.player() ?: return
+        val dimension = (ctx.world() ?: return).dimension().location().toString()
+        val now = System.currentTimeMillis()
+        val reservation =
+            if (executor != null) {
+                PathReservation.of(player.stringUUID, dimension, executor.path, executor.position, now)
+            } else {
+                val feet = ctx.playerFeet().packed
+                val previous = this.reservation
+                if (reservedFor == null &&
+                    previous != null &&
+                    previous.dimension == dimension &&
+                    previous.positions.size == 1 &&
+                    previous.positions[0] == feet &&
+                    now < previous.expiresAt - PathReservations.HOLD_MS / 2
+                ) {
+                    return
+                }
+                PathReservation.standing(player.stringUUID, dimension, feet, now)
+            }
+        reservedFor = executor
+        this.reservation = reservation
+        agent.coordinationClient?.reservePath(reservation)
+    }
+
     private fun queuePathEvent(event: PathEvent?) {
         toDispatch.add(event)
     }
@@ -121,6 +196,9 @@ class PathingBehavior(
     override fun onTick(event: TickEvent) {
         dispatchEvents()
         if (event.type == TickEvent.Type.OUT) {
+            synchronized(pathCalcLock) {
+                lastSearch = null
+            }
             secretInternalSegmentCancel()
             agent.pathingControlManager.cancelEverything()
             return
@@ -130,6 +208,7 @@ class PathingBehavior(
         agent.pathingControlManager.preTick()
         tickPath()
         ticksElapsedSoFar++
+        updateReservation()
 
         // Cleanup expired failure records every 5 seconds
         if (ticksElapsedSoFar % 100 == 0) {
@@ -378,10 +457,7 @@ class PathingBehavior(
 
     override fun getNext(): PathExecutor? = next
 
-    override fun getInProgress(): Optional<out AStarPathFinder?> {
-        @Suppress("UNCHECKED_CAST")
-        return Optional.ofNullable(inProgress) as Optional<out AStarPathFinder?>
-    }
+    override fun getInProgress(): Optional<out AbstractNodeCostSearch?> = Optional.ofNullable(inProgress)
 
     fun isSafeToCancel(): Boolean {
         if (current == null) {
@@ -561,7 +637,7 @@ class PathingBehavior(
         return feet
     }
 
-    /** In a new thread, pathfind to target blockpos  */
+    /** On a [PathfindingScheduler] worker, pathfind to target blockpos  */
     private fun findPathInNewThread(
         start: BlockPos,
         reason: PathfindingReason,
@@ -604,12 +680,12 @@ class PathingBehavior(
             log
                 .atDebug()
                 .addKeyValue("from", goal.javaClass.getSimpleName())
-                .log("Simplifying goal to GoalXZ")
+                .addKeyValue("to", pathfinder.getGoal())
+                .log("Simplifying goal")
         }
         inProgress = pathfinder
-        Agent
-            .getExecutor()
-            .execute {
+        PathfindingScheduler
+            .submit(agent, reason, pathfinder) {
                 val shouldLogStart =
                     when (reason) {
                         PathfindingReason.INITIAL_PATH, PathfindingReason.RECOVERY -> true
@@ -739,11 +815,24 @@ class PathingBehavior(
                     }
                     synchronized(pathCalcLock) {
                         inProgress = null
+                        lastSearch =
+                            pathfinder.takeIf {
+                                calcResult.type != PathCalculationResult.Type.CANCELLATION &&
+                                    calcResult.type != PathCalculationResult.Type.EXCEPTION
+                            }
                     }
                 }
             }
     }
 
+    override fun onBlockChange(event: BlockChangeEvent) {
+        val positions = event.blocks.map { it.first }
+        synchronized(pathCalcLock) {
+            lastSearch?.blocksChanged(positions)
+            inProgress?.blocksChanged(positions)
+        }
+    }
+
     private fun createPathfinder(
         start: BlockPos,
         goal: Goal,
@@ -761,6 +850,10 @@ class PathingBehavior(
                 transformed = GoalXZ(pos.x, pos.z)
             }
         }
+        val routed = followRoute(start, goal, context)
+        if (routed != null) {
+            transformed = routed.first
+        }
         val preferredPaths =
             PreferredPaths(context.getAgent().getPlayerContext(), previous, context)
         val feet = ctx.playerFeet()
@@ -769,6 +862,49 @@ class PathingBehavior(
         if (feet.y == realStart.y && abs(sub.x) <= 1 && abs(sub.z) <= 1) {
             realStart = feet
         }
+        val portfolioSize =
+            Agent
+                .getPrimaryAgent()
+                .settings.pathingPortfolioSize.value
+                .coerceAtMost(PortfolioPathFinder.MAX_SIZE)
+        // members each need a context of their own, which can only be made of the plain kind
+        if (portfolioSize > 1 && context.javaClass == CalculationContext::class.java) {
+            lastSearch = null
+            val members =
+                List(portfolioSize) { i ->
+                    AStarPathFinder(
+                        realStart,
+                        start.x,
+                        start.y,
+                        start.z,
+                        transformed,
+                        preferredPaths,
+                        CalculationContext(agent, true),
+                        createMovementProvider(),
+                        routed?.second,
+                        null,
+                        PortfolioPathFinder.phase(i),
+                    )
+                }
+            return PortfolioPathFinder(realStart, start.x, start.y, start.z, transformed, context, members)
+        }
+        if (Agent
+                .getPrimaryAgent()
+                .settings.pathingCompactNodes.value
+        ) {
+            lastSearch = null
+            return CompactAStarPathFinder(
+                realStart,
+                start.x,
+                start.y,
+                start.z,
+                transformed,
+                preferredPaths,
+                context,
+                movementProvider,
+                routed?.second,
+            )
+        }
         return AStarPathFinder(
             realStart,
             start.x,
@@ -778,14 +914,136 @@ class PathingBehavior(
             preferredPaths,
             context,
             movementProvider,
-        )
+            routed?.second,
+            lastSearch?.takeIf {
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingIncrementalReplan.value
+            },
+        ).also { lastSearch = null }
+    }
+
+    /**
+     * For a goal far enough away, routes chunk by chunk over the world cache first, so the
+     * block-level search only has to refine the next stretch of the route rather than find its
+     * own way across the map. The route is kept for the searches after, and planned again if the
+     * agent ends up outside its corridor. Planning can read a lot of the cache from disk, so it runs
+     * on [ROUTE_EXECUTOR]; searches started before it's done don't follow a route, and if that is
+     * full, a later search asks again.
+     *
+     * @return the goal for the next stretch and the route, or null to search for [goal] directly
+     */
+    private fun followRoute(
+        start: BlockPos,
+        goal: Goal,
+        context: CalculationContext,
+    ): Pair<Goal, ChunkRoute>? {
+        val minDistance =
+            Agent
+                .getPrimaryAgent()
+                .settings.pathingRouteMinDistance.value
+        val target = routeTarget(goal)
+        if (minDistance <= 0 || target == null) {
+            return null
+        }
+        if (hypot((target.x - start.x).toDouble(), (target.z - start.z).toDouble()) < minDistance) {
+            return null
+        }
+        val startX = start.x shr 4
+        val startZ = start.z shr 4
+
+        val pending = planning
+        if (pending != null && pending.isDone) {
+            planning = null
+            if (plannedGoal == goal) {
+                route = pending.getNow(null)
+                routeGoal = goal
+            }
+        }
+
+        var progress = -1
+        if (routeGoal == goal) {
+            val planned = route ?: return null
+            progress = planned.progress(startX, startZ)
+        }
+        if (progress < 0) {
+            // a plan for another goal is left to finish, and ignored
+            if (planning == null || plannedGoal != goal) {
+                val world = context.worldData?.getCachedWorld() ?: return null
+                plannedGoal = goal
+                planning = planRoute(CachedChunkGraph(world), startX, startZ, target, goal)
+            }
+            return null
+        }
+        val planned = route ?: return null
+
+        val waypoint = planned.waypoint(progress, ROUTE_STRETCH_CHUNKS) { x, z -> context.isLoaded(x shl 4, z shl 4) }
+        if (waypoint == planned.size - 1) {
+            return goal to planned
+        }
+        return GoalChunk(planned.chunkX(waypoint), planned.chunkZ(waypoint)) to planned
     }
 
+    private fun planRoute(
+        graph: CachedChunkGraph,
+        startX: Int,
+        startZ: Int,
+        target: BlockPos,
+        goal: Goal,
+    ): CompletableFuture<ChunkRoute?>? =
+        try {
+            CompletableFuture
+                .supplyAsync(
+                    {
+                        val startTime = System.currentTimeMillis()
+                        val planned =
+                            ChunkRoute.plan(graph, startX, startZ, target.x shr 4, target.z shr 4, MAX_ROUTE_CHUNKS)
+                        log
+                            .atDebug()
+                            .addKeyValue("goal", goal)
+                            .addKeyValue("chunks", planned?.size)
+                            .addKeyValue("duration_ms", System.currentTimeMillis() - startTime)
+                            .log(if (planned != null) "Planned chunk route" else "No chunk route found")
+                        planned
+                    },
+                    ROUTE_EXECUTOR,
+                ).exceptionally { e ->
+                    log.atWarn().setCause(e).log("Chunk route planning failed")
+                    null
+                }
+        } catch (e: RejectedExecutionException) {
+            log.atDebug().addKeyValue("goal", goal).log("Chunk route planning deferred, planner busy")
+            null
+        }
+
+    /** @return the column a goal is at, if it's at one */
+    private fun routeTarget(goal: Goal): BlockPos? =
+        when (goal) {
+            is IGoalRenderPos -> goal.getGoalPos()
+            is GoalXZ -> BlockPos(goal.x, 0, goal.z)
+            else -> null
+        }
+
     override fun onRenderPass(event: RenderEvent?) {
         PathRenderer.render(event, this)
     }
 
     companion object {
         private val log: Logger = Loggers.Path.get()
+
+        /** How often the reservation is redone from where the agent actually is on its path */
+        private const val RESERVATION_REFRESH_TICKS = 20
+
+        /**
+         * Chunks a route search may expand before giving up, about a 1600 block detour. Bounds how
+         * long one plan holds [ROUTE_EXECUTOR] and how much of the cache it reads.
+         */
+        private const val MAX_ROUTE_CHUNKS = 10_000
+
+        /** Shared by every agent; plans are rare, and one at a time keeps disk reads down */
+        private val ROUTE_EXECUTOR = BackgroundExecutors.bounded("maestro-route", 1, 4)
+
+        /** Longest stretch of a route one block-level search is given */
+        private const val ROUTE_STRETCH_CHUNKS = 8
     }
 }
@@ -1,7 +1,8 @@
 package maestro.cache
 
 import com.google.common.collect.ImmutableSet
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap
 import maestro.pathing.PathingBlockType
 import maestro.utils.BlockUtils
 import net.minecraft.core.BlockPos
@@ -11,6 +12,16 @@ import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.dimension.DimensionType
 import java.util.BitSet
 
+/**
+ * A packed snapshot of one chunk.
+ *
+ * Besides the 2-bit pathing type of every block, a chunk keeps:
+ * - the top block state of each column, as a small palette plus one byte index per column
+ * - the positions of [BLOCKS_TO_KEEP_TRACK_OF], as sorted packed positions (see [packPosition])
+ *   with a parallel index into an interned array of block types
+ *
+ * Lookups never touch block names; names only appear when a chunk is written to disk.
+ */
 class CachedChunk internal constructor(
     /** The chunk x coordinate */
     @JvmField val x: Int,
@@ -18,8 +29,16 @@ class CachedChunk internal constructor(
     @JvmField val z: Int,
     @JvmField val height: Int,
     private val data: BitSet,
-    private val overview: Array<BlockState>,
-    private val specialBlockLocations: Map<String, List<BlockPos>>,
+    /** Distinct top block states of this chunk, at most 256 */
+    private val overviewPalette: Array<BlockState>,
+    /** Index into [overviewPalette] of each column's top block, indexed by `z shl 4 or x` */
+    private val overview: ByteArray,
+    /** Distinct special block types present in this chunk, at most 255 */
+    private val specialTypes: Array<Block>,
+    /** Packed positions of special blocks, sorted ascending */
+    private val specialPositions: IntArray,
+    /** Index into [specialTypes] of each entry in [specialPositions] */
+    private val specialTypeIndices: ByteArray,
     @JvmField val cacheTimestamp: Long,
 ) {
     /**
@@ -32,23 +51,15 @@ class CachedChunk internal constructor(
     /** The size of the chunk data in bytes. Equal to 16 KiB for 256 height. */
     @JvmField val sizeInBytes: Int = sizeInBytes(size)
 
-    private val special: Int2ObjectOpenHashMap<String>?
-    private val heightMap: IntArray = IntArray(256)
+    private val heightMap: ShortArray = ShortArray(256)
 
     init {
         validateSize(data)
-        special =
-            if (specialBlockLocations.isEmpty()) {
-                null
-            } else {
-                Int2ObjectOpenHashMap<String>().also { map ->
-                    specialBlockLocations.forEach { (blockName, positions) ->
-                        positions.forEach { pos ->
-                            map[getPositionIndex(pos.x, pos.y, pos.z)] = blockName
-                        }
-                    }
-                }
-            }
+        require(overview.size == 256) { "Overview must have 256 columns" }
+        require(specialPositions.size == specialTypeIndices.size) { "Special block arrays differ in length" }
+        for (i in 1..<specialPositions.size) {
+            require(specialPositions[i - 1] < specialPositions[i]) { "Special block positions must be sorted" }
+        }
         calculateHeightMap()
     }
 
@@ -62,17 +73,20 @@ class CachedChunk internal constructor(
         val type = getType(index)
         val internalPos = z shl 4 or x
 
-        if (heightMap[internalPos] == y && type != PathingBlockType.AVOID) {
+        if (heightMap[internalPos].toInt() == y && type != PathingBlockType.AVOID) {
             // if the top block in a column is water, we cache it as AVOID, but we don't want to
             // just return default state water (which is not flowing) because then it would try to
             // path through it
             //
             // we have this exact block, it's a surface block
-            return overview[internalPos]
+            return overviewPalette[overview[internalPos].toInt() and 0xff]
         }
 
-        special?.get(index)?.let { blockName ->
-            return BlockUtils.stringToBlockRequired(blockName).defaultBlockState()
+        if (specialPositions.isNotEmpty()) {
+            val special = specialPositions.binarySearch(packPosition(x, y + dimension.minY(), z))
+            if (special >= 0) {
+                return specialTypes[specialTypeIndices[special].toInt() and 0xff].defaultBlockState()
+            }
         }
 
         if (type == PathingBlockType.SOLID) {
@@ -103,7 +117,7 @@ class CachedChunk internal constructor(
                 for (y in height downTo 0) {
                     val i = getPositionIndex(x, y, z)
                     if (data[i] || data[i + 1]) {
-                        heightMap[index] = y
+                        heightMap[index] = y.toShort()
                         break
                     }
                 }
@@ -111,17 +125,48 @@ class CachedChunk internal constructor(
         }
     }
 
-    fun getOverview(): Array<BlockState> = overview
+    /** @return the height of a column's top block above the bottom of the world */
+    fun getHeight(
+        x: Int,
+        z: Int,
+    ): Int = heightMap[z shl 4 or x].toInt()
+
+    /** @return the pathing type of a column's top block */
+    fun getTopType(
+        x: Int,
+        z: Int,
+    ): PathingBlockType = getType(getPositionIndex(x, getHeight(x, z), z))
+
+    /** @return the top block state of a column */
+    fun getOverview(
+        x: Int,
+        z: Int,
+    ): BlockState = overviewPalette[overview[z shl 4 or x].toInt() and 0xff]
 
-    fun getRelativeBlocks(): Map<String, List<BlockPos>> = specialBlockLocations
+    internal fun overviewPalette(): Array<BlockState> = overviewPalette
+
+    internal fun overviewIndices(): ByteArray = overview
+
+    internal fun specialTypes(): Array<Block> = specialTypes
+
+    internal fun specialPositions(): IntArray = specialPositions
+
+    internal fun specialTypeIndices(): ByteArray = specialTypeIndices
 
     fun getAbsoluteBlocks(blockType: String): ArrayList<BlockPos>? {
-        val blocks = specialBlockLocations[blockType] ?: return null
-        return ArrayList(
-            blocks.map { pos ->
-                BlockPos(pos.x + x * 16, pos.y, pos.z + z * 16)
-            },
-        )
+        val block = BlockUtils.stringToBlockNullable(blockType) ?: return null
+        val type = specialTypes.indexOf(block)
+        if (type < 0) {
+            return null
+        }
+        val res = ArrayList<BlockPos>()
+        for (i in specialPositions.indices) {
+            if (specialTypeIndices[i].toInt() and 0xff == type) {
+                val packed = specialPositions[i]
+                res.add(BlockPos(unpackX(packed) + x * 16, unpackY(packed), unpackZ(packed) + z * 16))
+            }
+        }
+        return res
     }
 
     /** @return Returns the raw packed chunk data as a byte array */
@@ -227,6 +272,96 @@ class CachedChunk internal constructor(
             z: Int,
         ): Int = (x shl 1) or (z shl 5) or (y shl 9)
 
+        /**
+         * Packs a chunk-relative x/z and an absolute y into one int that sorts by y, then z, then x.
+         */
+        @JvmStatic
+        fun packPosition(
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Int = (y shl 8) or (z shl 4) or x
+
+        @JvmStatic
+        fun unpackX(packed: Int): Int = packed and 15
+
+        @JvmStatic
+        fun unpackY(packed: Int): Int = packed shr 8
+
+        @JvmStatic
+        fun unpackZ(packed: Int): Int = (packed shr 4) and 15
+
+        /**
+         * Builds a chunk from plain arrays, computing the overview palette and interning special
+         * block types.
+         *
+         * @param overview The top block state of each column, indexed by `z shl 4 or x`
+         * @param specialBlocks Packed positions (see [packPosition]) of each tracked block type
+         */
+        @JvmStatic
+        internal fun create(
+            x: Int,
+            z: Int,
+            height: Int,
+            data: BitSet,
+            overview: Array<BlockState>,
+            specialBlocks: Map<Block, IntArrayList>,
+            cacheTimestamp: Long,
+        ): CachedChunk {
+            val palette = ArrayList<BlockState>()
+            val paletteIndex = Reference2IntOpenHashMap<BlockState>().apply { defaultReturnValue(-1) }
+            val indices = ByteArray(256)
+            for (i in 0..<256) {
+                var id = paletteIndex.getInt(overview[i])
+                if (id < 0) {
+                    id = palette.size
+                    palette.add(overview[i])
+                    paletteIndex.put(overview[i], id)
+                }
+                indices[i] = id.toByte()
+            }
+
+            val types = specialBlocks.keys.toTypedArray()
+            require(types.size < 256) { "Too many special block types" }
+            var count = 0
+            specialBlocks.values.forEach { count += it.size }
+            // sort by position, carrying the type index in the low bits of a long
+            val sorted = LongArray(count)
+            var n = 0
+            types.forEachIndexed { type, block ->
+                val positions = specialBlocks.getValue(block)
+                for (i in 0..<positions.size) {
+                    sorted[n++] = (positions.getInt(i).toLong() shl 8) or type.toLong()
+                }
+            }
+            sorted.sort()
+            val positions = IntArray(count)
+            val typeIndices = ByteArray(count)
+            var unique = 0
+            for (entry in sorted) {
+                val pos = (entry shr 8).toInt()
+                if (unique > 0 && positions[unique - 1] == pos) {
+                    continue
+                }
+                positions[unique] = pos
+                typeIndices[unique] = entry.toByte()
+                unique++
+            }
+
+            return CachedChunk(
+                x,
+                z,
+                height,
+                data,
+                palette.toTypedArray(),
+                indices,
+                types,
+                if (unique == count) positions else positions.copyOf(unique),
+                if (unique == count) typeIndices else typeIndices.copyOf(unique),
+                cacheTimestamp,
+            )
+        }
+
         @JvmStatic
         fun size(dimensionHeight: Int): Int = 2 * 16 * 16 * dimensionHeight
 
@@ -1,28 +1,39 @@
 package maestro.cache
 
-import kotlinx.coroutines.sync.Mutex
-import kotlinx.coroutines.sync.withLock
+import it.unimi.dsi.fastutil.ints.IntArrayList
 import maestro.Agent
 import maestro.utils.BlockUtils
 import maestro.utils.Loggers
 import net.minecraft.core.BlockPos
+import net.minecraft.world.level.block.Block
 import net.minecraft.world.level.block.state.BlockState
 import net.minecraft.world.level.dimension.DimensionType
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
 import java.io.DataInputStream
 import java.io.DataOutputStream
 import java.io.FileInputStream
-import java.io.FileOutputStream
+import java.io.IOException
 import java.nio.file.Path
 import java.nio.file.Paths
 import java.util.BitSet
 import java.util.zip.GZIPInputStream
-import java.util.zip.GZIPOutputStream
 import kotlin.io.path.createDirectories
-import kotlin.io.path.createFile
+import kotlin.io.path.deleteIfExists
 import kotlin.io.path.exists
 
 private val log = Loggers.Cache.get()
 
+/**
+ * A 32x32 chunk region of the cache.
+ *
+ * Chunks are stored on disk in a [CachedRegionFile]. Loading only reads its offset table; each
+ * chunk is decoded the first time something asks for it. Saving writes only the chunks that
+ * changed (or expired) since the last save.
+ *
+ * Regions saved in the legacy single-stream format (`r.X.Z.bcr`) are read in full once, and are
+ * replaced by the new format on the next save.
+ */
 class CachedRegion(
     /** The region x coordinate */
     internal val x: Int,
@@ -30,14 +41,26 @@ class CachedRegion(
     internal val z: Int,
     private val dimension: DimensionType,
 ) {
-    /** All the chunks in this region: A 32x32 array of them. */
+    /** Chunks decoded or updated so far: a 32x32 array of them. Null may still be present on disk. */
     private val chunks: Array<Array<CachedChunk?>> = Array(32) { arrayOfNulls(32) }
 
-    /** Has this region been modified since its most recent load or save */
-    @Volatile
-    private var hasUnsavedChanges: Boolean = false
+    /**
+     * Guards [file], [dirty] and lazy decoding. Reads of already decoded chunks skip it, since
+     * [CachedChunk] is immutable and safely published.
+     */
+    private val lock = Any()
 
-    private val saveMutex = Mutex()
+    /** The on-disk copy, or null if nothing has been loaded or saved yet */
+    private var file: CachedRegionFile? = null
+
+    /**
+     * Chunks whose in-memory state (including absence) differs from [file], indexed by
+     * `(x shl 5) or z`. The disk copy of a dirty chunk is never read.
+     */
+    private val dirty = BitSet(CachedRegionFile.CHUNK_COUNT)
+
+    /** Set after reading a legacy file, which is deleted once the new format has been written */
+    private var legacyFile: Path? = null
 
     fun getBlock(
         x: Int,
@@ -45,20 +68,34 @@ class CachedRegion(
         z: Int,
     ): BlockState? {
         val adjY = y - dimension.minY()
-        val chunk = chunks[x shr 4][z shr 4]
+        val chunk = getChunk(x shr 4, z shr 4)
         return chunk?.getBlock(x and 15, adjY, z and 15, dimension)
     }
 
     fun isCached(
         x: Int,
         z: Int,
-    ): Boolean = chunks[x shr 4][z shr 4] != null
+    ): Boolean {
+        val chunkX = x shr 4
+        val chunkZ = z shr 4
+        if (chunks[chunkX][chunkZ] != null) {
+            return true
+        }
+        synchronized(lock) {
+            val index = index(chunkX, chunkZ)
+            return chunks[chunkX][chunkZ] != null || (!dirty[index] && file?.isPresent(index) == true)
+        }
+    }
 
     fun getLocationsOf(block: String): ArrayList<BlockPos> {
         val res = ArrayList<BlockPos>()
+        val name = BlockUtils.stringToBlockNullable(block)?.let { BlockUtils.blockToString(it) } ?: return res
         for (chunkX in 0..<32) {
             for (chunkZ in 0..<32) {
-                val chunk = chunks[chunkX][chunkZ] ?: continue
+                if (chunks[chunkX][chunkZ] == null && !mayContain(chunkX, chunkZ, name)) {
+                    continue
+                }
+                val chunk = getChunk(chunkX, chunkZ) ?: continue
                 val locations = chunk.getAbsoluteBlocks(block)
                 if (locations != null) {
                     res.addAll(locations)
@@ -68,106 +105,144 @@ class CachedRegion(
         return res
     }
 
+    /** Whether the disk copy of a chunk not decoded yet may hold the block, going by the file's index */
+    private fun mayContain(
+        chunkX: Int,
+        chunkZ: Int,
+        name: String,
+    ): Boolean {
+        synchronized(lock) {
+            val index = index(chunkX, chunkZ)
+            val file = file ?: return false
+            return !dirty[index] && file.isPresent(index) && name in file.blocks(index)
+        }
+    }
+
     fun updateCachedChunk(
         chunkX: Int,
         chunkZ: Int,
         chunk: CachedChunk,
     ) {
-        chunks[chunkX][chunkZ] = chunk
-        hasUnsavedChanges = true
+        synchronized(lock) {
+            chunks[chunkX][chunkZ] = chunk
+            dirty.set(index(chunkX, chunkZ))
+        }
     }
 
-    fun save(directory: String) {
-        if (!hasUnsavedChanges) return
+    /**
+     * Stores a chunk packed elsewhere unless the copy here is at least as recent.
+     *
+     * @return whether the chunk was stored
+     */
+    fun mergeCachedChunk(
+        chunkX: Int,
+        chunkZ: Int,
+        chunk: CachedChunk,
+    ): Boolean {
+        synchronized(lock) {
+            val current = timestampOf(chunkX, chunkZ)
+            if (current != null && current >= chunk.cacheTimestamp) {
+                return false
+            }
+            chunks[chunkX][chunkZ] = chunk
+            dirty.set(index(chunkX, chunkZ))
+            return true
+        }
+    }
 
-        // Use runBlocking with mutex for Java interop
-        kotlinx.coroutines.runBlocking {
-            saveMutex.withLock {
-                saveInternal(directory)
+    /**
+     * Returns the chunk at the given region-relative chunk coordinates, decoding it from disk on
+     * first access.
+     */
+    internal fun getChunk(
+        chunkX: Int,
+        chunkZ: Int,
+    ): CachedChunk? {
+        chunks[chunkX][chunkZ]?.let { return it }
+        synchronized(lock) {
+            chunks[chunkX][chunkZ]?.let { return it }
+            val index = index(chunkX, chunkZ)
+            val file = file ?: return null
+            if (dirty[index] || !file.isPresent(index)) {
+                return null
             }
+            val chunk =
+                try {
+                    decodeChunk(
+                        chunkX + 32 * x,
+                        chunkZ + 32 * z,
+                        dimension.height(),
+                        file.read(index),
+                        file.timestamp(index),
+                    )
+                } catch (ex: Exception) {
+                    log
+                        .atError()
+                        .setCause(ex)
+                        .addKeyValue("chunk_x", chunkX + 32 * this.x)
+                        .addKeyValue("chunk_z", chunkZ + 32 * this.z)
+                        .log("Failed to read cached chunk, discarding it")
+                    // Drop the unreadable copy on the next save instead of retrying every lookup
+                    dirty.set(index)
+                    return null
+                }
+            chunks[chunkX][chunkZ] = chunk
+            return chunk
         }
     }
 
-    private fun saveInternal(directory: String) {
-        try {
+    fun save(directory: String) {
+        synchronized(lock) {
             removeExpired()
+            if (dirty.isEmpty) {
+                return
+            }
+            saveInternal(directory)
+        }
+    }
 
+    private fun saveInternal(directory: String) {
+        try {
             val path = Paths.get(directory)
             if (!path.exists()) {
                 path.createDirectories()
             }
 
-            val regionFile = getRegionFile(path, x, z)
-            if (!regionFile.exists()) {
-                regionFile.createFile()
+            val regionFile = file ?: CachedRegionFile.open(getRegionFile(path, x, z))
+            val changes = ArrayList<CachedRegionFile.Change>(dirty.cardinality())
+            var index = dirty.nextSetBit(0)
+            while (index >= 0) {
+                val chunk = chunks[index ushr 5][index and 31]
+                changes.add(
+                    CachedRegionFile.Change(
+                        index,
+                        chunk?.let { encodeChunk(it) },
+                        chunk?.cacheTimestamp ?: 0L,
+                        chunk?.let { blockNames(it) } ?: emptyArray(),
+                    ),
+                )
+                index = dirty.nextSetBit(index + 1)
             }
-
-            FileOutputStream(regionFile.toFile()).use { fileOut ->
-                GZIPOutputStream(fileOut, 16384).use { gzipOut ->
-                    DataOutputStream(gzipOut).use { out ->
-                        out.writeInt(CACHED_REGION_MAGIC)
-
-                        // Write chunk data
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                val chunk = chunks[x][z]
-                                if (chunk == null) {
-                                    out.write(CHUNK_NOT_PRESENT.toInt())
-                                } else {
-                                    out.write(CHUNK_PRESENT.toInt())
-                                    val chunkBytes = chunk.toByteArray()
-                                    out.write(chunkBytes)
-                                    // Fill trailing zeros to match chunk size
-                                    out.write(ByteArray(chunk.sizeInBytes - chunkBytes.size))
-                                }
-                            }
-                        }
-
-                        // Write overview data
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                val chunk = chunks[x][z]
-                                if (chunk != null) {
-                                    for (i in 0..<256) {
-                                        out.writeUTF(BlockUtils.blockToString(chunk.getOverview()[i].block))
-                                    }
-                                }
-                            }
-                        }
-
-                        // Write special block locations
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                val chunk = chunks[x][z]
-                                if (chunk != null) {
-                                    val locations = chunk.getRelativeBlocks()
-                                    out.writeShort(locations.size)
-                                    for ((blockName, positions) in locations) {
-                                        out.writeUTF(blockName)
-                                        out.writeShort(positions.size)
-                                        for (pos in positions) {
-                                            out.writeByte((pos.z shl 4 or pos.x).toByte().toInt())
-                                            out.writeInt(pos.y - dimension.minY())
-                                        }
-                                    }
-                                }
-                            }
-                        }
-
-                        // Write cache timestamps
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                val chunk = chunks[x][z]
-                                if (chunk != null) {
-                                    out.writeLong(chunk.cacheTimestamp)
-                                }
-                            }
-                        }
-                    }
-                }
+            regionFile.write(changes)
+            file = regionFile
+            dirty.clear()
+
+            legacyFile?.let {
+                it.deleteIfExists()
+                legacyFile = null
+                log
+                    .atDebug()
+                    .addKeyValue("region_x", x)
+                    .addKeyValue("region_z", z)
+                    .log("Migrated legacy region file")
             }
 
-            hasUnsavedChanges = false
+            log
+                .atDebug()
+                .addKeyValue("region_x", x)
+                .addKeyValue("region_z", z)
+                .addKeyValue("chunks_written", changes.size)
+                .log("Region saved")
         } catch (ex: Exception) {
             log
                 .atError()
@@ -179,11 +254,8 @@ class CachedRegion(
     }
 
     fun load(directory: String) {
-        // Use runBlocking with mutex for Java interop
-        kotlinx.coroutines.runBlocking {
-            saveMutex.withLock {
-                loadInternal(directory)
-            }
+        synchronized(lock) {
+            loadInternal(directory)
         }
     }
 
@@ -194,143 +266,182 @@ class CachedRegion(
                 path.createDirectories()
             }
 
+            val start = System.nanoTime() / 1000000L
+
+            for (chunkX in 0..<32) {
+                chunks[chunkX].fill(null)
+            }
+            dirty.clear()
+            file = null
+
             val regionFile = getRegionFile(path, x, z)
-            if (!regionFile.exists()) {
-                return
+            val legacy = getLegacyRegionFile(path, x, z)
+            when {
+                regionFile.exists() -> file = openOrDiscard(regionFile)
+                legacy.exists() -> {
+                    loadLegacy(legacy)
+                    // Everything read from the legacy file gets written in the new format
+                    for (chunkX in 0..<32) {
+                        for (chunkZ in 0..<32) {
+                            if (chunks[chunkX][chunkZ] != null) {
+                                dirty.set(index(chunkX, chunkZ))
+                            }
+                        }
+                    }
+                    legacyFile = legacy
+                }
+                else -> return
             }
 
-            val start = System.nanoTime() / 1000000L
+            removeExpired()
 
-            FileInputStream(regionFile.toFile()).use { fileIn ->
-                GZIPInputStream(fileIn, 32768).use { gzipIn ->
-                    DataInputStream(gzipIn).use { input ->
-                        val magic = input.readInt()
-                        if (magic != CACHED_REGION_MAGIC) {
-                            throw java.io.IOException("Bad magic value $magic")
-                        }
+            val end = System.nanoTime() / 1000000L
+            log
+                .atDebug()
+                .addKeyValue("region_x", x)
+                .addKeyValue("region_z", z)
+                .addKeyValue("duration_ms", end - start)
+                .log("Region loaded")
+        } catch (ex: Exception) {
+            log
+                .atError()
+                .setCause(ex)
+                .addKeyValue("region_x", x)
+                .addKeyValue("region_z", z)
+                .log("Failed to load region")
+        }
+    }
 
-                        val present = Array(32) { BooleanArray(32) }
-                        val bitSets = Array(32) { arrayOfNulls<BitSet>(32) }
-                        val location =
-                            Array(32) { arrayOfNulls<MutableMap<String, List<BlockPos>>>(32) }
-                        val overview = Array(32) { arrayOfNulls<Array<BlockState>>(32) }
-                        val cacheTimestamp = Array(32) { LongArray(32) }
-
-                        // Read chunk presence and data
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                when (input.read()) {
-                                    CHUNK_PRESENT.toInt() -> {
-                                        val bytes =
-                                            ByteArray(
-                                                CachedChunk.sizeInBytes(
-                                                    CachedChunk.size(dimension.height()),
-                                                ),
-                                            )
-                                        input.readFully(bytes)
-                                        bitSets[x][z] = BitSet.valueOf(bytes)
-                                        location[x][z] = mutableMapOf()
-                                        @Suppress("UNCHECKED_CAST")
-                                        overview[x][z] = arrayOfNulls<BlockState>(256) as Array<BlockState>
-                                        present[x][z] = true
-                                    }
-                                    CHUNK_NOT_PRESENT.toInt() -> {}
-                                    else -> throw java.io.IOException("Malformed stream")
+    /**
+     * Opens an existing region file. One that can't be read (corrupt, or written by an
+     * incompatible version) is deleted, since everything in it can be cached again.
+     */
+    private fun openOrDiscard(regionFile: Path): CachedRegionFile? =
+        try {
+            CachedRegionFile.open(regionFile)
+        } catch (ex: IOException) {
+            log
+                .atWarn()
+                .setCause(ex)
+                .addKeyValue("region_x", x)
+                .addKeyValue("region_z", z)
+                .log("Discarding unreadable region file")
+            regionFile.deleteIfExists()
+            null
+        }
+
+    /** Reads a whole region saved in the legacy gzip stream format into [chunks] */
+    private fun loadLegacy(regionFile: Path) {
+        FileInputStream(regionFile.toFile()).use { fileIn ->
+            GZIPInputStream(fileIn, 32768).use { gzipIn ->
+                DataInputStream(gzipIn).use { input ->
+                    val magic = input.readInt()
+                    if (magic != CACHED_REGION_MAGIC) {
+                        throw java.io.IOException("Bad magic value $magic")
+                    }
+
+                    val present = Array(32) { BooleanArray(32) }
+                    val bitSets = Array(32) { arrayOfNulls<BitSet>(32) }
+                    val location =
+                        Array(32) { arrayOfNulls<MutableMap<Block, IntArrayList>>(32) }
+                    val overview = Array(32) { arrayOfNulls<Array<BlockState>>(32) }
+                    val cacheTimestamp = Array(32) { LongArray(32) }
+
+                    // Read chunk presence and data
+                    for (x in 0..<32) {
+                        for (z in 0..<32) {
+                            when (input.read()) {
+                                CHUNK_PRESENT.toInt() -> {
+                                    val bytes =
+                                        ByteArray(
+                                            CachedChunk.sizeInBytes(
+                                                CachedChunk.size(dimension.height()),
+                                            ),
+                                        )
+                                    input.readFully(bytes)
+                                    bitSets[x][z] = BitSet.valueOf(bytes)
+                                    location[x][z] = mutableMapOf()
+                                    @Suppress("UNCHECKED_CAST")
+                                    overview[x][z] = arrayOfNulls<BlockState>(256) as Array<BlockState>
+                                    present[x][z] = true
                                 }
+                                CHUNK_NOT_PRESENT.toInt() -> {}
+                                else -> throw java.io.IOException("Malformed stream")
                             }
                         }
+                    }
 
-                        // Read overview data
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                if (present[x][z]) {
-                                    val overviewArray = overview[x][z]!!
-                                    for (i in 0..<256) {
-                                        overviewArray[i] =
-                                            BlockUtils
-                                                .stringToBlockRequired(input.readUTF())
-                                                .defaultBlockState()
-                                    }
+                    // Read overview data
+                    for (x in 0..<32) {
+                        for (z in 0..<32) {
+                            if (present[x][z]) {
+                                val overviewArray = overview[x][z]!!
+                                for (i in 0..<256) {
+                                    overviewArray[i] =
+                                        BlockUtils
+                                            .stringToBlockRequired(input.readUTF())
+                                            .defaultBlockState()
                                 }
                             }
                         }
+                    }
 
-                        // Read special block locations
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                if (present[x][z]) {
-                                    val numSpecialBlockTypes = input.readShort().toInt() and 0xffff
-                                    for (i in 0..<numSpecialBlockTypes) {
-                                        val blockName = input.readUTF()
-                                        BlockUtils.stringToBlockRequired(blockName)
-                                        val locations = mutableListOf<BlockPos>()
-                                        location[x][z]!![blockName] = locations
-                                        var numLocations = input.readShort().toInt() and 0xffff
-                                        if (numLocations == 0) {
-                                            // entire chunk full of air can happen in the end
-                                            numLocations = 65536
-                                        }
-                                        for (j in 0..<numLocations) {
-                                            val xzByte = input.readByte()
-                                            val posX = xzByte.toInt() and 0x0f
-                                            val posZ = (xzByte.toInt() ushr 4) and 0x0f
-                                            val posY = input.readInt()
-                                            locations.add(BlockPos(posX, posY + dimension.minY(), posZ))
-                                        }
+                    // Read special block locations
+                    for (x in 0..<32) {
+                        for (z in 0..<32) {
+                            if (present[x][z]) {
+                                val numSpecialBlockTypes = input.readShort().toInt() and 0xffff
+                                for (i in 0..<numSpecialBlockTypes) {
+                                    val block = BlockUtils.stringToBlockRequired(input.readUTF())
+                                    val locations = IntArrayList()
+                                    location[x][z]!![block] = locations
+                                    var numLocations = input.readShort().toInt() and 0xffff
+                                    if (numLocations == 0) {
+                                        // entire chunk full of air can happen in the end
+                                        numLocations = 65536
+                                    }
+                                    for (j in 0..<numLocations) {
+                                        val xzByte = input.readByte()
+                                        val posX = xzByte.toInt() and 0x0f
+                                        val posZ = (xzByte.toInt() ushr 4) and 0x0f
+                                        val posY = input.readInt()
+                                        locations.add(CachedChunk.packPosition(posX, posY + dimension.minY(), posZ))
                                     }
                                 }
                             }
                         }
+                    }
 
-                        // Read cache timestamps
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                if (present[x][z]) {
-                                    cacheTimestamp[x][z] = input.readLong()
-                                }
+                    // Read cache timestamps
+                    for (x in 0..<32) {
+                        for (z in 0..<32) {
+                            if (present[x][z]) {
+                                cacheTimestamp[x][z] = input.readLong()
                             }
                         }
+                    }
 
-                        // Only if the entire file was uncorrupted do we actually set the chunks
-                        for (x in 0..<32) {
-                            for (z in 0..<32) {
-                                if (present[x][z]) {
-                                    val chunkX = x + 32 * this.x
-                                    val chunkZ = z + 32 * this.z
-                                    chunks[x][z] =
-                                        CachedChunk(
-                                            chunkX,
-                                            chunkZ,
-                                            dimension.height(),
-                                            bitSets[x][z]!!,
-                                            overview[x][z]!!,
-                                            location[x][z]!!,
-                                            cacheTimestamp[x][z],
-                                        )
-                                }
+                    // Only if the entire file was uncorrupted do we actually set the chunks
+                    for (x in 0..<32) {
+                        for (z in 0..<32) {
+                            if (present[x][z]) {
+                                val chunkX = x + 32 * this.x
+                                val chunkZ = z + 32 * this.z
+                                chunks[x][z] =
+                                    CachedChunk.create(
+                                        chunkX,
+                                        chunkZ,
+                                        dimension.height(),
+                                        bitSets[x][z]!!,
+                                        overview[x][z]!!,
+                                        location[x][z]!!,
+                                        cacheTimestamp[x][z],
+                                    )
                             }
                         }
                     }
                 }
             }
-
-            removeExpired()
-            hasUnsavedChanges = false
-
-            val end = System.nanoTime() / 1000000L
-            log
-                .atDebug()
-                .addKeyValue("region_x", x)
-                .addKeyValue("region_z", z)
-                .addKeyValue("duration_ms", end - start)
-                .log("Region loaded")
-        } catch (ex: Exception) {
-            log
-                .atError()
-                .setCause(ex)
-                .addKeyValue("region_x", x)
-                .addKeyValue("region_z", z)
-                .log("Failed to load region")
         }
     }
 
@@ -344,34 +455,54 @@ class CachedRegion(
         val now = System.currentTimeMillis()
         val oldestAcceptableAge = now - expiry * 1000L
 
-        for (x in 0..<32) {
-            for (z in 0..<32) {
-                val chunk = chunks[x][z]
-                if (chunk != null && chunk.cacheTimestamp < oldestAcceptableAge) {
-                    log
-                        .atDebug()
-                        .addKeyValue("chunk_x", x + 32 * this.x)
-                        .addKeyValue("chunk_z", z + 32 * this.z)
-                        .addKeyValue("age_seconds", (now - chunk.cacheTimestamp) / 1000L)
-                        .addKeyValue("max_age_seconds", expiry)
-                        .log("Chunk expired and removed")
-                    chunks[x][z] = null
+        synchronized(lock) {
+            for (x in 0..<32) {
+                for (z in 0..<32) {
+                    val timestamp = timestampOf(x, z) ?: continue
+                    if (timestamp < oldestAcceptableAge) {
+                        log
+                            .atDebug()
+                            .addKeyValue("chunk_x", x + 32 * this.x)
+                            .addKeyValue("chunk_z", z + 32 * this.z)
+                            .addKeyValue("age_seconds", (now - timestamp) / 1000L)
+                            .addKeyValue("max_age_seconds", expiry)
+                            .log("Chunk expired and removed")
+                        chunks[x][z] = null
+                        dirty.set(index(x, z))
+                    }
                 }
             }
         }
     }
 
     fun mostRecentlyModified(): CachedChunk? {
-        var recent: CachedChunk? = null
-        for (x in 0..<32) {
-            for (z in 0..<32) {
-                val chunk = chunks[x][z] ?: continue
-                if (recent == null || chunk.cacheTimestamp > recent.cacheTimestamp) {
-                    recent = chunk
+        var recentX = -1
+        var recentZ = -1
+        var recentTimestamp = Long.MIN_VALUE
+        synchronized(lock) {
+            for (x in 0..<32) {
+                for (z in 0..<32) {
+                    val timestamp = timestampOf(x, z) ?: continue
+                    if (recentX == -1 || timestamp > recentTimestamp) {
+                        recentX = x
+                        recentZ = z
+                        recentTimestamp = timestamp
+                    }
                 }
             }
         }
-        return recent
+        return if (recentX == -1) null else getChunk(recentX, recentZ)
+    }
+
+    /** Cache timestamp of a chunk without decoding it, or null if the chunk is absent */
+    private fun timestampOf(
+        chunkX: Int,
+        chunkZ: Int,
+    ): Long? {
+        chunks[chunkX][chunkZ]?.let { return it.cacheTimestamp }
+        val index = index(chunkX, chunkZ)
+        val file = file ?: return null
+        return if (!dirty[index] && file.isPresent(index)) file.timestamp(index) else null
     }
 
     fun getX(): Int = x
@@ -388,10 +519,119 @@ class CachedRegion(
          */
         private const val CACHED_REGION_MAGIC = 456022911
 
+        private fun index(
+            chunkX: Int,
+            chunkZ: Int,
+        ): Int = (chunkX shl 5) or chunkZ
+
         private fun getRegionFile(
             cacheDir: Path,
             regionX: Int,
             regionZ: Int,
+        ): Path = Paths.get(cacheDir.toString(), "r.$regionX.$regionZ.bcr2")
+
+        private fun getLegacyRegionFile(
+            cacheDir: Path,
+            regionX: Int,
+            regionZ: Int,
         ): Path = Paths.get(cacheDir.toString(), "r.$regionX.$regionZ.bcr")
+
+        /**
+         * Chunk payload layout (see [CachedRegionFile] for the framing around it):
+         * ```
+         * int    packed data length, then the packed data
+         * ubyte  overview palette size - 1, then that many block names
+         * byte[256] overview palette indices
+         * ubyte  special block type count, then that many block names
+         * int    special block count, then per block { int packed position, ubyte type index }
+         * ```
+         * Palette entries are block names, so only the default state of a surface block survives a
+         * round trip, as before.
+         */
+        internal fun encodeChunk(chunk: CachedChunk): ByteArray {
+            val bytes = ByteArrayOutputStream(chunk.sizeInBytes / 2)
+            DataOutputStream(bytes).use { out ->
+                val data = chunk.toByteArray()
+                out.writeInt(data.size)
+                out.write(data)
+
+                val palette = chunk.overviewPalette()
+                out.writeByte(palette.size - 1)
+                for (state in palette) {
+                    out.writeUTF(BlockUtils.blockToString(state.block))
+                }
+                out.write(chunk.overviewIndices())
+
+                val types = chunk.specialTypes()
+                out.writeByte(types.size)
+                for (block in types) {
+                    out.writeUTF(BlockUtils.blockToString(block))
+                }
+                val positions = chunk.specialPositions()
+                val typeIndices = chunk.specialTypeIndices()
+                out.writeInt(positions.size)
+                for (i in positions.indices) {
+                    out.writeInt(positions[i])
+                    out.writeByte(typeIndices[i].toInt())
+                }
+            }
+            return bytes.toByteArray()
+        }
+
+        /** Names of the special blocks in a chunk, as [CachedRegionFile] indexes them */
+        internal fun blockNames(chunk: CachedChunk): Array<String> =
+            Array(chunk.specialTypes().size) { BlockUtils.blockToString(chunk.specialTypes()[it]) }
+
+        /** @param chunkX absolute chunk coordinates, unlike most of this class */
+        internal fun decodeChunk(
+            chunkX: Int,
+            chunkZ: Int,
+            height: Int,
+            payload: ByteArray,
+            cacheTimestamp: Long,
+        ): CachedChunk {
+            DataInputStream(ByteArrayInputStream(payload)).use { input ->
+                val data = ByteArray(input.readInt())
+                input.readFully(data)
+
+                val palette =
+                    Array(input.readUnsignedByte() + 1) {
+                        BlockUtils.stringToBlockRequired(input.readUTF()).defaultBlockState()
+                    }
+                val overview = ByteArray(256)
+                input.readFully(overview)
+                for (index in overview) {
+                    if ((index.toInt() and 0xff) >= palette.size) {
+                        throw IOException("Overview index out of palette bounds")
+                    }
+                }
+
+                val types = Array(input.readUnsignedByte()) { BlockUtils.stringToBlockRequired(input.readUTF()) }
+                val count = input.readInt()
+                val positions = IntArray(count)
+                val typeIndices = ByteArray(count)
+                for (i in 0..<count) {
+                    positions[i] = input.readInt()
+                    val type = input.readUnsignedByte()
+                    if (type >= types.size) {
+                        throw IOException("Special block type out of bounds")
+                    }
+                    typeIndices[i] = type.toByte()
+                }
+
+                return CachedChunk(
+                    chunkX,
+                    chunkZ,
+                    height,
+                    BitSet.valueOf(data),
+                    palette,
+                    overview,
+                    types,
+                    positions,
+                    typeIndices,
+                    cacheTimestamp,
+                )
+            }
+        }
     }
 }
@@ -0,0 +1,342 @@
+package maestro.cache
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.BitSet
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+import kotlin.io.path.exists
+
+/**
+ * Random-access on-disk storage for the 1024 chunks of a [CachedRegion].
+ *
+ * Layout, all big-endian:
+ * ```
+ * [0]      int   magic (CACHED_REGION_FILE_MAGIC)
+ * [4]      int   format version
+ * [8]      int   block index sector, int block index length
+ * [16]     1024 entries of { int sector, int length, long timestamp }, indexed by (x shl 5) or z
+ * [sector * SECTOR_SIZE]  deflate-compressed chunk payload of `length` bytes
+ * ```
+ *
+ * The block index is deflate-compressed too: for each of the 1024 chunks, a ubyte count and that
+ * many block names, the special blocks the chunk holds. It's read with the table, so searches for a
+ * block only inflate the chunks that have it.
+ *
+ * An entry with length 0 means the chunk is not present. Reads go through a read-only memory
+ * mapping, so a chunk is only inflated when it's asked for. Writes are copy-on-write: changed chunks
+ * go to free sectors, and the table is rewritten only after the data is on disk, so an interrupted
+ * save leaves the previous version of every chunk readable.
+ *
+ * Not thread-safe; [CachedRegion] serializes access.
+ */
+internal class CachedRegionFile private constructor(
+    private val path: Path,
+) {
+    private val sectors = IntArray(CHUNK_COUNT)
+    private val lengths = IntArray(CHUNK_COUNT)
+    private val timestamps = LongArray(CHUNK_COUNT)
+    private val blocks = arrayOfNulls<Array<String>>(CHUNK_COUNT)
+
+    /** Where the block index is; a length of 0 means there is none yet */
+    private var indexSector = 0
+    private var indexLength = 0
+
+    /** Read-only view of the file as of the last open or [write]; null if nothing is on disk yet */
+    private var mapped: MappedByteBuffer? = null
+
+    /** A pending change to one chunk; a null [payload] removes the chunk */
+    class Change(
+        val index: Int,
+        val payload: ByteArray?,
+        val timestamp: Long,
+        /** Names of the special blocks in the chunk, for the block index */
+        val blocks: Array<String> = NO_BLOCKS,
+    )
+
+    fun isPresent(index: Int): Boolean = lengths[index] > 0
+
+    fun timestamp(index: Int): Long = timestamps[index]
+
+    /** @return names of the special blocks in a chunk, without reading the chunk */
+    fun blocks(index: Int): Array<String> = blocks[index] ?: NO_BLOCKS
+
+    /** @return the uncompressed payload of a present chunk */
+    fun read(index: Int): ByteArray {
+        check(isPresent(index)) { "Chunk $index is not present" }
+        val buffer = mapped ?: throw IOException("Region file is not mapped")
+        val compressed = ByteArray(lengths[index])
+        buffer.get(sectors[index] * SECTOR_SIZE, compressed)
+        return inflate(compressed)
+    }
+
+    /**
+     * Applies [changes] and remaps the file. Chunks not mentioned are left untouched on disk.
+     */
+    fun write(changes: List<Change>) {
+        if (changes.isEmpty()) {
+            return
+        }
+        FileChannel
+            .open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            .use { channel ->
+                // Sectors in use by the current table stay untouched until the new table is written
+                val used = usedSectors()
+                val newSectors = sectors.copyOf()
+                val newLengths = lengths.copyOf()
+                val newTimestamps = timestamps.copyOf()
+                val newBlocks = blocks.copyOf()
+
+                for (change in changes) {
+                    val payload = change.payload
+                    if (payload == null) {
+                        newSectors[change.index] = 0
+                        newLengths[change.index] = 0
+                        newTimestamps[change.index] = 0L
+                        newBlocks[change.index] = null
+                        continue
+                    }
+                    val compressed = deflate(payload)
+                    val count = sectorCount(compressed.size)
+                    val start = allocate(used, count)
+                    used.set(start, start + count)
+                    writeFully(channel, ByteBuffer.wrap(compressed), start.toLong() * SECTOR_SIZE)
+                    newSectors[change.index] = start
+                    newLengths[change.index] = compressed.size
+                    newTimestamps[change.index] = change.timestamp
+                    newBlocks[change.index] = change.blocks
+                }
+
+                val index = deflate(encodeBlocks(newBlocks))
+                val newIndexSector = allocate(used, sectorCount(index.size))
+                writeFully(channel, ByteBuffer.wrap(index), newIndexSector.toLong() * SECTOR_SIZE)
+                channel.force(false)
+
+                val header = encodeHeader(newIndexSector, index.size, newSectors, newLengths, newTimestamps)
+                writeFully(channel, header, 0L)
+                channel.force(false)
+
+                // Only adopt the new table once it is on disk
+                newSectors.copyInto(sectors)
+                newLengths.copyInto(lengths)
+                newTimestamps.copyInto(timestamps)
+                newBlocks.copyInto(blocks)
+                indexSector = newIndexSector
+                indexLength = index.size
+
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+    }
+
+    private fun usedSectors(): BitSet {
+        val used = BitSet()
+        used.set(0, HEADER_SECTORS)
+        if (indexLength > 0) {
+            used.set(indexSector, indexSector + sectorCount(indexLength))
+        }
+        for (i in 0..<CHUNK_COUNT) {
+            if (lengths[i] > 0) {
+                used.set(sectors[i], sectors[i] + sectorCount(lengths[i]))
+            }
+        }
+        return used
+    }
+
+    private fun encodeHeader(
+        indexSector: Int,
+        indexLength: Int,
+        sectors: IntArray,
+        lengths: IntArray,
+        timestamps: LongArray,
+    ): ByteBuffer {
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        header.putInt(CACHED_REGION_FILE_MAGIC)
+        header.putInt(FORMAT_VERSION)
+        header.putInt(indexSector)
+        header.putInt(indexLength)
+        for (i in 0..<CHUNK_COUNT) {
+            header.putInt(sectors[i])
+            header.putInt(lengths[i])
+            header.putLong(timestamps[i])
+        }
+        header.flip()
+        return header
+    }
+
+    private fun readHeader() {
+        FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            if (buffer.limit() < HEADER_SIZE) {
+                throw IOException("Truncated region file header")
+            }
+            val magic = buffer.getInt(0)
+            if (magic != CACHED_REGION_FILE_MAGIC) {
+                throw IOException("Bad magic value $magic")
+            }
+            val version = buffer.getInt(4)
+            if (version != FORMAT_VERSION) {
+                throw IOException("Unsupported region file version $version")
+            }
+            for (i in 0..<CHUNK_COUNT) {
+                val entry = TABLE_OFFSET + i * ENTRY_SIZE
+                val sector = buffer.getInt(entry)
+                val length = buffer.getInt(entry + 4)
+                val inBounds =
+                    length == 0 ||
+                        (sector >= HEADER_SECTORS && sector.toLong() * SECTOR_SIZE + length <= buffer.limit())
+                if (length < 0 || !inBounds) {
+                    throw IOException("Malformed table entry $i")
+                }
+                sectors[i] = sector
+                lengths[i] = length
+                timestamps[i] = buffer.getLong(entry + 8)
+            }
+            val sector = buffer.getInt(8)
+            val length = buffer.getInt(12)
+            if (length <= 0 || sector < HEADER_SECTORS || sector.toLong() * SECTOR_SIZE + length > buffer.limit()) {
+                throw IOException("Malformed block index entry")
+            }
+            val index = ByteArray(length)
+            buffer.get(sector * SECTOR_SIZE, index)
+            try {
+                decodeBlocks(inflate(index))
+            } catch (ex: DataFormatException) {
+                throw IOException("Corrupt block index", ex)
+            }
+            indexSector = sector
+            indexLength = length
+            mapped = buffer
+        }
+    }
+
+    private fun decodeBlocks(index: ByteArray) {
+        try {
+            DataInputStream(ByteArrayInputStream(index)).use { input ->
+                for (i in 0..<CHUNK_COUNT) {
+                    val count = input.readUnsignedByte()
+                    blocks[i] = if (count == 0) null else Array(count) { input.readUTF() }
+                }
+            }
+        } catch (ex: EOFException) {
+            throw IOException("Truncated block index", ex)
+        }
+    }
+
+    companion object {
+        /** Magic value identifying the random-access format, distinct from the legacy stream format */
+        private const val CACHED_REGION_FILE_MAGIC = 0x42435232 // "BCR2"
+
+        /** Bump when the layout above or the payload encoding in [CachedRegion] changes */
+        private const val FORMAT_VERSION = 3
+
+        private val NO_BLOCKS = emptyArray<String>()
+
+        const val CHUNK_COUNT = 32 * 32
+
+        private const val SECTOR_SIZE = 4096
+        private const val ENTRY_SIZE = 16
+        private const val TABLE_OFFSET = 16
+        private const val HEADER_SIZE = TABLE_OFFSET + CHUNK_COUNT * ENTRY_SIZE
+        private const val HEADER_SECTORS = (HEADER_SIZE + SECTOR_SIZE - 1) / SECTOR_SIZE
+
+        /**
+         * Opens the region file at [path]. A missing file yields an empty region that will be
+         * created on the first [write].
+         *
+         * @throws IOException if the file exists but is not a valid region file
+         */
+        @JvmStatic
+        fun open(path: Path): CachedRegionFile {
+            val file = CachedRegionFile(path)
+            if (path.exists()) {
+                file.readHeader()
+            }
+            return file
+        }
+
+        private fun sectorCount(bytes: Int): Int = (bytes + SECTOR_SIZE - 1) / SECTOR_SIZE
+
+        private fun encodeBlocks(blocks: Array<Array<String>?>): ByteArray {
+            val bytes = ByteArrayOutputStream()
+            DataOutputStream(bytes).use { out ->
+                for (names in blocks) {
+                    out.writeByte(names?.size ?: 0)
+                    names?.forEach { out.writeUTF(it) }
+                }
+            }
+            return bytes.toByteArray()
+        }
+
+        /** First-fit search for [count] consecutive free sectors */
+        private fun allocate(
+            used: BitSet,
+            count: Int,
+        ): Int {
+            var start = used.nextClearBit(HEADER_SECTORS)
+            while (true) {
+                val nextUsed = used.nextSetBit(start)
+                if (nextUsed == -1 || nextUsed - start >= count) {
+                    return start
+                }
+                start = used.nextClearBit(nextUsed)
+            }
+        }
+
+        private fun writeFully(
+            channel: FileChannel,
+            buffer: ByteBuffer,
+            position: Long,
+        ) {
+            var offset = position
+            while (buffer.hasRemaining()) {
+                offset += channel.write(buffer, offset)
+            }
+        }
+
+        private fun deflate(data: ByteArray): ByteArray {
+            val deflater = Deflater(Deflater.BEST_SPEED)
+            try {
+                deflater.setInput(data)
+                deflater.finish()
+                val out = ByteArrayOutputStream(data.size / 4 + 64)
+                val buffer = ByteArray(8192)
+                while (!deflater.finished()) {
+                    val n = deflater.deflate(buffer)
+                    out.write(buffer, 0, n)
+                }
+                return out.toByteArray()
+            } finally {
+                deflater.end()
+            }
+        }
+
+        private fun inflate(data: ByteArray): ByteArray {
+            val inflater = Inflater()
+            try {
+                inflater.setInput(data)
+                val out = ByteArrayOutputStream(data.size * 4)
+                val buffer = ByteArray(8192)
+                while (!inflater.finished()) {
+                    val n = inflater.inflate(buffer)
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw IOException("Truncated chunk data")
+                    }
+                    out.write(buffer, 0, n)
+                }
+                return out.toByteArray()
+            } finally {
+                inflater.end()
+            }
+        }
+    }
+}
@@ -56,6 +56,10 @@ class CachedWorld internal constructor(
 
     private val pruningTrigger = MutableSharedFlow<Unit>()
 
+    /** Called on the packer thread with every chunk packed from the local world, for sharing */
+    @Volatile
+    var packListener: ((CachedChunk) -> Unit)? = null
+
     init {
         if (!directory.exists()) {
             directory.createDirectories()
@@ -85,6 +89,7 @@ class CachedWorld internal constructor(
 
                         val cached = ChunkPacker.pack(chunk)
                         updateCachedChunk(cached)
+                        packListener?.invoke(cached)
                     } catch (e: CancellationException) {
                         throw e
                     } catch (th: Throwable) {
@@ -179,11 +184,37 @@ class CachedWorld internal constructor(
         return res
     }
 
+    /** @return the cached chunk, reading its region from disk if need be, or null if it isn't cached */
+    fun getChunk(
+        chunkX: Int,
+        chunkZ: Int,
+    ): CachedChunk? = getOrCreateRegion(chunkX shr 5, chunkZ shr 5)?.getChunk(chunkX and 31, chunkZ and 31)
+
     private fun updateCachedChunk(chunk: CachedChunk) {
         val region = getOrCreateRegion(chunk.x shr 5, chunk.z shr 5)
         region?.updateCachedChunk(chunk.x and 31, chunk.z and 31, chunk)
     }
 
+    /** @return the chunk in the encoding used on disk, for sending to other agents */
+    fun encodeChunk(chunk: CachedChunk): ByteArray = CachedRegion.encodeChunk(chunk)
+
+    /**
+     * Merges a chunk another agent packed, keeping whichever copy has the newer [CachedChunk.cacheTimestamp].
+     *
+     * @param payload The chunk as returned by [encodeChunk]
+     * @return whether the chunk replaced what was cached
+     */
+    fun mergeChunk(
+        chunkX: Int,
+        chunkZ: Int,
+        payload: ByteArray,
+        cacheTimestamp: Long,
+    ): Boolean {
+        val region = getOrCreateRegion(chunkX shr 5, chunkZ shr 5) ?: return false
+        val chunk = CachedRegion.decodeChunk(chunkX, chunkZ, dimension.height(), payload, cacheTimestamp)
+        return region.mergeCachedChunk(chunkX and 31, chunkZ and 31, chunk)
+    }
+
     fun save() {
         if (!Agent
                 .getPrimaryAgent()
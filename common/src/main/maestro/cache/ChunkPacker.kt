@@ -1,12 +1,13 @@
 package maestro.cache
 
+import it.unimi.dsi.fastutil.ints.IntArrayList
 import maestro.pathing.BlockStateInterface
 import maestro.pathing.PathingBlockType
 import maestro.pathing.movement.MovementValidation
-import maestro.utils.BlockUtils
 import maestro.utils.Loggers
 import net.minecraft.core.BlockPos
 import net.minecraft.world.level.block.AirBlock
+import net.minecraft.world.level.block.Block
 import net.minecraft.world.level.block.Blocks
 import net.minecraft.world.level.block.DoublePlantBlock
 import net.minecraft.world.level.block.FlowerBlock
@@ -22,7 +23,7 @@ private val log = Loggers.Cache.get()
 object ChunkPacker {
     @JvmStatic
     fun pack(chunk: LevelChunk): CachedChunk {
-        val specialBlocks = mutableMapOf<String, MutableList<BlockPos>>()
+        val specialBlocks = mutableMapOf<Block, IntArrayList>()
         val height = chunk.level.dimensionType().height()
         val bitSet = BitSet(CachedChunk.size(height))
 
@@ -46,10 +47,9 @@ object ChunkPacker {
 
                             val block = state.block
                             if (CachedChunk.BLOCKS_TO_KEEP_TRACK_OF.contains(block)) {
-                                val name = BlockUtils.blockToString(block)
                                 specialBlocks
-                                    .computeIfAbsent(name) { mutableListOf() }
-                                    .add(BlockPos(x, y + chunk.minY, z))
+                                    .computeIfAbsent(block) { IntArrayList() }
+                                    .add(CachedChunk.packPosition(x, y + chunk.minY, z))
                             }
                         }
                     }
@@ -79,7 +79,7 @@ object ChunkPacker {
             }
         }
 
-        return CachedChunk(
+        return CachedChunk.create(
             chunk.pos.x,
             chunk.pos.z,
             height,
@@ -1,6 +1,7 @@
 package maestro.cache
 
 import maestro.Agent
+import maestro.pathing.precompute.SectionSnapshots
 import maestro.utils.Loggers
 import net.minecraft.world.level.dimension.DimensionType
 import java.nio.file.Path
@@ -18,6 +19,9 @@ class WorldData internal constructor(
     val cache: CachedWorld = CachedWorld(directory.resolve("cache"), dimension)
     private val waypoints: WaypointCollection = WaypointCollection(directory.resolve("waypoints"))
 
+    /** The loaded chunk sections searches read from */
+    val sections: SectionSnapshots = SectionSnapshots()
+
     fun onClose() {
         Agent.getExecutor().execute {
             log.atInfo().log("World save started")
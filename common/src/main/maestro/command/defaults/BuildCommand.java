@@ -75,7 +75,7 @@ public class BuildCommand extends Command {
                     "Couldn't load the schematic. Either your schematic is corrupt or this is a"
                             + " bug.");
         }
-        log.atInfo().addKeyValue("origin", buildOrigin).log("Schematic loaded for building");
+        log.atInfo().addKeyValue("origin", buildOrigin).log("Loading schematic for building");
     }
 
     @Override
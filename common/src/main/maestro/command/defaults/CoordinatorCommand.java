@@ -1,13 +1,21 @@
 package maestro.command.defaults;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 import maestro.Agent;
 import maestro.command.Command;
 import maestro.command.argument.IArgConsumer;
 import maestro.command.exception.CommandException;
 import maestro.coordination.CoordinationServer;
+import maestro.coordination.CoordinatorJournal;
+import maestro.coordination.WorkScheduler;
+import maestro.utils.BlockOptionalMetaLookup;
+import maestro.utils.PackedBlockPos;
 
 public class CoordinatorCommand extends Command {
 
@@ -24,25 +32,90 @@ public class CoordinatorCommand extends Command {
             server.stop();
             log.atInfo().log("Coordinator stopped");
         } else {
+            boolean fresh = args.hasAny() && args.peekString().equalsIgnoreCase("fresh");
+            if (fresh) {
+                args.getString();
+            }
             int goal = args.getAsOrDefault(Integer.class, 100);
+            Map<String, Integer> resourceGoals = resourceGoals(args);
+            Path stateDir = stateDir();
+            if (fresh && stateDir != null) {
+                try {
+                    CoordinatorJournal.discard(stateDir);
+                } catch (IOException e) {
+                    log.atError().setCause(e).log("Failed to discard coordinator state");
+                    return;
+                }
+            }
 
             if (server == null) {
                 server = new CoordinationServer();
                 agent.setCoordinationServer(server);
             }
 
-            server.start(9090, goal);
+            server.start(9090, goal, workArea(), stateDir, resourceGoals);
             log.atInfo()
                     .addKeyValue("port", 9090)
-                    .addKeyValue("goal", goal)
+                    .addKeyValue("goal", server.getGlobalGoal())
+                    .addKeyValue("resource_goals", resourceGoals)
                     .log("Coordinator started");
         }
     }
 
+    /**
+     * Reads goals like {@code diamond_ore,deepslate_diamond_ore=64}, keyed by the resource type
+     * workers report mining those blocks as.
+     */
+    private static Map<String, Integer> resourceGoals(IArgConsumer args) throws CommandException {
+        Map<String, Integer> goals = new LinkedHashMap<>();
+        while (args.hasAny()) {
+            String arg = args.getString();
+            int separator = arg.lastIndexOf('=');
+            try {
+                int goal = Integer.parseInt(arg.substring(separator + 1));
+                if (separator <= 0 || goal <= 0) {
+                    throw new IllegalArgumentException("goal must be positive");
+                }
+                String blocks = arg.substring(0, separator);
+                goals.merge(
+                        BlockOptionalMetaLookup.fromResourceType(blocks).toResourceType(),
+                        goal,
+                        Integer::sum);
+            } catch (IllegalArgumentException e) {
+                throw new CommandException.ErrorMessage(
+                        "Expected <blocks>=<count>, got " + arg + " (" + e.getMessage() + ")");
+            }
+        }
+        return goals;
+    }
+
+    /** Where the coordinator keeps its state across restarts, or null if it shouldn't */
+    private Path stateDir() {
+        if (!Agent.getPrimaryAgent().getSettings().coordinationPersistState.value) {
+            return null;
+        }
+        return agent.getDirectory().resolve("coordinator");
+    }
+
+    /** The square around the player that workers are handed units of, or null if disabled */
+    private WorkScheduler workArea() {
+        int radius = Agent.getPrimaryAgent().getSettings().coordinationWorkAreaRadius.value;
+        if (radius <= 0) {
+            return null;
+        }
+        PackedBlockPos center = ctx.playerFeet();
+        return new WorkScheduler(
+                center.getX() - radius,
+                center.getZ() - radius,
+                center.getX() + radius,
+                center.getZ() + radius,
+                Agent.getPrimaryAgent().getSettings().coordinationWorkUnitSize.value);
+    }
+
     @Override
     public Stream<String> tabComplete(String label, IArgConsumer args) {
         if (args.hasExactlyOne()) {
-            return Stream.of("50", "100", "200", "500", "1000");
+            return Stream.of("fresh", "50", "100", "200", "500", "1000");
         }
         return Stream.empty();
     }
@@ -60,12 +133,25 @@ public class CoordinatorCommand extends Command {
                 "Usage:",
                 "> coordinator - Toggle server (default goal: 100)",
                 "> coordinator <goal> - Start with custom goal",
+                "> coordinator fresh [goal] - Start without the state kept from before",
+                "> coordinator <blocks>=<count> ... - Start with a goal per resource",
                 "",
                 "Examples:",
                 "> coordinator - Start with goal of 100",
                 "> coordinator 200 - Start with goal of 200",
+                "> coordinator diamond_ore,deepslate_diamond_ore=64 oak_log=200",
+                "    - Split workers between mining diamonds and logs",
                 "",
                 "The coordinator listens on port 9090 and manages area claims",
-                "and progress tracking for connected worker bots.");
+                "and progress tracking for connected worker bots. Unless",
+                "coordinationWorkAreaRadius is 0, it also splits the area around",
+                "you into work units and hands them out to mining workers.",
+                "",
+                "With goals per resource, each worker is told which one to mine,",
+                "and moved on to another once the goal for its resource is met.",
+                "",
+                "Unless coordinationPersistState is off, claims, progress and",
+                "work units are kept on disk, so a restarted coordinator picks",
+                "up where it left off and workers reconnect to it.");
     }
 }
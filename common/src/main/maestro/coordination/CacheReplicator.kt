@@ -0,0 +1,218 @@
+package maestro.coordination
+
+import com.google.protobuf.ByteString
+import maestro.Agent
+import maestro.cache.CachedChunk
+import maestro.cache.CachedWorld
+import maestro.coordination.proto.CachedChunkData
+import maestro.coordination.proto.ChunkArea
+import maestro.utils.Loggers
+import org.slf4j.Logger
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * Shares an agent's world cache with the rest of the swarm through the coordinator. Chunks the
+ * agent packs are published, and chunks other agents published around the agent and along its
+ * current path are merged in, the newer copy of a chunk winning. Every agent can then path through
+ * terrain any agent has seen.
+ */
+class CacheReplicator(
+    private val agent: Agent,
+    private val client: CoordinationClient,
+) {
+    private val log: Logger = Loggers.Coord.get()
+
+    private class Attachment(
+        val world: CachedWorld,
+        val dimension: String,
+    )
+
+    /** The cache being shared; incoming chunks are merged into it from other threads */
+    @Volatile
+    private var attached: Attachment? = null
+
+    /** Chunks packed since the last publish, encoded on the packer thread */
+    private val outbox = ConcurrentLinkedQueue<CachedChunkData>()
+
+    private var subscribed: List<ChunkArea> = emptyList()
+    private var ticks = 0
+
+    fun isFor(client: CoordinationClient): Boolean = this.client === client
+
+    /** Call every tick from the client thread */
+    fun onTick() {
+        if (!client.isConnected() ||
+            !Agent
+                .getPrimaryAgent()
+                .settings.coordinationShareCache.value
+        ) {
+            detach()
+            return
+        }
+        val ctx = agent.playerContext
+        val level = ctx.world() ?: return
+        val world = agent.worldProvider.getCurrentWorld()?.getCachedWorld() ?: return
+        val dimension = level.dimension().location().toString()
+        if (attached?.world !== world) {
+            attach(world, dimension)
+        }
+
+        ticks++
+        if (ticks % PUBLISH_INTERVAL_TICKS == 0) {
+            publish()
+        }
+        if (ticks % SUBSCRIBE_INTERVAL_TICKS == 0) {
+            subscribe(dimension)
+        }
+    }
+
+    private fun attach(
+        world: CachedWorld,
+        dimension: String,
+    ) {
+        detach()
+        world.packListener = { chunk ->
+            if (outbox.size < MAX_OUTBOX) {
+                outbox.add(share(world, dimension, chunk))
+            }
+        }
+        client.chunkListener = { chunks -> Agent.getExecutor().execute { merge(chunks) } }
+        attached = Attachment(world, dimension)
+        // the first subscription goes out on the next interval
+        subscribed = emptyList()
+    }
+
+    fun detach() {
+        val attachment = attached ?: return
+        attachment.world.packListener = null
+        client.chunkListener = null
+        attached = null
+        outbox.clear()
+    }
+
+    private fun publish() {
+        val batch = ArrayList<CachedChunkData>(BATCH_SIZE)
+        while (true) {
+            val chunk = outbox.poll()
+            if (chunk != null) {
+                batch.add(chunk)
+            }
+            if (batch.size == BATCH_SIZE || (chunk == null && batch.isNotEmpty())) {
+                client.publishChunks(batch.toList())
+                batch.clear()
+            }
+            if (chunk == null) {
+                return
+            }
+        }
+    }
+
+    /** Subscribes to the chunks around the player and along the path it is following */
+    private fun subscribe(dimension: String) {
+        val feet = agent.playerContext.playerFeet()
+        val radius =
+            Agent
+                .getPrimaryAgent()
+                .settings.coordinationCacheRadius.value
+        val areas = mutableListOf(area(feet.x shr 4, feet.z shr 4, radius))
+
+        val path =
+            agent.pathingBehavior
+                .getCurrent()
+                ?.path
+                ?.positions()
+                .orEmpty()
+        var lastX = feet.x shr 4
+        var lastZ = feet.z shr 4
+        for (pos in path) {
+            val chunkX = pos.x shr 4
+            val chunkZ = pos.z shr 4
+            // one area every few chunks covers the corridor the path runs through
+            if (maxOf(Math.abs(chunkX - lastX), Math.abs(chunkZ - lastZ)) >= PATH_AREA_RADIUS) {
+                areas.add(area(chunkX, chunkZ, PATH_AREA_RADIUS))
+                lastX = chunkX
+                lastZ = chunkZ
+                if (areas.size >= MAX_AREAS) {
+                    break
+                }
+            }
+        }
+
+        if (areas != subscribed) {
+            client.subscribeChunks(dimension, areas)
+            subscribed = areas
+        }
+    }
+
+    private fun merge(chunks: List<CachedChunkData>) {
+        val attachment = attached ?: return
+        var merged = 0
+        for (chunk in chunks) {
+            if (chunk.dimension != attachment.dimension) {
+                continue
+            }
+            try {
+                val payload = InflaterInputStream(chunk.payload.newInput()).use { it.readAllBytes() }
+                if (attachment.world.mergeChunk(chunk.chunkX, chunk.chunkZ, payload, chunk.timestamp)) {
+                    merged++
+                }
+            } catch (e: Exception) {
+                log
+                    .atWarn()
+                    .setCause(e)
+                    .addKeyValue("chunk_x", chunk.chunkX)
+                    .addKeyValue("chunk_z", chunk.chunkZ)
+                    .log("Discarding unreadable shared chunk")
+            }
+        }
+        log
+            .atDebug()
+            .addKeyValue("received", chunks.size)
+            .addKeyValue("merged", merged)
+            .log("Merged shared chunks")
+    }
+
+    private fun share(
+        world: CachedWorld,
+        dimension: String,
+        chunk: CachedChunk,
+    ): CachedChunkData {
+        val bytes = ByteArrayOutputStream()
+        DeflaterOutputStream(bytes).use { it.write(world.encodeChunk(chunk)) }
+        return CachedChunkData
+            .newBuilder()
+            .setDimension(dimension)
+            .setChunkX(chunk.x)
+            .setChunkZ(chunk.z)
+            .setTimestamp(chunk.cacheTimestamp)
+            .setPayload(ByteString.copyFrom(bytes.toByteArray()))
+            .build()
+    }
+
+    private fun area(
+        chunkX: Int,
+        chunkZ: Int,
+        radius: Int,
+    ): ChunkArea =
+        ChunkArea
+            .newBuilder()
+            .setChunkX(chunkX)
+            .setChunkZ(chunkZ)
+            .setRadius(radius)
+            .build()
+
+    companion object {
+        private const val PUBLISH_INTERVAL_TICKS = 20
+        private const val SUBSCRIBE_INTERVAL_TICKS = 40
+        private const val BATCH_SIZE = 64
+
+        /** Packed chunks kept for publishing at most; more are dropped rather than queued */
+        private const val MAX_OUTBOX = 4096
+
+        private const val PATH_AREA_RADIUS = 2
+        private const val MAX_AREAS = 32
+    }
+}
@@ -0,0 +1,201 @@
+package maestro.coordination
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import java.util.Collections
+import java.util.IdentityHashMap
+import kotlin.math.floor
+import kotlin.math.sqrt
+
+data class AreaClaim(
+    val workerId: String,
+    val centerX: Int,
+    val centerY: Int,
+    val centerZ: Int,
+    val radius: Double,
+    val timestamp: Long,
+) {
+    fun overlaps(other: AreaClaim): Boolean {
+        val dx = centerX - other.centerX
+        val dy = centerY - other.centerY
+        val dz = centerZ - other.centerZ
+        val distance = sqrt((dx * dx + dy * dy + dz * dz).toDouble())
+        return distance < (radius + other.radius)
+    }
+
+    fun isAt(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean = centerX == x && centerY == y && centerZ == z
+}
+
+/**
+ * Area claims bucketed by the XZ grid cells their bounding boxes cover. Two claims can only
+ * overlap if their boxes share a cell, so checking a new claim looks at the claims near it rather
+ * than every claim in the swarm.
+ *
+ * A worker may hold any number of claims, and its own claims never conflict with each other.
+ * Every operation holds the registry lock, which makes claim-or-reject atomic; each one only
+ * touches the cells of a single claim, so the lock is held briefly however many claims exist.
+ */
+class ClaimRegistry(
+    private val cellShift: Int = DEFAULT_CELL_SHIFT,
+) {
+    private val cells = Long2ObjectOpenHashMap<MutableList<AreaClaim>>()
+    private val byWorker = HashMap<String, MutableList<AreaClaim>>()
+
+    /** Claims covering too many cells to bucket; checked by every query instead */
+    private val oversized = ArrayList<AreaClaim>()
+
+    /**
+     * Grants [claim] unless it overlaps another worker's claim. A claim by the same worker at the
+     * same center replaces the old one.
+     *
+     * @return The conflicting claims; empty if the claim was granted
+     */
+    @Synchronized
+    fun claim(claim: AreaClaim): List<AreaClaim> {
+        val conflicts = nearby(claim).filter { it.workerId != claim.workerId && it.overlaps(claim) }
+        if (conflicts.isNotEmpty()) {
+            return conflicts
+        }
+        byWorker[claim.workerId]
+            ?.firstOrNull { it.isAt(claim.centerX, claim.centerY, claim.centerZ) }
+            ?.let { remove(it) }
+        insert(claim)
+        return emptyList()
+    }
+
+    /**
+     * Puts back a claim granted before a restart, without checking for conflicts: claims granted
+     * one after the other may be replayed out of order, with the one released in between later.
+     */
+    @Synchronized
+    fun restore(claim: AreaClaim) {
+        byWorker[claim.workerId]
+            ?.firstOrNull { it.isAt(claim.centerX, claim.centerY, claim.centerZ) }
+            ?.let { remove(it) }
+        insert(claim)
+    }
+
+    /** @return whether the worker held a claim centered there */
+    @Synchronized
+    fun release(
+        workerId: String,
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean {
+        val claim = byWorker[workerId]?.firstOrNull { it.isAt(x, y, z) } ?: return false
+        remove(claim)
+        return true
+    }
+
+    /** @return the number of claims the worker held */
+    @Synchronized
+    fun releaseAll(workerId: String): Int {
+        val owned = byWorker[workerId]?.toList() ?: return 0
+        owned.forEach { remove(it) }
+        return owned.size
+    }
+
+    @Synchronized
+    fun claimsOf(workerId: String): List<AreaClaim> = byWorker[workerId]?.toList() ?: emptyList()
+
+    @Synchronized
+    fun all(): List<AreaClaim> = byWorker.values.flatten()
+
+    @Synchronized
+    fun size(): Int = byWorker.values.sumOf { it.size }
+
+    @Synchronized
+    fun clear() {
+        cells.clear()
+        byWorker.clear()
+        oversized.clear()
+    }
+
+    /** Claims whose boxes may intersect [claim]'s, each once */
+    private fun nearby(claim: AreaClaim): Collection<AreaClaim> {
+        if (isOversized(claim)) {
+            return byWorker.values.flatten()
+        }
+        val found = Collections.newSetFromMap(IdentityHashMap<AreaClaim, Boolean>())
+        found.addAll(oversized)
+        forEachCell(claim) { key ->
+            cells.get(key)?.let { found.addAll(it) }
+        }
+        return found
+    }
+
+    private fun insert(claim: AreaClaim) {
+        byWorker.getOrPut(claim.workerId) { ArrayList(2) }.add(claim)
+        if (isOversized(claim)) {
+            oversized.add(claim)
+            return
+        }
+        forEachCell(claim) { key ->
+            var bucket = cells.get(key)
+            if (bucket == null) {
+                bucket = ArrayList(2)
+                cells.put(key, bucket)
+            }
+            bucket.add(claim)
+        }
+    }
+
+    private fun remove(claim: AreaClaim) {
+        byWorker[claim.workerId]?.let { owned ->
+            owned.removeIf { it === claim }
+            if (owned.isEmpty()) {
+                byWorker.remove(claim.workerId)
+            }
+        }
+        if (isOversized(claim)) {
+            oversized.removeIf { it === claim }
+            return
+        }
+        forEachCell(claim) { key ->
+            val bucket = cells.get(key) ?: return@forEachCell
+            bucket.removeIf { it === claim }
+            if (bucket.isEmpty()) {
+                cells.remove(key)
+            }
+        }
+    }
+
+    private fun isOversized(claim: AreaClaim): Boolean {
+        val cellsX = maxCell(claim.centerX, claim.radius) - minCell(claim.centerX, claim.radius).toLong() + 1
+        val cellsZ = maxCell(claim.centerZ, claim.radius) - minCell(claim.centerZ, claim.radius).toLong() + 1
+        return cellsX * cellsZ > MAX_CELLS_PER_CLAIM
+    }
+
+    private inline fun forEachCell(
+        claim: AreaClaim,
+        action: (Long) -> Unit,
+    ) {
+        for (cx in minCell(claim.centerX, claim.radius)..maxCell(claim.centerX, claim.radius)) {
+            for (cz in minCell(claim.centerZ, claim.radius)..maxCell(claim.centerZ, claim.radius)) {
+                action((cx.toLong() shl 32) or (cz.toLong() and 0xFFFFFFFFL))
+            }
+        }
+    }
+
+    private fun minCell(
+        center: Int,
+        radius: Double,
+    ): Int = floor(center - radius).toInt() shr cellShift
+
+    private fun maxCell(
+        center: Int,
+        radius: Double,
+    ): Int = floor(center + radius).toInt() shr cellShift
+
+    companion object {
+        /** 64x64 block cells, a little larger than the usual claim */
+        const val DEFAULT_CELL_SHIFT = 6
+
+        /** Beyond this many cells a claim is kept in [oversized] rather than bucketed */
+        private const val MAX_CELLS_PER_CLAIM = 256L
+    }
+}
@@ -2,21 +2,53 @@ package maestro.coordination
 
 import io.grpc.ManagedChannel
 import io.grpc.ManagedChannelBuilder
-import io.grpc.StatusRuntimeException
+import io.grpc.Status
+import io.grpc.stub.ClientCallStreamObserver
+import io.grpc.stub.ClientResponseObserver
+import maestro.Agent
+import maestro.coordination.proto.CachedChunkData
+import maestro.coordination.proto.ChunkArea
+import maestro.coordination.proto.ChunkPublish
+import maestro.coordination.proto.ChunkSubscription
 import maestro.coordination.proto.ClaimAreaRequest
 import maestro.coordination.proto.ConnectRequest
 import maestro.coordination.proto.CoordinationGrpc
-import maestro.coordination.proto.GoalStatusRequest
-import maestro.coordination.proto.HeartbeatRequest
+import maestro.coordination.proto.GoalStatusResponse
+import maestro.coordination.proto.PathReservation as ProtoPathReservation
 import maestro.coordination.proto.Position
-import maestro.coordination.proto.ProgressReport
+import maestro.coordination.proto.ProgressBatch
 import maestro.coordination.proto.ReleaseAreaRequest
+import maestro.coordination.proto.ResourceGoal
+import maestro.coordination.proto.ResourceProgress
+import maestro.coordination.proto.SessionEvent
+import maestro.coordination.proto.SessionMessage
+import maestro.coordination.proto.WorkCompletion
+import maestro.coordination.proto.WorkRequest
+import maestro.pathing.PathReservation
 import maestro.utils.Loggers
 import maestro.utils.format
 import net.minecraft.core.BlockPos
 import org.slf4j.Logger
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.TimeUnit
-import kotlin.concurrent.thread
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/** The coordinator's answer to a work request */
+data class WorkOffer(
+    /** The unit to work on, or null if none is free right now */
+    val unit: WorkUnit?,
+    /** Units not completed yet */
+    val remaining: Int,
+    /** Whether the coordinator partitions work at all; workers claim areas themselves if not */
+    val partitioned: Boolean,
+) {
+    companion object {
+        @JvmField
+        val NONE = WorkOffer(null, 0, false)
+    }
+}
 
 class CoordinationClient(
     private val workerId: String,
@@ -25,16 +57,69 @@ class CoordinationClient(
     private val log: Logger = Loggers.Coord.get()
 
     private var channel: ManagedChannel? = null
-    private var stub: CoordinationGrpc.CoordinationBlockingStub? = null
-    private var heartbeatThread: Thread? = null
+
+    /**
+     * The request side of the Session stream everything is sent over. Sends are serialized on it;
+     * the coordinator tells the worker is alive from the stream itself, so there are no heartbeats.
+     */
+    @Volatile
+    private var session: ClientCallStreamObserver<SessionMessage>? = null
+
+    private val requestIds = AtomicLong()
+
+    /** Session requests waiting for their answer, by request id */
+    private val pending = ConcurrentHashMap<Long, CompletableFuture<SessionEvent>>()
 
     @Volatile
     var connected: Boolean = false
         private set
 
+    @Volatile
     var currentClaim: BlockPos? = null
         private set
 
+    /**
+     * The resource type the coordinator wants this worker to collect, or null if it has no resource
+     * goals or all of them are complete
+     */
+    @Volatile
+    var assignedResource: String? = null
+        private set
+
+    /** Called on a gRPC thread with the chunks the coordinator pushes for the subscription */
+    @Volatile
+    var chunkListener: ((List<CachedChunkData>) -> Unit)? = null
+
+    private class UnsentProgress {
+        var quantity = 0
+        var totalCollected = 0
+    }
+
+    /** Progress reported since the last batch went out, by resource type; guards the fields below */
+    private val unsentProgress = LinkedHashMap<String, UnsentProgress>()
+    private var unsentQuantity = 0
+    private var lastProgressSent = 0L
+
+    /** Completes once the unsent progress went out; shared by everything coalesced into it */
+    private var progressSent: CompletableFuture<Boolean>? = null
+
+    /** Path reservations the coordinator relayed from other workers, by worker id */
+    val remoteReservations = ConcurrentHashMap<String, PathReservation>()
+
+    /** Where the last successful [connect] went, for reconnecting after the connection is lost */
+    @Volatile
+    private var address: Pair<String, Int>? = null
+
+    /** Set while a connection is lost rather than closed; cleared by [disconnect] */
+    @Volatile
+    private var lost = false
+    private var lastReconnectAttempt = 0L
+    private val reconnecting = AtomicBoolean()
+
+    /** Latest goal status pushed by the coordinator over the session */
+    @Volatile
+    private var goalStatus: GoalStatusResponse = GoalStatusResponse.getDefaultInstance()
+
     fun isConnected(): Boolean = connected
 
     fun connect(
@@ -45,12 +130,18 @@ class CoordinationClient(
             log.atWarn().log("Already connected")
             return true
         }
+        // left over from a lost connection
+        close()
 
         try {
             channel =
-                ManagedChannelBuilder.forAddress(host, port).usePlaintext().build()
-
-            stub = CoordinationGrpc.newBlockingStub(channel)
+                ManagedChannelBuilder
+                    .forAddress(host, port)
+                    .usePlaintext()
+                    // notices a dead coordinator even while nothing is being sent
+                    .keepAliveTime(20, TimeUnit.SECONDS)
+                    .build()
+            openSession(CoordinationGrpc.newStub(channel))
 
             val request =
                 ConnectRequest
@@ -59,11 +150,24 @@ class CoordinationClient(
                     .setWorkerName(workerName)
                     .build()
 
-            val response = stub!!.connect(request)
+            val response =
+                send(SessionMessage.newBuilder().setConnect(request))
+                    .get(10, TimeUnit.SECONDS)
+                    .connect
 
             if (response.accepted) {
                 connected = true
-                startHeartbeat()
+                lost = false
+                address = host to port
+                goalStatus =
+                    GoalStatusResponse
+                        .newBuilder()
+                        .setGoalComplete(response.currentTotal >= response.globalGoal)
+                        .setGlobalTotal(response.currentTotal)
+                        .setGlobalGoal(response.globalGoal)
+                        .addAllResources(response.resourcesList)
+                        .build()
+                assignedResource = response.assignedResource.ifEmpty { null }
 
                 log
                     .atInfo()
@@ -71,6 +175,7 @@ class CoordinationClient(
                     .addKeyValue("port", port)
                     .addKeyValue("global_goal", response.globalGoal)
                     .addKeyValue("current_total", response.currentTotal)
+                    .addKeyValue("assigned_resource", assignedResource)
                     .log("Connected to coordinator")
 
                 return true
@@ -79,230 +184,532 @@ class CoordinationClient(
                     .atWarn()
                     .addKeyValue("message", response.message)
                     .log("Connection rejected")
-                disconnect()
+                close()
                 return false
             }
-        } catch (e: StatusRuntimeException) {
+        } catch (e: Exception) {
             log
                 .atError()
                 .setCause(e)
                 .addKeyValue("host", host)
                 .addKeyValue("port", port)
                 .log("Connection failed")
-            disconnect()
+            close()
             return false
         }
     }
 
+    /**
+     * Connects again in the background once the connection was lost, say because the coordinator
+     * restarted, trying every few seconds. A coordinator that kept its state still holds this
+     * worker's claims and work unit, so the worker carries on with them.
+     */
+    fun reconnectIfLost() {
+        val (host, port) = address ?: return
+        val now = System.currentTimeMillis()
+        if (!lost || now - lastReconnectAttempt < RECONNECT_INTERVAL_MS || !reconnecting.compareAndSet(false, true)) {
+            return
+        }
+        lastReconnectAttempt = now
+        Agent.getExecutor().execute {
+            try {
+                if (lost && connect(host, port)) {
+                    log.atInfo().log("Reconnected to coordinator")
+                }
+            } finally {
+                reconnecting.set(false)
+            }
+        }
+    }
+
     fun disconnect() {
+        lost = false
         if (!connected) {
+            close()
             return
         }
 
+        // coalesced progress would be lost otherwise
+        try {
+            flushProgress()?.get(2, TimeUnit.SECONDS)
+        } catch (e: Exception) {
+            log.atWarn().setCause(e).log("Failed to report progress on disconnect")
+        }
+
         connected = false
-        heartbeatThread?.interrupt()
-        heartbeatThread = null
+        assignedResource = null
 
-        if (currentClaim != null) {
+        // the coordinator drops our claims once it sees the session end; releasing them
+        // explicitly (no center means all of them) frees them without waiting for that
+        currentClaim?.let {
             try {
-                releaseArea(currentClaim ?: return)
+                val request = ReleaseAreaRequest.newBuilder().setWorkerId(workerId).build()
+                send(SessionMessage.newBuilder().setReleaseArea(request))
+                    .get(2, TimeUnit.SECONDS)
+                currentClaim = null
             } catch (e: Exception) {
                 log.atWarn().setCause(e).log("Failed to release area on disconnect")
             }
         }
 
+        close()
+
+        log.atInfo().log("Disconnected from coordinator")
+    }
+
+    /** Ends the session and shuts the channel down */
+    private fun close() {
+        session?.let { session ->
+            synchronized(session) {
+                try {
+                    session.onCompleted()
+                } catch (_: Exception) {
+                    // the stream already failed
+                }
+            }
+        }
+        session = null
+
         channel?.shutdown()
         try {
             channel?.awaitTermination(5, TimeUnit.SECONDS)
         } catch (_: InterruptedException) {
             channel?.shutdownNow()
         }
-
         channel = null
-        stub = null
-
-        log.atInfo().log("Disconnected from coordinator")
     }
 
+    /**
+     * Asks the coordinator for exclusive use of an area. Doesn't block; the future completes on a
+     * gRPC thread, with false if the claim was denied or the call failed.
+     */
     fun claimArea(
         center: BlockPos,
         radius: Double,
-    ): Boolean {
+    ): CompletableFuture<Boolean> {
         if (!connected) {
             log.atWarn().log("Cannot claim area - not connected")
-            return false
+            return CompletableFuture.completedFuture(false)
         }
 
-        try {
-            val request =
-                ClaimAreaRequest
-                    .newBuilder()
-                    .setWorkerId(workerId)
-                    .setCenter(
-                        Position
-                            .newBuilder()
-                            .setX(center.x)
-                            .setY(center.y)
-                            .setZ(center.z)
-                            .build(),
-                    ).setRadius(radius)
-                    .build()
+        val request =
+            ClaimAreaRequest
+                .newBuilder()
+                .setWorkerId(workerId)
+                .setCenter(position(center))
+                .setRadius(radius)
+                .build()
+
+        return send(SessionMessage.newBuilder().setClaimArea(request))
+            .thenApply { event ->
+                val response = event.claimArea
+                if (response.granted) {
+                    currentClaim = center
+
+                    log
+                        .atInfo()
+                        .addKeyValue("center", center.format())
+                        .addKeyValue("radius", radius)
+                        .log("Area claim granted")
+                } else {
+                    log
+                        .atWarn()
+                        .addKeyValue("reason", response.reason)
+                        .addKeyValue("conflicts", response.conflictingClaimsList.size)
+                        .log("Area claim denied")
+                }
+                response.granted
+            }.exceptionally { e ->
+                handleDisconnect(e)
+                false
+            }
+    }
 
-            val response = stub!!.claimArea(request)
+    /** Gives up the current claim. Doesn't block, like [claimArea] */
+    fun releaseArea(center: BlockPos): CompletableFuture<Boolean> {
+        if (!connected) {
+            return CompletableFuture.completedFuture(false)
+        }
 
-            if (response.granted) {
-                currentClaim = center
+        return send(SessionMessage.newBuilder().setReleaseArea(releaseRequest(center)))
+            .thenApply { event ->
+                val response = event.releaseArea
+                if (response.success) {
+                    if (currentClaim == center) {
+                        currentClaim = null
+                    }
 
-                log
-                    .atInfo()
-                    .addKeyValue("center", center.format())
-                    .addKeyValue("radius", radius)
-                    .log("Area claim granted")
+                    log
+                        .atDebug()
+                        .addKeyValue("center", center.format())
+                        .log("Area released")
+                }
+                response.success
+            }.exceptionally { e ->
+                handleDisconnect(e)
+                false
+            }
+    }
 
-                return true
-            } else {
-                log
-                    .atWarn()
-                    .addKeyValue("reason", response.reason)
-                    .addKeyValue("conflicts", response.conflictingClaimsList.size)
-                    .log("Area claim denied")
+    /**
+     * Reports collected resources. Reports are coalesced per resource type and sent together once
+     * enough was collected or a while has passed; see [flushProgressIfDue]. Doesn't block, like
+     * [claimArea]; the future completes once the report was sent, with whether the global goal is
+     * complete.
+     *
+     * @param quantity Collected since the previous report of this type
+     * @param totalCollected Collected by this worker in total, which the global total is counted
+     * from, so a batch that gets lost is made up for by the next
+     */
+    fun reportProgress(
+        resourceType: String,
+        quantity: Int,
+        totalCollected: Int,
+    ): CompletableFuture<Boolean> {
+        if (!connected) {
+            return CompletableFuture.completedFuture(false)
+        }
 
-                return false
-            }
-        } catch (e: StatusRuntimeException) {
-            handleDisconnect(e)
-            return false
+        val future: CompletableFuture<Boolean>
+        val full: Boolean
+        synchronized(unsentProgress) {
+            val unsent = unsentProgress.getOrPut(resourceType) { UnsentProgress() }
+            unsent.quantity += quantity
+            unsent.totalCollected = totalCollected
+            unsentQuantity += quantity
+            future = progressSent ?: CompletableFuture<Boolean>().also { progressSent = it }
+            full =
+                unsentQuantity >=
+                Agent
+                    .getPrimaryAgent()
+                    .settings.coordinationProgressBatch.value
+        }
+        if (full) {
+            flushProgress()
         }
+        return future
     }
 
-    fun releaseArea(center: BlockPos): Boolean {
-        if (!connected) {
-            return false
+    /** Sends the coalesced progress if it has waited long enough. Cheap; call every tick */
+    fun flushProgressIfDue() {
+        val interval =
+            Agent
+                .getPrimaryAgent()
+                .settings.coordinationProgressInterval.value
+        if (connected && System.currentTimeMillis() - lastProgressSent >= interval) {
+            flushProgress()
         }
+    }
 
-        try {
-            val request =
-                ReleaseAreaRequest
-                    .newBuilder()
-                    .setWorkerId(workerId)
-                    .setCenter(
-                        Position
-                            .newBuilder()
-                            .setX(center.x)
-                            .setY(center.y)
-                            .setZ(center.z)
-                            .build(),
-                    ).build()
-
-            val response = stub!!.releaseArea(request)
-
-            if (response.success) {
-                currentClaim = null
+    /**
+     * Sends all coalesced progress in one batch.
+     *
+     * @return whether the global goal is complete, or null if there was nothing to send
+     */
+    fun flushProgress(): CompletableFuture<Boolean>? {
+        val batch = ProgressBatch.newBuilder().setWorkerId(workerId)
+        val future: CompletableFuture<Boolean>
+        synchronized(unsentProgress) {
+            lastProgressSent = System.currentTimeMillis()
+            if (unsentProgress.isEmpty()) {
+                return null
+            }
+            for ((resourceType, unsent) in unsentProgress) {
+                batch.addResources(
+                    ResourceProgress
+                        .newBuilder()
+                        .setResourceType(resourceType)
+                        .setQuantity(unsent.quantity)
+                        .setTotalCollected(unsent.totalCollected),
+                )
+            }
+            unsentProgress.clear()
+            unsentQuantity = 0
+            future = progressSent!!
+            progressSent = null
+        }
 
+        send(SessionMessage.newBuilder().setProgressBatch(batch))
+            .thenApply { event ->
+                val response = event.progress
                 log
                     .atDebug()
-                    .addKeyValue("center", center.format())
-                    .log("Area released")
-            }
+                    .addKeyValue("resources", batch.resourcesCount)
+                    .addKeyValue("quantity", batch.resourcesList.sumOf { it.quantity })
+                    .addKeyValue("global_total", response.globalTotal)
+                    .addKeyValue("global_goal", response.globalGoal)
+                    .log("Progress reported")
+                response.goalComplete
+            }.exceptionally { e ->
+                handleDisconnect(e)
+                false
+            }.thenAccept { future.complete(it) }
+        return future
+    }
 
-            return response.success
-        } catch (e: StatusRuntimeException) {
-            handleDisconnect(e)
-            return false
+    /**
+     * Asks the coordinator for the free work unit nearest to [pos]. Doesn't block, like
+     * [claimArea]; the future completes with [WorkOffer.NONE] if the call failed.
+     */
+    fun requestWork(pos: BlockPos): CompletableFuture<WorkOffer> {
+        if (!connected) {
+            return CompletableFuture.completedFuture(WorkOffer.NONE)
         }
+
+        val request =
+            WorkRequest
+                .newBuilder()
+                .setWorkerId(workerId)
+                .setPosition(position(pos))
+                .build()
+
+        return send(SessionMessage.newBuilder().setRequestWork(request))
+            .thenApply { event ->
+                val response = event.work
+                val unit =
+                    if (response.assigned) {
+                        response.unit.let { WorkUnit(it.id, it.minX, it.minZ, it.maxX, it.maxZ) }
+                    } else {
+                        null
+                    }
+                WorkOffer(unit, response.remaining, response.total > 0)
+            }.exceptionally { e ->
+                handleDisconnect(e)
+                WorkOffer.NONE
+            }
     }
 
-    fun reportProgress(
-        resourceType: String,
-        quantity: Int,
-        totalCollected: Int,
-    ): Boolean {
+    /**
+     * Reports the unit as done, or with [abandoned] gives it back for someone else to finish.
+     * Doesn't block, like [claimArea].
+     */
+    fun completeWork(
+        unit: WorkUnit,
+        abandoned: Boolean = false,
+    ): CompletableFuture<Boolean> {
         if (!connected) {
-            return false
+            return CompletableFuture.completedFuture(false)
         }
 
-        try {
-            val request =
-                ProgressReport
-                    .newBuilder()
-                    .setWorkerId(workerId)
-                    .setResourceType(resourceType)
-                    .setQuantity(quantity)
-                    .setTotalCollected(totalCollected)
-                    .build()
+        val request =
+            WorkCompletion
+                .newBuilder()
+                .setWorkerId(workerId)
+                .setUnitId(unit.id)
+                .setAbandoned(abandoned)
+                .build()
 
-            val response = stub!!.reportProgress(request)
+        return send(SessionMessage.newBuilder().setCompleteWork(request))
+            .thenApply { event ->
+                log
+                    .atDebug()
+                    .addKeyValue("unit", unit.id)
+                    .addKeyValue("abandoned", abandoned)
+                    .addKeyValue("remaining", event.workCompleted.remaining)
+                    .log("Work unit completed")
+                event.workCompleted.accepted
+            }.exceptionally { e ->
+                handleDisconnect(e)
+                false
+            }
+    }
 
-            log
-                .atDebug()
-                .addKeyValue("resource", resourceType)
-                .addKeyValue("quantity", quantity)
-                .addKeyValue("total", totalCollected)
-                .addKeyValue("global_total", response.globalTotal)
-                .addKeyValue("global_goal", response.globalGoal)
-                .log("Progress reported")
-
-            return response.goalComplete
-        } catch (e: StatusRuntimeException) {
-            handleDisconnect(e)
-            return false
+    /** Shares chunks of this worker's cache. Not answered, so nothing to wait for */
+    fun publishChunks(chunks: List<CachedChunkData>) {
+        if (connected && chunks.isNotEmpty()) {
+            post(SessionMessage.newBuilder().setPublishChunks(ChunkPublish.newBuilder().addAllChunks(chunks)))
         }
     }
 
+    /**
+     * Replaces the chunks the coordinator pushes to [chunkListener]: what it already has in the
+     * areas, then whatever other workers publish there.
+     */
+    fun subscribeChunks(
+        dimension: String,
+        areas: List<ChunkArea>,
+    ) {
+        if (connected) {
+            post(
+                SessionMessage.newBuilder().setSubscribeChunks(
+                    ChunkSubscription
+                        .newBuilder()
+                        .setDimension(dimension)
+                        .addAllAreas(areas),
+                ),
+            )
+        }
+    }
+
+    /** Tells the other workers where this worker's path takes it. Not answered */
+    fun reservePath(reservation: PathReservation) {
+        if (connected) {
+            post(
+                SessionMessage.newBuilder().setReservePath(
+                    ProtoPathReservation
+                        .newBuilder()
+                        .setDimension(reservation.dimension)
+                        .addAllPositions(reservation.positions.asList())
+                        .addAllArrivals(reservation.arrivals.asList()),
+                ),
+            )
+        }
+    }
+
+    /**
+     * The goal status as last pushed by the coordinator. Reads a local copy kept current by the
+     * session, so it's cheap enough to call every tick.
+     *
+     * @return whether the global goal is complete, and the global total
+     */
     fun checkGoalStatus(): Pair<Boolean, Int> {
         if (!connected) {
             return Pair(false, 0)
         }
+        val status = goalStatus
+        return Pair(status.goalComplete, status.globalTotal)
+    }
 
-        try {
-            val request = GoalStatusRequest.newBuilder().setWorkerId(workerId).build()
-
-            val response = stub!!.checkGoalStatus(request)
-
-            return Pair(response.goalComplete, response.globalTotal)
-        } catch (e: StatusRuntimeException) {
-            handleDisconnect(e)
-            return Pair(false, 0)
+    /**
+     * Progress towards the coordinator's goal for one resource type, as last pushed.
+     *
+     * @return null if not connected or the coordinator has no goal for it
+     */
+    fun resourceGoal(resourceType: String): ResourceGoal? {
+        if (!connected) {
+            return null
         }
+        return goalStatus.resourcesList.firstOrNull { it.resourceType == resourceType }
     }
 
-    private fun startHeartbeat() {
-        heartbeatThread =
-            thread(isDaemon = true, name = "CoordinationHeartbeat-$workerId") {
-                while (connected) {
-                    try {
-                        Thread.sleep(5000) // Send heartbeat every 5 seconds
-
-                        if (!connected) break
-
-                        val request =
-                            HeartbeatRequest
-                                .newBuilder()
-                                .setWorkerId(workerId)
-                                .setTimestamp(System.currentTimeMillis())
-                                .build()
-
-                        stub?.heartbeat(request)
-                    } catch (_: InterruptedException) {
-                        break
-                    } catch (e: StatusRuntimeException) {
-                        handleDisconnect(e)
-                        break
+    private fun openSession(stub: CoordinationGrpc.CoordinationStub) {
+        stub.session(
+            object : ClientResponseObserver<SessionMessage, SessionEvent> {
+                override fun beforeStart(requestStream: ClientCallStreamObserver<SessionMessage>) {
+                    session = requestStream
+                }
+
+                override fun onNext(value: SessionEvent) {
+                    when (value.payloadCase) {
+                        SessionEvent.PayloadCase.GOAL_STATUS -> goalStatus = value.goalStatus
+                        SessionEvent.PayloadCase.CHUNKS -> chunkListener?.invoke(value.chunks.chunksList)
+                        SessionEvent.PayloadCase.PATH_RESERVED -> reserved(value.pathReserved)
+                        SessionEvent.PayloadCase.ASSIGNMENT -> assigned(value.assignment.resourceType)
+                        else -> pending.remove(value.requestId)?.complete(value)
                     }
                 }
+
+                override fun onError(t: Throwable) {
+                    endSession(t)
+                }
+
+                override fun onCompleted() {
+                    // the coordinator only ends the stream when it shuts down or we asked it to
+                    endSession(Status.UNAVAILABLE.withDescription("Session closed").asRuntimeException())
+                }
+            },
+        )
+    }
+
+    /**
+     * Sends a request over the session. Doesn't block; the future completes on a gRPC thread with
+     * the coordinator's answer, or exceptionally once the session is gone.
+     */
+    private fun send(message: SessionMessage.Builder): CompletableFuture<SessionEvent> {
+        val session =
+            session
+                ?: return CompletableFuture.failedFuture(
+                    Status.UNAVAILABLE.withDescription("No session").asRuntimeException(),
+                )
+        val id = requestIds.incrementAndGet()
+        val future = CompletableFuture<SessionEvent>()
+        pending[id] = future
+        try {
+            synchronized(session) {
+                session.onNext(message.setRequestId(id).build())
+            }
+        } catch (e: Exception) {
+            pending.remove(id)?.completeExceptionally(e)
+        }
+        if (this.session !== session) {
+            // ended while sending, possibly after endSession failed what was pending
+            pending.remove(id)?.completeExceptionally(
+                Status.UNAVAILABLE.withDescription("Session closed").asRuntimeException(),
+            )
+        }
+        return future
+    }
+
+    /** Sends a message the coordinator doesn't answer */
+    private fun post(message: SessionMessage.Builder) {
+        val session = session ?: return
+        try {
+            synchronized(session) {
+                session.onNext(message.build())
             }
+        } catch (e: Exception) {
+            log.atDebug().setCause(e).log("Failed to send session message")
+        }
     }
 
-    private fun handleDisconnect(e: StatusRuntimeException) {
+    private fun reserved(reservation: ProtoPathReservation) {
+        if (reservation.positionsCount == 0 || reservation.positionsCount != reservation.arrivalsCount) {
+            remoteReservations.remove(reservation.workerId)
+            return
+        }
+        remoteReservations[reservation.workerId] =
+            PathReservation(
+                reservation.workerId,
+                reservation.dimension,
+                reservation.positionsList.toLongArray(),
+                reservation.arrivalsList.toLongArray(),
+            )
+    }
+
+    private fun assigned(resourceType: String) {
+        assignedResource = resourceType.ifEmpty { null }
+        log.atInfo().addKeyValue("resource", assignedResource).log("Coordinator assigned resource")
+    }
+
+    private fun endSession(e: Throwable) {
+        session = null
+        remoteReservations.clear()
+        handleDisconnect(e)
+        for (id in pending.keys) {
+            pending.remove(id)?.completeExceptionally(e)
+        }
+    }
+
+    private fun releaseRequest(center: BlockPos): ReleaseAreaRequest =
+        ReleaseAreaRequest
+            .newBuilder()
+            .setWorkerId(workerId)
+            .setCenter(position(center))
+            .build()
+
+    private fun position(pos: BlockPos): Position =
+        Position
+            .newBuilder()
+            .setX(pos.x)
+            .setY(pos.y)
+            .setZ(pos.z)
+            .build()
+
+    private fun handleDisconnect(e: Throwable) {
         if (connected) {
             log
                 .atWarn()
                 .setCause(e)
-                .addKeyValue("status", e.status.code.name)
+                .addKeyValue("status", Status.fromThrowable(e).code.name)
                 .log("Coordinator connection lost")
 
             connected = false
             currentClaim = null
+            lost = true
         }
     }
+
+    companion object {
+        private const val RECONNECT_INTERVAL_MS = 5_000L
+    }
 }
@@ -2,7 +2,12 @@ package maestro.coordination
 
 import io.grpc.Server
 import io.grpc.ServerBuilder
+import io.grpc.Status
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder
 import io.grpc.stub.StreamObserver
+import maestro.coordination.proto.CachedChunkData
+import maestro.coordination.proto.ChunkBatch
+import maestro.coordination.proto.ChunkSubscription
 import maestro.coordination.proto.Claim
 import maestro.coordination.proto.ClaimAreaRequest
 import maestro.coordination.proto.ClaimAreaResponse
@@ -13,68 +18,145 @@ import maestro.coordination.proto.GoalStatusRequest
 import maestro.coordination.proto.GoalStatusResponse
 import maestro.coordination.proto.HeartbeatRequest
 import maestro.coordination.proto.HeartbeatResponse
+import maestro.coordination.proto.PathReservation
 import maestro.coordination.proto.Position
+import maestro.coordination.proto.ProgressBatch
 import maestro.coordination.proto.ProgressReport
 import maestro.coordination.proto.ProgressResponse
 import maestro.coordination.proto.ReleaseAreaRequest
 import maestro.coordination.proto.ReleaseAreaResponse
+import maestro.coordination.proto.ResourceAssignment
+import maestro.coordination.proto.ResourceGoal
+import maestro.coordination.proto.ResourceProgress
+import maestro.coordination.proto.SessionEvent
+import maestro.coordination.proto.SessionMessage
+import maestro.coordination.proto.StateRecord
+import maestro.coordination.proto.StateSnapshot
+import maestro.coordination.proto.WorkAssignment
+import maestro.coordination.proto.WorkCompletion
+import maestro.coordination.proto.WorkCompletionResponse
+import maestro.coordination.proto.WorkRecord
+import maestro.coordination.proto.WorkRequest
+import maestro.coordination.proto.WorkState
+import maestro.coordination.proto.WorkUnit as ProtoWorkUnit
 import maestro.utils.Loggers
 import maestro.utils.PackedBlockPos
 import maestro.utils.format
 import org.slf4j.Logger
+import java.io.IOException
+import java.nio.file.Path
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import kotlin.concurrent.thread
-import kotlin.math.sqrt
-
-data class AreaClaim(
-    val workerId: String,
-    val centerX: Int,
-    val centerY: Int,
-    val centerZ: Int,
-    val radius: Double,
-    val timestamp: Long,
-)
 
 data class WorkerProgress(
     val workerId: String,
     val totalCollected: Int,
     val lastUpdate: Long,
+    /** Total collected per resource type; [totalCollected] is their sum */
+    val resources: Map<String, Int> = emptyMap(),
 )
 
 class CoordinationServer {
     private val log: Logger = Loggers.Coord.get()
 
     private var server: Server? = null
-    private val claims = ConcurrentHashMap<String, AreaClaim>()
+    private val claims = ClaimRegistry()
     private val workerProgress = ConcurrentHashMap<String, WorkerProgress>()
     private val workerHeartbeats = ConcurrentHashMap<String, Long>()
     private val globalTotal = AtomicInteger(0)
     private var globalGoal: Int = 0
     private var heartbeatMonitorThread: Thread? = null
 
+    /** Open Session streams, each pushed the goal status when it changes; see [goalStatusChanged] */
+    private val goalWatchers = CopyOnWriteArrayList<GoalWatcher<*>>()
+
+    /** Whether the goal status changed since it was last pushed to [goalWatchers] */
+    private val goalStatusDirty = AtomicBoolean()
+
+    /** When the goal status was last pushed */
+    private val lastGoalBroadcast = AtomicLong()
+
+    /** The live session of each worker connected through Session */
+    private val sessions = ConcurrentHashMap<String, CoordinationServiceImpl.Session>()
+
+    /** World cache chunks published by workers over their sessions */
+    private val sharedChunks = SharedChunkStore()
+
+    /** Goals per resource type; without any, [globalGoal] counts whatever workers collect */
+    @Volatile
+    private var goals = ResourceGoals(emptyMap())
+
+    /** Splits the work area between workers; null if the coordinator isn't partitioning work */
+    @Volatile
+    private var work: WorkScheduler? = null
+
+    /** Keeps state on disk across restarts; null if the coordinator runs without it */
+    @Volatile
+    private var journal: CoordinatorJournal? = null
+
     @Volatile
     private var running = false
 
+    /**
+     * @param goal How much to collect of whatever resource, unless there are [resourceGoals]
+     * @param stateDir Where to keep claims, progress and work units so that a restarted coordinator
+     * resumes with them; null keeps them in memory only
+     * @param resourceGoals How much to collect per resource type; workers are split between them,
+     * and the global goal is complete once each of them is
+     */
     fun start(
         port: Int = 9090,
         goal: Int = 100,
+        work: WorkScheduler? = null,
+        stateDir: Path? = null,
+        resourceGoals: Map<String, Int> = emptyMap(),
+    ) {
+        start(
+            NettyServerBuilder
+                .forPort(port)
+                // pings detect workers whose session died without closing the stream
+                .keepAliveTime(SESSION_KEEPALIVE_SECONDS, TimeUnit.SECONDS)
+                .keepAliveTimeout(SESSION_KEEPALIVE_SECONDS, TimeUnit.SECONDS)
+                .permitKeepAliveTime(SESSION_KEEPALIVE_SECONDS, TimeUnit.SECONDS),
+            goal,
+            work,
+            stateDir,
+            resourceGoals,
+        )
+    }
+
+    /** Serves on a transport of the caller's choosing, such as an in-process one for load tests */
+    fun start(
+        builder: ServerBuilder<*>,
+        goal: Int = 100,
+        work: WorkScheduler? = null,
+        stateDir: Path? = null,
+        resourceGoals: Map<String, Int> = emptyMap(),
     ) {
         if (running) {
             log.atWarn().log("Coordinator already running")
             return
         }
 
-        globalGoal = goal
+        goals = ResourceGoals(resourceGoals)
+        globalGoal = if (goals.isEmpty()) goal else goals.goal()
         globalTotal.set(0)
+        this.work = work
         claims.clear()
+        sharedChunks.clear()
         workerProgress.clear()
         workerHeartbeats.clear()
+        if (stateDir != null) {
+            journal = recover(stateDir)
+        }
 
         server =
-            ServerBuilder
-                .forPort(port)
+            builder
                 .addService(CoordinationServiceImpl())
                 .build()
                 .start()
@@ -83,8 +165,10 @@ class CoordinationServer {
 
         log
             .atInfo()
-            .addKeyValue("port", port)
-            .addKeyValue("goal", goal)
+            .addKeyValue("port", server!!.port)
+            .addKeyValue("goal", globalGoal)
+            .addKeyValue("resource_goals", resourceGoals.size)
+            .addKeyValue("work_units", work?.total ?: 0)
             .log("Coordinator started")
 
         startHeartbeatMonitor()
@@ -99,11 +183,26 @@ class CoordinationServer {
         heartbeatMonitorThread?.interrupt()
         heartbeatMonitorThread = null
 
+        // closed first: workers dropped while shutting down keep their claims and units on disk
+        journal?.let { journal ->
+            compact(journal)
+            journal.close()
+        }
+        journal = null
+
+        for (watcher in goalWatchers) {
+            watcher.complete()
+        }
+        goalWatchers.clear()
+        sessions.clear()
+
         server?.shutdown()
         server?.awaitTermination(5, TimeUnit.SECONDS)
         server = null
 
         claims.clear()
+        sharedChunks.clear()
+        work = null
         workerProgress.clear()
         workerHeartbeats.clear()
 
@@ -112,21 +211,23 @@ class CoordinationServer {
 
     fun isRunning(): Boolean = running
 
-    fun getGlobalTotal(): Int = globalTotal.get()
+    fun getGlobalTotal(): Int = if (goals.isEmpty()) globalTotal.get() else goals.total()
 
     fun getGlobalGoal(): Int = globalGoal
 
+    /** Times out workers using the unary Connect/Heartbeat calls; sessions time out on their own */
     private fun startHeartbeatMonitor() {
         heartbeatMonitorThread =
             thread(isDaemon = true, name = "CoordinationHeartbeatMonitor") {
                 while (running) {
                     try {
-                        Thread.sleep(5000) // Check every 5 seconds
+                        Thread.sleep(MONITOR_INTERVAL_MS)
+                        flushGoalStatus()
                         val now = System.currentTimeMillis()
                         val staleWorkers = mutableListOf<String>()
 
                         workerHeartbeats.forEach { (workerId, lastHeartbeat) ->
-                            if (now - lastHeartbeat > 10000) { // 10 second timeout
+                            if (now - lastHeartbeat > WORKER_TIMEOUT_MS) {
                                 staleWorkers.add(workerId)
                             }
                         }
@@ -134,7 +235,14 @@ class CoordinationServer {
                         staleWorkers.forEach { workerId ->
                             log.atWarn().addKeyValue("worker_id", workerId).log("Worker timeout")
                             workerHeartbeats.remove(workerId)
-                            claims.remove(workerId)
+                            dropWorker(workerId)
+                        }
+
+                        journal?.let { journal ->
+                            journal.sync()
+                            if (journal.isCompactionDue()) {
+                                compact(journal)
+                            }
                         }
                     } catch (e: InterruptedException) {
                         break
@@ -143,21 +251,327 @@ class CoordinationServer {
             }
     }
 
-    private fun claimsOverlap(
-        c1x: Int,
-        c1y: Int,
-        c1z: Int,
-        r1: Double,
-        c2x: Int,
-        c2y: Int,
-        c2z: Int,
-        r2: Double,
-    ): Boolean {
-        val dx = c1x - c2x
-        val dy = c1y - c2y
-        val dz = c1z - c2z
-        val distance = sqrt((dx * dx + dy * dy + dz * dz).toDouble())
-        return distance < (r1 + r2)
+    /** Frees whatever a worker that went away was holding */
+    private fun dropWorker(workerId: String) {
+        goals.unassign(workerId)
+        synchronized(claims) {
+            if (claims.releaseAll(workerId) > 0) {
+                journal?.append(
+                    StateRecord
+                        .newBuilder()
+                        .setRelease(ReleaseAreaRequest.newBuilder().setWorkerId(workerId))
+                        .build(),
+                )
+            }
+        }
+        val work = work ?: return
+        val released =
+            synchronized(work) {
+                work.release(workerId)?.also { recordWork(WorkRecord.Kind.RELEASED, workerId, it.id, work) }
+            }
+        released?.let { unit ->
+            log
+                .atInfo()
+                .addKeyValue("worker_id", workerId)
+                .addKeyValue("unit", unit.id)
+                .log("Work unit returned to pool")
+        }
+    }
+
+    /**
+     * Records a worker's totals per resource type.
+     *
+     * @return how much the worker's total of each resource type changed, for those that did
+     */
+    private fun recordProgress(batch: ProgressBatch): Map<String, Int> {
+        val deltas = HashMap<String, Int>()
+        workerProgress.compute(batch.workerId) { workerId, previous ->
+            val resources = HashMap(previous?.resources.orEmpty())
+            for (progress in batch.resourcesList) {
+                val previousTotal = resources.put(progress.resourceType, progress.totalCollected) ?: 0
+                val delta = progress.totalCollected - previousTotal
+                if (delta != 0) {
+                    deltas.merge(progress.resourceType, delta, Int::plus)
+                }
+            }
+            WorkerProgress(workerId, resources.values.sum(), System.currentTimeMillis(), resources)
+        }
+        return deltas
+    }
+
+    /**
+     * Rebuilds claims, progress and work units from what was kept in [stateDir], and starts a new
+     * log there. Workers that held anything get a while to reconnect before it is freed.
+     */
+    private fun recover(stateDir: Path): CoordinatorJournal? {
+        val started = System.currentTimeMillis()
+        val journal = CoordinatorJournal(stateDir)
+        try {
+            val recovered = journal.recover()
+            recovered.snapshot?.let { restore(it) }
+            recovered.records.forEach { apply(it) }
+            globalTotal.set(workerProgress.values.sumOf { it.totalCollected })
+            val totals = HashMap<String, Int>()
+            for (progress in workerProgress.values) {
+                progress.resources.forEach { (resourceType, total) -> totals.merge(resourceType, total, Int::plus) }
+            }
+            goals.recount(totals)
+
+            val workers = claims.all().map { it.workerId } + work?.assignments()?.keys.orEmpty()
+            for (workerId in workers) {
+                // counts as a heartbeat that far ahead, so the usual timeout adds to it
+                workerHeartbeats[workerId] = started + RECONNECT_GRACE_MS
+            }
+
+            compact(journal)
+            log
+                .atInfo()
+                .addKeyValue("state_dir", stateDir)
+                .addKeyValue("records", recovered.records.size)
+                .addKeyValue("claims", claims.size())
+                .addKeyValue("workers", workerProgress.size)
+                .addKeyValue("global_total", globalTotal.get())
+                .addKeyValue("work_remaining", work?.remaining())
+                .addKeyValue("elapsed_ms", System.currentTimeMillis() - started)
+                .log("Coordinator state restored")
+            return journal
+        } catch (e: Exception) {
+            // better to coordinate from scratch than not at all
+            log.atError().setCause(e).addKeyValue("state_dir", stateDir).log("Failed to restore coordinator state")
+            journal.close()
+            return null
+        }
+    }
+
+    private fun restore(snapshot: StateSnapshot) {
+        snapshot.claimsList.forEach { claims.restore(areaClaim(it)) }
+        snapshot.progressList.forEach { recordProgress(it) }
+        val work = work ?: return
+        if (snapshot.work.layout == work.layout) {
+            snapshot.work.completedList.forEach { work.restoreCompleted(it) }
+            snapshot.work.assignedList.forEach { work.restoreAssigned(it.workerId, it.unitId) }
+        }
+    }
+
+    private fun apply(record: StateRecord) {
+        when (record.recordCase) {
+            StateRecord.RecordCase.CLAIM -> claims.restore(areaClaim(record.claim))
+            StateRecord.RecordCase.RELEASE -> {
+                val release = record.release
+                if (release.hasCenter()) {
+                    claims.release(release.workerId, release.center.x, release.center.y, release.center.z)
+                } else {
+                    claims.releaseAll(release.workerId)
+                }
+            }
+            StateRecord.RecordCase.PROGRESS -> recordProgress(record.progress)
+            StateRecord.RecordCase.WORK -> {
+                val work = work ?: return
+                val change = record.work
+                if (change.layout != work.layout) {
+                    return
+                }
+                when (change.kind) {
+                    WorkRecord.Kind.ASSIGNED -> work.restoreAssigned(change.workerId, change.unitId)
+                    WorkRecord.Kind.COMPLETED -> work.restoreCompleted(change.unitId)
+                    WorkRecord.Kind.RELEASED -> work.restoreReleased(change.workerId, change.unitId)
+                    else -> {}
+                }
+            }
+            else -> {}
+        }
+    }
+
+    private fun compact(journal: CoordinatorJournal) {
+        try {
+            journal.compact { snapshot() }
+        } catch (e: IOException) {
+            log.atError().setCause(e).log("Failed to compact coordinator state")
+        }
+    }
+
+    private fun snapshot(): StateSnapshot {
+        val snapshot =
+            StateSnapshot
+                .newBuilder()
+                .addAllClaims(claims.all().map { claimProto(it) })
+        val progressNow = synchronized(workerProgress) { workerProgress.values.toList() }
+        for (progress in progressNow) {
+            snapshot.addProgress(
+                ProgressBatch
+                    .newBuilder()
+                    .setWorkerId(progress.workerId)
+                    .addAllResources(
+                        progress.resources.map { (resourceType, total) ->
+                            ResourceProgress
+                                .newBuilder()
+                                .setResourceType(resourceType)
+                                .setTotalCollected(total)
+                                .build()
+                        },
+                    ),
+            )
+        }
+        work?.let { work ->
+            val (completed, assignments) = synchronized(work) { work.completed() to work.assignments() }
+            snapshot.setWork(
+                WorkState
+                    .newBuilder()
+                    .setLayout(work.layout)
+                    .addAllCompleted(completed)
+                    .addAllAssigned(
+                        assignments.map { (workerId, unitId) ->
+                            workRecord(WorkRecord.Kind.ASSIGNED, workerId, unitId, work)
+                        },
+                    ),
+            )
+        }
+        return snapshot.build()
+    }
+
+    /**
+     * Logs a change to [work]. Callers hold [work]'s lock from making the change until this
+     * returns, as with every other journalled structure, so the log has changes in the order they
+     * were made, and a compaction's snapshot either has a change or is followed by its record.
+     */
+    private fun recordWork(
+        kind: WorkRecord.Kind,
+        workerId: String,
+        unitId: Long,
+        work: WorkScheduler,
+    ) {
+        journal?.append(StateRecord.newBuilder().setWork(workRecord(kind, workerId, unitId, work)).build())
+    }
+
+    private fun workRecord(
+        kind: WorkRecord.Kind,
+        workerId: String,
+        unitId: Long,
+        work: WorkScheduler,
+    ): WorkRecord =
+        WorkRecord
+            .newBuilder()
+            .setKind(kind)
+            .setWorkerId(workerId)
+            .setUnitId(unitId)
+            .setLayout(work.layout)
+            .build()
+
+    private fun areaClaim(claim: Claim): AreaClaim =
+        AreaClaim(
+            claim.workerId,
+            claim.center.x,
+            claim.center.y,
+            claim.center.z,
+            claim.radius,
+            claim.timestamp,
+        )
+
+    private fun claimProto(claim: AreaClaim): Claim =
+        Claim
+            .newBuilder()
+            .setWorkerId(claim.workerId)
+            .setCenter(
+                Position
+                    .newBuilder()
+                    .setX(claim.centerX)
+                    .setY(claim.centerY)
+                    .setZ(claim.centerZ)
+                    .build(),
+            ).setRadius(claim.radius)
+            .setTimestamp(claim.timestamp)
+            .build()
+
+    private fun goalStatus(): GoalStatusResponse {
+        val total = getGlobalTotal()
+        return GoalStatusResponse
+            .newBuilder()
+            .setGoalComplete(total >= globalGoal)
+            .setGlobalTotal(total)
+            .setGlobalGoal(globalGoal)
+            .addAllResources(resourceGoals())
+            .build()
+    }
+
+    private fun resourceGoals(): List<ResourceGoal> =
+        goals.all().map { goal ->
+            ResourceGoal
+                .newBuilder()
+                .setResourceType(goal.resourceType)
+                .setGoal(goal.goal)
+                .setTotal(goal.total)
+                .setComplete(goal.isComplete)
+                .build()
+        }
+
+    /**
+     * Pushes the goal status once it changed: right away if [immediate] (a goal was completed) or
+     * nothing was pushed for [GOAL_BROADCAST_INTERVAL_MS], otherwise on the heartbeat monitor's next
+     * tick. Busy coordinators get many progress reports a second, and each used to reach every
+     * session.
+     */
+    private fun goalStatusChanged(immediate: Boolean) {
+        goalStatusDirty.set(true)
+        val last = lastGoalBroadcast.get()
+        val now = System.currentTimeMillis()
+        if (immediate || (now - last >= GOAL_BROADCAST_INTERVAL_MS && lastGoalBroadcast.compareAndSet(last, now))) {
+            flushGoalStatus()
+        }
+    }
+
+    /** Pushes the goal status if it changed since it was last pushed */
+    private fun flushGoalStatus() {
+        if (goalStatusDirty.getAndSet(false)) {
+            lastGoalBroadcast.set(System.currentTimeMillis())
+            broadcastGoalStatus()
+        }
+    }
+
+    /** Pushes the current goal status to every watcher */
+    private fun broadcastGoalStatus() {
+        for (watcher in goalWatchers) {
+            if (!watcher.push()) {
+                goalWatchers.remove(watcher)
+            }
+        }
+    }
+
+    /**
+     * A stream the goal status is pushed to. A StreamObserver isn't thread-safe, so every send on
+     * [observer] is serialized on it; the status is read under that lock so the last message a
+     * watcher gets is always the latest status.
+     */
+    private inner class GoalWatcher<T>(
+        val observer: StreamObserver<T>,
+        private val wrap: (GoalStatusResponse) -> T,
+    ) {
+        /** @return false if the stream is gone */
+        fun push(): Boolean =
+            synchronized(observer) {
+                try {
+                    observer.onNext(wrap(goalStatus()))
+                    true
+                } catch (e: Exception) {
+                    log.atDebug().setCause(e).log("Dropping goal watcher")
+                    false
+                }
+            }
+
+        fun send(value: T) {
+            synchronized(observer) {
+                observer.onNext(value)
+            }
+        }
+
+        fun complete() {
+            synchronized(observer) {
+                try {
+                    observer.onCompleted()
+                } catch (_: Exception) {
+                    // already cancelled by the worker
+                }
+            }
+        }
     }
 
     private inner class CoordinationServiceImpl : CoordinationGrpc.CoordinationImplBase() {
@@ -165,11 +579,15 @@ class CoordinationServer {
             request: ConnectRequest,
             responseObserver: StreamObserver<ConnectResponse>,
         ) {
+            workerHeartbeats[request.workerId] = System.currentTimeMillis()
+            responseObserver.onNext(handleConnect(request))
+            responseObserver.onCompleted()
+        }
+
+        private fun handleConnect(request: ConnectRequest): ConnectResponse {
             val workerId = request.workerId
             val workerName = request.workerName
 
-            workerHeartbeats[workerId] = System.currentTimeMillis()
-
             log
                 .atInfo()
                 .addKeyValue("worker_id", workerId)
@@ -182,53 +600,36 @@ class CoordinationServer {
                     .setAccepted(true)
                     .setMessage("Connected to coordinator")
                     .setGlobalGoal(globalGoal)
-                    .setCurrentTotal(globalTotal.get())
+                    .setCurrentTotal(getGlobalTotal())
+                    .addAllResources(resourceGoals())
+                    .setAssignedResource(goals.assign(workerId).orEmpty())
                     .build()
 
-            responseObserver.onNext(response)
-            responseObserver.onCompleted()
+            return response
         }
 
         override fun claimArea(
             request: ClaimAreaRequest,
             responseObserver: StreamObserver<ClaimAreaResponse>,
         ) {
+            responseObserver.onNext(handleClaimArea(request))
+            responseObserver.onCompleted()
+        }
+
+        private fun handleClaimArea(request: ClaimAreaRequest): ClaimAreaResponse {
             val workerId = request.workerId
             val center = request.center
             val radius = request.radius
 
-            val conflicts = mutableListOf<Claim>()
-
-            claims.values.forEach { existing ->
-                if (existing.workerId != workerId &&
-                    claimsOverlap(
-                        center.x,
-                        center.y,
-                        center.z,
-                        radius,
-                        existing.centerX,
-                        existing.centerY,
-                        existing.centerZ,
-                        existing.radius,
-                    )
-                ) {
-                    conflicts.add(
-                        Claim
-                            .newBuilder()
-                            .setWorkerId(existing.workerId)
-                            .setCenter(
-                                Position
-                                    .newBuilder()
-                                    .setX(existing.centerX)
-                                    .setY(existing.centerY)
-                                    .setZ(existing.centerZ)
-                                    .build(),
-                            ).setRadius(existing.radius)
-                            .setTimestamp(existing.timestamp)
-                            .build(),
-                    )
-                }
-            }
+            val claim = AreaClaim(workerId, center.x, center.y, center.z, radius, System.currentTimeMillis())
+            val conflicts =
+                synchronized(claims) {
+                    claims.claim(claim).also {
+                        if (it.isEmpty()) {
+                            journal?.append(StateRecord.newBuilder().setClaim(claimProto(claim)).build())
+                        }
+                    }
+                }.map { claimProto(it) }
 
             val granted = conflicts.isEmpty()
             val reason =
@@ -239,16 +640,6 @@ class CoordinationServer {
                 }
 
             if (granted) {
-                claims[workerId] =
-                    AreaClaim(
-                        workerId,
-                        center.x,
-                        center.y,
-                        center.z,
-                        radius,
-                        System.currentTimeMillis(),
-                    )
-
                 log
                     .atDebug()
                     .addKeyValue("worker_id", workerId)
@@ -271,16 +662,33 @@ class CoordinationServer {
                     .addAllConflictingClaims(conflicts)
                     .build()
 
-            responseObserver.onNext(response)
-            responseObserver.onCompleted()
+            return response
         }
 
         override fun releaseArea(
             request: ReleaseAreaRequest,
             responseObserver: StreamObserver<ReleaseAreaResponse>,
         ) {
+            responseObserver.onNext(handleReleaseArea(request))
+            responseObserver.onCompleted()
+        }
+
+        private fun handleReleaseArea(request: ReleaseAreaRequest): ReleaseAreaResponse {
             val workerId = request.workerId
-            val removed = claims.remove(workerId) != null
+            // without a center, everything the worker holds goes
+            val removed =
+                synchronized(claims) {
+                    val removed =
+                        if (request.hasCenter()) {
+                            claims.release(workerId, request.center.x, request.center.y, request.center.z)
+                        } else {
+                            claims.releaseAll(workerId) > 0
+                        }
+                    if (removed) {
+                        journal?.append(StateRecord.newBuilder().setRelease(request).build())
+                    }
+                    removed
+                }
 
             if (removed) {
                 log.atDebug().addKeyValue("worker_id", workerId).log("Area released")
@@ -288,38 +696,75 @@ class CoordinationServer {
 
             val response = ReleaseAreaResponse.newBuilder().setSuccess(removed).build()
 
-            responseObserver.onNext(response)
-            responseObserver.onCompleted()
+            return response
         }
 
         override fun reportProgress(
             request: ProgressReport,
             responseObserver: StreamObserver<ProgressResponse>,
         ) {
-            val workerId = request.workerId
-            val resourceType = request.resourceType
-            val quantity = request.quantity
-            val totalCollected = request.totalCollected
+            responseObserver.onNext(handleReportProgress(request))
+            responseObserver.onCompleted()
+        }
+
+        override fun reportProgressBatch(
+            request: ProgressBatch,
+            responseObserver: StreamObserver<ProgressResponse>,
+        ) {
+            responseObserver.onNext(handleProgressBatch(request))
+            responseObserver.onCompleted()
+        }
 
-            workerProgress[workerId] =
-                WorkerProgress(workerId, totalCollected, System.currentTimeMillis())
+        private fun handleReportProgress(request: ProgressReport): ProgressResponse =
+            handleProgressBatch(
+                ProgressBatch
+                    .newBuilder()
+                    .setWorkerId(request.workerId)
+                    .addResources(
+                        ResourceProgress
+                            .newBuilder()
+                            .setResourceType(request.resourceType)
+                            .setQuantity(request.quantity)
+                            .setTotalCollected(request.totalCollected),
+                    ).build(),
+            )
 
-            val newTotal = workerProgress.values.sumOf { it.totalCollected }
-            globalTotal.set(newTotal)
+        /**
+         * Records the worker's totals per resource type. The global total moves by however much the
+         * worker's own total changed, so a report costs the same no matter how many workers there are.
+         */
+        private fun handleProgressBatch(request: ProgressBatch): ProgressResponse {
+            val workerId = request.workerId
+            val deltas =
+                synchronized(workerProgress) {
+                    recordProgress(request).also {
+                        journal?.append(StateRecord.newBuilder().setProgress(request).build())
+                    }
+                }
 
+            val delta = deltas.values.sum()
+            val previousTotal = getGlobalTotal()
+            globalTotal.addAndGet(delta)
+            val completed = deltas.mapNotNull { (resourceType, change) -> goals.add(resourceType, change) }
+            val newTotal = getGlobalTotal()
+            completed.forEach { goalCompleted(it) }
             val goalComplete = newTotal >= globalGoal
+            if (deltas.isNotEmpty()) {
+                goalStatusChanged(completed.isNotEmpty() || (goalComplete && previousTotal < globalGoal))
+            }
 
             log
                 .atDebug()
                 .addKeyValue("worker_id", workerId)
-                .addKeyValue("resource", resourceType)
-                .addKeyValue("quantity", quantity)
-                .addKeyValue("worker_total", totalCollected)
+                .addKeyValue("resources", request.resourcesCount)
+                .addKeyValue("quantity", request.resourcesList.sumOf { it.quantity })
+                .addKeyValue("worker_total", workerProgress[workerId]?.totalCollected)
                 .addKeyValue("global_total", newTotal)
                 .addKeyValue("global_goal", globalGoal)
                 .log("Progress reported")
 
-            if (goalComplete) {
+            // only the report that crosses the goal
+            if (goalComplete && previousTotal < globalGoal) {
                 log
                     .atInfo()
                     .addKeyValue("total", newTotal)
@@ -335,26 +780,115 @@ class CoordinationServer {
                     .setGlobalGoal(globalGoal)
                     .build()
 
-            responseObserver.onNext(response)
-            responseObserver.onCompleted()
+            return response
         }
 
-        override fun checkGoalStatus(
-            request: GoalStatusRequest,
-            responseObserver: StreamObserver<GoalStatusResponse>,
+        /** Moves the workers that were collecting a resource on, now that its goal is complete */
+        private fun goalCompleted(goal: ResourceGoals.Goal) {
+            log
+                .atInfo()
+                .addKeyValue("resource", goal.resourceType)
+                .addKeyValue("total", goal.total)
+                .addKeyValue("goal", goal.goal)
+                .log("Resource goal complete")
+            for ((workerId, resourceType) in goals.reassign(goal)) {
+                sessions[workerId]?.assign(resourceType)
+            }
+        }
+
+        override fun requestWork(
+            request: WorkRequest,
+            responseObserver: StreamObserver<WorkAssignment>,
         ) {
-            val total = globalTotal.get()
-            val complete = total >= globalGoal
+            responseObserver.onNext(handleRequestWork(request))
+            responseObserver.onCompleted()
+        }
+
+        private fun handleRequestWork(request: WorkRequest): WorkAssignment {
+            val work = work ?: return WorkAssignment.getDefaultInstance()
+            val workerId = request.workerId
+            val unit =
+                synchronized(work) {
+                    work.assign(workerId, request.position.x, request.position.z)?.also {
+                        recordWork(WorkRecord.Kind.ASSIGNED, workerId, it.id, work)
+                    }
+                }
 
             val response =
-                GoalStatusResponse
+                WorkAssignment
                     .newBuilder()
-                    .setGoalComplete(complete)
-                    .setGlobalTotal(total)
-                    .setGlobalGoal(globalGoal)
-                    .build()
+                    .setAssigned(unit != null)
+                    .setRemaining(work.remaining())
+                    .setTotal(work.total)
+            if (unit != null) {
+                response.setUnit(
+                    ProtoWorkUnit
+                        .newBuilder()
+                        .setId(unit.id)
+                        .setMinX(unit.minX)
+                        .setMinZ(unit.minZ)
+                        .setMaxX(unit.maxX)
+                        .setMaxZ(unit.maxZ)
+                        .build(),
+                )
+                log
+                    .atDebug()
+                    .addKeyValue("worker_id", workerId)
+                    .addKeyValue("unit", unit.id)
+                    .addKeyValue("remaining", response.remaining)
+                    .log("Work unit assigned")
+            }
 
-            responseObserver.onNext(response)
+            return response.build()
+        }
+
+        override fun completeWork(
+            request: WorkCompletion,
+            responseObserver: StreamObserver<WorkCompletionResponse>,
+        ) {
+            responseObserver.onNext(handleCompleteWork(request))
+            responseObserver.onCompleted()
+        }
+
+        private fun handleCompleteWork(request: WorkCompletion): WorkCompletionResponse {
+            val work = work ?: return WorkCompletionResponse.getDefaultInstance()
+            val accepted =
+                synchronized(work) {
+                    if (request.abandoned) {
+                        val released = work.release(request.workerId)
+                        released?.let { recordWork(WorkRecord.Kind.RELEASED, request.workerId, it.id, work) }
+                        released?.id == request.unitId
+                    } else {
+                        work.complete(request.workerId, request.unitId).also { completed ->
+                            if (completed) {
+                                recordWork(WorkRecord.Kind.COMPLETED, request.workerId, request.unitId, work)
+                            }
+                        }
+                    }
+                }
+            val remaining = work.remaining()
+
+            if (accepted && !request.abandoned) {
+                log
+                    .atInfo()
+                    .addKeyValue("worker_id", request.workerId)
+                    .addKeyValue("unit", request.unitId)
+                    .addKeyValue("remaining", remaining)
+                    .log("Work unit completed")
+            }
+
+            return WorkCompletionResponse
+                .newBuilder()
+                .setAccepted(accepted)
+                .setRemaining(remaining)
+                .build()
+        }
+
+        override fun checkGoalStatus(
+            request: GoalStatusRequest,
+            responseObserver: StreamObserver<GoalStatusResponse>,
+        ) {
+            responseObserver.onNext(goalStatus())
             responseObserver.onCompleted()
         }
 
@@ -375,5 +909,239 @@ class CoordinationServer {
             responseObserver.onNext(response)
             responseObserver.onCompleted()
         }
+
+        override fun session(responseObserver: StreamObserver<SessionEvent>): StreamObserver<SessionMessage> =
+            Session(responseObserver)
+
+        /** Coordinator side of one worker's Session stream */
+        inner class Session(
+            events: StreamObserver<SessionEvent>,
+        ) : StreamObserver<SessionMessage> {
+            private val events = GoalWatcher(events) { SessionEvent.newBuilder().setGoalStatus(it).build() }
+
+            /** Set by the connect message; gRPC delivers one message at a time, so no locking */
+            private var workerId: String? = null
+
+            /** Chunks this worker wants pushed; read by the sessions of publishing workers */
+            @Volatile
+            private var subscription: ChunkSubscription? = null
+
+            override fun onNext(message: SessionMessage) {
+                val workerId = workerId
+                if (workerId == null) {
+                    if (message.payloadCase != SessionMessage.PayloadCase.CONNECT) {
+                        close(Status.FAILED_PRECONDITION.withDescription("Session must start with connect"))
+                        return
+                    }
+                    connect(message)
+                    return
+                }
+
+                val event = SessionEvent.newBuilder().setRequestId(message.requestId)
+                // the session's worker id wins over whatever the message claims
+                when (message.payloadCase) {
+                    SessionMessage.PayloadCase.HEARTBEAT ->
+                        event.setHeartbeat(
+                            HeartbeatResponse
+                                .newBuilder()
+                                .setAcknowledged(true)
+                                .setServerTime(System.currentTimeMillis())
+                                .build(),
+                        )
+                    SessionMessage.PayloadCase.CLAIM_AREA ->
+                        event.setClaimArea(
+                            handleClaimArea(message.claimArea.toBuilder().setWorkerId(workerId).build()),
+                        )
+                    SessionMessage.PayloadCase.RELEASE_AREA ->
+                        event.setReleaseArea(
+                            handleReleaseArea(message.releaseArea.toBuilder().setWorkerId(workerId).build()),
+                        )
+                    SessionMessage.PayloadCase.PROGRESS ->
+                        event.setProgress(
+                            handleReportProgress(message.progress.toBuilder().setWorkerId(workerId).build()),
+                        )
+                    SessionMessage.PayloadCase.PROGRESS_BATCH ->
+                        event.setProgress(
+                            handleProgressBatch(message.progressBatch.toBuilder().setWorkerId(workerId).build()),
+                        )
+                    SessionMessage.PayloadCase.REQUEST_WORK ->
+                        event.setWork(
+                            handleRequestWork(message.requestWork.toBuilder().setWorkerId(workerId).build()),
+                        )
+                    SessionMessage.PayloadCase.COMPLETE_WORK ->
+                        event.setWorkCompleted(
+                            handleCompleteWork(message.completeWork.toBuilder().setWorkerId(workerId).build()),
+                        )
+                    SessionMessage.PayloadCase.PUBLISH_CHUNKS -> {
+                        publish(message.publishChunks.chunksList)
+                        return
+                    }
+                    SessionMessage.PayloadCase.SUBSCRIBE_CHUNKS -> {
+                        subscribe(message.subscribeChunks)
+                        return
+                    }
+                    SessionMessage.PayloadCase.RESERVE_PATH -> {
+                        relay(message.reservePath.toBuilder().setWorkerId(workerId).build())
+                        return
+                    }
+                    else -> {
+                        log
+                            .atDebug()
+                            .addKeyValue("worker_id", workerId)
+                            .addKeyValue("payload", message.payloadCase.name)
+                            .log("Ignoring session message")
+                        return
+                    }
+                }
+                events.send(event.build())
+            }
+
+            private fun connect(message: SessionMessage) {
+                val workerId = message.connect.workerId
+                this.workerId = workerId
+                // a reconnecting worker replaces its old session, which then ends without effect
+                sessions[workerId] = this
+                // the session itself says whether the worker is alive from now on
+                workerHeartbeats.remove(workerId)
+                events.send(
+                    SessionEvent
+                        .newBuilder()
+                        .setRequestId(message.requestId)
+                        .setConnect(handleConnect(message.connect))
+                        .build(),
+                )
+                goalWatchers.add(events)
+            }
+
+            /** Tells the worker to collect another resource type, or nothing if it's null */
+            fun assign(resourceType: String?) {
+                try {
+                    events.send(
+                        SessionEvent
+                            .newBuilder()
+                            .setAssignment(ResourceAssignment.newBuilder().setResourceType(resourceType.orEmpty()))
+                            .build(),
+                    )
+                } catch (e: Exception) {
+                    log.atDebug().setCause(e).addKeyValue("worker_id", workerId).log("Failed to push assignment")
+                }
+            }
+
+            /** Keeps the chunks newer than what is stored, and pushes them to whoever subscribed */
+            private fun publish(chunks: List<CachedChunkData>) {
+                val fresh = chunks.filter { sharedChunks.put(it) }
+                if (fresh.isEmpty()) {
+                    return
+                }
+                for (session in sessions.values) {
+                    if (session !== this) {
+                        session.push(fresh)
+                    }
+                }
+            }
+
+            private fun subscribe(subscription: ChunkSubscription) {
+                this.subscription = subscription
+                sharedChunks
+                    .query(subscription.dimension, subscription.areasList)
+                    .chunked(CHUNK_BATCH_SIZE)
+                    .forEach { send(it) }
+            }
+
+            private fun push(chunks: List<CachedChunkData>) {
+                val subscription = subscription ?: return
+                val wanted = chunks.filter { SharedChunkStore.covers(subscription, it) }
+                if (wanted.isNotEmpty()) {
+                    send(wanted)
+                }
+            }
+
+            private fun send(chunks: List<CachedChunkData>) {
+                try {
+                    events.send(
+                        SessionEvent
+                            .newBuilder()
+                            .setChunks(ChunkBatch.newBuilder().addAllChunks(chunks))
+                            .build(),
+                    )
+                } catch (e: Exception) {
+                    // the session is going away; its end handles the rest
+                    log.atDebug().setCause(e).addKeyValue("worker_id", workerId).log("Failed to push chunks")
+                }
+            }
+
+            /** Passes a path reservation on to every other worker; the coordinator keeps none */
+            private fun relay(reservation: PathReservation) {
+                val event =
+                    SessionEvent
+                        .newBuilder()
+                        .setPathReserved(reservation)
+                        .build()
+                for (session in sessions.values) {
+                    if (session !== this) {
+                        try {
+                            session.events.send(event)
+                        } catch (e: Exception) {
+                            log
+                                .atDebug()
+                                .setCause(e)
+                                .addKeyValue("worker_id", session.workerId)
+                                .log("Failed to relay path reservation")
+                        }
+                    }
+                }
+            }
+
+            private fun close(status: Status) {
+                synchronized(events.observer) {
+                    events.observer.onError(status.asRuntimeException())
+                }
+                end()
+            }
+
+            /** The worker is gone once its stream is, along with its claim */
+            private fun end() {
+                goalWatchers.remove(events)
+                val workerId = workerId ?: return
+                if (sessions.remove(workerId, this)) {
+                    dropWorker(workerId)
+                    // withdraws its path reservation
+                    relay(PathReservation.newBuilder().setWorkerId(workerId).build())
+                    log.atInfo().addKeyValue("worker_id", workerId).log("Worker disconnected")
+                }
+            }
+
+            override fun onError(t: Throwable) {
+                end()
+            }
+
+            override fun onCompleted() {
+                end()
+                events.complete()
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * How often the heartbeat monitor times out workers, pushes pending goal status and forces
+         * the journal to disk, which bounds what a machine crash can lose
+         */
+        private const val MONITOR_INTERVAL_MS = 1000L
+
+        /** How long a worker on the unary calls may go without a heartbeat before it is dropped */
+        private const val WORKER_TIMEOUT_MS = 10_000L
+
+        /** Least time between goal status pushes, unless a goal was completed */
+        private const val GOAL_BROADCAST_INTERVAL_MS = 1000L
+
+        /** How often the coordinator pings session streams, and how long it waits for an answer */
+        private const val SESSION_KEEPALIVE_SECONDS = 10L
+
+        /** Most chunks pushed in one session event */
+        private const val CHUNK_BATCH_SIZE = 64
+
+        /** How long workers restored from disk have to reconnect, on top of the heartbeat timeout */
+        private const val RECONNECT_GRACE_MS = 50_000L
     }
 }
@@ -0,0 +1,273 @@
+package maestro.coordination
+
+import com.google.protobuf.MessageLite
+import com.google.protobuf.Parser
+import maestro.coordination.proto.StateRecord
+import maestro.coordination.proto.StateSnapshot
+import maestro.utils.Loggers
+import org.slf4j.Logger
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
+
+/**
+ * Keeps coordinator state on disk as a snapshot plus a write-ahead log of the changes made since,
+ * so a restarted coordinator can rebuild it by loading the one and replaying the other.
+ *
+ * The log is split into numbered segments. A compaction starts a new segment, writes a snapshot
+ * numbered like it, and deletes everything older; recovery loads the newest snapshot and replays
+ * the segments from its number on. Since the segment is switched before the state is captured, a
+ * change can end up both in the snapshot and in the log after it, which is why replaying a
+ * record must not depend on whether it was applied already.
+ *
+ * Records are written straight to the file, not buffered, so they survive the coordinator
+ * process dying at any point. They are only forced to the disk on [sync] and compaction, so a
+ * crash of the whole machine may lose the last few seconds.
+ */
+class CoordinatorJournal(
+    private val directory: Path,
+) {
+    private val log: Logger = Loggers.Coord.get()
+
+    /** What a restarted coordinator starts from */
+    class Recovered(
+        /** The newest snapshot, or null if none was written yet */
+        val snapshot: StateSnapshot?,
+        /** Changes made after the snapshot, in order */
+        val records: List<StateRecord>,
+    )
+
+    /** The segment appended to; null until the first compaction and after closing */
+    private var segment: FileChannel? = null
+    private var sequence = 0L
+    private var appended = 0
+    private var lastCompaction = System.currentTimeMillis()
+
+    /** Held throughout a compaction, so two can't interleave */
+    private val compactionLock = Any()
+
+    /** Reads what was written before. Call once, before the first compaction */
+    @Synchronized
+    fun recover(): Recovered {
+        Files.createDirectories(directory)
+        val snapshots = numbered(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)
+        val segments = numbered(SEGMENT_PREFIX, SEGMENT_SUFFIX)
+        sequence = maxOf(snapshots.keys.maxOrNull() ?: 0L, segments.keys.maxOrNull() ?: 0L)
+
+        var snapshot: StateSnapshot? = null
+        var from = Long.MIN_VALUE
+        // a snapshot cut short by a crash fails its checksum; the one before it still has its log
+        for ((number, file) in snapshots.entries.sortedByDescending { it.key }) {
+            snapshot = readFrames(file, StateSnapshot.parser()).firstOrNull()
+            if (snapshot != null) {
+                from = number
+                break
+            }
+            log.atWarn().addKeyValue("file", file.fileName).log("Skipping unreadable snapshot")
+        }
+
+        val records = ArrayList<StateRecord>()
+        for ((number, file) in segments.entries.sortedBy { it.key }) {
+            if (number >= from) {
+                records.addAll(readFrames(file, StateRecord.parser()))
+            }
+        }
+        return Recovered(snapshot, records)
+    }
+
+    /** Adds a change to the log. Failing to is logged, not thrown; the change holds in memory */
+    @Synchronized
+    fun append(record: StateRecord) {
+        val segment = segment ?: return
+        try {
+            writeFrame(segment, record)
+            appended++
+        } catch (e: IOException) {
+            log.atError().setCause(e).log("Failed to append to coordinator log")
+        }
+    }
+
+    /** Forces what was appended so far to the disk */
+    @Synchronized
+    fun sync() {
+        try {
+            segment?.force(false)
+        } catch (e: IOException) {
+            log.atWarn().setCause(e).log("Failed to sync coordinator log")
+        }
+    }
+
+    fun isCompactionDue(): Boolean =
+        synchronized(this) {
+            segment != null &&
+                (
+                    appended >= COMPACT_AFTER_RECORDS ||
+                        System.currentTimeMillis() - lastCompaction >= COMPACT_INTERVAL_MS
+                )
+        }
+
+    /**
+     * Starts a new segment, then writes the state [capture] returns as the snapshot it starts from
+     * and deletes the older segments and snapshots.
+     */
+    fun compact(capture: () -> StateSnapshot) {
+        synchronized(compactionLock) {
+            val number =
+                synchronized(this) {
+                    sequence++
+                    val next =
+                        FileChannel.open(
+                            file(SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING,
+                        )
+                    segment?.let {
+                        it.force(false)
+                        it.close()
+                    }
+                    segment = next
+                    appended = 0
+                    lastCompaction = System.currentTimeMillis()
+                    sequence
+                }
+
+            val snapshot = capture()
+            val target = file(SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX)
+            val temporary = target.resolveSibling(target.fileName.toString() + ".tmp")
+            FileChannel
+                .open(
+                    temporary,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                ).use { channel ->
+                    writeFrame(channel, snapshot)
+                    channel.force(true)
+                }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+
+            val older = numbered(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) + numbered(SEGMENT_PREFIX, SEGMENT_SUFFIX)
+            older.filterKeys { it < number }.values.forEach { Files.deleteIfExists(it) }
+
+            log
+                .atDebug()
+                .addKeyValue("snapshot", target.fileName)
+                .addKeyValue("bytes", snapshot.serializedSize)
+                .log("Coordinator state compacted")
+        }
+    }
+
+    @Synchronized
+    fun close() {
+        try {
+            segment?.force(false)
+            segment?.close()
+        } catch (e: IOException) {
+            log.atWarn().setCause(e).log("Failed to close coordinator log")
+        }
+        segment = null
+    }
+
+    private fun file(
+        prefix: String,
+        number: Long,
+        suffix: String,
+    ): Path = directory.resolve("%s%016d%s".format(prefix, number, suffix))
+
+    /** Files in the directory named prefix, number, suffix, by number */
+    private fun numbered(
+        prefix: String,
+        suffix: String,
+    ): Map<Long, Path> {
+        if (!Files.isDirectory(directory)) {
+            return emptyMap()
+        }
+        Files.list(directory).use { files ->
+            return files
+                .toList()
+                .mapNotNull { file ->
+                    val name = file.fileName.toString()
+                    if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+                        return@mapNotNull null
+                    }
+                    name.substring(prefix.length, name.length - suffix.length).toLongOrNull()?.let { it to file }
+                }.toMap()
+        }
+    }
+
+    /** Frames are the length and CRC32 of the message, then the message */
+    private fun writeFrame(
+        channel: FileChannel,
+        message: MessageLite,
+    ) {
+        val bytes = message.toByteArray()
+        val crc = CRC32()
+        crc.update(bytes)
+        val buffer = ByteBuffer.allocate(FRAME_HEADER_BYTES + bytes.size)
+        buffer.putInt(bytes.size).putInt(crc.value.toInt()).put(bytes).flip()
+        while (buffer.hasRemaining()) {
+            channel.write(buffer)
+        }
+    }
+
+    /** @return the messages up to the first frame that was cut short or damaged */
+    private fun <T> readFrames(
+        file: Path,
+        parser: Parser<T>,
+    ): List<T> {
+        val data = ByteBuffer.wrap(Files.readAllBytes(file))
+        val messages = ArrayList<T>()
+        while (data.remaining() >= FRAME_HEADER_BYTES) {
+            val length = data.getInt()
+            val expected = data.getInt()
+            if (length < 0 || length > data.remaining()) {
+                break
+            }
+            val bytes = ByteArray(length)
+            data.get(bytes)
+            val crc = CRC32()
+            crc.update(bytes)
+            if (crc.value.toInt() != expected) {
+                break
+            }
+            messages.add(parser.parseFrom(bytes))
+        }
+        if (data.hasRemaining()) {
+            log
+                .atWarn()
+                .addKeyValue("file", file.fileName)
+                .addKeyValue("records", messages.size)
+                .log("Coordinator log ends in a damaged record; ignoring the rest")
+        }
+        return messages
+    }
+
+    companion object {
+        private const val SEGMENT_PREFIX = "log-"
+        private const val SEGMENT_SUFFIX = ".wal"
+        private const val SNAPSHOT_PREFIX = "snapshot-"
+        private const val SNAPSHOT_SUFFIX = ".bin"
+        private const val FRAME_HEADER_BYTES = 8
+
+        /** A compaction is due after this many records or this long, whichever comes first */
+        private const val COMPACT_AFTER_RECORDS = 10_000
+        private const val COMPACT_INTERVAL_MS = 60_000L
+
+        /** Deletes whatever state was kept in the directory, for starting over */
+        @JvmStatic
+        fun discard(directory: Path) {
+            if (!Files.isDirectory(directory)) {
+                return
+            }
+            Files.list(directory).use { files ->
+                files.toList().forEach { Files.deleteIfExists(it) }
+            }
+        }
+    }
+}
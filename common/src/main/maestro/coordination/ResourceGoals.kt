@@ -0,0 +1,108 @@
+package maestro.coordination
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Goals per resource type, what was collected towards each, and which worker is to collect what.
+ * Goals are fixed when the coordinator starts; counting towards them takes no lock, so progress
+ * reports for different resources don't contend.
+ *
+ * Each worker is assigned the incomplete goal with the most left to collect per worker already on
+ * it, and moved on to another once its goal completes.
+ */
+class ResourceGoals(
+    goals: Map<String, Int>,
+) {
+    class Goal(
+        val resourceType: String,
+        val goal: Int,
+    ) {
+        internal val counter = AtomicInteger()
+
+        val total: Int get() = counter.get()
+
+        val isComplete: Boolean get() = total >= goal
+    }
+
+    private val goals: Map<String, Goal> = goals.mapValues { (type, goal) -> Goal(type, goal) }
+
+    /** Resource type each worker was assigned, by worker id */
+    private val assignments = ConcurrentHashMap<String, String>()
+
+    fun isEmpty(): Boolean = goals.isEmpty()
+
+    fun all(): Collection<Goal> = goals.values
+
+    operator fun get(resourceType: String): Goal? = goals[resourceType]
+
+    /** Sum of all goals */
+    fun goal(): Int = goals.values.sumOf { it.goal }
+
+    /** Sum of what was collected towards each goal, none counting for more than its goal */
+    fun total(): Int = goals.values.sumOf { minOf(it.total, it.goal) }
+
+    fun isComplete(): Boolean = goals.values.all { it.isComplete }
+
+    /**
+     * Counts [delta] towards the goal for the resource type, if there is one.
+     *
+     * @return the goal, if this completed it
+     */
+    fun add(
+        resourceType: String,
+        delta: Int,
+    ): Goal? {
+        val goal = goals[resourceType] ?: return null
+        val total = goal.counter.addAndGet(delta)
+        return goal.takeIf { total >= it.goal && total - delta < it.goal }
+    }
+
+    /** Sets the totals outright, as counted from restored worker progress */
+    fun recount(totals: Map<String, Int>) {
+        for (goal in goals.values) {
+            goal.counter.set(totals[goal.resourceType] ?: 0)
+        }
+    }
+
+    /**
+     * Keeps the worker on its resource type until that goal completes, then picks another.
+     *
+     * @return the resource type to collect, or null if every goal is complete
+     */
+    @Synchronized
+    fun assign(workerId: String): String? {
+        val current = assignments[workerId]
+        if (current != null && goals[current]?.isComplete == false) {
+            return current
+        }
+        assignments.remove(workerId)
+
+        val workers = assignments.values.groupingBy { it }.eachCount()
+        val next =
+            goals.values
+                .filter { !it.isComplete }
+                .maxByOrNull { (it.goal - it.total).toDouble() / ((workers[it.resourceType] ?: 0) + 1) }
+                ?: return null
+        assignments[workerId] = next.resourceType
+        return next.resourceType
+    }
+
+    /**
+     * Moves the workers assigned to a completed goal on to others.
+     *
+     * @return their new resource types, or null for those with nothing left, by worker id
+     */
+    @Synchronized
+    fun reassign(completed: Goal): Map<String, String?> =
+        assignments
+            .filterValues { it == completed.resourceType }
+            .keys
+            .associateWith { assign(it) }
+
+    fun unassign(workerId: String) {
+        assignments.remove(workerId)
+    }
+
+    fun assignment(workerId: String): String? = assignments[workerId]
+}
@@ -0,0 +1,86 @@
+package maestro.coordination
+
+import maestro.coordination.proto.CachedChunkData
+import maestro.coordination.proto.ChunkArea
+import maestro.coordination.proto.ChunkSubscription
+import kotlin.math.abs
+
+/**
+ * The newest copy of every cached chunk workers have published, so each of them can path through
+ * terrain any of them has seen. Bounded: once full, the chunks published longest ago go first.
+ */
+class SharedChunkStore(
+    private val capacity: Int = DEFAULT_CAPACITY,
+) {
+    private data class Key(
+        val dimension: String,
+        val chunkX: Int,
+        val chunkZ: Int,
+    )
+
+    private val chunks =
+        object : LinkedHashMap<Key, CachedChunkData>() {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, CachedChunkData>): Boolean =
+                size > capacity
+        }
+
+    /** @return whether the chunk is newer than the stored copy, and was kept */
+    @Synchronized
+    fun put(chunk: CachedChunkData): Boolean {
+        val key = Key(chunk.dimension, chunk.chunkX, chunk.chunkZ)
+        val current = chunks[key]
+        if (current != null && current.timestamp >= chunk.timestamp) {
+            return false
+        }
+        // reinserted, so it counts as the most recently published
+        chunks.remove(key)
+        chunks[key] = chunk
+        return true
+    }
+
+    /** @return the stored chunks of the dimension within any of the areas */
+    @Synchronized
+    fun query(
+        dimension: String,
+        areas: List<ChunkArea>,
+    ): List<CachedChunkData> {
+        val found = LinkedHashMap<Key, CachedChunkData>()
+        for (area in areas) {
+            val radius = area.radius.coerceIn(0, MAX_AREA_RADIUS)
+            for (x in area.chunkX - radius..area.chunkX + radius) {
+                for (z in area.chunkZ - radius..area.chunkZ + radius) {
+                    val key = Key(dimension, x, z)
+                    chunks[key]?.let { found[key] = it }
+                }
+            }
+        }
+        return found.values.toList()
+    }
+
+    @Synchronized
+    fun size(): Int = chunks.size
+
+    @Synchronized
+    fun clear() {
+        chunks.clear()
+    }
+
+    companion object {
+        /** Chunks are deflated, typically a few KiB each */
+        const val DEFAULT_CAPACITY = 16384
+
+        /** Largest area radius served, in chunks */
+        const val MAX_AREA_RADIUS = 32
+
+        @JvmStatic
+        fun covers(
+            subscription: ChunkSubscription,
+            chunk: CachedChunkData,
+        ): Boolean =
+            subscription.dimension == chunk.dimension &&
+                subscription.areasList.any { area ->
+                    val radius = area.radius.coerceIn(0, MAX_AREA_RADIUS)
+                    abs(chunk.chunkX - area.chunkX) <= radius && abs(chunk.chunkZ - area.chunkZ) <= radius
+                }
+    }
+}
@@ -0,0 +1,214 @@
+package maestro.coordination
+
+/** One square of the work area, handed to a single worker at a time. Bounds are inclusive. */
+data class WorkUnit(
+    val id: Long,
+    val minX: Int,
+    val minZ: Int,
+    val maxX: Int,
+    val maxZ: Int,
+) {
+    val centerX: Int get() = minX + (maxX - minX) / 2
+    val centerZ: Int get() = minZ + (maxZ - minZ) / 2
+
+    fun contains(
+        x: Int,
+        z: Int,
+    ): Boolean = x in minX..maxX && z in minZ..maxZ
+}
+
+/**
+ * Tiles a rectangle of the world into chunk-aligned work units and hands each worker the nearest
+ * one nobody else holds, instead of letting workers pick spots and race for claims on them.
+ *
+ * A worker holds one unit until it completes it; asking again returns the same unit. A worker
+ * that goes away gives its unit back, so the next one to ask can pick it up.
+ */
+class WorkScheduler(
+    minX: Int,
+    minZ: Int,
+    maxX: Int,
+    maxZ: Int,
+    unitSize: Int,
+) {
+    private val unitSize = ((unitSize.coerceAtLeast(1) + 15) shr 4) shl 4
+    private val originX = Math.floorDiv(minX, this.unitSize)
+    private val originZ = Math.floorDiv(minZ, this.unitSize)
+    private val unitsX = Math.floorDiv(maxX, this.unitSize) - originX + 1
+    private val unitsZ = Math.floorDiv(maxZ, this.unitSize) - originZ + 1
+
+    /** Worker holding each unit, by id */
+    private val owners = arrayOfNulls<String>(unitsX * unitsZ)
+    private val done = BooleanArray(unitsX * unitsZ)
+    private val byWorker = HashMap<String, Int>()
+    private var remaining = unitsX * unitsZ
+
+    val total: Int get() = owners.size
+
+    /** @return the number of units not completed yet, including those being worked on */
+    @Synchronized
+    fun remaining(): Int = remaining
+
+    /**
+     * Gives the worker the free unit nearest to it, searching outwards ring by ring from the unit
+     * it stands in, so the search stays local while most of the area is still free.
+     *
+     * @return The unit the worker holds, or null if every remaining unit is held by someone else
+     */
+    @Synchronized
+    fun assign(
+        workerId: String,
+        x: Int,
+        z: Int,
+    ): WorkUnit? {
+        byWorker[workerId]?.let { return unit(it) }
+        if (remaining - byWorker.size <= 0) {
+            return null
+        }
+
+        val ux = (Math.floorDiv(x, unitSize) - originX).coerceIn(0, unitsX - 1)
+        val uz = (Math.floorDiv(z, unitSize) - originZ).coerceIn(0, unitsZ - 1)
+        for (ring in 0 until maxOf(unitsX, unitsZ)) {
+            var best = -1
+            var bestDistance = Long.MAX_VALUE
+
+            fun consider(
+                cx: Int,
+                cz: Int,
+            ) {
+                if (cx < 0 || cz < 0 || cx >= unitsX || cz >= unitsZ) {
+                    return
+                }
+                val id = cx * unitsZ + cz
+                if (owners[id] != null || done[id]) {
+                    return
+                }
+                val unit = unit(id)
+                val dx = (unit.centerX - x).toLong()
+                val dz = (unit.centerZ - z).toLong()
+                val distance = dx * dx + dz * dz
+                if (distance < bestDistance) {
+                    best = id
+                    bestDistance = distance
+                }
+            }
+
+            for (dx in -ring..ring) {
+                consider(ux + dx, uz - ring)
+                if (ring != 0) {
+                    consider(ux + dx, uz + ring)
+                }
+            }
+            for (dz in -ring + 1..ring - 1) {
+                consider(ux - ring, uz + dz)
+                consider(ux + ring, uz + dz)
+            }
+
+            if (best >= 0) {
+                owners[best] = workerId
+                byWorker[workerId] = best
+                return unit(best)
+            }
+        }
+        return null
+    }
+
+    /** @return whether the worker held the unit, which is now done */
+    @Synchronized
+    fun complete(
+        workerId: String,
+        unitId: Long,
+    ): Boolean {
+        val id = byWorker[workerId] ?: return false
+        if (id.toLong() != unitId) {
+            return false
+        }
+        byWorker.remove(workerId)
+        owners[id] = null
+        done[id] = true
+        remaining--
+        return true
+    }
+
+    /** Puts the worker's unit back in the pool, for when it goes away without completing it */
+    @Synchronized
+    fun release(workerId: String): WorkUnit? {
+        val id = byWorker.remove(workerId) ?: return null
+        if (owners[id] == workerId) {
+            owners[id] = null
+        }
+        return unit(id)
+    }
+
+    /**
+     * Puts the unit back in the pool as recorded before a restart, if the worker still holds it.
+     * Unlike [release] this goes by unit, so replaying it after the worker took another unit, or
+     * twice, changes nothing.
+     */
+    @Synchronized
+    fun restoreReleased(
+        workerId: String,
+        unitId: Long,
+    ) {
+        val id = byWorker[workerId] ?: return
+        if (id.toLong() != unitId) {
+            return
+        }
+        byWorker.remove(workerId)
+        if (owners[id] == workerId) {
+            owners[id] = null
+        }
+    }
+
+    /** Identifies how the area is tiled; unit ids only mean the same unit under the same layout */
+    val layout: String get() = "$originX,$originZ,$unitsX,$unitsZ,$unitSize"
+
+    /** @return who holds which unit, by worker */
+    @Synchronized
+    fun assignments(): Map<String, Long> = byWorker.mapValues { it.value.toLong() }
+
+    /** @return the ids of the units done */
+    @Synchronized
+    fun completed(): List<Long> = done.indices.filter { done[it] }.map { it.toLong() }
+
+    /**
+     * Hands the worker the unit as recorded before a restart, whoever held it in between. Unlike
+     * [assign] this doesn't search, and applying it twice changes nothing.
+     */
+    @Synchronized
+    fun restoreAssigned(
+        workerId: String,
+        unitId: Long,
+    ) {
+        val id = unitId.toInt()
+        if (unitId !in 0 until owners.size || done[id]) {
+            return
+        }
+        owners[id]?.let { byWorker.remove(it) }
+        val previous = byWorker[workerId]
+        if (previous != null && owners[previous] == workerId) {
+            owners[previous] = null
+        }
+        owners[id] = workerId
+        byWorker[workerId] = id
+    }
+
+    /** Marks the unit done as recorded before a restart, whoever held it */
+    @Synchronized
+    fun restoreCompleted(unitId: Long) {
+        val id = unitId.toInt()
+        if (unitId !in 0 until owners.size || done[id]) {
+            return
+        }
+        owners[id]?.let { byWorker.remove(it) }
+        owners[id] = null
+        done[id] = true
+        remaining--
+    }
+
+    private fun unit(id: Int): WorkUnit {
+        val minX = (originX + id / unitsZ) * unitSize
+        val minZ = (originZ + id % unitsZ) * unitSize
+        return WorkUnit(id.toLong(), minX, minZ, minX + unitSize - 1, minZ + unitSize - 1)
+    }
+}
@@ -174,7 +174,13 @@ class DevModeManager(
             .addKeyValue("goal", goal)
             .log("Starting coordinator server")
 
-        server.start(9090, goal)
+        val stateDir =
+            if (Agent.getPrimaryAgent().settings.coordinationPersistState.value) {
+                agent.directory.resolve("coordinator")
+            } else {
+                null
+            }
+        server.start(9090, goal, null, stateDir)
 
         log
             .atInfo()
@@ -4,7 +4,7 @@ import java.util.Map;
 import java.util.Optional;
 import maestro.Agent;
 import maestro.debug.IHudDebugRenderer;
-import maestro.pathing.calc.AStarPathFinder;
+import maestro.pathing.calc.AbstractNodeCostSearch;
 import maestro.pathing.calc.IPath;
 import maestro.pathing.goals.Goal;
 import maestro.pathing.movement.IMovement;
@@ -152,7 +152,7 @@ public class HudDebugRenderer implements IHudDebugRenderer {
     }
 
     private String buildCalculationLine() {
-        Optional<? extends AStarPathFinder> inProgress = agent.getPathingBehavior().getInProgress();
+        Optional<? extends AbstractNodeCostSearch> inProgress = agent.getPathingBehavior().getInProgress();
 
         if (inProgress.isPresent()) {
             // Live calculation - show progress indicator
@@ -396,7 +396,7 @@ public class HudDebugRenderer implements IHudDebugRenderer {
     }
 
     private int getCalcColor() {
-        Optional<? extends AStarPathFinder> inProgress = agent.getPathingBehavior().getInProgress();
+        Optional<? extends AbstractNodeCostSearch> inProgress = agent.getPathingBehavior().getInProgress();
 
         if (inProgress.isEmpty()) {
             // Has cached path?
@@ -111,7 +111,7 @@ data class PathfindingSnapshot(
                 val movementType =
                     node.previousMovement?.let { movement ->
                         movement::class.java.simpleName
-                    }
+                    } ?: node.previousMove?.movementClass?.simpleName
 
                 snapshotNodes[packedPos] =
                     SnapshotNode(
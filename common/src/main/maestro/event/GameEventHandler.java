@@ -11,6 +11,7 @@ import maestro.event.listener.IEventBus;
 import maestro.event.listener.IGameEventListener;
 import maestro.pathing.BlockStateInterface;
 import maestro.utils.Loggers;
+import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.state.BlockState;
@@ -37,6 +38,9 @@ public final class GameEventHandler implements IEventBus {
      */
     private boolean coordinationAutoConnected = false;
 
+    /** Shares the world cache through the coordination client, recreated along with the client */
+    private maestro.coordination.CacheReplicator cacheReplicator;
+
     public GameEventHandler(Agent agent) {
         this.agent = agent;
     }
@@ -72,6 +76,20 @@ public final class GameEventHandler implements IEventBus {
             }
         }
 
+        maestro.coordination.CoordinationClient coordinationClient = agent.getCoordinationClient();
+        if (coordinationClient != null && event.type == TickEvent.Type.IN) {
+            if (cacheReplicator == null || !cacheReplicator.isFor(coordinationClient)) {
+                if (cacheReplicator != null) {
+                    cacheReplicator.detach();
+                }
+                cacheReplicator =
+                        new maestro.coordination.CacheReplicator(agent, coordinationClient);
+            }
+            cacheReplicator.onTick();
+            coordinationClient.flushProgressIfDue();
+            coordinationClient.reconnectIfLost();
+        }
+
         if (event.type == TickEvent.Type.IN) {
             try {
                 agent.bsi = new BlockStateInterface(agent.getPlayerContext(), true);
@@ -129,12 +147,23 @@ public final class GameEventHandler implements IEventBus {
                             worldData -> {
                                 LevelChunk chunk = world.getChunk(event.x, event.z);
                                 worldData.getCachedWorld().queueForPacking(chunk);
+                                worldData.getSections().chunkChanged(event.x, event.z);
                             });
         }
 
         listeners.forEach(l -> l.onChunkEvent(event));
     }
 
+    /**
+     * A block was set in a chunk of the client world: from the server, or predicted by the client
+     * when it breaks or places a block, or rolled back after a wrong prediction. Only the first
+     * goes through {@link #onBlockChange}.
+     */
+    public void onBlockSet(Level world, BlockPos pos) {
+        agent.getWorldProvider()
+                .ifWorldLoaded(worldData -> worldData.getSections().blockChanged(world, pos));
+    }
+
     @Override
     public void onBlockChange(BlockChangeEvent event) {
         if (Agent.getPrimaryAgent().getSettings().repackOnAnyBlockChange.value) {
@@ -4,6 +4,8 @@ package maestro.pathing
 import maestro.Agent
 import maestro.cache.CachedRegion
 import maestro.cache.WorldData
+import maestro.pathing.precompute.SectionSnapshot
+import maestro.pathing.precompute.SectionSnapshots
 import maestro.player.PlayerContext
 import maestro.utils.accessor.IClientChunkProvider
 import net.minecraft.client.multiplayer.ClientChunkCache
@@ -43,6 +45,12 @@ class BlockStateInterface
 
         private val useTheRealWorld: Boolean
 
+        /** Where loaded sections are read from, or null to read their palettes directly */
+        private val sections: SectionSnapshots?
+
+        /** The snapshots read last, by [snapshotSlot]; checked against the sections on every use */
+        private val snapshots = arrayOfNulls<SectionSnapshot>(SNAPSHOT_CACHE_SIZE)
+
         init {
             this.worldBorder = BetterWorldBorder(world.worldBorder)
             this.worldData = ctx.worldData() as WorldData?
@@ -58,6 +66,13 @@ class BlockStateInterface
                 !Agent
                     .getPrimaryAgent()
                     .settings.pathThroughCachedOnly.value
+            this.sections =
+                worldData?.sections?.takeIf {
+                    SectionSnapshot.SUPPORTED &&
+                        Agent
+                            .getPrimaryAgent()
+                            .settings.pathingSectionSnapshots.value
+                }
 
             if (!ctx.minecraft().isSameThread) {
                 throw IllegalStateException("BlockStateInterface must be constructed on the main thread")
@@ -87,20 +102,11 @@ class BlockStateInterface
             }
 
             if (useTheRealWorld) {
-                val cached = prev
-                // There's great cache locality in block state lookups
-                // Generally it's within each movement
-                // If it's the same chunk as last time
-                // We can just skip the mc.world.getChunk lookup
-                // which is a Long2ObjectOpenHashMap.get
-                // see issue #113
-                if (cached != null && cached.pos.x == x shr 4 && cached.pos.z == z shr 4) {
-                    return getFromChunk(cached, x, adjustedY, z)
-                }
-
-                val chunk = provider.getChunk(x shr 4, z shr 4, ChunkStatus.FULL, false)
-                if (chunk != null && !chunk.isEmpty) {
-                    prev = chunk
+                val chunk = loadedChunk(x, z)
+                if (chunk != null) {
+                    if (sections != null) {
+                        return snapshot(chunk, adjustedY shr 4).state(x, y, z)
+                    }
                     return getFromChunk(chunk, x, adjustedY, z)
                 }
             }
@@ -122,6 +128,69 @@ class BlockStateInterface
             return type ?: AIR
         }
 
+        /**
+         * @return the id of the block state at the position in [Block.BLOCK_STATE_REGISTRY], which for
+         * loaded chunks is read without looking up the state itself
+         */
+        fun getId(
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Int {
+            val adjustedY = y - world.dimensionType().minY()
+            if (sections != null && useTheRealWorld && adjustedY >= 0 && adjustedY < world.dimensionType().height()) {
+                val chunk = loadedChunk(x, z)
+                if (chunk != null) {
+                    return snapshot(chunk, adjustedY shr 4).id(x, y, z)
+                }
+            }
+            return Block.BLOCK_STATE_REGISTRY.getId(get0(x, y, z))
+        }
+
+        private fun loadedChunk(
+            x: Int,
+            z: Int,
+        ): LevelChunk? {
+            val cached = prev
+            // There's great cache locality in block state lookups
+            // Generally it's within each movement
+            // If it's the same chunk as last time
+            // We can just skip the mc.world.getChunk lookup
+            // which is a Long2ObjectOpenHashMap.get
+            // see issue #113
+            if (cached != null && cached.pos.x == x shr 4 && cached.pos.z == z shr 4) {
+                return cached
+            }
+
+            val chunk = provider.getChunk(x shr 4, z shr 4, ChunkStatus.FULL, false)
+            if (chunk != null && !chunk.isEmpty) {
+                prev = chunk
+                return chunk
+            }
+            return null
+        }
+
+        /** Same idea as [prev], but a few sections are kept since movements straddle section borders */
+        private fun snapshot(
+            chunk: LevelChunk,
+            index: Int,
+        ): SectionSnapshot {
+            val pos = chunk.pos
+            val slot = snapshotSlot(pos.x, pos.z, index)
+            val cached = snapshots[slot]
+            if (cached != null &&
+                cached.chunkX == pos.x &&
+                cached.chunkZ == pos.z &&
+                cached.index == index &&
+                cached.isCurrent(chunk.sections[index])
+            ) {
+                return cached
+            }
+            val snapshot = sections!!.get(chunk, index)
+            snapshots[slot] = snapshot
+            return snapshot
+        }
+
         fun isLoaded(
             x: Int,
             z: Int,
@@ -154,6 +223,14 @@ class BlockStateInterface
         companion object {
             private val AIR: BlockState = Blocks.AIR.defaultBlockState()
 
+            private const val SNAPSHOT_CACHE_SIZE = 16
+
+            private fun snapshotSlot(
+                chunkX: Int,
+                chunkZ: Int,
+                index: Int,
+            ): Int = ((chunkX * 31 + chunkZ) * 31 + index) and (SNAPSHOT_CACHE_SIZE - 1)
+
             @JvmStatic
             fun getBlock(
                 ctx: PlayerContext,
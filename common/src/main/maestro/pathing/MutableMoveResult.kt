@@ -1,6 +1,8 @@
 package maestro.pathing
 
 import maestro.pathing.movement.ActionCosts
+import maestro.pathing.movement.IMovement
+import maestro.pathing.movement.Moves
 
 /**
  * The result of a calculated movement, with destination x, y, z, and the cost of performing the
@@ -15,6 +17,15 @@ class MutableMoveResult {
 
     @JvmField var cost: Double = ActionCosts.COST_INF
 
+    /**
+     * The [Moves] entry that produced this result, if any. Lets the pathfinder defer building the
+     * concrete movement until the path is assembled.
+     */
+    @JvmField var move: Moves? = null
+
+    /** An already materialized movement, for providers that are not backed by [Moves] */
+    @JvmField var movement: IMovement? = null
+
     init {
         reset()
     }
@@ -24,5 +35,7 @@ class MutableMoveResult {
         y = 0
         z = 0
         cost = ActionCosts.COST_INF
+        move = null
+        movement = null
     }
 }
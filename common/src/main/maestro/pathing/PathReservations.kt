@@ -0,0 +1,177 @@
+package maestro.pathing
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import maestro.Agent
+import maestro.pathing.calc.IPath
+import net.minecraft.core.BlockPos
+
+/**
+ * Where an agent's committed path puts its feet, and when. Arrivals are wall-clock millis, so
+ * reservations of agents in other processes line up as long as their clocks roughly agree.
+ */
+class PathReservation(
+    /** Player UUID of the agent */
+    val owner: String,
+    /** Dimension id, e.g. minecraft:overworld */
+    val dimension: String,
+    /** Packed feet positions along the path, in order */
+    val positions: LongArray,
+    /** When the agent is expected at each position */
+    val arrivals: LongArray,
+) {
+    init {
+        require(positions.size == arrivals.size) { "${positions.size} positions, ${arrivals.size} arrivals" }
+    }
+
+    /** When the agent is expected to be done with the last position */
+    val expiresAt: Long get() = if (arrivals.isEmpty()) 0 else arrivals.last() + PathReservations.HOLD_MS
+
+    companion object {
+        /**
+         * Reserves the rest of a path, starting at the position the agent stands on now and timed by
+         * the movement costs.
+         */
+        @JvmStatic
+        fun of(
+            owner: String,
+            dimension: String,
+            path: IPath,
+            fromIndex: Int,
+            now: Long,
+        ): PathReservation {
+            val positions = path.positions()
+            val movements = path.movements()
+            val start = fromIndex.coerceIn(0, positions.size)
+            val count = minOf(positions.size - start, PathReservations.MAX_POSITIONS)
+            val packed = LongArray(count)
+            val arrivals = LongArray(count)
+            var time = now.toDouble()
+            for (i in 0 until count) {
+                packed[i] = positions[start + i].packed
+                arrivals[i] = time.toLong()
+                if (start + i < movements.size) {
+                    time += movements[start + i].cost * PathReservations.MS_PER_TICK
+                }
+            }
+            return PathReservation(owner, dimension, packed, arrivals)
+        }
+
+        /** Reserves the spot an agent stands on without a path */
+        @JvmStatic
+        fun standing(
+            owner: String,
+            dimension: String,
+            feet: Long,
+            now: Long,
+        ): PathReservation = PathReservation(owner, dimension, longArrayOf(feet), longArrayOf(now))
+    }
+}
+
+/**
+ * The paths other agents committed to, for the search to steer around. A position counts as taken
+ * from shortly before an agent is expected there until shortly after it is expected to move on, so
+ * an agent gets away with timing estimates that are off by a bit. Immutable, so a path calculation
+ * can read it from its own thread.
+ */
+class PathReservations private constructor(
+    /** Packed feet position to pairs of (from, until) millis */
+    private val cells: Long2ObjectOpenHashMap<LongArray>,
+) {
+    /**
+     * Whether an agent with its feet at the position at the given time would share a block with
+     * another agent. Agents are two blocks tall, so feet one block above or below also collide.
+     */
+    fun isReserved(
+        x: Int,
+        y: Int,
+        z: Int,
+        time: Long,
+    ): Boolean =
+        isReserved(BlockPos.asLong(x, y, z), time) ||
+            isReserved(BlockPos.asLong(x, y - 1, z), time) ||
+            isReserved(BlockPos.asLong(x, y + 1, z), time)
+
+    private fun isReserved(
+        pos: Long,
+        time: Long,
+    ): Boolean {
+        val spans = cells.get(pos) ?: return false
+        var i = 0
+        while (i < spans.size) {
+            if (time >= spans[i] && time <= spans[i + 1]) {
+                return true
+            }
+            i += 2
+        }
+        return false
+    }
+
+    companion object {
+        /** Milliseconds per game tick, the unit of movement costs */
+        const val MS_PER_TICK = 50.0
+
+        /** Slack on both sides of the time an agent is expected at a position */
+        const val WINDOW_MS = 1000L
+
+        /** How long an agent is assumed to stay at the last position of its reservation */
+        const val HOLD_MS = 5000L
+
+        /** Positions reserved ahead at most; further out, the timing is too rough to be of use */
+        const val MAX_POSITIONS = 256
+
+        /**
+         * Builds the reservations that still matter at [now], from every other agent in this
+         * process and every agent the coordinator relayed one for.
+         *
+         * @return null if nobody else has a reservation in the dimension, so the search can skip
+         * the cost term entirely
+         */
+        @JvmStatic
+        fun snapshot(
+            self: Agent,
+            dimension: String,
+            now: Long,
+        ): PathReservations? {
+            val owner = self.playerContext.player()?.stringUUID
+            val reservations = LinkedHashMap<String, PathReservation>()
+            for (agent in Agent.getAllAgents()) {
+                if (agent === self) {
+                    continue
+                }
+                val reservation = agent.pathingBehavior.reservation ?: continue
+                reservations[reservation.owner] = reservation
+            }
+            // agents of this process that are also connected are already in from above
+            self.coordinationClient
+                ?.remoteReservations
+                ?.values
+                ?.forEach { reservations.putIfAbsent(it.owner, it) }
+            reservations.remove(owner)
+            return of(reservations.values.filter { it.dimension == dimension }, now)
+        }
+
+        @JvmStatic
+        fun of(
+            reservations: Collection<PathReservation>,
+            now: Long,
+        ): PathReservations? {
+            val cells = Long2ObjectOpenHashMap<LongArray>()
+            for (reservation in reservations) {
+                if (reservation.expiresAt < now) {
+                    continue
+                }
+                val arrivals = reservation.arrivals
+                for (i in reservation.positions.indices) {
+                    val until = if (i + 1 < arrivals.size) arrivals[i + 1] + WINDOW_MS else reservation.expiresAt
+                    if (until < now) {
+                        continue
+                    }
+                    val span = longArrayOf(arrivals[i] - WINDOW_MS, until)
+                    val spans = cells.get(reservation.positions[i])
+                    cells.put(reservation.positions[i], if (spans == null) span else spans + span)
+                }
+            }
+            return if (cells.isEmpty()) null else PathReservations(cells)
+        }
+    }
+}
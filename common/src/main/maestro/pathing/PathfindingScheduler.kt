@@ -0,0 +1,205 @@
+package maestro.pathing
+
+import maestro.Agent
+import maestro.behavior.PathfindingReason
+import maestro.pathing.calc.AbstractNodeCostSearch
+import maestro.utils.Loggers
+import org.slf4j.Logger
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Dedicated worker pool for path searches shared by every agent.
+ *
+ * Unlike [Agent.getExecutor], submissions never run on the caller: the queue is unbounded and
+ * [submit] only enqueues, so the client thread can't end up running A* itself.
+ *
+ * Scheduling rules, applied whenever a worker picks its next search:
+ * - [PathfindingReason.INITIAL_PATH] and [PathfindingReason.RECOVERY] run before
+ *   [PathfindingReason.PLAN_AHEAD], since an agent without a path is standing still
+ * - an agent never has more than [maestro.Settings.pathingSearchesPerAgent] searches running;
+ *   its other searches wait even if workers are idle
+ * - otherwise the agent with the fewest running searches goes first, then the oldest submission
+ *
+ * A new submission supersedes the same agent's queued (not yet started) searches, which get
+ * cancelled. Cancelled searches still run their body so the owner sees the
+ * [maestro.utils.PathCalculationResult.Type.CANCELLATION] result, but [AbstractNodeCostSearch]
+ * returns immediately.
+ */
+object PathfindingScheduler {
+    private val log: Logger = Loggers.Path.get()
+
+    private val lock = ReentrantLock()
+    private val available = lock.newCondition()
+
+    private val queue =
+        SearchQueue<Job>(
+            {
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingSearchesPerAgent.value
+            },
+            { it.agent },
+            { it.priority },
+            { it.search.cancel() },
+        )
+    private var workers: List<Thread> = emptyList()
+    private var shutdown = false
+
+    private val submitted = AtomicLong()
+    private val completed = AtomicLong()
+    private val superseded = AtomicLong()
+    private val totalWaitNanos = AtomicLong()
+    private val maxWaitNanos = AtomicLong()
+
+    /** A queued or running search */
+    class Job internal constructor(
+        val agent: Agent,
+        val reason: PathfindingReason,
+        val search: AbstractNodeCostSearch,
+        internal val body: Runnable,
+    ) {
+        internal val submittedAt: Long = System.nanoTime()
+
+        /** Lower runs first */
+        internal val priority: Int =
+            when (reason) {
+                PathfindingReason.INITIAL_PATH, PathfindingReason.RECOVERY -> 0
+                PathfindingReason.PLAN_AHEAD -> 1
+            }
+    }
+
+    /** Point-in-time scheduler metrics */
+    data class Stats(
+        val workers: Int,
+        val pending: Int,
+        val running: Int,
+        val submitted: Long,
+        val completed: Long,
+        val superseded: Long,
+        val averageWaitMs: Double,
+        val maxWaitMs: Double,
+    )
+
+    /**
+     * Queues a search. [body] runs on a pathing worker and is expected to call
+     * [AbstractNodeCostSearch.calculate] on [search] and publish the result.
+     */
+    @JvmStatic
+    fun submit(
+        agent: Agent,
+        reason: PathfindingReason,
+        search: AbstractNodeCostSearch,
+        body: Runnable,
+    ): Job {
+        val job = Job(agent, reason, search, body)
+        lock.withLock {
+            check(!shutdown) { "Pathfinding scheduler is shut down" }
+            ensureWorkers()
+            superseded.addAndGet(queue.add(job).toLong())
+            submitted.incrementAndGet()
+            available.signalAll()
+        }
+        return job
+    }
+
+    @JvmStatic
+    fun stats(): Stats =
+        lock.withLock {
+            val done = completed.get()
+            Stats(
+                workers = workers.size,
+                pending = queue.pendingCount,
+                running = queue.runningCount,
+                submitted = submitted.get(),
+                completed = done,
+                superseded = superseded.get(),
+                averageWaitMs = if (done == 0L) 0.0 else totalWaitNanos.get() / done / 1_000_000.0,
+                maxWaitMs = maxWaitNanos.get() / 1_000_000.0,
+            )
+        }
+
+    /** Cancels everything queued or running and stops the workers. */
+    @JvmStatic
+    fun shutdown() {
+        val threads =
+            lock.withLock {
+                shutdown = true
+                queue.cancelAll()
+                available.signalAll()
+                workers
+            }
+        for (thread in threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5))
+        }
+    }
+
+    private fun ensureWorkers() {
+        if (workers.isNotEmpty()) {
+            return
+        }
+        val count =
+            Agent
+                .getPrimaryAgent()
+                .settings.pathingThreads.value
+                .coerceAtLeast(1)
+        workers =
+            List(count) { i ->
+                Thread(::workerLoop, "maestro-pathing-$i").apply {
+                    isDaemon = true
+                    start()
+                }
+            }
+        log
+            .atDebug()
+            .addKeyValue("workers", count)
+            .log("Pathfinding scheduler started")
+    }
+
+    private fun workerLoop() {
+        while (true) {
+            val job = take() ?: return
+            val waitNanos = System.nanoTime() - job.submittedAt
+            totalWaitNanos.addAndGet(waitNanos)
+            maxWaitNanos.accumulateAndGet(waitNanos) { a, b -> maxOf(a, b) }
+            log
+                .atDebug()
+                .addKeyValue("reason", job.reason.name.lowercase())
+                .addKeyValue("queue_wait_ms", TimeUnit.NANOSECONDS.toMillis(waitNanos))
+                .log("Pathfinding job started")
+            try {
+                job.body.run()
+            } catch (e: Exception) {
+                log.atError().setCause(e).log("Pathfinding job failed")
+            } finally {
+                lock.withLock {
+                    queue.finished(job)
+                    completed.incrementAndGet()
+                    // a slot for this agent freed up, which may unblock one of its queued jobs
+                    available.signalAll()
+                }
+            }
+        }
+    }
+
+    /** Blocks until a job is runnable, or returns null once shut down and drained. */
+    private fun take(): Job? {
+        lock.lock()
+        try {
+            while (true) {
+                val job = queue.poll()
+                if (job != null) {
+                    return job
+                }
+                if (shutdown && !queue.hasPending()) {
+                    return null
+                }
+                available.await()
+            }
+        } finally {
+            lock.unlock()
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package maestro.pathing
+
+/**
+ * Picks which queued search a [PathfindingScheduler] worker runs next, by the rules described
+ * there. Holds no threads and isn't thread-safe; the scheduler only calls it under its lock.
+ */
+internal class SearchQueue<J : Any>(
+    /** Most searches one owner may have running, read on every pick */
+    private val quota: () -> Int,
+    /** Whose search a job is; quotas and superseding are per owner */
+    private val owner: (J) -> Any,
+    /** Lower runs first */
+    private val priority: (J) -> Int,
+    /** Makes a job's search return as soon as it runs */
+    private val cancel: (J) -> Unit,
+) {
+    /** Pending jobs in submission order. Small (a few per agent), so selection scans it. */
+    private val pending = ArrayList<J>()
+    private val active = HashSet<J>()
+    private val running = HashMap<Any, Int>()
+
+    val pendingCount: Int
+        get() = pending.size
+
+    val runningCount: Int
+        get() = active.size
+
+    fun hasPending(): Boolean = pending.isNotEmpty()
+
+    /**
+     * Queues [job] behind everything already queued, cancelling the same owner's queued jobs.
+     * Cancelled jobs stay queued, so their owner still sees them finish.
+     *
+     * @return how many jobs were superseded
+     */
+    fun add(job: J): Int {
+        var superseded = 0
+        val jobOwner = owner(job)
+        for (other in pending) {
+            if (owner(other) === jobOwner) {
+                cancel(other)
+                superseded++
+            }
+        }
+        pending.add(job)
+        return superseded
+    }
+
+    /** Takes the job to run next and counts it as running, or returns null if none may run now */
+    fun poll(): J? {
+        val limit = quota().coerceAtLeast(1)
+        var best: J? = null
+        var bestRunning = 0
+        for (job in pending) {
+            val ownerRunning = running[owner(job)] ?: 0
+            if (ownerRunning >= limit) {
+                continue
+            }
+            // pending is in submission order, so strict comparisons keep the oldest on ties
+            if (best == null ||
+                priority(job) < priority(best) ||
+                (priority(job) == priority(best) && ownerRunning < bestRunning)
+            ) {
+                best = job
+                bestRunning = ownerRunning
+            }
+        }
+        if (best != null) {
+            pending.remove(best)
+            active.add(best)
+            running.merge(owner(best), 1) { a, b -> a + b }
+        }
+        return best
+    }
+
+    /** Frees the slot of a job [poll] handed out */
+    fun finished(job: J) {
+        check(active.remove(job)) { "Job was not running" }
+        val jobOwner = owner(job)
+        val left = running.getValue(jobOwner) - 1
+        if (left == 0) running.remove(jobOwner) else running[jobOwner] = left
+    }
+
+    /** Cancels every queued and running job */
+    fun cancelAll() {
+        pending.forEach(cancel)
+        active.forEach(cancel)
+    }
+}
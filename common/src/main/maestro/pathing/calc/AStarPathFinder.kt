@@ -13,7 +13,6 @@ import maestro.pathing.movement.ActionCosts
 import maestro.pathing.movement.CalculationContext
 import maestro.pathing.movement.CompositeMovementProvider
 import maestro.pathing.movement.IMovementProvider
-import maestro.pathing.movement.Movement
 import maestro.pathing.movement.StandardMovementProvider
 import maestro.pathing.movement.SwimmingProvider
 import maestro.pathing.movement.TeleportMovementProvider
@@ -21,6 +20,7 @@ import maestro.utils.Loggers
 import maestro.utils.PackedBlockPos
 import maestro.utils.format
 import maestro.utils.pack
+import net.minecraft.core.BlockPos
 import org.slf4j.Logger
 import java.util.Optional
 
@@ -36,6 +36,12 @@ class AStarPathFinder
         private val preferredPaths: PreferredPaths,
         private val calcContext: CalculationContext,
         private val movementProvider: IMovementProvider = createDefaultProvider(),
+        /** The chunk-level route this search refines a stretch of, or null if there is none */
+        private val route: ChunkRoute? = null,
+        /** A finished search for the same goal to repair and continue, rather than start over */
+        private val previousSearch: AbstractNodeCostSearch? = null,
+        /** The goal biases to search with in turn; a single phase keeps to one for the whole search */
+        private val phases: List<SearchPhase> = DEFAULT_PHASES,
     ) : AbstractNodeCostSearch(realStart, startX, startY, startZ, goal, calcContext) {
         override fun calculate0(
             primaryTimeout: Long,
@@ -43,30 +49,23 @@ class AStarPathFinder
         ): Optional<IPath> {
             val minY = calcContext.world.dimensionType().minY()
             val height = calcContext.world.dimensionType().height()
+            val repaired = previousSearch?.takeIf { costsStillHold(it) }?.let { repairFrom(it) }
             startNode = getNodeAtPosition(startX, startY, startZ, pack(startX, startY, startZ).packed)
             startNode!!.cost = 0.0
             startNode!!.combinedCost = startNode!!.estimatedCostToGoal
             val openSet = BinaryHeapOpenSet()
-            openSet.insert(startNode!!)
+            if (repaired != null) {
+                repaired.open.forEach { openSet.insert(it) }
+            } else {
+                openSet.insert(startNode!!)
+            }
 
-            MutableMoveResult()
+            val moveResult = MutableMoveResult()
+            val candidates = MovementBuffer()
             val worldBorder = BetterWorldBorder(calcContext.world.worldBorder)
+            val costs = CandidateCosts(calcContext, preferredPaths, route)
             val startTime = System.currentTimeMillis()
 
-            // Phase configuration for progressive epsilon search
-            data class SearchPhase(
-                val epsilon: Double,
-                val durationMs: Long,
-            )
-            val phases =
-                listOf(
-                    SearchPhase(1.0, 200L), // Standard A*
-                    SearchPhase(3.0, 150L), // Modest goal bias
-                    SearchPhase(10.0, 150L), // Greedy
-                    SearchPhase(30.0, 500L), // Very greedy (extended)
-                    SearchPhase(100.0, 1000L), // Extremely greedy (extended)
-                )
-
             var currentPhaseIndex = 0
             var currentEpsilon = phases[0].epsilon
             var phaseStartTime = startTime
@@ -75,8 +74,8 @@ class AStarPathFinder
             // Track phase timing for debug snapshot
             val phaseInfos = mutableListOf<PhaseInfo>()
 
-            var bestNodeThisSearch: PathNode? = startNode
-            var bestHeuristicThisSearch = startNode!!.estimatedCostToGoal
+            var bestNodeThisSearch: PathNode? = repaired?.best ?: startNode
+            var bestHeuristicThisSearch = bestNodeThisSearch!!.combinedCost
             val slowPath =
                 Agent
                     .getPrimaryAgent()
@@ -114,11 +113,10 @@ class AStarPathFinder
                         failureTimeout
                     }
                 )
-            var failing = true
+            var failing = getDistFromStartSq(bestNodeThisSearch) <= 1.0
             var numNodes = 0
             var numMovementsConsidered = 0
             var numEmptyChunk = 0
-            val isFavoring = !preferredPaths.isEmpty
             val timeCheckInterval = 1 shl 6
 
             // Grab all settings beforehand so that changing settings during pathing doesn't cause a crash or unpredictable behavior
@@ -240,17 +238,19 @@ class AStarPathFinder
                     return Optional.of(Path(realStart, startNode!!, currentNode, numNodes, goal, calcContext))
                 }
 
-                // Generate movements for current position
-                val currentPos = PackedBlockPos(currentNode.x, currentNode.y, currentNode.z)
-                val movements = movementProvider.generateMovements(calcContext, currentPos).toList()
+                // Expand neighbours into the reusable buffer (no per-neighbour allocation)
+                candidates.clear()
+                movementProvider.expand(calcContext, currentNode.x, currentNode.y, currentNode.z, moveResult, candidates)
+                costs.beginExpansion()
 
-                for (movement in movements) {
+                for (i in 0 until candidates.size) {
                     numMovementsConsidered++
 
-                    val dest = movement.dest
-                    val newX = dest.x
-                    val newY = dest.y
-                    val newZ = dest.z
+                    val newX = candidates.x[i]
+                    val newY = candidates.y[i]
+                    val newZ = candidates.z[i]
+                    val move = candidates.move[i]
+                    val movement = candidates.movement[i]
 
                     // Chunk loading check
                     if ((newX shr 4 != currentNode.x shr 4 || newZ shr 4 != currentNode.z shr 4) &&
@@ -270,61 +270,12 @@ class AStarPathFinder
                         continue
                     }
 
-                    // Get cost (already calculated during movement creation)
-                    var actionCost = movement.cost
+                    val actionCost = costs.cost(currentNode.x, currentNode.y, currentNode.z, currentNode.cost, candidates, i)
                     if (actionCost >= ActionCosts.COST_INF) {
                         continue
                     }
 
-                    // Apply failure memory penalties (only for Movement subclasses)
-                    if (movement is Movement) {
-                        val movementClass = movement::class.java
-                        val src = PackedBlockPos(currentNode.x, currentNode.y, currentNode.z)
-
-                        // Check if movement should be filtered due to excessive failures
-                        if (calcContext.failureMemory.shouldFilter(src, dest, movementClass)) {
-                            log
-                                .atDebug()
-                                .addKeyValue("src", src.format())
-                                .addKeyValue("dest", dest.format())
-                                .addKeyValue("movement_type", movement::class.java.simpleName)
-                                .log("Filtered movement due to excessive failures")
-                            continue
-                        }
-
-                        // Apply cost penalty based on failure history
-                        val penalty = calcContext.failureMemory.getCostPenalty(src, dest, movementClass)
-                        if (penalty > 1.0) {
-                            log
-                                .atDebug()
-                                .addKeyValue("src", src.format())
-                                .addKeyValue("dest", dest.format())
-                                .addKeyValue("movement_type", movement::class.java.simpleName)
-                                .addKeyValue("penalty", penalty.format())
-                                .addKeyValue("original_cost", actionCost.format())
-                                .addKeyValue("penalized_cost", (actionCost * penalty).format())
-                                .log("Applying failure penalty")
-                            actionCost *= penalty
-                        }
-
-                        // Re-check if penalized cost is now infinite
-                        if (actionCost >= ActionCosts.COST_INF) {
-                            continue
-                        }
-                    }
-
-                    if (actionCost <= 0 || actionCost.isNaN()) {
-                        throw IllegalStateException(
-                            "${movement::class.java.simpleName} from ${currentNode.x} ${currentNode.y} ${currentNode.z} calculated implausible cost $actionCost",
-                        )
-                    }
-
-                    val hashCode = pack(newX, newY, newZ).packed
-                    if (isFavoring) {
-                        // see issue #18
-                        actionCost *= preferredPaths.calculate(hashCode)
-                    }
-
+                    val hashCode = BlockPos.asLong(newX, newY, newZ)
                     val neighbor = getNodeAtPosition(newX, newY, newZ, hashCode)
                     val tentativeCost = currentNode.cost + actionCost
 
@@ -333,7 +284,8 @@ class AStarPathFinder
                         neighbor.cost = tentativeCost
                         neighbor.combinedCost = tentativeCost + neighbor.estimatedCostToGoal * currentEpsilon
 
-                        // Store movement reference directly in node
+                        // Remember how we got here; Path materializes the Movement later if needed
+                        neighbor.previousMove = move
                         neighbor.previousMovement = movement
 
                         if (neighbor.isOpen()) {
@@ -397,6 +349,18 @@ class AStarPathFinder
             return result
         }
 
+        /**
+         * Whether the costs [previous] found still hold for this search. They don't with path
+         * reservations, whose penalties depend on when the search ran, or with another route, which
+         * moves the corridor that costs were penalised outside of. So with another agent around and
+         * reservations on, as they are by default, every search starts from scratch.
+         */
+        private fun costsStillHold(previous: AbstractNodeCostSearch): Boolean =
+            previous is AStarPathFinder &&
+                previous.route === route &&
+                previous.calcContext.reservations == null &&
+                calcContext.reservations == null
+
         /**
          * Captures pathfinding state snapshot for debug visualization.
          * Only captures when pathfindingDebugCapture setting is enabled.
@@ -445,9 +409,26 @@ class AStarPathFinder
             PathfindingSnapshotStore.store(snapshot)
         }
 
+        /** A stretch of the search spent at one goal bias */
+        data class SearchPhase(
+            val epsilon: Double,
+            val durationMs: Long,
+        )
+
         companion object {
             private val log: Logger = Loggers.Path.get()
 
+            /** Phase configuration for progressive epsilon search */
+            @JvmField
+            val DEFAULT_PHASES =
+                listOf(
+                    SearchPhase(1.0, 200L), // Standard A*
+                    SearchPhase(3.0, 150L), // Modest goal bias
+                    SearchPhase(10.0, 150L), // Greedy
+                    SearchPhase(30.0, 500L), // Very greedy (extended)
+                    SearchPhase(100.0, 1000L), // Extremely greedy (extended)
+                )
+
             /** Creates the default movement provider with all movement types. */
             fun createDefaultProvider(): IMovementProvider =
                 CompositeMovementProvider(
@@ -1,6 +1,7 @@
 package maestro.pathing.calc
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
 import maestro.Agent
 import maestro.pathing.goals.Goal
 import maestro.pathing.movement.CalculationContext
@@ -8,6 +9,7 @@ import maestro.utils.Loggers
 import maestro.utils.PackedBlockPos
 import maestro.utils.PathCalculationResult
 import maestro.utils.format
+import net.minecraft.core.BlockPos
 import org.slf4j.Logger
 import java.util.Optional
 import kotlin.math.sqrt
@@ -24,17 +26,12 @@ abstract class AbstractNodeCostSearch(
     private val context: CalculationContext,
 ) {
     /**
+     * Made on the first [getNodeAtPosition], so searches that keep their nodes elsewhere don't
+     * allocate one.
+     *
      * @see [Issue #107](https://github.com/cabaletta/baritone/issues/107)
      */
-    private val map: Long2ObjectOpenHashMap<PathNode> =
-        Long2ObjectOpenHashMap(
-            Agent
-                .getPrimaryAgent()
-                .settings.pathingMapDefaultSize.value,
-            Agent
-                .getPrimaryAgent()
-                .settings.pathingMapLoadFactor.value,
-        )
+    private var map: Long2ObjectOpenHashMap<PathNode>? = null
 
     protected var startNode: PathNode? = null
 
@@ -43,19 +40,78 @@ abstract class AbstractNodeCostSearch(
     @Volatile
     private var isFinished: Boolean = false
 
+    /**
+     * Whether the path found reached the goal. Nodes of a search that didn't are no use to a repair:
+     * those it closed at the edge of the loaded chunks are never expanded again once more load.
+     */
+    @Volatile
+    private var reachedGoal: Boolean = false
+
+    /**
+     * Set from other threads, possibly before [calculate] starts (e.g. while the search is still
+     * queued in [maestro.pathing.PathfindingScheduler]); such a search returns immediately.
+     */
+    @Volatile
     protected var cancelRequested: Boolean = false
 
     fun cancel() {
         cancelRequested = true
     }
 
+    /** Blocks changed since this search started, packed, for a later search repairing its nodes */
+    private val changedBlocks = LongOpenHashSet()
+
+    /** Records blocks that changed while this search ran or since, so [repairFrom] can account for them */
+    fun blocksChanged(positions: Collection<BlockPos>) {
+        synchronized(changedBlocks) {
+            for (pos in positions) {
+                changedBlocks.add(pos.asLong())
+            }
+        }
+    }
+
+    /**
+     * Takes over the nodes of a finished search for the same goal, repaired for the blocks that
+     * changed since it started and re-rooted at this search's start.
+     *
+     * @return what to continue the search from, or null to search from scratch
+     */
+    internal fun repairFrom(previous: AbstractNodeCostSearch): SearchRepair.Result? {
+        check(previous.isFinished) { "Can only repair a finished search" }
+        val nodes = previous.map
+        if (!previous.reachedGoal || previous.goal != goal || nodes == null || nodes.isEmpty()) {
+            return null
+        }
+        val changed = LongOpenHashSet()
+        synchronized(previous.changedBlocks) {
+            changed.addAll(previous.changedBlocks)
+        }
+        // reported to this search before it started; what it finds from here on already sees them
+        synchronized(changedBlocks) {
+            changed.addAll(changedBlocks)
+            changedBlocks.clear()
+        }
+        previous.map = null
+        val result = SearchRepair(nodes, changed).repair(BlockPos.asLong(startX, startY, startZ), goal)
+        if (result != null) {
+            map = nodes
+            log
+                .atDebug()
+                .addKeyValue("kept", result.kept)
+                .addKeyValue("dropped", result.dropped)
+                .addKeyValue("open", result.open.size)
+                .addKeyValue("changed_blocks", changed.size)
+                .log("Repaired previous search")
+        }
+        return result
+    }
+
     @Synchronized
     fun calculate(
         primaryTimeout: Long,
         failureTimeout: Long,
     ): PathCalculationResult {
         check(!isFinished) { "Path finder cannot be reused!" }
-        cancelRequested = false
 
         return try {
             var path: IPath? =
@@ -91,6 +147,7 @@ abstract class AbstractNodeCostSearch(
             }
 
             if (goal.isInGoal(path.dest.toBlockPos())) {
+                reachedGoal = true
                 PathCalculationResult(PathCalculationResult.Type.SUCCESS_TO_GOAL, path)
             } else {
                 PathCalculationResult(PathCalculationResult.Type.SUCCESS_SEGMENT, path)
@@ -104,6 +161,22 @@ abstract class AbstractNodeCostSearch(
         }
     }
 
+    /**
+     * Runs the search without what [calculate] does to the path afterwards, for a search that
+     * runs others and picks between their paths.
+     */
+    internal fun calculateUnprocessed(
+        primaryTimeout: Long,
+        failureTimeout: Long,
+    ): Optional<IPath> {
+        check(!isFinished) { "Path finder cannot be reused!" }
+        return try {
+            calculate0(primaryTimeout, failureTimeout)
+        } finally {
+            isFinished = true
+        }
+    }
+
     protected abstract fun calculate0(
         primaryTimeout: Long,
         failureTimeout: Long,
@@ -136,15 +209,24 @@ abstract class AbstractNodeCostSearch(
         z: Int,
         hashCode: Long,
     ): PathNode {
-        var node = map.get(hashCode)
+        val nodes =
+            map ?: Long2ObjectOpenHashMap<PathNode>(
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingMapDefaultSize.value,
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingMapLoadFactor.value,
+            ).also { map = it }
+        var node = nodes.get(hashCode)
         if (node == null) {
             node = PathNode(x, y, z, goal)
-            map.put(hashCode, node)
+            nodes.put(hashCode, node)
         }
         return node
     }
 
-    fun pathToMostRecentNodeConsidered(): Optional<IPath> =
+    open fun pathToMostRecentNodeConsidered(): Optional<IPath> =
         Optional
             .ofNullable(mostRecentConsidered)
             .map { node -> Path(realStart, startNode!!, node, 0, goal, context) }
@@ -242,7 +324,7 @@ abstract class AbstractNodeCostSearch(
 
     fun getStart(): PackedBlockPos = PackedBlockPos(startX, startY, startZ)
 
-    protected fun mapSize(): Int = map.size
+    protected fun mapSize(): Int = map?.size ?: 0
 
     /**
      * Provides access to the internal node map for snapshot capture.
@@ -250,7 +332,7 @@ abstract class AbstractNodeCostSearch(
      * This is used by [PathfindingSnapshot.capture] to capture all visited nodes
      * after pathfinding completes. The map should not be modified externally.
      */
-    internal fun getNodeMap(): Long2ObjectOpenHashMap<PathNode> = map
+    internal fun getNodeMap(): Long2ObjectOpenHashMap<PathNode> = map ?: Long2ObjectOpenHashMap()
 
     companion object {
         private val log: Logger = Loggers.Path.get()
@@ -0,0 +1,83 @@
+package maestro.pathing.calc
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import maestro.cache.CachedChunk
+import maestro.cache.CachedWorld
+import maestro.pathing.PathingBlockType
+import maestro.pathing.movement.ActionCosts
+import net.minecraft.world.level.ChunkPos
+import java.util.Optional
+
+/**
+ * Chunk crossing costs read off the world cache. Where the surface columns on either side of a
+ * chunk border are within a step or a short drop of each other there is a portal, and crossing
+ * costs what walking the chunk does; without one the crossing takes swimming, or digging and
+ * bridging, and costs more. Chunks that were never cached cost a little more than open ground, so
+ * routes keep to known terrain where it isn't much of a detour.
+ *
+ * Reads chunks as it goes and keeps them for the one search; not thread-safe.
+ */
+class CachedChunkGraph(
+    private val world: CachedWorld,
+) : ChunkGraph {
+    private val chunks = Long2ObjectOpenHashMap<Optional<CachedChunk>>()
+
+    override val minCost: Double = CHUNK_COST
+
+    override fun cost(
+        fromX: Int,
+        fromZ: Int,
+        toX: Int,
+        toZ: Int,
+    ): Double {
+        val from = chunk(fromX, fromZ)
+        val to = chunk(toX, toZ)
+        if (from == null || to == null) {
+            return CHUNK_COST * UNKNOWN_FACTOR
+        }
+
+        val dx = toX - fromX
+        val dz = toZ - fromZ
+        var wet = false
+        for (i in 0 until 16) {
+            // the columns on either side of the border
+            val fx = if (dx > 0) 15 else if (dx < 0) 0 else i
+            val fz = if (dz > 0) 15 else if (dz < 0) 0 else i
+            val tx = if (dx != 0) 15 - fx else i
+            val tz = if (dz != 0) 15 - fz else i
+            val fromType = from.getTopType(fx, fz)
+            val toType = to.getTopType(tx, tz)
+            val climb = to.getHeight(tx, tz) - from.getHeight(fx, fz)
+            if (fromType == PathingBlockType.SOLID && toType == PathingBlockType.SOLID && climb in -MAX_DROP..1) {
+                return CHUNK_COST
+            }
+            wet = wet || fromType == PathingBlockType.WATER || toType == PathingBlockType.WATER
+        }
+        return CHUNK_COST * if (wet) WATER_FACTOR else BLOCKED_FACTOR
+    }
+
+    private fun chunk(
+        x: Int,
+        z: Int,
+    ): CachedChunk? {
+        val key = ChunkPos.asLong(x, z)
+        var chunk = chunks.get(key)
+        if (chunk == null) {
+            chunk = Optional.ofNullable(world.getChunk(x, z))
+            chunks.put(key, chunk)
+        }
+        return chunk.orElse(null)
+    }
+
+    companion object {
+        /** Walking across a chunk */
+        const val CHUNK_COST = 16 * ActionCosts.WALK_ONE_BLOCK_COST
+
+        const val UNKNOWN_FACTOR = 1.5
+        const val WATER_FACTOR = 2.0
+        const val BLOCKED_FACTOR = 4.0
+
+        /** Furthest a portal drops from one side of the border to the other */
+        private const val MAX_DROP = 3
+    }
+}
@@ -0,0 +1,135 @@
+package maestro.pathing.calc
+
+import maestro.Agent
+import maestro.pathing.PathReservations
+import maestro.pathing.PreferredPaths
+import maestro.pathing.movement.ActionCosts
+import maestro.pathing.movement.CalculationContext
+import maestro.pathing.movement.Movement
+import maestro.utils.Loggers
+import maestro.utils.PackedBlockPos
+import maestro.utils.format
+import net.minecraft.core.BlockPos
+import org.slf4j.Logger
+
+/**
+ * What a search adds to the cost of a move on top of what the movement calculated: failure
+ * memory, path reservations, the route corridor and preferred paths. Shared by the searches so
+ * they agree on what a path costs however they keep their nodes.
+ *
+ * Settings are read once, when the search starts.
+ */
+internal class CandidateCosts(
+    private val calcContext: CalculationContext,
+    private val preferredPaths: PreferredPaths,
+    /** The chunk-level route the search refines a stretch of, or null if there is none */
+    private val route: ChunkRoute?,
+) {
+    private val reservations = calcContext.reservations
+    private val isFavoring = !preferredPaths.isEmpty
+    private val corridorPenalty =
+        Agent
+            .getPrimaryAgent()
+            .settings.pathingRouteCorridorPenalty.value
+
+    /** Failure memory lookups allocate keys, so it's only consulted when it has entries */
+    private var checkFailures = false
+
+    /** Called before the candidates of each expanded node are costed */
+    fun beginExpansion() {
+        checkFailures = calcContext.failureMemory.size() > 0
+    }
+
+    /**
+     * @param fromCost cost of getting to the expanded node
+     * @return the cost of candidate [i] as the search should see it, or [ActionCosts.COST_INF] to
+     * leave it out
+     */
+    fun cost(
+        fromX: Int,
+        fromY: Int,
+        fromZ: Int,
+        fromCost: Double,
+        candidates: MovementBuffer,
+        i: Int,
+    ): Double {
+        var actionCost = candidates.cost[i]
+        if (actionCost >= ActionCosts.COST_INF) {
+            return ActionCosts.COST_INF
+        }
+        val newX = candidates.x[i]
+        val newY = candidates.y[i]
+        val newZ = candidates.z[i]
+        val move = candidates.move[i]
+        val movement = candidates.movement[i]
+
+        // Apply failure memory penalties (only for Movement subclasses)
+        val movementClass = move?.movementClass ?: (movement as? Movement)?.javaClass
+        if (checkFailures && movementClass != null) {
+            val src = PackedBlockPos(fromX, fromY, fromZ)
+            val dest = PackedBlockPos(newX, newY, newZ)
+
+            // Check if movement should be filtered due to excessive failures
+            if (calcContext.failureMemory.shouldFilter(src, dest, movementClass)) {
+                log
+                    .atDebug()
+                    .addKeyValue("src", src.format())
+                    .addKeyValue("dest", dest.format())
+                    .addKeyValue("movement_type", movementClass.simpleName)
+                    .log("Filtered movement due to excessive failures")
+                return ActionCosts.COST_INF
+            }
+
+            // Apply cost penalty based on failure history
+            val penalty = calcContext.failureMemory.getCostPenalty(src, dest, movementClass)
+            if (penalty > 1.0) {
+                log
+                    .atDebug()
+                    .addKeyValue("src", src.format())
+                    .addKeyValue("dest", dest.format())
+                    .addKeyValue("movement_type", movementClass.simpleName)
+                    .addKeyValue("penalty", penalty.format())
+                    .addKeyValue("original_cost", actionCost.format())
+                    .addKeyValue("penalized_cost", (actionCost * penalty).format())
+                    .log("Applying failure penalty")
+                actionCost *= penalty
+            }
+
+            // Re-check if penalized cost is now infinite
+            if (actionCost >= ActionCosts.COST_INF) {
+                return ActionCosts.COST_INF
+            }
+        }
+
+        if (actionCost <= 0 || actionCost.isNaN()) {
+            throw IllegalStateException(
+                "${move?.name ?: movement?.javaClass?.simpleName} from $fromX $fromY $fromZ calculated implausible cost $actionCost",
+            )
+        }
+
+        // Steer around where other agents are expected to be when we get there
+        if (reservations != null) {
+            val arrival =
+                calcContext.reservationsFrom +
+                    ((fromCost + actionCost) * PathReservations.MS_PER_TICK).toLong()
+            if (reservations.isReserved(newX, newY, newZ, arrival)) {
+                actionCost += calcContext.reservationPenalty
+            }
+        }
+
+        // Keep to the corridor around the route, which the goal is only a stretch of
+        if (route != null && !route.isInCorridor(newX, newZ)) {
+            actionCost *= corridorPenalty
+        }
+
+        if (isFavoring) {
+            // see issue #18
+            actionCost *= preferredPaths.calculate(BlockPos.asLong(newX, newY, newZ))
+        }
+        return actionCost
+    }
+
+    companion object {
+        private val log: Logger = Loggers.Path.get()
+    }
+}
@@ -0,0 +1,230 @@
+package maestro.pathing.calc
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import maestro.pathing.movement.ActionCosts
+import net.minecraft.world.level.ChunkPos
+import java.util.PriorityQueue
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/** Coarse costs of crossing between neighbouring chunks, which long-distance routes are planned on */
+interface ChunkGraph {
+    /** Least any crossing costs, so the route search can estimate what's left */
+    val minCost: Double
+
+    /**
+     * @return the cost of moving from a chunk into one of its four neighbours, or
+     * [ActionCosts.COST_INF] if that can't be done
+     */
+    fun cost(
+        fromX: Int,
+        fromZ: Int,
+        toX: Int,
+        toZ: Int,
+    ): Double
+}
+
+/**
+ * A route from chunk to chunk, planned over a [ChunkGraph] before the block-level search refines it
+ * stretch by stretch. The chunks along it, and those next to them, make up the corridor the
+ * block-level search is kept to.
+ */
+class ChunkRoute(
+    /** The chunks along the route, packed as by [ChunkPos.asLong], from start to goal */
+    private val chunks: LongArray,
+) {
+    private val corridor = LongOpenHashSet()
+
+    init {
+        require(chunks.isNotEmpty()) { "Route must have at least one chunk" }
+        for (chunk in chunks) {
+            val x = ChunkPos.getX(chunk)
+            val z = ChunkPos.getZ(chunk)
+            for (dx in -CORRIDOR_RADIUS..CORRIDOR_RADIUS) {
+                for (dz in -CORRIDOR_RADIUS..CORRIDOR_RADIUS) {
+                    corridor.add(ChunkPos.asLong(x + dx, z + dz))
+                }
+            }
+        }
+    }
+
+    val size: Int get() = chunks.size
+
+    fun chunkX(index: Int): Int = ChunkPos.getX(chunks[index])
+
+    fun chunkZ(index: Int): Int = ChunkPos.getZ(chunks[index])
+
+    /** @return whether the block column is in or next to a chunk of the route */
+    fun isInCorridor(
+        x: Int,
+        z: Int,
+    ): Boolean = corridor.contains(ChunkPos.asLong(x shr 4, z shr 4))
+
+    /**
+     * @return how far along the route a chunk in the corridor is, as the index of the furthest
+     * route chunk next to it, or -1 if it's outside the corridor
+     */
+    fun progress(
+        chunkX: Int,
+        chunkZ: Int,
+    ): Int {
+        if (!corridor.contains(ChunkPos.asLong(chunkX, chunkZ))) {
+            return -1
+        }
+        for (i in chunks.indices.reversed()) {
+            if (abs(chunkX(i) - chunkX) <= CORRIDOR_RADIUS && abs(chunkZ(i) - chunkZ) <= CORRIDOR_RADIUS) {
+                return i
+            }
+        }
+        return -1
+    }
+
+    /**
+     * Picks where the next block-level search should head: the furthest chunk at most [maxChunks]
+     * along the route from [from], with every chunk on the way there loaded or cached.
+     *
+     * @return its index; [size] - 1 once the goal's chunk is in reach
+     */
+    fun waypoint(
+        from: Int,
+        maxChunks: Int,
+        isLoaded: (chunkX: Int, chunkZ: Int) -> Boolean,
+    ): Int {
+        val last = min(from + maxChunks, chunks.size - 1)
+        var waypoint = min(from + 1, chunks.size - 1)
+        for (i in waypoint + 1..last) {
+            if (!isLoaded(chunkX(i), chunkZ(i))) {
+                break
+            }
+            waypoint = i
+        }
+        return waypoint
+    }
+
+    companion object {
+        /** How many chunks to either side of the route the corridor takes in */
+        const val CORRIDOR_RADIUS = 1
+
+        /** Routes are planned a little greedily; they guide the block-level search, not bind it */
+        private const val EPSILON = 1.5
+
+        private val SQRT_2 = sqrt(2.0)
+
+        private val DIRECTIONS =
+            arrayOf(
+                intArrayOf(1, 0),
+                intArrayOf(-1, 0),
+                intArrayOf(0, 1),
+                intArrayOf(0, -1),
+                intArrayOf(1, 1),
+                intArrayOf(1, -1),
+                intArrayOf(-1, 1),
+                intArrayOf(-1, -1),
+            )
+
+        private class Entry(
+            val chunk: Long,
+            val priority: Double,
+        )
+
+        /**
+         * Plans a route over the graph with A*, moving diagonally where a way around the corner is
+         * open.
+         *
+         * @param maxChunks How many chunks to expand before giving up
+         * @return the route, or null if there is none or it took too long to find
+         */
+        @JvmStatic
+        fun plan(
+            graph: ChunkGraph,
+            startX: Int,
+            startZ: Int,
+            goalX: Int,
+            goalZ: Int,
+            maxChunks: Int,
+        ): ChunkRoute? {
+            val start = ChunkPos.asLong(startX, startZ)
+            val goal = ChunkPos.asLong(goalX, goalZ)
+            val costs = Long2DoubleOpenHashMap()
+            costs.defaultReturnValue(Double.POSITIVE_INFINITY)
+            val previous = Long2LongOpenHashMap()
+            val closed = LongOpenHashSet()
+            val open = PriorityQueue<Entry>(compareBy { it.priority })
+
+            fun estimate(
+                x: Int,
+                z: Int,
+            ): Double {
+                val dx = abs(goalX - x)
+                val dz = abs(goalZ - z)
+                return graph.minCost * (max(dx, dz) + (SQRT_2 - 1) * min(dx, dz))
+            }
+
+            costs[start] = 0.0
+            open.add(Entry(start, estimate(startX, startZ)))
+            while (open.isNotEmpty()) {
+                val chunk = open.poll().chunk
+                if (!closed.add(chunk)) {
+                    continue
+                }
+                if (chunk == goal) {
+                    return ChunkRoute(trace(previous, start, goal))
+                }
+                if (closed.size > maxChunks) {
+                    return null
+                }
+
+                val x = ChunkPos.getX(chunk)
+                val z = ChunkPos.getZ(chunk)
+                val cost = costs.get(chunk)
+                for ((dx, dz) in DIRECTIONS) {
+                    val next = ChunkPos.asLong(x + dx, z + dz)
+                    if (closed.contains(next)) {
+                        continue
+                    }
+                    val step =
+                        if (dx == 0 || dz == 0) {
+                            graph.cost(x, z, x + dx, z + dz)
+                        } else {
+                            // whichever way around the corner is cheaper, cut short
+                            val viaX = graph.cost(x, z, x + dx, z) + graph.cost(x + dx, z, x + dx, z + dz)
+                            val viaZ = graph.cost(x, z, x, z + dz) + graph.cost(x, z + dz, x + dx, z + dz)
+                            min(viaX, viaZ) * SQRT_2 / 2
+                        }
+                    if (step >= ActionCosts.COST_INF) {
+                        continue
+                    }
+                    val tentative = cost + step
+                    if (tentative < costs.get(next)) {
+                        costs[next] = tentative
+                        previous[next] = chunk
+                        open.add(Entry(next, tentative + EPSILON * estimate(x + dx, z + dz)))
+                    }
+                }
+            }
+            return null
+        }
+
+        private fun trace(
+            previous: Long2LongOpenHashMap,
+            start: Long,
+            goal: Long,
+        ): LongArray {
+            val chunks = LongArrayList()
+            var chunk = goal
+            while (chunk != start) {
+                chunks.add(chunk)
+                chunk = previous.get(chunk)
+            }
+            chunks.add(start)
+            val route = chunks.toLongArray()
+            route.reverse()
+            return route
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package maestro.pathing.calc
+
+import maestro.Agent
+import maestro.pathing.BetterWorldBorder
+import maestro.pathing.MutableMoveResult
+import maestro.pathing.PreferredPaths
+import maestro.pathing.calc.openset.NodeHeapOpenSet
+import maestro.pathing.goals.Goal
+import maestro.pathing.movement.ActionCosts
+import maestro.pathing.movement.CalculationContext
+import maestro.pathing.movement.IMovementProvider
+import maestro.utils.Loggers
+import maestro.utils.PackedBlockPos
+import maestro.utils.format
+import net.minecraft.core.BlockPos
+import org.slf4j.Logger
+import java.util.Optional
+
+/**
+ * The same search as [AStarPathFinder], with its nodes kept in a [NodeStore] rather than as
+ * [PathNode] objects, for searches too big to keep an object per node. Node objects are only made
+ * for the path it returns.
+ *
+ * Unlike [AStarPathFinder] it can't continue a previous search, isn't captured for the debug view
+ * and isn't slowed down by the slow path settings.
+ */
+class CompactAStarPathFinder
+    @JvmOverloads
+    constructor(
+        realStart: PackedBlockPos,
+        startX: Int,
+        startY: Int,
+        startZ: Int,
+        goal: Goal,
+        private val preferredPaths: PreferredPaths,
+        private val calcContext: CalculationContext,
+        private val movementProvider: IMovementProvider = AStarPathFinder.createDefaultProvider(),
+        /** The chunk-level route this search refines a stretch of, or null if there is none */
+        private val route: ChunkRoute? = null,
+        /** The goal biases to search with in turn; a single phase keeps to one for the whole search */
+        private val phases: List<AStarPathFinder.SearchPhase> = AStarPathFinder.DEFAULT_PHASES,
+    ) : AbstractNodeCostSearch(realStart, startX, startY, startZ, goal, calcContext) {
+        private val store =
+            NodeStore(
+                goal,
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingMapDefaultSize.value,
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingMapLoadFactor.value,
+            )
+
+        /**
+         * Path to the node expanded last, remade every [PUBLISH_INTERVAL_MS] for the renderer. The
+         * store itself is only ever read by the search thread.
+         */
+        @Volatile
+        private var mostRecentNode: PathNode? = null
+
+        override fun calculate0(
+            primaryTimeout: Long,
+            failureTimeout: Long,
+        ): Optional<IPath> {
+            val minY = calcContext.world.dimensionType().minY()
+            val height = calcContext.world.dimensionType().height()
+            val start = store.getOrCreate(startX, startY, startZ, BlockPos.asLong(startX, startY, startZ))
+            store.cost[start] = 0.0
+            store.combinedCost[start] = store.heuristic[start]
+            startNode = store.toPathNode(start)
+            val openSet = NodeHeapOpenSet(store)
+            openSet.insert(start)
+
+            val moveResult = MutableMoveResult()
+            val candidates = MovementBuffer()
+            val worldBorder = BetterWorldBorder(calcContext.world.worldBorder)
+            val costs = CandidateCosts(calcContext, preferredPaths, route)
+            val startTime = System.currentTimeMillis()
+
+            var currentPhaseIndex = 0
+            var currentEpsilon = phases[0].epsilon
+            var phaseStartTime = startTime
+
+            var best = start
+            var mostRecent = start
+            var lastPublished = startTime
+            var bestHeuristic = store.combinedCost[start]
+            val primaryTimeoutTime = startTime + primaryTimeout
+            val failureTimeoutTime = startTime + failureTimeout
+            var failing = true
+            var numNodes = 0
+            var numMovementsConsidered = 0
+            var numEmptyChunk = 0
+            val timeCheckInterval = 1 shl 6
+
+            // Grab all settings beforehand so that changing settings during pathing doesn't cause a crash or unpredictable behavior
+            val pathingMaxChunkBorderFetch =
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingMaxChunkBorderFetch.value
+            val minimumImprovement =
+                if (Agent
+                        .getPrimaryAgent()
+                        .settings.minimumImprovementRepropagation.value
+                ) {
+                    MIN_IMPROVEMENT
+                } else {
+                    0.0
+                }
+
+            while (!openSet.isEmpty() && numEmptyChunk < pathingMaxChunkBorderFetch && !cancelRequested) {
+                // Only call this once every 64 nodes (about half a millisecond)
+                if ((numNodes and (timeCheckInterval - 1)) == 0) {
+                    val now = System.currentTimeMillis()
+
+                    if (now - lastPublished >= PUBLISH_INTERVAL_MS) {
+                        mostRecentNode = nodeChain(mostRecent)
+                        lastPublished = now
+                    }
+
+                    if (currentPhaseIndex < phases.size - 1 &&
+                        now - phaseStartTime >= phases[currentPhaseIndex].durationMs
+                    ) {
+                        currentPhaseIndex++
+                        // Only activate extended phases if failing
+                        if (currentPhaseIndex >= 3 && !failing) {
+                            log
+                                .atInfo()
+                                .addKeyValue("reason", "not_failing")
+                                .log("Skipping extended phases")
+                            break
+                        }
+                        currentEpsilon = phases[currentPhaseIndex].epsilon
+                        phaseStartTime = now
+                        openSet.rebuildWithEpsilon(currentEpsilon)
+                    }
+
+                    if (now - failureTimeoutTime >= 0 || (!failing && now - primaryTimeoutTime >= 0)) {
+                        break
+                    }
+                }
+
+                val current = openSet.removeLowest()
+                mostRecent = current
+                numNodes++
+
+                val x = store.x(current)
+                val y = store.y(current)
+                val z = store.z(current)
+                if (goal.isInGoal(x, y, z)) {
+                    log
+                        .atInfo()
+                        .addKeyValue("duration_ms", System.currentTimeMillis() - startTime)
+                        .addKeyValue("movements_considered", numMovementsConsidered)
+                        .addKeyValue("nodes", store.size)
+                        .log("Path found")
+                    return Optional.of(Path(realStart, startNode!!, nodeChain(current), numNodes, goal, calcContext))
+                }
+
+                candidates.clear()
+                movementProvider.expand(calcContext, x, y, z, moveResult, candidates)
+                costs.beginExpansion()
+                val currentCost = store.cost[current]
+
+                for (i in 0 until candidates.size) {
+                    numMovementsConsidered++
+
+                    val newX = candidates.x[i]
+                    val newY = candidates.y[i]
+                    val newZ = candidates.z[i]
+
+                    if ((newX shr 4 != x shr 4 || newZ shr 4 != z shr 4) && !calcContext.isLoaded(newX, newZ)) {
+                        numEmptyChunk++
+                        continue
+                    }
+                    if (!worldBorder.entirelyContains(newX, newZ)) {
+                        continue
+                    }
+                    if (newY !in minY..height) {
+                        continue
+                    }
+
+                    val actionCost = costs.cost(x, y, z, currentCost, candidates, i)
+                    if (actionCost >= ActionCosts.COST_INF) {
+                        continue
+                    }
+
+                    val neighbor = store.getOrCreate(newX, newY, newZ, BlockPos.asLong(newX, newY, newZ))
+                    val tentativeCost = currentCost + actionCost
+
+                    if (store.cost[neighbor] - tentativeCost > minimumImprovement) {
+                        store.setPrevious(neighbor, current, candidates.move[i], candidates.movement[i])
+                        store.cost[neighbor] = tentativeCost
+                        store.combinedCost[neighbor] = tentativeCost + store.heuristic[neighbor] * currentEpsilon
+
+                        if (store.isOpen(neighbor)) {
+                            openSet.update(neighbor)
+                        } else {
+                            openSet.insert(neighbor)
+                        }
+
+                        if (bestHeuristic - store.combinedCost[neighbor] > minimumImprovement) {
+                            bestHeuristic = store.combinedCost[neighbor]
+                            best = neighbor
+                            if (failing && distFromStartSq(neighbor) > 1.0) {
+                                failing = false
+                            }
+                        }
+                    }
+                }
+            }
+
+            val durationMs = System.currentTimeMillis() - startTime
+            val reason =
+                when {
+                    cancelRequested -> PathfindingFailureReason.CANCELLED
+                    numEmptyChunk >= pathingMaxChunkBorderFetch -> PathfindingFailureReason.CHUNK_LOAD_LIMIT
+                    failing -> PathfindingFailureReason.UNREACHABLE
+                    System.currentTimeMillis() >= failureTimeoutTime -> PathfindingFailureReason.FAILURE_TIMEOUT
+                    else -> PathfindingFailureReason.PRIMARY_TIMEOUT
+                }
+            if (cancelRequested) {
+                return Optional.empty()
+            }
+
+            val result = bestSoFar(true, numNodes, durationMs, reason, nodeChain(best))
+            if (result.isPresent) {
+                log
+                    .atDebug()
+                    .addKeyValue("start", PackedBlockPos(startX, startY, startZ).format())
+                    .addKeyValue("goal", goal.toString())
+                    .addKeyValue("duration_ms", durationMs)
+                    .addKeyValue("movements_considered", numMovementsConsidered)
+                    .addKeyValue("nodes_explored", numNodes)
+                    .log("Path segment found")
+            }
+            return result
+        }
+
+        override fun pathToMostRecentNodeConsidered(): Optional<IPath> {
+            val end = mostRecentNode
+            val root = startNode
+            if (end == null || root == null) {
+                return Optional.empty()
+            }
+            return Optional.of(Path(realStart, root, end, 0, goal, calcContext))
+        }
+
+        private fun distFromStartSq(handle: Int): Double {
+            val dx = (store.x(handle) - startX).toDouble()
+            val dy = (store.y(handle) - startY).toDouble()
+            val dz = (store.z(handle) - startZ).toDouble()
+            return dx * dx + dy * dy + dz * dz
+        }
+
+        /**
+         * Makes [PathNode]s of the nodes from the start to [handle], linked as the search linked
+         * them. Only called from the search thread.
+         *
+         * @return the node for [handle]
+         */
+        private fun nodeChain(handle: Int): PathNode {
+            var node: PathNode? = null
+            for (h in store.chainTo(handle)) {
+                val previous = node
+                node = store.toPathNode(h).also { it.previous = previous }
+            }
+            return node!!
+        }
+
+        companion object {
+            private val log: Logger = Loggers.Path.get()
+
+            /** How often the path shown while searching is brought up to date */
+            private const val PUBLISH_INTERVAL_MS = 50L
+        }
+    }
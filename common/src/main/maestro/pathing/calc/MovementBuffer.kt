@@ -0,0 +1,64 @@
+package maestro.pathing.calc
+
+import maestro.pathing.MutableMoveResult
+import maestro.pathing.movement.IMovement
+import maestro.pathing.movement.MovementSink
+import maestro.pathing.movement.Moves
+
+/**
+ * Reusable [MovementSink] that copies candidate movements into parallel arrays.
+ *
+ * One buffer lives for the whole search and is cleared before each node expansion, so iterating
+ * neighbours does not allocate.
+ */
+internal class MovementBuffer : MovementSink {
+    @JvmField var size: Int = 0
+
+    @JvmField var x: IntArray = IntArray(INITIAL_CAPACITY)
+
+    @JvmField var y: IntArray = IntArray(INITIAL_CAPACITY)
+
+    @JvmField var z: IntArray = IntArray(INITIAL_CAPACITY)
+
+    @JvmField var cost: DoubleArray = DoubleArray(INITIAL_CAPACITY)
+
+    @JvmField var move: Array<Moves?> = arrayOfNulls(INITIAL_CAPACITY)
+
+    @JvmField var movement: Array<IMovement?> = arrayOfNulls(INITIAL_CAPACITY)
+
+    fun clear() {
+        // Drop materialized movements so they can be collected; enum refs are harmless
+        for (i in 0 until size) {
+            movement[i] = null
+        }
+        size = 0
+    }
+
+    override fun accept(result: MutableMoveResult) {
+        if (size == x.size) {
+            grow()
+        }
+        x[size] = result.x
+        y[size] = result.y
+        z[size] = result.z
+        cost[size] = result.cost
+        move[size] = result.move
+        movement[size] = result.movement
+        size++
+    }
+
+    private fun grow() {
+        val newSize = x.size shl 1
+        x = x.copyOf(newSize)
+        y = y.copyOf(newSize)
+        z = z.copyOf(newSize)
+        cost = cost.copyOf(newSize)
+        move = move.copyOf(newSize)
+        movement = movement.copyOf(newSize)
+    }
+
+    companion object {
+        /** Enough for every [Moves] entry plus a few dynamic movements */
+        private const val INITIAL_CAPACITY = 32
+    }
+}
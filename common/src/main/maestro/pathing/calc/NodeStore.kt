@@ -0,0 +1,187 @@
+package maestro.pathing.calc
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import maestro.pathing.goals.Goal
+import maestro.pathing.movement.ActionCosts
+import maestro.pathing.movement.IMovement
+import maestro.pathing.movement.Moves
+import net.minecraft.core.BlockPos
+
+/**
+ * Struct-of-arrays alternative to a map of [PathNode] objects.
+ *
+ * Every node is an int handle into parallel primitive arrays, so a node costs a few array slots
+ * instead of an object header, boxed references and a map entry pointing at it. Handles are
+ * assigned densely in discovery order and are never reused for the lifetime of the store.
+ *
+ * Fields mirror [PathNode]:
+ * - [pos]: packed position ([BlockPos.asLong] encoding)
+ * - [cost], [combinedCost], [heuristic]: same meaning as on [PathNode]
+ * - [parent]: handle of the previous node, or [NONE]
+ * - [heapIndex]: position in a [NodeHeapOpenSet], or [NONE] when not open
+ * - [move]: ordinal of the [Moves] entry used to reach the node, or -1
+ *
+ * Movements that are not backed by a [Moves] entry are kept in a sparse side table, since the
+ * standard providers never produce them.
+ *
+ * Not thread-safe; one store belongs to one search.
+ */
+class NodeStore
+    @JvmOverloads
+    constructor(
+        private val goal: Goal,
+        initialCapacity: Int = DEFAULT_CAPACITY,
+        loadFactor: Float = DEFAULT_LOAD_FACTOR,
+    ) {
+        @JvmField var pos: LongArray = LongArray(initialCapacity)
+
+        @JvmField var cost: DoubleArray = DoubleArray(initialCapacity)
+
+        @JvmField var combinedCost: DoubleArray = DoubleArray(initialCapacity)
+
+        @JvmField var heuristic: DoubleArray = DoubleArray(initialCapacity)
+
+        @JvmField var parent: IntArray = IntArray(initialCapacity)
+
+        @JvmField var heapIndex: IntArray = IntArray(initialCapacity)
+
+        @JvmField var move: ByteArray = ByteArray(initialCapacity)
+
+        private val index: Long2IntOpenHashMap =
+            Long2IntOpenHashMap(initialCapacity, loadFactor).apply {
+                defaultReturnValue(NONE)
+            }
+
+        private val movements = Int2ObjectOpenHashMap<IMovement>()
+
+        /** Number of nodes discovered so far; valid handles are `0 until size` */
+        var size: Int = 0
+            private set
+
+        /**
+         * Returns the handle for the node at the given position, creating it if needed.
+         *
+         * New nodes start with infinite cost, no parent and a heuristic computed from the goal.
+         *
+         * @param packed The packed position, as returned by [BlockPos.asLong]
+         */
+        fun getOrCreate(
+            x: Int,
+            y: Int,
+            z: Int,
+            packed: Long,
+        ): Int {
+            val existing = index.get(packed)
+            if (existing != NONE) {
+                return existing
+            }
+            if (size == pos.size) {
+                grow()
+            }
+            val handle = size++
+            val h = goal.heuristic(x, y, z)
+            require(!h.isNaN()) { "$goal calculated implausible heuristic NaN at $x $y $z" }
+            pos[handle] = packed
+            cost[handle] = ActionCosts.COST_INF
+            combinedCost[handle] = 0.0
+            heuristic[handle] = h
+            parent[handle] = NONE
+            heapIndex[handle] = NONE
+            move[handle] = NO_MOVE
+            index.put(packed, handle)
+            return handle
+        }
+
+        /** @return the handle at the packed position, or [NONE] if it was never discovered */
+        fun find(packed: Long): Int = index.get(packed)
+
+        fun isOpen(handle: Int): Boolean = heapIndex[handle] != NONE
+
+        fun x(handle: Int): Int = BlockPos.getX(pos[handle])
+
+        fun y(handle: Int): Int = BlockPos.getY(pos[handle])
+
+        fun z(handle: Int): Int = BlockPos.getZ(pos[handle])
+
+        /** Records how [handle] was reached, replacing any previous record */
+        fun setPrevious(
+            handle: Int,
+            previous: Int,
+            previousMove: Moves?,
+            previousMovement: IMovement?,
+        ) {
+            parent[handle] = previous
+            move[handle] = previousMove?.ordinal?.toByte() ?: NO_MOVE
+            if (previousMovement != null) {
+                movements.put(handle, previousMovement)
+            } else {
+                movements.remove(handle)
+            }
+        }
+
+        fun previousMove(handle: Int): Moves? {
+            val ordinal = move[handle].toInt()
+            return if (ordinal < 0) null else MOVES[ordinal]
+        }
+
+        fun previousMovement(handle: Int): IMovement? = movements.get(handle)
+
+        /**
+         * Walks parent links from [handle] back to the root.
+         *
+         * @return handles ordered from the root to [handle]
+         */
+        fun chainTo(handle: Int): IntArray {
+            var length = 0
+            var current = handle
+            while (current != NONE) {
+                length++
+                current = parent[current]
+            }
+            val chain = IntArray(length)
+            current = handle
+            for (i in length - 1 downTo 0) {
+                chain[i] = current
+                current = parent[current]
+            }
+            return chain
+        }
+
+        /**
+         * Copies a node into a standalone [PathNode], e.g. for code that still expects node objects.
+         * The copy has no parent link.
+         */
+        fun toPathNode(handle: Int): PathNode =
+            PathNode(x(handle), y(handle), z(handle), goal).also {
+                it.cost = cost[handle]
+                it.combinedCost = combinedCost[handle]
+                it.previousMove = previousMove(handle)
+                it.previousMovement = previousMovement(handle)
+            }
+
+        private fun grow() {
+            val newSize = maxOf(pos.size shl 1, 16)
+            pos = pos.copyOf(newSize)
+            cost = cost.copyOf(newSize)
+            combinedCost = combinedCost.copyOf(newSize)
+            heuristic = heuristic.copyOf(newSize)
+            parent = parent.copyOf(newSize)
+            heapIndex = heapIndex.copyOf(newSize)
+            move = move.copyOf(newSize)
+        }
+
+        companion object {
+            /** Sentinel for "no node" in [parent], [heapIndex] and lookups */
+            const val NONE: Int = -1
+
+            private const val NO_MOVE: Byte = -1
+
+            private const val DEFAULT_CAPACITY = 1024
+
+            private const val DEFAULT_LOAD_FACTOR = 0.75f
+
+            /** Lazy so stores that never record a move don't load the movement classes */
+            private val MOVES: Array<Moves> by lazy { Moves.entries.toTypedArray() }
+        }
+    }
@@ -1,10 +1,13 @@
 package maestro.pathing.calc
 
+import maestro.pathing.MutableMoveResult
 import maestro.pathing.PathBase
 import maestro.pathing.goals.Goal
+import maestro.pathing.movement.ActionCosts
 import maestro.pathing.movement.CalculationContext
 import maestro.pathing.movement.IMovement
 import maestro.pathing.movement.Movement
+import maestro.pathing.movement.Moves
 import maestro.pathing.path.CutoffPath
 import maestro.utils.Loggers
 import maestro.utils.PackedBlockPos
@@ -83,8 +86,8 @@ internal class Path(
         for (i in 0 until path.size - 1) {
             val nextNode = nodes[i + 1]
 
-            // Get movement from node - all paths should have previousMovement set
-            val prevMovement = nextNode.previousMovement
+            // Get movement from node - either stored during search or rebuilt from its Moves entry
+            val prevMovement = nextNode.previousMovement ?: nextNode.previousMove?.let { materialize(it, path[i]) }
             if (prevMovement == null) {
                 // Movement not recorded - path became impossible
                 log
@@ -112,6 +115,25 @@ internal class Path(
         return false
     }
 
+    /**
+     * Builds the concrete [Movement] for a node that was reached through [move] during the search.
+     * The cost is recomputed against the current world, so a move that became impossible since the
+     * search yields null and the path is cut off there.
+     */
+    private fun materialize(
+        move: Moves,
+        src: PackedBlockPos,
+    ): Movement? {
+        val res = MutableMoveResult()
+        move.apply(context, src.x, src.y, src.z, res)
+        if (res.cost >= ActionCosts.COST_INF) {
+            return null
+        }
+        val movement = move.apply0(context, src)
+        movement.override(res.cost)
+        return movement
+    }
+
     override fun postProcess(): IPath {
         if (verified) {
             throw IllegalStateException("Path must not be verified twice")
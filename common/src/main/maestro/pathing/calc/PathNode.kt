@@ -3,6 +3,7 @@ package maestro.pathing.calc
 import maestro.pathing.goals.Goal
 import maestro.pathing.movement.ActionCosts
 import maestro.pathing.movement.IMovement
+import maestro.pathing.movement.Moves
 
 /** A node in the path, containing the cost and steps to get to it. */
 class PathNode(
@@ -44,6 +45,13 @@ class PathNode(
     @JvmField
     var previousMovement: IMovement? = null
 
+    /**
+     * The [Moves] entry used to reach this node, when the movement was not materialized during the
+     * search. [Path] builds the concrete movement from it once the node is on the final path.
+     */
+    @JvmField
+    var previousMove: Moves? = null
+
     init {
         require(!estimatedCostToGoal.isNaN()) {
             "$goal calculated implausible heuristic NaN at " +
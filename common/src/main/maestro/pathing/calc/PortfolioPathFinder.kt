@@ -0,0 +1,165 @@
+package maestro.pathing.calc
+
+import maestro.Agent
+import maestro.pathing.goals.Goal
+import maestro.pathing.movement.CalculationContext
+import maestro.utils.BackgroundExecutors
+import maestro.utils.Loggers
+import maestro.utils.PackedBlockPos
+import org.slf4j.Logger
+import java.util.Optional
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Searches for the same goal several ways at once: each member is an [AStarPathFinder] keeping to
+ * one goal bias for the whole search, run on a pool of member threads shared by every portfolio.
+ * The first member to reach the goal wins and the rest are cancelled; if none does, the partial
+ * path ending closest to the goal is taken.
+ *
+ * Members share nothing they write to, so each needs its own [CalculationContext].
+ */
+class PortfolioPathFinder(
+    realStart: PackedBlockPos,
+    startX: Int,
+    startY: Int,
+    startZ: Int,
+    goal: Goal,
+    context: CalculationContext,
+    private val members: List<AbstractNodeCostSearch>,
+) : AbstractNodeCostSearch(realStart, startX, startY, startZ, goal, context) {
+    init {
+        require(members.isNotEmpty()) { "Portfolio must have at least one member" }
+    }
+
+    override fun calculate0(
+        primaryTimeout: Long,
+        failureTimeout: Long,
+    ): Optional<IPath> {
+        val path =
+            race(
+                EXECUTOR,
+                members.map { member ->
+                    Member(
+                        { member.calculateUnprocessed(primaryTimeout, failureTimeout).orElse(null) },
+                        member::cancel,
+                    )
+                },
+                { cancelRequested },
+                { goal.isInGoal(it.dest.x, it.dest.y, it.dest.z) },
+                { goal.heuristic(it.dest.x, it.dest.y, it.dest.z) },
+            )
+        return Optional.ofNullable(path)
+    }
+
+    /** One search of a [race]: its body and how to stop it early */
+    internal class Member<T : Any>(
+        val body: () -> T?,
+        val cancel: () -> Unit,
+    )
+
+    override fun pathToMostRecentNodeConsidered(): Optional<IPath> =
+        members
+            .asSequence()
+            .map { it.pathToMostRecentNodeConsidered() }
+            .firstOrNull { it.isPresent }
+            ?: Optional.empty()
+
+    companion object {
+        private val log: Logger = Loggers.Path.get()
+
+        /** Goal biases the members keep to, the first [size] of which are searched */
+        private val EPSILONS = doubleArrayOf(1.0, 3.0, 10.0, 30.0, 100.0)
+
+        @JvmField
+        val MAX_SIZE = EPSILONS.size
+
+        /** How often the wait for members checks whether the portfolio was cancelled */
+        private const val POLL_MS = 10L
+
+        /**
+         * Members of every portfolio, as many at once as [maestro.Settings.pathingThreads] lets
+         * searches run, in the order they were submitted. Portfolios themselves run on the
+         * [maestro.pathing.PathfindingScheduler], so at most that many submit members at once and
+         * the queue never fills.
+         */
+        private val EXECUTOR: ExecutorService by lazy {
+            val threads =
+                Agent
+                    .getPrimaryAgent()
+                    .settings.pathingThreads.value
+                    .coerceAtLeast(1)
+            BackgroundExecutors.bounded("maestro-portfolio", threads, threads * MAX_SIZE)
+        }
+
+        /**
+         * Runs [members] on [executor] and waits for them. The first result [wins] accepts is
+         * returned straight away; otherwise, once every member is done, the one [score] rates
+         * lowest. Members that fail or can't be submitted count as having found nothing. Whoever is
+         * still going when this returns is cancelled.
+         *
+         * @param cancelled polled while waiting; once true, gives up and returns null
+         */
+        internal fun <T : Any> race(
+            executor: Executor,
+            members: List<Member<T>>,
+            cancelled: () -> Boolean,
+            wins: (T) -> Boolean,
+            score: (T) -> Double,
+        ): T? {
+            val completion = ExecutorCompletionService<T?>(executor)
+            val futures = ArrayList<Future<T?>>(members.size)
+            var best: T? = null
+            var bestScore = Double.POSITIVE_INFINITY
+            try {
+                for (member in members) {
+                    try {
+                        futures.add(completion.submit { member.body() })
+                    } catch (e: RejectedExecutionException) {
+                        log.atWarn().log("Portfolio member rejected, every member thread is busy")
+                    }
+                }
+                var running = futures.size
+                while (running > 0) {
+                    if (cancelled()) {
+                        return null
+                    }
+                    val done = completion.poll(POLL_MS, TimeUnit.MILLISECONDS) ?: continue
+                    running--
+                    val result =
+                        try {
+                            done.get()
+                        } catch (e: ExecutionException) {
+                            log.atWarn().setCause(e.cause).log("Portfolio member failed")
+                            null
+                        } ?: continue
+
+                    if (wins(result)) {
+                        return result
+                    }
+                    val resultScore = score(result)
+                    if (resultScore < bestScore) {
+                        best = result
+                        bestScore = resultScore
+                    }
+                }
+            } finally {
+                // whoever is still going has lost
+                members.forEach { it.cancel() }
+                // and whoever hasn't started yet never needs to
+                futures.forEach { it.cancel(false) }
+            }
+            return best
+        }
+
+        /** The single phase a member searches with */
+        @JvmStatic
+        fun phase(member: Int): List<AStarPathFinder.SearchPhase> =
+            listOf(AStarPathFinder.SearchPhase(EPSILONS[member], Long.MAX_VALUE))
+    }
+}
@@ -0,0 +1,177 @@
+package maestro.pathing.calc
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import it.unimi.dsi.fastutil.longs.LongSet
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet
+import maestro.pathing.goals.Goal
+import maestro.pathing.movement.ActionCosts
+import net.minecraft.core.BlockPos
+
+/**
+ * Carries the nodes of a finished search over to the next search for the same goal, the way LPA*
+ * keeps its search tree between changes to the graph, so replanning after a few blocks changed
+ * repairs the tree instead of searching from scratch.
+ *
+ * The next search may start anywhere the last one reached; the subtree below that node is kept
+ * with its costs counted from there. Moves into or out of positions near a changed block may cost
+ * something else now, so the nodes reached through one are dropped along with everything below
+ * them, as is everything outside the subtree. The search then continues from what's left: the
+ * nodes the last search never got to expand, and those bordering dropped nodes or changed blocks,
+ * which have moves to try again. A node borders a dropped one if it was that node's predecessor,
+ * however far the move between them went (parkour, falls, teleports), or if the two are adjacent.
+ *
+ * Not thread-safe; the nodes must belong to a finished search.
+ */
+internal class SearchRepair(
+    private val nodes: Long2ObjectOpenHashMap<PathNode>,
+    changed: LongSet,
+) {
+    class Result(
+        /** The nodes to start the search from, in no particular order */
+        val open: List<PathNode>,
+        /** The kept node that looks the most promising, for a partial path if the search fails */
+        val best: PathNode,
+        val kept: Int,
+        val dropped: Int,
+    )
+
+    /** Positions near enough to a changed block that moves to or from them may cost something else */
+    private val dirty = LongOpenHashSet()
+
+    /** Which nodes are kept, filled in as the tree is walked */
+    private val kept = Reference2BooleanOpenHashMap<PathNode>()
+
+    init {
+        val iterator = changed.iterator()
+        while (iterator.hasNext()) {
+            val pos = iterator.nextLong()
+            val x = BlockPos.getX(pos)
+            val y = BlockPos.getY(pos)
+            val z = BlockPos.getZ(pos)
+            for (dx in -CHANGE_RADIUS..CHANGE_RADIUS) {
+                for (dy in -CHANGE_RADIUS..CHANGE_RADIUS) {
+                    for (dz in -CHANGE_RADIUS..CHANGE_RADIUS) {
+                        dirty.add(BlockPos.asLong(x + dx, y + dy, z + dz))
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-roots the tree at [start] and drops what can't be kept. The nodes are changed in place.
+     *
+     * @param start The packed position the next search starts from
+     * @return the nodes to continue from, or null if the last search never reached [start]
+     */
+    fun repair(
+        start: Long,
+        goal: Goal,
+    ): Result? {
+        val root = nodes.get(start) ?: return null
+        if (root.cost >= ActionCosts.COST_INF) {
+            return null
+        }
+        kept.put(root, true)
+        for (node in nodes.values) {
+            isKept(node)
+        }
+        // before the loop below clears the predecessors of dropped nodes
+        val parentsOfDropped = ReferenceOpenHashSet<PathNode>()
+        for (node in nodes.values) {
+            val previous = node.previous ?: continue
+            if (!kept.getBoolean(node) && kept.getBoolean(previous)) {
+                parentsOfDropped.add(previous)
+            }
+        }
+
+        val rootCost = root.cost
+        val open = ArrayList<PathNode>()
+        var best = root
+        var numKept = 0
+        for (node in nodes.values) {
+            val wasOpen = node.isOpen()
+            node.heapPosition = -1
+            if (!kept.getBoolean(node)) {
+                node.cost = ActionCosts.COST_INF
+                node.combinedCost = 0.0
+                node.previous = null
+                node.previousMove = null
+                node.previousMovement = null
+                continue
+            }
+            numKept++
+            node.cost -= rootCost
+            node.combinedCost = node.cost + node.estimatedCostToGoal
+            if (node.combinedCost < best.combinedCost) {
+                best = node
+            }
+            if (node === root || wasOpen || goal.isInGoal(node.x, node.y, node.z)) {
+                open.add(node)
+            } else if (node in parentsOfDropped || dirty.contains(pack(node)) || bordersDropped(node)) {
+                open.add(node)
+            }
+        }
+        root.previous = null
+        root.previousMove = null
+        root.previousMovement = null
+        return Result(open, best, numKept, nodes.size - numKept)
+    }
+
+    /** Walks up to the nearest node already decided on and decides everything on the way down */
+    private fun isKept(node: PathNode): Boolean {
+        if (kept.containsKey(node)) {
+            return kept.getBoolean(node)
+        }
+        val chain = ArrayList<PathNode>()
+        var current: PathNode? = node
+        while (current != null && !kept.containsKey(current)) {
+            chain.add(current)
+            current = current.previous
+        }
+        // off the root's subtree altogether
+        var keep = current != null && kept.getBoolean(current)
+        for (i in chain.indices.reversed()) {
+            keep = keep && !isTouched(chain[i])
+            kept.put(chain[i], keep)
+        }
+        return keep
+    }
+
+    /** @return whether the move into the node may cost something else than when it was found */
+    private fun isTouched(node: PathNode): Boolean {
+        val previous = node.previous ?: return true
+        // materialized movements carry execution state, and may already be on a path being followed
+        return node.previousMovement != null || dirty.contains(pack(node)) || dirty.contains(pack(previous))
+    }
+
+    /**
+     * Whether a dropped node is next to [node]. That catches short moves to dropped nodes the last
+     * search reached some other way; longer ones are only retried from the dropped node's predecessor.
+     */
+    private fun bordersDropped(node: PathNode): Boolean {
+        for (dx in -1..1) {
+            for (dy in -1..1) {
+                for (dz in -1..1) {
+                    val neighbor = nodes.get(BlockPos.asLong(node.x + dx, node.y + dy, node.z + dz)) ?: continue
+                    if (!kept.getBoolean(neighbor)) {
+                        return true
+                    }
+                }
+            }
+        }
+        return false
+    }
+
+    private fun pack(node: PathNode): Long = BlockPos.asLong(node.x, node.y, node.z)
+
+    companion object {
+        /**
+         * How far from a changed block moves may be affected by it; covers the blocks a move checks
+         * around its source and destination, and the middle of a parkour jump
+         */
+        const val CHANGE_RADIUS = 2
+    }
+}
@@ -0,0 +1,149 @@
+package maestro.pathing.calc.openset
+
+import maestro.pathing.calc.NodeStore
+
+/**
+ * Binary heap open set over [NodeStore] handles.
+ *
+ * Same algorithm as [BinaryHeapOpenSet], but the heap is an [IntArray] of handles and costs are
+ * read from [NodeStore.combinedCost], so sifting touches primitive arrays only. Heap positions are
+ * written back to [NodeStore.heapIndex] to support decrease-key.
+ */
+class NodeHeapOpenSet
+    @JvmOverloads
+    constructor(
+        private val store: NodeStore,
+        initialSize: Int = INITIAL_CAPACITY,
+    ) {
+        /** The array backing the heap, 1-indexed */
+        private var array: IntArray = IntArray(initialSize)
+
+        /** The size of the heap */
+        private var size: Int = 0
+
+        fun size(): Int = size
+
+        fun isEmpty(): Boolean = size == 0
+
+        /**
+         * Inserts the node into the heap
+         *
+         * @param handle The node handle
+         */
+        fun insert(handle: Int) {
+            if (size >= array.size - 1) {
+                array = array.copyOf(maxOf(array.size shl 1, 2))
+            }
+            size++
+            store.heapIndex[handle] = size
+            array[size] = handle
+            update(handle)
+        }
+
+        /**
+         * A faster path has been found to this node, decreasing its cost. Perform a decrease-key
+         * operation.
+         *
+         * @param handle The node handle
+         */
+        fun update(handle: Int) {
+            val costs = store.combinedCost
+            val heapIndex = store.heapIndex
+            var index = heapIndex[handle]
+            var parentInd = index shr 1
+            val cost = costs[handle]
+            while (index > 1) {
+                val parentNode = array[parentInd]
+                if (costs[parentNode] <= cost) break
+
+                array[index] = parentNode
+                array[parentInd] = handle
+                heapIndex[handle] = parentInd
+                heapIndex[parentNode] = index
+                index = parentInd
+                parentInd = index shr 1
+            }
+        }
+
+        /**
+         * Removes and returns the handle with the lowest combined cost.
+         */
+        fun removeLowest(): Int {
+            check(size != 0) { "Cannot remove from empty heap" }
+
+            val heapIndex = store.heapIndex
+            val result = array[1]
+            val value = array[size]
+            array[1] = value
+            heapIndex[value] = 1
+            size--
+            heapIndex[result] = NodeStore.NONE
+
+            if (size >= 2) {
+                siftDown(1)
+            }
+            return result
+        }
+
+        /**
+         * Rebuild heap with new epsilon coefficient.
+         * Recalculates all combinedCosts and re-heapifies in O(n) time.
+         */
+        fun rebuildWithEpsilon(epsilon: Double) {
+            val costs = store.combinedCost
+            val g = store.cost
+            val h = store.heuristic
+            for (i in 1..size) {
+                val node = array[i]
+                costs[node] = g[node] + h[node] * epsilon
+            }
+
+            for (i in (size / 2) downTo 1) {
+                siftDown(i)
+            }
+        }
+
+        /**
+         * Sift node down to restore min-heap property.
+         */
+        private fun siftDown(startIndex: Int) {
+            val costs = store.combinedCost
+            val heapIndex = store.heapIndex
+            val value = array[startIndex]
+            var index = startIndex
+            var smallerChild = index shl 1
+            val cost = costs[value]
+
+            while (smallerChild <= size) {
+                var smallerChildNode = array[smallerChild]
+                var smallerChildCost = costs[smallerChildNode]
+
+                if (smallerChild < size) {
+                    val rightChildNode = array[smallerChild + 1]
+                    val rightChildCost = costs[rightChildNode]
+                    if (smallerChildCost > rightChildCost) {
+                        smallerChild++
+                        smallerChildCost = rightChildCost
+                        smallerChildNode = rightChildNode
+                    }
+                }
+
+                if (cost <= smallerChildCost) {
+                    break
+                }
+
+                array[index] = smallerChildNode
+                array[smallerChild] = value
+                heapIndex[value] = smallerChild
+                heapIndex[smallerChildNode] = index
+
+                index = smallerChild
+                smallerChild = index shl 1
+            }
+        }
+
+        companion object {
+            /** The initial capacity of the heap (2^10) */
+            private const val INITIAL_CAPACITY = 1024
+        }
+    }
@@ -0,0 +1,51 @@
+package maestro.pathing.goals
+
+/**
+ * A goal confined to a small box, which lets [GoalComposite] index it spatially instead of asking
+ * every sub-goal on every node.
+ *
+ * For the box written by [bounds], implementations guarantee:
+ * - [isInGoal] is false everywhere outside the box
+ * - [heuristic] is never less than [GoalBlock.calculate] of the offset from the position to the
+ *   closest point of the box, plus [heuristicOffset]
+ */
+interface BoundedGoal : Goal {
+    /**
+     * Writes the inclusive box as `minX, minY, minZ, maxX, maxY, maxZ` into [out] starting at
+     * [offset].
+     *
+     * @return false if this instance can't be bounded, in which case nothing is written
+     */
+    fun bounds(
+        out: IntArray,
+        offset: Int,
+    ): Boolean
+
+    /** A constant that [heuristic] always adds on top of the distance estimate */
+    fun heuristicOffset(): Double = 0.0
+
+    companion object {
+        /** Number of ints [bounds] writes */
+        const val BOUNDS_SIZE = 6
+
+        /** Writes a box around a single position, extended by the given margins */
+        @JvmStatic
+        fun writeBounds(
+            out: IntArray,
+            offset: Int,
+            x: Int,
+            y: Int,
+            z: Int,
+            horizontal: Int,
+            below: Int,
+            above: Int,
+        ) {
+            out[offset] = x - horizontal
+            out[offset + 1] = y - below
+            out[offset + 2] = z - horizontal
+            out[offset + 3] = x + horizontal
+            out[offset + 4] = y + above
+            out[offset + 5] = z + horizontal
+        }
+    }
+}
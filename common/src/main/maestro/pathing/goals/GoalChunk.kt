@@ -0,0 +1,29 @@
+package maestro.pathing.goals
+
+/** Anywhere in a chunk; the stretches of a long-distance route end at one */
+data class GoalChunk(
+    @JvmField val chunkX: Int,
+    @JvmField val chunkZ: Int,
+) : Goal {
+    override fun isInGoal(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean = x shr 4 == chunkX && z shr 4 == chunkZ
+
+    override fun heuristic(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Double {
+        if (isInGoal(x, y, z)) {
+            return 0.0
+        }
+        // to the nearest column of the chunk
+        val xDiff = x - x.coerceIn(chunkX shl 4, (chunkX shl 4) + 15)
+        val zDiff = z - z.coerceIn(chunkZ shl 4, (chunkZ shl 4) + 15)
+        return GoalXZ.calculate(xDiff.toDouble(), zDiff.toDouble())
+    }
+
+    override fun toString(): String = "GoalChunk[$chunkX,$chunkZ]"
+}
@@ -3,21 +3,29 @@ package maestro.pathing.goals
 /**
  * A composite of many goals, any one of which satisfies the composite. For example, a GoalComposite of block goals
  * for every oak log in loaded chunks would result in it pathing to the easiest oak log to get to
+ *
+ * Composites of at least [INDEX_THRESHOLD] goals answer [isInGoal] and [heuristic] through a spatial
+ * index over their [BoundedGoal]s, built on first use. The results are the same as checking every
+ * goal.
  */
 class GoalComposite(
     private vararg val goals: Goal,
 ) : Goal {
+    private val index: GoalIndex? by lazy {
+        if (goals.size >= INDEX_THRESHOLD) GoalIndex.build(goals) else null
+    }
+
     override fun isInGoal(
         x: Int,
         y: Int,
         z: Int,
-    ): Boolean = goals.any { it.isInGoal(x, y, z) }
+    ): Boolean = index?.isInGoal(x, y, z) ?: goals.any { it.isInGoal(x, y, z) }
 
     override fun heuristic(
         x: Int,
         y: Int,
         z: Int,
-    ): Double = goals.minOfOrNull { it.heuristic(x, y, z) } ?: Double.MAX_VALUE
+    ): Double = index?.heuristic(x, y, z) ?: (goals.minOfOrNull { it.heuristic(x, y, z) } ?: Double.MAX_VALUE)
 
     override fun heuristic(): Double = goals.minOfOrNull { it.heuristic() } ?: Double.MAX_VALUE
 
@@ -37,4 +45,9 @@ class GoalComposite(
         }
 
     fun goals(): Array<out Goal> = goals
+
+    companion object {
+        /** Below this many goals a linear scan is as fast as the index */
+        const val INDEX_THRESHOLD = 32
+    }
 }
@@ -10,7 +10,7 @@ open class GoalGetToBlock(
     @JvmField val x: Int,
     @JvmField val y: Int,
     @JvmField val z: Int,
-) : Goal,
+) : BoundedGoal,
     IGoalRenderPos {
     constructor(pos: BlockPos) : this(pos.x, pos.y, pos.z)
 
@@ -38,6 +38,15 @@ open class GoalGetToBlock(
         return GoalBlock.calculate(xDiff.toDouble(), if (yDiff < 0) yDiff + 1 else yDiff, zDiff.toDouble())
     }
 
+    override fun bounds(
+        out: IntArray,
+        offset: Int,
+    ): Boolean {
+        // one block to any side, or up to two below when standing under it
+        BoundedGoal.writeBounds(out, offset, x, y, z, 1, 2, 1)
+        return true
+    }
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (other !is GoalGetToBlock) return false
@@ -0,0 +1,313 @@
+package maestro.pathing.goals
+
+/**
+ * Bounding volume hierarchy over the [BoundedGoal]s of a [GoalComposite].
+ *
+ * [isInGoal] only tests goals whose box contains the position. [heuristic] is a branch and bound
+ * nearest search: a subtree is skipped once the distance to its box alone can't beat the best
+ * heuristic found so far. Both return exactly what a linear scan over the goals would.
+ *
+ * Goals that can't be bounded are kept in a plain array and always scanned.
+ *
+ * Immutable once built, so it can be shared by concurrent searches.
+ */
+internal class GoalIndex private constructor(
+    private val goals: Array<BoundedGoal>,
+    private val unbounded: Array<Goal>,
+    /** Per goal boxes, [BoundedGoal.BOUNDS_SIZE] ints each, in [goals] order */
+    private val goalBounds: IntArray,
+    /** Per node boxes covering every goal below the node */
+    private val nodeBounds: IntArray,
+    /** Smallest [BoundedGoal.heuristicOffset] below each node */
+    private val nodeOffsets: DoubleArray,
+    /** For leaves, the first goal; for inner nodes, the right child (the left one is `node + 1`) */
+    private val nodeFirst: IntArray,
+    /** Number of goals in a leaf, 0 for inner nodes */
+    private val nodeCount: IntArray,
+    /** What the goals' heuristics are bounded below by */
+    private val distance: Distance,
+) {
+    /**
+     * Estimates the cost of covering an offset. The index is exact as long as every goal's
+     * heuristic is never less than this of the offset to its box, plus its [BoundedGoal.heuristicOffset].
+     */
+    fun interface Distance {
+        fun estimate(
+            xDiff: Double,
+            yDiff: Int,
+            zDiff: Double,
+        ): Double
+    }
+
+    fun isInGoal(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean {
+        for (goal in unbounded) {
+            if (goal.isInGoal(x, y, z)) {
+                return true
+            }
+        }
+        return goals.isNotEmpty() && isInGoal(0, x, y, z)
+    }
+
+    private fun isInGoal(
+        node: Int,
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean {
+        if (!contains(nodeBounds, node * B, x, y, z)) {
+            return false
+        }
+        val count = nodeCount[node]
+        if (count == 0) {
+            return isInGoal(node + 1, x, y, z) || isInGoal(nodeFirst[node], x, y, z)
+        }
+        val first = nodeFirst[node]
+        for (i in first..<first + count) {
+            if (contains(goalBounds, i * B, x, y, z) && goals[i].isInGoal(x, y, z)) {
+                return true
+            }
+        }
+        return false
+    }
+
+    fun heuristic(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Double {
+        var best = Double.MAX_VALUE
+        for (goal in unbounded) {
+            best = minOf(best, goal.heuristic(x, y, z))
+        }
+        return if (goals.isEmpty()) best else heuristic(0, x, y, z, best)
+    }
+
+    private fun heuristic(
+        node: Int,
+        x: Int,
+        y: Int,
+        z: Int,
+        bestSoFar: Double,
+    ): Double {
+        var best = bestSoFar
+        val count = nodeCount[node]
+        if (count > 0) {
+            val first = nodeFirst[node]
+            for (i in first..<first + count) {
+                best = minOf(best, goals[i].heuristic(x, y, z))
+            }
+            return best
+        }
+        // visit the closer child first so the other one is more likely to be pruned
+        var near = node + 1
+        var far = nodeFirst[node]
+        var nearBound = lowerBound(nodeBounds, near * B, nodeOffsets[near], x, y, z)
+        var farBound = lowerBound(nodeBounds, far * B, nodeOffsets[far], x, y, z)
+        if (farBound < nearBound) {
+            near = far.also { far = near }
+            nearBound = farBound.also { farBound = nearBound }
+        }
+        if (nearBound <= best) {
+            best = heuristic(near, x, y, z, best)
+        }
+        if (farBound <= best) {
+            best = heuristic(far, x, y, z, best)
+        }
+        return best
+    }
+
+    private fun lowerBound(
+        bounds: IntArray,
+        at: Int,
+        offset: Double,
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Double =
+        distance.estimate(
+            excess(x, bounds[at], bounds[at + 3]).toDouble(),
+            excess(y, bounds[at + 1], bounds[at + 4]),
+            excess(z, bounds[at + 2], bounds[at + 5]).toDouble(),
+        ) + offset
+
+    companion object {
+        private const val B = BoundedGoal.BOUNDS_SIZE
+
+        private const val LEAF_SIZE = 8
+
+        private fun contains(
+            bounds: IntArray,
+            at: Int,
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Boolean =
+            x >= bounds[at] &&
+                y >= bounds[at + 1] &&
+                z >= bounds[at + 2] &&
+                x <= bounds[at + 3] &&
+                y <= bounds[at + 4] &&
+                z <= bounds[at + 5]
+
+        /** Offset from the closest point of the box to the position, per axis */
+        private fun excess(
+            value: Int,
+            min: Int,
+            max: Int,
+        ): Int =
+            when {
+                value < min -> value - min
+                value > max -> value - max
+                else -> 0
+            }
+
+        /** The bound [BoundedGoal] promises, which goals outside tests are built with */
+        private val GOAL_BLOCK_DISTANCE = Distance { xDiff, yDiff, zDiff -> GoalBlock.calculate(xDiff, yDiff, zDiff) }
+
+        @JvmStatic
+        fun build(
+            goals: Array<out Goal>,
+            distance: Distance = GOAL_BLOCK_DISTANCE,
+        ): GoalIndex {
+            val bounded = ArrayList<BoundedGoal>(goals.size)
+            val boundedBoxes = IntArray(goals.size * B)
+            val unbounded = ArrayList<Goal>()
+            for (goal in goals) {
+                if (goal is BoundedGoal && goal.bounds(boundedBoxes, bounded.size * B)) {
+                    bounded.add(goal)
+                } else {
+                    unbounded.add(goal)
+                }
+            }
+            return Builder(bounded, boundedBoxes).build(unbounded.toTypedArray(), distance)
+        }
+    }
+
+    private class Builder(
+        private val source: List<BoundedGoal>,
+        private val sourceBounds: IntArray,
+    ) {
+        private val n = source.size
+
+        /** Goal order after partitioning; leaves cover contiguous ranges of it */
+        private val order = IntArray(n) { it }
+
+        // median splits leave at least LEAF_SIZE / 2 goals per leaf, so the tree has fewer
+        // than 2 * n / (LEAF_SIZE / 2) nodes
+        private val maxNodes = 4 * ((n + LEAF_SIZE - 1) / LEAF_SIZE) + 1
+        private val nodeBounds = IntArray(maxNodes * B)
+        private val nodeOffsets = DoubleArray(maxNodes)
+        private val nodeFirst = IntArray(maxNodes)
+        private val nodeCount = IntArray(maxNodes)
+        private var nodes = 0
+
+        fun build(
+            unbounded: Array<Goal>,
+            distance: Distance,
+        ): GoalIndex {
+            if (n > 0) {
+                buildNode(0, n)
+            }
+            val goals = Array(n) { source[order[it]] }
+            val goalBounds = IntArray(n * B)
+            for (i in 0..<n) {
+                sourceBounds.copyInto(goalBounds, i * B, order[i] * B, order[i] * B + B)
+            }
+            return GoalIndex(
+                goals,
+                unbounded,
+                goalBounds,
+                nodeBounds.copyOf(nodes * B),
+                nodeOffsets.copyOf(nodes),
+                nodeFirst.copyOf(nodes),
+                nodeCount.copyOf(nodes),
+                distance,
+            )
+        }
+
+        private fun buildNode(
+            from: Int,
+            to: Int,
+        ): Int {
+            val node = nodes++
+            val at = node * B
+            nodeBounds.fill(Int.MAX_VALUE, at, at + 3)
+            nodeBounds.fill(Int.MIN_VALUE, at + 3, at + 6)
+            var offset = Double.MAX_VALUE
+            for (i in from..<to) {
+                val goal = order[i] * B
+                for (axis in 0..<3) {
+                    nodeBounds[at + axis] = minOf(nodeBounds[at + axis], sourceBounds[goal + axis])
+                    nodeBounds[at + 3 + axis] = maxOf(nodeBounds[at + 3 + axis], sourceBounds[goal + 3 + axis])
+                }
+                offset = minOf(offset, source[order[i]].heuristicOffset())
+            }
+            nodeOffsets[node] = offset
+
+            if (to - from <= LEAF_SIZE) {
+                nodeFirst[node] = from
+                nodeCount[node] = to - from
+                return node
+            }
+
+            // split at the median center along the longest axis
+            var axis = 0
+            for (a in 1..<3) {
+                if (nodeBounds[at + 3 + a] - nodeBounds[at + a] > nodeBounds[at + 3 + axis] - nodeBounds[at + axis]) {
+                    axis = a
+                }
+            }
+            val mid = (from + to) ushr 1
+            select(from, to, mid, axis)
+
+            nodeCount[node] = 0
+            buildNode(from, mid)
+            nodeFirst[node] = buildNode(mid, to)
+            return node
+        }
+
+        /** Twice the box center along [axis], which avoids rounding */
+        private fun center(
+            goal: Int,
+            axis: Int,
+        ): Long = sourceBounds[goal * B + axis].toLong() + sourceBounds[goal * B + 3 + axis]
+
+        /** Quickselect: partially sorts [order] so that position [k] holds its final element */
+        private fun select(
+            fromIndex: Int,
+            toIndex: Int,
+            k: Int,
+            axis: Int,
+        ) {
+            var lo = fromIndex
+            var hi = toIndex - 1
+            while (lo < hi) {
+                val pivot = center(order[(lo + hi) ushr 1], axis)
+                var i = lo
+                var j = hi
+                while (i <= j) {
+                    while (center(order[i], axis) < pivot) i++
+                    while (center(order[j], axis) > pivot) j--
+                    if (i <= j) {
+                        val tmp = order[i]
+                        order[i] = order[j]
+                        order[j] = tmp
+                        i++
+                        j--
+                    }
+                }
+                if (k <= j) {
+                    hi = j
+                } else if (k >= i) {
+                    lo = i
+                } else {
+                    return
+                }
+            }
+        }
+    }
+}
@@ -12,7 +12,7 @@ open class GoalTwoBlocks(
     @JvmField val x: Int,
     @JvmField val y: Int,
     @JvmField val z: Int,
-) : Goal,
+) : BoundedGoal,
     IGoalRenderPos {
     constructor(pos: BlockPos) : this(pos.x, pos.y, pos.z)
 
@@ -33,6 +33,14 @@ open class GoalTwoBlocks(
         return GoalBlock.calculate(xDiff.toDouble(), if (yDiff < 0) yDiff + 1 else yDiff, zDiff.toDouble())
     }
 
+    override fun bounds(
+        out: IntArray,
+        offset: Int,
+    ): Boolean {
+        BoundedGoal.writeBounds(out, offset, x, y, z, 0, 1, 0)
+        return true
+    }
+
     override fun getGoalPos(): BlockPos = BlockPos(x, y, z)
 
     override fun equals(other: Any?): Boolean {
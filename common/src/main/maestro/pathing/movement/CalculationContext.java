@@ -6,6 +6,7 @@ import maestro.Agent;
 import maestro.cache.WorldData;
 import maestro.pathing.BetterWorldBorder;
 import maestro.pathing.BlockStateInterface;
+import maestro.pathing.PathReservations;
 import maestro.pathing.precompute.PrecomputedData;
 import maestro.pathing.recovery.MovementFailureMemory;
 import maestro.task.ToolSet;
@@ -68,6 +69,16 @@ public class CalculationContext {
     public final double teleportCostMultiplier;
     public final MovementFailureMemory failureMemory;
 
+    /** Taken by {@link #getReservations()} on first use, not here, since most contexts never search */
+    private PathReservations reservations;
+
+    private boolean reservationsTaken;
+
+    /** When the search starts, which reservation times are measured from */
+    public final long reservationsFrom;
+
+    public final double reservationPenalty;
+
     public final PrecomputedData precomputedData;
 
     public CalculationContext(Agent agent) {
@@ -168,6 +179,9 @@ public class CalculationContext {
         this.teleportCostMultiplier =
                 Agent.getPrimaryAgent().getSettings().teleportCostMultiplier.value;
         this.failureMemory = agent.getPathingBehavior().failureMemory;
+        this.reservationsFrom = System.currentTimeMillis();
+        this.reservationPenalty =
+                Agent.getPrimaryAgent().getSettings().pathReservationPenalty.value;
         // why cache these things here, why not let the movements just get directly from settings?
         // because if some movements are calculated one way and others are calculated another way,
         // then you get a wildly inconsistent path that isn't optimal for either scenario.
@@ -178,6 +192,19 @@ public class CalculationContext {
         return agent;
     }
 
+    /** Paths other agents committed to, or null if there are none to steer around */
+    public synchronized PathReservations getReservations() {
+        if (!reservationsTaken) {
+            reservationsTaken = true;
+            if (reservationPenalty > 0) {
+                reservations =
+                        PathReservations.snapshot(
+                                agent, world.dimension().location().toString(), reservationsFrom);
+            }
+        }
+        return reservations;
+    }
+
     public BlockState get(int x, int y, int z) {
         return bsi.get0(x, y, z); // laughs maniacally
     }
@@ -3,6 +3,7 @@ package maestro.pathing.movement;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
+import maestro.pathing.MutableMoveResult;
 import maestro.utils.PackedBlockPos;
 
 /**
@@ -20,4 +21,17 @@ public class CompositeMovementProvider implements IMovementProvider {
     public Stream<IMovement> generateMovements(CalculationContext context, PackedBlockPos from) {
         return providers.stream().flatMap(provider -> provider.generateMovements(context, from));
     }
+
+    @Override
+    public void expand(
+            CalculationContext context,
+            int x,
+            int y,
+            int z,
+            MutableMoveResult result,
+            MovementSink sink) {
+        for (int i = 0; i < providers.size(); i++) {
+            providers.get(i).expand(context, x, y, z, result, sink);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package maestro.pathing.movement
 
+import maestro.pathing.MutableMoveResult
 import maestro.utils.PackedBlockPos
 import java.util.stream.Stream
 
@@ -35,4 +36,42 @@ interface IMovementProvider {
         context: CalculationContext,
         from: PackedBlockPos,
     ): Stream<IMovement>
+
+    /**
+     * Allocation-free counterpart of [generateMovements], used by the A* inner loop.
+     *
+     * For every possible movement the provider writes destination and cost into [result] and
+     * hands it to [sink]. Movements backed by a [Moves] entry should set [MutableMoveResult.move]
+     * and leave [MutableMoveResult.movement] null, so the concrete [Movement] is only built for
+     * nodes that end up on the final path.
+     *
+     * The default implementation bridges [generateMovements] and sets
+     * [MutableMoveResult.movement] for each generated movement.
+     *
+     * @param context Calculation context with world state and settings
+     * @param x Source x
+     * @param y Source y
+     * @param z Source z
+     * @param result Reusable buffer, overwritten for each candidate
+     * @param sink Receives each candidate with cost < [ActionCosts.COST_INF]
+     */
+    fun expand(
+        context: CalculationContext,
+        x: Int,
+        y: Int,
+        z: Int,
+        result: MutableMoveResult,
+        sink: MovementSink,
+    ) {
+        generateMovements(context, PackedBlockPos(x, y, z)).forEach { movement ->
+            result.reset()
+            val dest = movement.dest
+            result.x = dest.x
+            result.y = dest.y
+            result.z = dest.z
+            result.cost = movement.cost
+            result.movement = movement
+            sink.accept(result)
+        }
+    }
 }
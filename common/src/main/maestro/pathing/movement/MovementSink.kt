@@ -0,0 +1,13 @@
+package maestro.pathing.movement
+
+import maestro.pathing.MutableMoveResult
+
+/**
+ * Receives candidate movements from [IMovementProvider.expand].
+ *
+ * The [MutableMoveResult] passed to [accept] is reused by the provider for every candidate, so
+ * implementations must copy whatever they need before returning.
+ */
+fun interface MovementSink {
+    fun accept(result: MutableMoveResult)
+}
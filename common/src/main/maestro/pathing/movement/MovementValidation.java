@@ -8,6 +8,7 @@ import maestro.Agent;
 import maestro.input.Input;
 import maestro.pathing.BlockStateInterface;
 import maestro.pathing.movement.MovementState.MovementTarget;
+import maestro.pathing.precompute.BlockStateFlags;
 import maestro.pathing.precompute.Ternary;
 import maestro.player.PlayerContext;
 import maestro.task.ToolSet;
@@ -21,14 +22,11 @@ import net.minecraft.world.item.enchantment.Enchantment;
 import net.minecraft.world.item.enchantment.Enchantments;
 import net.minecraft.world.item.enchantment.ItemEnchantments;
 import net.minecraft.world.level.block.*;
-import net.minecraft.world.level.block.piston.MovingPistonBlock;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.state.properties.BooleanProperty;
 import net.minecraft.world.level.block.state.properties.Half;
 import net.minecraft.world.level.block.state.properties.SlabType;
 import net.minecraft.world.level.block.state.properties.StairsShape;
-import net.minecraft.world.level.material.FlowingFluid;
-import net.minecraft.world.level.material.Fluid;
 import net.minecraft.world.level.material.FluidState;
 import net.minecraft.world.level.material.Fluids;
 import net.minecraft.world.level.material.WaterFluid;
@@ -115,7 +113,7 @@ public interface MovementValidation extends Helper {
     }
 
     static boolean canWalkThrough(CalculationContext context, int x, int y, int z) {
-        return context.precomputedData.canWalkThrough(context.bsi, x, y, z, context.get(x, y, z));
+        return context.precomputedData.canWalkThrough(context.bsi, x, y, z);
     }
 
     static boolean canWalkThrough(BlockStateInterface bsi, int x, int y, int z, BlockState state) {
@@ -280,7 +278,7 @@ public interface MovementValidation extends Helper {
      * cobwebs (they slow us down)
      */
     static boolean fullyPassable(CalculationContext context, int x, int y, int z) {
-        return fullyPassable(context, x, y, z, context.get(x, y, z));
+        return context.precomputedData.fullyPassable(context.bsi, x, y, z);
     }
 
     static boolean fullyPassable(
@@ -387,16 +385,12 @@ public interface MovementValidation extends Helper {
         return (facing == playerFacing) == open;
     }
 
+    static boolean avoidWalkingInto(CalculationContext context, int x, int y, int z) {
+        return context.precomputedData.avoidWalkingInto(context.bsi, x, y, z);
+    }
+
     static boolean avoidWalkingInto(BlockState state) {
-        Block block = state.getBlock();
-        return !state.getFluidState().isEmpty()
-                || block == Blocks.MAGMA_BLOCK
-                || block == Blocks.CACTUS
-                || block == Blocks.SWEET_BERRY_BUSH
-                || block instanceof BaseFireBlock
-                || block == Blocks.END_PORTAL
-                || block == Blocks.COBWEB
-                || block == Blocks.BUBBLE_COLUMN;
+        return BlockStateFlags.has(state, BlockStateFlags.AVOID_WALKING_INTO);
     }
 
     /**
@@ -514,7 +508,7 @@ public interface MovementValidation extends Helper {
     }
 
     static boolean canWalkOn(CalculationContext context, int x, int y, int z) {
-        return canWalkOn(context, x, y, z, context.get(x, y, z));
+        return context.precomputedData.canWalkOn(context.bsi, x, y, z);
     }
 
     static boolean canWalkOn(PlayerContext ctx, PackedBlockPos pos, BlockState state) {
@@ -667,8 +661,7 @@ public interface MovementValidation extends Helper {
     }
 
     static boolean isBottomSlab(BlockState state) {
-        return state.getBlock() instanceof SlabBlock
-                && state.getValue(SlabBlock.TYPE) == SlabType.BOTTOM;
+        return BlockStateFlags.has(state, BlockStateFlags.BOTTOM_SLAB);
     }
 
     /**
@@ -719,8 +712,7 @@ public interface MovementValidation extends Helper {
      * @return Whether the block is water
      */
     static boolean isWater(BlockState state) {
-        Fluid f = state.getFluidState().getType();
-        return f == Fluids.WATER || f == Fluids.FLOWING_WATER;
+        return BlockStateFlags.has(state, BlockStateFlags.WATER);
     }
 
     /**
@@ -735,8 +727,7 @@ public interface MovementValidation extends Helper {
     }
 
     static boolean isLava(BlockState state) {
-        Fluid f = state.getFluidState().getType();
-        return f == Fluids.LAVA || f == Fluids.FLOWING_LAVA;
+        return BlockStateFlags.has(state, BlockStateFlags.LAVA);
     }
 
     /**
@@ -751,13 +742,11 @@ public interface MovementValidation extends Helper {
     }
 
     static boolean isLiquid(BlockState blockState) {
-        return !blockState.getFluidState().isEmpty();
+        return BlockStateFlags.has(blockState, BlockStateFlags.LIQUID);
     }
 
     static boolean possiblyFlowing(BlockState state) {
-        FluidState fluidState = state.getFluidState();
-        return fluidState.getType() instanceof FlowingFluid
-                && fluidState.getType().getAmount(fluidState) != 8;
+        return BlockStateFlags.has(state, BlockStateFlags.POSSIBLY_FLOWING);
     }
 
     /**
@@ -767,8 +756,7 @@ public interface MovementValidation extends Helper {
      * @return Whether the block is flowing water
      */
     static boolean isFlowingWater(BlockState state) {
-        FluidState fluidState = state.getFluidState();
-        return fluidState.getType() == Fluids.FLOWING_WATER;
+        return BlockStateFlags.has(state, BlockStateFlags.FLOWING_WATER);
     }
 
     /**
@@ -778,11 +766,7 @@ public interface MovementValidation extends Helper {
      * @return Whether the block is a water plant
      */
     static boolean isWaterPlant(BlockState state) {
-        Block block = state.getBlock();
-        return block == Blocks.KELP
-                || block == Blocks.KELP_PLANT
-                || block == Blocks.SEAGRASS
-                || block == Blocks.TALL_SEAGRASS;
+        return BlockStateFlags.has(state, BlockStateFlags.WATER_PLANT);
     }
 
     /**
@@ -792,7 +776,7 @@ public interface MovementValidation extends Helper {
      * @return Whether the block is a bubble column
      */
     static boolean isBubbleColumn(BlockState state) {
-        return state.getBlock() == Blocks.BUBBLE_COLUMN;
+        return BlockStateFlags.has(state, BlockStateFlags.BUBBLE_COLUMN);
     }
 
     /**
@@ -802,7 +786,7 @@ public interface MovementValidation extends Helper {
      * @return Whether the bubble column pushes upward
      */
     static boolean isUpwardBubbleColumn(BlockState state) {
-        return isBubbleColumn(state) && !state.getValue(BubbleColumnBlock.DRAG_DOWN);
+        return BlockStateFlags.has(state, BlockStateFlags.UPWARD_BUBBLE_COLUMN);
     }
 
     /**
@@ -815,11 +799,7 @@ public interface MovementValidation extends Helper {
      * @return Whether the position is passable for swimming
      */
     static boolean canSwimThrough(CalculationContext context, int x, int y, int z) {
-        BlockState state = context.get(x, y, z);
-        return isWater(state)
-                || state.getBlock() instanceof AirBlock
-                || isBubbleColumn(state)
-                || isWaterPlant(state);
+        return canSwimThrough(context.bsi, x, y, z);
     }
 
     static boolean canSwimThrough(PlayerContext ctx, PackedBlockPos pos) {
@@ -827,43 +807,29 @@ public interface MovementValidation extends Helper {
     }
 
     static boolean canSwimThrough(BlockStateInterface bsi, int x, int y, int z) {
-        BlockState state = bsi.get0(x, y, z);
-        return isWater(state)
-                || state.getBlock() instanceof AirBlock
-                || isBubbleColumn(state)
-                || isWaterPlant(state);
+        return BlockStateFlags.has(
+                bsi.getId(x, y, z),
+                BlockStateFlags.WATER
+                        | BlockStateFlags.AIR
+                        | BlockStateFlags.BUBBLE_COLUMN
+                        | BlockStateFlags.WATER_PLANT);
     }
 
     static boolean isFlowing(int x, int y, int z, BlockState state, BlockStateInterface bsi) {
-        FluidState fluidState = state.getFluidState();
-        if (!(fluidState.getType() instanceof FlowingFluid)) {
+        if (!BlockStateFlags.has(state, BlockStateFlags.FLOWING_FLUID)) {
             return false;
         }
-        if (fluidState.getType().getAmount(fluidState) != 8) {
+        if (possiblyFlowing(state)) {
             return true;
         }
-        return possiblyFlowing(bsi.get0(x + 1, y, z))
-                || possiblyFlowing(bsi.get0(x - 1, y, z))
-                || possiblyFlowing(bsi.get0(x, y, z + 1))
-                || possiblyFlowing(bsi.get0(x, y, z - 1));
+        return BlockStateFlags.has(bsi.getId(x + 1, y, z), BlockStateFlags.POSSIBLY_FLOWING)
+                || BlockStateFlags.has(bsi.getId(x - 1, y, z), BlockStateFlags.POSSIBLY_FLOWING)
+                || BlockStateFlags.has(bsi.getId(x, y, z + 1), BlockStateFlags.POSSIBLY_FLOWING)
+                || BlockStateFlags.has(bsi.getId(x, y, z - 1), BlockStateFlags.POSSIBLY_FLOWING);
     }
 
     static boolean isBlockNormalCube(BlockState state) {
-        Block block = state.getBlock();
-        if (block instanceof BambooStalkBlock
-                || block instanceof MovingPistonBlock
-                || block instanceof ScaffoldingBlock
-                || block instanceof ShulkerBoxBlock
-                || block instanceof PointedDripstoneBlock
-                || block instanceof AmethystClusterBlock) {
-            return false;
-        }
-        try {
-            return Block.isShapeFullBlock(state.getCollisionShape(null, null));
-        } catch (Exception ignored) {
-            // if we can't get the collision shape, assume it's bad and add to blocksToAvoid
-        }
-        return false;
+        return BlockStateFlags.has(state, BlockStateFlags.NORMAL_CUBE);
     }
 
     static PlaceResult attemptToPlaceABlock(
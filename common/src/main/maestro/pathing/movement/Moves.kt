@@ -15,13 +15,15 @@ import maestro.utils.PackedBlockPos
 
 /** An enum of all possible movements attached to all possible directions they could be taken in */
 enum class Moves(
+    /** The concrete [Movement] type this entry produces via [apply0] */
+    val movementClass: Class<out Movement>,
     val xOffset: Int,
     val yOffset: Int,
     val zOffset: Int,
     val dynamicXZ: Boolean = false,
     val dynamicY: Boolean = false,
 ) {
-    DOWNWARD(0, -1, 0) {
+    DOWNWARD(MovementDownward::class.java, 0, -1, 0) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -50,7 +52,7 @@ enum class Moves(
     //     ): Double = MovementPillar.cost(context, x, y, z)
     // },
 
-    TRAVERSE_NORTH(0, 0, -1) {
+    TRAVERSE_NORTH(MovementTraverse::class.java, 0, 0, -1) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -64,7 +66,7 @@ enum class Moves(
         ): Double = MovementTraverse.cost(context, x, y, z, x, z - 1)
     },
 
-    TRAVERSE_SOUTH(0, 0, +1) {
+    TRAVERSE_SOUTH(MovementTraverse::class.java, 0, 0, +1) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -78,7 +80,7 @@ enum class Moves(
         ): Double = MovementTraverse.cost(context, x, y, z, x, z + 1)
     },
 
-    TRAVERSE_EAST(+1, 0, 0) {
+    TRAVERSE_EAST(MovementTraverse::class.java, +1, 0, 0) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -92,7 +94,7 @@ enum class Moves(
         ): Double = MovementTraverse.cost(context, x, y, z, x + 1, z)
     },
 
-    TRAVERSE_WEST(-1, 0, 0) {
+    TRAVERSE_WEST(MovementTraverse::class.java, -1, 0, 0) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -106,7 +108,7 @@ enum class Moves(
         ): Double = MovementTraverse.cost(context, x, y, z, x - 1, z)
     },
 
-    ASCEND_NORTH(0, +1, -1) {
+    ASCEND_NORTH(MovementAscend::class.java, 0, +1, -1) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -125,7 +127,7 @@ enum class Moves(
         ): Double = MovementAscend.cost(context, x, y, z, x, z - 1)
     },
 
-    ASCEND_SOUTH(0, +1, +1) {
+    ASCEND_SOUTH(MovementAscend::class.java, 0, +1, +1) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -144,7 +146,7 @@ enum class Moves(
         ): Double = MovementAscend.cost(context, x, y, z, x, z + 1)
     },
 
-    ASCEND_EAST(+1, +1, 0) {
+    ASCEND_EAST(MovementAscend::class.java, +1, +1, 0) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -163,7 +165,7 @@ enum class Moves(
         ): Double = MovementAscend.cost(context, x, y, z, x + 1, z)
     },
 
-    ASCEND_WEST(-1, +1, 0) {
+    ASCEND_WEST(MovementAscend::class.java, -1, +1, 0) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -183,7 +185,7 @@ enum class Moves(
     },
 
     // NOTE: Only single-block descend enabled. Multi-block falls require MovementFall.kt conversion.
-    DESCEND_EAST(+1, -1, 0, dynamicXZ = false, dynamicY = true) {
+    DESCEND_EAST(MovementDescend::class.java, +1, -1, 0, dynamicXZ = false, dynamicY = true) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -208,7 +210,7 @@ enum class Moves(
         }
     },
 
-    DESCEND_WEST(-1, -1, 0, dynamicXZ = false, dynamicY = true) {
+    DESCEND_WEST(MovementDescend::class.java, -1, -1, 0, dynamicXZ = false, dynamicY = true) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -232,7 +234,7 @@ enum class Moves(
         }
     },
 
-    DESCEND_NORTH(0, -1, -1, dynamicXZ = false, dynamicY = true) {
+    DESCEND_NORTH(MovementDescend::class.java, 0, -1, -1, dynamicXZ = false, dynamicY = true) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -256,7 +258,7 @@ enum class Moves(
         }
     },
 
-    DESCEND_SOUTH(0, -1, +1, dynamicXZ = false, dynamicY = true) {
+    DESCEND_SOUTH(MovementDescend::class.java, 0, -1, +1, dynamicXZ = false, dynamicY = true) {
         override fun apply0(
             context: CalculationContext,
             src: PackedBlockPos,
@@ -486,4 +488,14 @@ enum class Moves(
         y: Int,
         z: Int,
     ): Double = throw UnsupportedOperationException("Movements must override `cost` or `apply`")
+
+    /**
+     * Whether [apply0] can build the movement that [apply] costed as ending at [destY]. Descends
+     * cost falls of any height, but only single-block descends can be built until MovementFall is
+     * converted, so searches must leave the rest out.
+     */
+    fun canBuild(
+        srcY: Int,
+        destY: Int,
+    ): Boolean = movementClass != MovementDescend::class.java || destY == srcY - 1
 }
@@ -1,6 +1,7 @@
 package maestro.pathing.movement;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 import maestro.pathing.MutableMoveResult;
 import maestro.utils.PackedBlockPos;
@@ -17,32 +18,50 @@ import maestro.utils.PackedBlockPos;
  *   <li>Creates {@link Movement} instances with pre-calculated costs
  *   <li>Reuses {@link MutableMoveResult} for efficiency during cost checking
  * </ul>
+ *
+ * <p>During search {@link #expand} only reports the {@link Moves} entry, destination and cost;
+ * {@link Movement} instances are created later for the nodes on the final path.
  */
 public class StandardMovementProvider implements IMovementProvider {
+    /** Cached copy of {@link Moves#values()}, which clones its array on every call */
+    private static final Moves[] MOVES = Moves.values();
 
     @Override
     public Stream<IMovement> generateMovements(CalculationContext context, PackedBlockPos from) {
         // Pre-allocate result object (reused for cost checking to avoid allocations)
         MutableMoveResult res = new MutableMoveResult();
+        List<IMovement> movements = new ArrayList<>();
+
+        for (Moves move : MOVES) {
+            res.reset();
+            move.apply(context, from.getX(), from.getY(), from.getZ(), res);
+            // Filter out impossible movements
+            if (res.cost >= ActionCosts.COST_INF || !move.canBuild(from.getY(), res.y)) {
+                continue;
+            }
+            Movement movement = move.apply0(context, from);
+            // Store pre-calculated cost to avoid recalculation later
+            movement.override(res.cost);
+            movements.add(movement);
+        }
+        return movements.stream();
+    }
 
-        return Arrays.stream(Moves.values())
-                .filter(
-                        move -> {
-                            // Quick cost check using MutableMoveResult
-                            res.reset();
-                            move.apply(context, from.getX(), from.getY(), from.getZ(), res);
-                            // Filter out impossible movements
-                            return res.cost < ActionCosts.COST_INF;
-                        })
-                .map(
-                        move -> {
-                            // Create actual Movement instance with calculated destination
-                            res.reset();
-                            move.apply(context, from.getX(), from.getY(), from.getZ(), res);
-                            Movement movement = move.apply0(context, from);
-                            // Store pre-calculated cost to avoid recalculation later
-                            movement.override(res.cost);
-                            return (IMovement) movement;
-                        });
+    @Override
+    public void expand(
+            CalculationContext context,
+            int x,
+            int y,
+            int z,
+            MutableMoveResult result,
+            MovementSink sink) {
+        for (Moves move : MOVES) {
+            result.reset();
+            move.apply(context, x, y, z, result);
+            if (result.cost < ActionCosts.COST_INF && move.canBuild(y, result.y)) {
+                result.move = move;
+                sink.accept(result);
+            }
+        }
     }
 }
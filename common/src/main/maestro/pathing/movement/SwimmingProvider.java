@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
 import maestro.Agent;
+import maestro.pathing.MutableMoveResult;
+import maestro.pathing.precompute.BlockStateFlags;
 import maestro.utils.PackedBlockPos;
 
 // TODO: Re-enable after MovementSwimHorizontal is converted to Kotlin
@@ -36,7 +38,8 @@ public class SwimmingProvider implements IMovementProvider {
     @Override
     public Stream<IMovement> generateMovements(CalculationContext context, PackedBlockPos from) {
         // Only generate if in water
-        if (!MovementValidation.isWater(context.get(from.getX(), from.getY(), from.getZ()))) {
+        if (!BlockStateFlags.has(
+                context.bsi.getId(from.getX(), from.getY(), from.getZ()), BlockStateFlags.WATER)) {
             return Stream.empty();
         }
 
@@ -110,4 +113,19 @@ public class SwimmingProvider implements IMovementProvider {
 
         return movements.stream();
     }
+
+    @Override
+    public void expand(
+            CalculationContext context,
+            int x,
+            int y,
+            int z,
+            MutableMoveResult result,
+            MovementSink sink) {
+        // Same gate as generateMovements, checked here so dry land never builds a stream
+        if (!BlockStateFlags.has(context.bsi.getId(x, y, z), BlockStateFlags.WATER)) {
+            return;
+        }
+        IMovementProvider.super.expand(context, x, y, z, result, sink);
+    }
 }
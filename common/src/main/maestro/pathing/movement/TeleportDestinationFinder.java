@@ -156,7 +156,7 @@ public class TeleportDestinationFinder {
 
             if (MovementValidation.canWalkThrough(context, pos.getX(), checkY, pos.getZ(), state)) {
                 // Passable block - check if it's dangerous (fire, lava, etc.)
-                if (MovementValidation.avoidWalkingInto(state)) {
+                if (MovementValidation.avoidWalkingInto(context, pos.getX(), checkY, pos.getZ())) {
                     return new ValidationResult(false, -1); // Dangerous passable block in air gap
                 }
                 continue; // Safe passable block, keep checking deeper
@@ -168,7 +168,7 @@ public class TeleportDestinationFinder {
             }
 
             // Found valid ground within 5 blocks - verify it's safe
-            if (MovementValidation.avoidWalkingInto(state)) {
+            if (MovementValidation.avoidWalkingInto(context, pos.getX(), checkY, pos.getZ())) {
                 return new ValidationResult(false, -1); // Dangerous landing block
             }
 
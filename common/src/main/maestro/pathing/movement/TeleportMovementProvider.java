@@ -1,6 +1,7 @@
 package maestro.pathing.movement;
 
 import java.util.stream.Stream;
+import maestro.pathing.MutableMoveResult;
 import maestro.utils.Loggers;
 import maestro.utils.PackedBlockPos;
 // TODO: Re-enable after MovementTeleport is converted to Kotlin
@@ -46,4 +47,19 @@ public class TeleportMovementProvider implements IMovementProvider {
 
         return Stream.empty();
     }
+
+    @Override
+    public void expand(
+            CalculationContext context,
+            int x,
+            int y,
+            int z,
+            MutableMoveResult result,
+            MovementSink sink) {
+        // Skip the stream bridge entirely while teleports are disabled
+        if (!context.allowTeleport) {
+            return;
+        }
+        IMovementProvider.super.expand(context, x, y, z, result, sink);
+    }
 }
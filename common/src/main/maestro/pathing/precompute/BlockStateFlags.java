@@ -0,0 +1,184 @@
+package maestro.pathing.precompute;
+
+import java.util.stream.IntStream;
+import maestro.utils.Loggers;
+import net.minecraft.world.level.block.AirBlock;
+import net.minecraft.world.level.block.AmethystClusterBlock;
+import net.minecraft.world.level.block.BambooStalkBlock;
+import net.minecraft.world.level.block.BaseFireBlock;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.BubbleColumnBlock;
+import net.minecraft.world.level.block.PointedDripstoneBlock;
+import net.minecraft.world.level.block.ScaffoldingBlock;
+import net.minecraft.world.level.block.ShulkerBoxBlock;
+import net.minecraft.world.level.block.SlabBlock;
+import net.minecraft.world.level.block.piston.MovingPistonBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.SlabType;
+import net.minecraft.world.level.material.FlowingFluid;
+import net.minecraft.world.level.material.Fluid;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.level.material.Fluids;
+import org.slf4j.Logger;
+
+/**
+ * Everything pathing asks of a block state that depends on nothing but the state, as one int of
+ * flags per id in {@link Block#BLOCK_STATE_REGISTRY}. The whole table is worked out at once, in
+ * parallel, by {@link #init} or the first lookup, so from then on a predicate is a single array read
+ * and any number of threads may read it.
+ *
+ * <p>Predicates that depend on settings or on the neighbouring blocks stay in {@link
+ * PrecomputedData}.
+ */
+public final class BlockStateFlags {
+
+    private static final Logger log = Loggers.Path.get();
+
+    public static final int AVOID_WALKING_INTO = 1;
+    public static final int LIQUID = 1 << 1;
+    public static final int WATER = 1 << 2;
+    public static final int LAVA = 1 << 3;
+
+    /** A fluid that spreads, source block or not */
+    public static final int FLOWING_FLUID = 1 << 4;
+
+    /** A spreading fluid that isn't a source block */
+    public static final int POSSIBLY_FLOWING = 1 << 5;
+
+    public static final int FLOWING_WATER = 1 << 6;
+    public static final int BOTTOM_SLAB = 1 << 7;
+    public static final int WATER_PLANT = 1 << 8;
+    public static final int BUBBLE_COLUMN = 1 << 9;
+    public static final int UPWARD_BUBBLE_COLUMN = 1 << 10;
+    public static final int NORMAL_CUBE = 1 << 11;
+    public static final int AIR = 1 << 12;
+
+    /**
+     * Not built in the static initializer: the parallel workers would call back into this class
+     * while it's still being initialized, and wait on it forever
+     */
+    private static volatile int[] flags;
+
+    private BlockStateFlags() {}
+
+    /** Builds the table ahead of the first search, if it hasn't been already */
+    public static void init() {
+        table();
+    }
+
+    public static boolean has(int id, int flag) {
+        return (table()[id] & flag) != 0;
+    }
+
+    public static boolean has(BlockState state, int flag) {
+        return has(Block.BLOCK_STATE_REGISTRY.getId(state), flag);
+    }
+
+    private static int[] table() {
+        int[] table = flags;
+        if (table != null) {
+            return table;
+        }
+        synchronized (BlockStateFlags.class) {
+            if (flags == null) {
+                flags = build();
+            }
+            return flags;
+        }
+    }
+
+    private static int[] build() {
+        long start = System.nanoTime();
+        int[] flags = new int[Block.BLOCK_STATE_REGISTRY.size()];
+        IntStream.range(0, flags.length)
+                .parallel()
+                .forEach(
+                        id -> {
+                            BlockState state = Block.BLOCK_STATE_REGISTRY.byId(id);
+                            if (state != null) {
+                                flags[id] = compute(state);
+                            }
+                        });
+        log.atDebug()
+                .addKeyValue("states", flags.length)
+                .addKeyValue("elapsed_ms", (System.nanoTime() - start) / 1_000_000)
+                .log("Block state flags built");
+        return flags;
+    }
+
+    private static int compute(BlockState state) {
+        Block block = state.getBlock();
+        FluidState fluidState = state.getFluidState();
+        Fluid fluid = fluidState.getType();
+        int flags = 0;
+
+        if (!fluidState.isEmpty()
+                || block == Blocks.MAGMA_BLOCK
+                || block == Blocks.CACTUS
+                || block == Blocks.SWEET_BERRY_BUSH
+                || block instanceof BaseFireBlock
+                || block == Blocks.END_PORTAL
+                || block == Blocks.COBWEB
+                || block == Blocks.BUBBLE_COLUMN) {
+            flags |= AVOID_WALKING_INTO;
+        }
+        if (!fluidState.isEmpty()) {
+            flags |= LIQUID;
+        }
+        if (fluid == Fluids.WATER || fluid == Fluids.FLOWING_WATER) {
+            flags |= WATER;
+        }
+        if (fluid == Fluids.LAVA || fluid == Fluids.FLOWING_LAVA) {
+            flags |= LAVA;
+        }
+        if (fluid instanceof FlowingFluid) {
+            flags |= FLOWING_FLUID;
+            if (fluid.getAmount(fluidState) != 8) {
+                flags |= POSSIBLY_FLOWING;
+            }
+        }
+        if (fluid == Fluids.FLOWING_WATER) {
+            flags |= FLOWING_WATER;
+        }
+        if (block instanceof SlabBlock && state.getValue(SlabBlock.TYPE) == SlabType.BOTTOM) {
+            flags |= BOTTOM_SLAB;
+        }
+        if (block == Blocks.KELP
+                || block == Blocks.KELP_PLANT
+                || block == Blocks.SEAGRASS
+                || block == Blocks.TALL_SEAGRASS) {
+            flags |= WATER_PLANT;
+        }
+        if (block == Blocks.BUBBLE_COLUMN) {
+            flags |= BUBBLE_COLUMN;
+            if (!state.getValue(BubbleColumnBlock.DRAG_DOWN)) {
+                flags |= UPWARD_BUBBLE_COLUMN;
+            }
+        }
+        if (isNormalCube(block, state)) {
+            flags |= NORMAL_CUBE;
+        }
+        if (block instanceof AirBlock) {
+            flags |= AIR;
+        }
+        return flags;
+    }
+
+    private static boolean isNormalCube(Block block, BlockState state) {
+        if (block instanceof BambooStalkBlock
+                || block instanceof MovingPistonBlock
+                || block instanceof ScaffoldingBlock
+                || block instanceof ShulkerBoxBlock
+                || block instanceof PointedDripstoneBlock
+                || block instanceof AmethystClusterBlock) {
+            return false;
+        }
+        try {
+            return Block.isShapeFullBlock(state.getCollisionShape(null, null));
+        } catch (Exception ignored) {
+            // if we can't get the collision shape, assume it's bad and add to blocksToAvoid
+        }
+        return false;
+    }
+}
@@ -8,6 +8,10 @@ import maestro.pathing.movement.MovementValidation;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.BlockState;
 
+/**
+ * The walk-on, walk-through and fully-passable answers for each block state, worked out as states
+ * come up. Unlike {@link BlockStateFlags} these depend on settings, so each search keeps its own.
+ */
 public class PrecomputedData {
 
     private final int[] data = new int[Block.BLOCK_STATE_REGISTRY.size()];
@@ -99,4 +103,50 @@ public class PrecomputedData {
             return (blockData & FULLY_PASSABLE_MASK) != 0;
         }
     }
+
+    /**
+     * Looks the position up by block state id, which {@link BlockStateInterface#getId} reads
+     * straight out of a section snapshot; the state itself is only needed for blocks that depend on
+     * their surroundings.
+     */
+    private int dataAt(BlockStateInterface bsi, int x, int y, int z) {
+        int id = bsi.getId(x, y, z);
+        int blockData = data[id];
+
+        if ((blockData & COMPLETED_MASK) == 0) { // we need to fill in the data
+            blockData = fillData(id, Block.BLOCK_STATE_REGISTRY.byId(id));
+        }
+        return blockData;
+    }
+
+    public boolean canWalkOn(BlockStateInterface bsi, int x, int y, int z) {
+        int blockData = dataAt(bsi, x, y, z);
+        if ((blockData & CAN_WALK_ON_SPECIAL_MASK) != 0) {
+            return MovementValidation.canWalkOnPosition(bsi, x, y, z, bsi.get0(x, y, z));
+        } else {
+            return (blockData & CAN_WALK_ON_MASK) != 0;
+        }
+    }
+
+    public boolean canWalkThrough(BlockStateInterface bsi, int x, int y, int z) {
+        int blockData = dataAt(bsi, x, y, z);
+        if ((blockData & CAN_WALK_THROUGH_SPECIAL_MASK) != 0) {
+            return MovementValidation.canWalkThroughPosition(bsi, x, y, z, bsi.get0(x, y, z));
+        } else {
+            return (blockData & CAN_WALK_THROUGH_MASK) != 0;
+        }
+    }
+
+    public boolean fullyPassable(BlockStateInterface bsi, int x, int y, int z) {
+        int blockData = dataAt(bsi, x, y, z);
+        if ((blockData & FULLY_PASSABLE_SPECIAL_MASK) != 0) {
+            return MovementValidation.fullyPassablePosition(bsi, x, y, z, bsi.get0(x, y, z));
+        } else {
+            return (blockData & FULLY_PASSABLE_MASK) != 0;
+        }
+    }
+
+    public boolean avoidWalkingInto(BlockStateInterface bsi, int x, int y, int z) {
+        return BlockStateFlags.has(bsi.getId(x, y, z), BlockStateFlags.AVOID_WALKING_INTO);
+    }
 }
@@ -0,0 +1,93 @@
+package maestro.pathing.precompute
+
+import net.minecraft.world.level.block.Block
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.block.state.BlockState
+import net.minecraft.world.level.chunk.LevelChunkSection
+import java.util.concurrent.atomic.AtomicIntegerArray
+
+/**
+ * The block state ids of a 16x16x16 chunk section, read out of its palette once so lookups during
+ * a search are a plain array read. A section of one state keeps just that.
+ *
+ * Never changes once built, so any number of pathing threads may read it; [isCurrent] tells
+ * whether the section has changed since.
+ */
+class SectionSnapshot private constructor(
+    @JvmField val chunkX: Int,
+    @JvmField val chunkZ: Int,
+    /** Index of the section in its chunk, counting up from the bottom of the world */
+    @JvmField val index: Int,
+    /** The section it was read from; a chunk that's loaded again comes with new sections */
+    private val source: LevelChunkSection,
+    private val versions: AtomicIntegerArray,
+    private val version: Int,
+    /** Ids by `y << 8 | z << 4 | x`, or null if every position has [uniformId] */
+    private val ids: CharArray?,
+    private val uniformId: Int,
+) {
+    /** @return the block state id at a position in the section, by any coordinates within it */
+    fun id(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Int {
+        val ids = ids ?: return uniformId
+        return ids[(y and 15 shl 8) or (z and 15 shl 4) or (x and 15)].code
+    }
+
+    fun state(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): BlockState = Block.BLOCK_STATE_REGISTRY.byId(id(x, y, z)) ?: AIR
+
+    /** @return whether this still matches the section, which has to be the one at [index] */
+    fun isCurrent(section: LevelChunkSection): Boolean = section === source && versions.get(index) == version
+
+    companion object {
+        private val AIR: BlockState = Blocks.AIR.defaultBlockState()
+
+        private val AIR_ID = Block.BLOCK_STATE_REGISTRY.getId(AIR)
+
+        /** Ids are kept in chars; with more states registered than fit, there are no snapshots */
+        @JvmField
+        val SUPPORTED = Block.BLOCK_STATE_REGISTRY.size() <= Char.MAX_VALUE.code + 1
+
+        /**
+         * Reads a section. [version] is what [versions] held for it before reading; if it has moved
+         * on by the time the snapshot is used, the section changed while it was read.
+         */
+        internal fun of(
+            chunkX: Int,
+            chunkZ: Int,
+            index: Int,
+            section: LevelChunkSection,
+            versions: AtomicIntegerArray,
+            version: Int,
+        ): SectionSnapshot {
+            if (section.hasOnlyAir()) {
+                return SectionSnapshot(chunkX, chunkZ, index, section, versions, version, null, AIR_ID)
+            }
+            val ids = CharArray(4096)
+            var uniform = true
+            // neighbouring positions are mostly the same state, so only look up the id when it changes
+            var lastState: BlockState? = null
+            var lastId = 0
+            for (y in 0 until 16) {
+                for (z in 0 until 16) {
+                    for (x in 0 until 16) {
+                        val state = section.getBlockState(x, y, z)
+                        if (state !== lastState) {
+                            uniform = uniform && lastState == null
+                            lastState = state
+                            lastId = Block.BLOCK_STATE_REGISTRY.getId(state)
+                        }
+                        ids[(y shl 8) or (z shl 4) or x] = lastId.toChar()
+                    }
+                }
+            }
+            return SectionSnapshot(chunkX, chunkZ, index, section, versions, version, ids.takeIf { !uniform }, lastId)
+        }
+    }
+}
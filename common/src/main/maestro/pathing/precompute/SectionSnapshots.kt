@@ -0,0 +1,94 @@
+package maestro.pathing.precompute
+
+import net.minecraft.core.BlockPos
+import net.minecraft.world.level.ChunkPos
+import net.minecraft.world.level.LevelHeightAccessor
+import net.minecraft.world.level.chunk.LevelChunk
+import net.minecraft.world.level.chunk.LevelChunkSection
+import net.minecraft.world.level.chunk.status.ChunkStatus
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Snapshots of the loaded chunk sections searches have read, shared by every search in a world.
+ * Sections are read when a search first needs them and again after a block in them changes;
+ * chunks are let go of when they unload or are sent again.
+ */
+class SectionSnapshots {
+    private class ChunkSections(
+        count: Int,
+    ) {
+        val snapshots = AtomicReferenceArray<SectionSnapshot?>(count)
+
+        /** Bumped on every change to a section, so snapshots read before it can tell */
+        val versions = AtomicIntegerArray(count)
+    }
+
+    private val chunks = ConcurrentHashMap<Long, ChunkSections>()
+
+    /** @return a snapshot of the section at [index] of a loaded chunk, read now if need be */
+    fun get(
+        chunk: LevelChunk,
+        index: Int,
+    ): SectionSnapshot = get(chunk.pos.x, chunk.pos.z, chunk.sections, index) { isLoaded(chunk) }
+
+    /** [get] for the chunk with [sections], which [isLoaded] tells is still in the chunk source */
+    internal fun get(
+        chunkX: Int,
+        chunkZ: Int,
+        sections: Array<LevelChunkSection>,
+        index: Int,
+        isLoaded: () -> Boolean,
+    ): SectionSnapshot {
+        val key = ChunkPos.asLong(chunkX, chunkZ)
+        val tracked =
+            chunks[key]
+                ?: if (isLoaded()) {
+                    chunks.computeIfAbsent(key) { ChunkSections(sections.size) }
+                } else {
+                    // a search still holding a chunk that has since unloaded; nothing would ever
+                    // let go of an entry for it, so the snapshot is kept by the search alone
+                    val versions = AtomicIntegerArray(sections.size)
+                    return SectionSnapshot.of(chunkX, chunkZ, index, sections[index], versions, 0)
+                }
+        val section = sections[index]
+        val cached = tracked.snapshots.get(index)
+        if (cached != null && cached.isCurrent(section)) {
+            return cached
+        }
+        val version = tracked.versions.get(index)
+        val snapshot = SectionSnapshot.of(chunkX, chunkZ, index, section, tracked.versions, version)
+        tracked.snapshots.set(index, snapshot)
+        return snapshot
+    }
+
+    /** Called for every block set in a loaded chunk, whether the server sent it or not */
+    fun blockChanged(
+        world: LevelHeightAccessor,
+        pos: BlockPos,
+    ) {
+        val sections = chunks[ChunkPos.asLong(pos.x shr 4, pos.z shr 4)] ?: return
+        val index = world.getSectionIndex(pos.y)
+        if (index < 0 || index >= sections.snapshots.length()) {
+            return
+        }
+        sections.versions.incrementAndGet(index)
+        sections.snapshots.set(index, null)
+    }
+
+    /** Lets go of a chunk that was unloaded, or loaded again over what was there */
+    fun chunkChanged(
+        chunkX: Int,
+        chunkZ: Int,
+    ) {
+        val sections = chunks.remove(ChunkPos.asLong(chunkX, chunkZ)) ?: return
+        // searches may still hold on to its snapshots
+        for (i in 0 until sections.versions.length()) {
+            sections.versions.incrementAndGet(i)
+        }
+    }
+
+    private fun isLoaded(chunk: LevelChunk): Boolean =
+        chunk.level.chunkSource.getChunk(chunk.pos.x, chunk.pos.z, ChunkStatus.FULL, false) === chunk
+}
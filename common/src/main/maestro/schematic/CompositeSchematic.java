@@ -9,8 +9,12 @@ public class CompositeSchematic extends AbstractSchematic {
     private final List<CompositeSchematicEntry> schematics;
     private CompositeSchematicEntry[] schematicArr;
 
+    /** Built on first lookup after a {@link #put}; may be read by background scans */
+    private volatile CompositeSchematicIndex index;
+
     private void recalcArr() {
         schematicArr = schematics.toArray(new CompositeSchematicEntry[0]);
+        index = null;
         for (CompositeSchematicEntry entry : schematicArr) {
             this.x = Math.max(x, entry.x + entry.schematic.widthX());
             this.y = Math.max(y, entry.y + entry.schematic.heightY());
@@ -30,23 +34,17 @@ public class CompositeSchematic extends AbstractSchematic {
     }
 
     private CompositeSchematicEntry getSchematic(int x, int y, int z, BlockState currentState) {
-        for (CompositeSchematicEntry entry : schematicArr) {
-            if (x >= entry.x
-                    && y >= entry.y
-                    && z >= entry.z
-                    && entry.schematic.inSchematic(
-                            x - entry.x, y - entry.y, z - entry.z, currentState)) {
-                return entry;
-            }
+        CompositeSchematicIndex index = this.index;
+        if (index == null) {
+            index = new CompositeSchematicIndex(schematicArr);
+            this.index = index;
         }
-        return null;
+        return index.find(x, y, z, currentState);
     }
 
     @Override
     public boolean inSchematic(int x, int y, int z, BlockState currentState) {
-        CompositeSchematicEntry entry = getSchematic(x, y, z, currentState);
-        return entry != null
-                && entry.schematic.inSchematic(x - entry.x, y - entry.y, z - entry.z, currentState);
+        return getSchematic(x, y, z, currentState) != null;
     }
 
     @Override
@@ -0,0 +1,128 @@
+package maestro.schematic;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Buckets the entries of a composite by the columns their boxes overlap, so finding the entry for
+ * a position only looks at the few entries near it instead of all of them. Within a bucket,
+ * entries keep their original order, so the first match is the same one a linear scan would find.
+ *
+ * <p>Immutable, so it can be shared with background scans.
+ */
+public final class CompositeSchematicIndex {
+
+    private static final CompositeSchematicEntry[] NONE = new CompositeSchematicEntry[0];
+
+    /** Upper bound on the number of buckets; cells grow beyond 16x16 columns to stay below it */
+    private static final int MAX_CELLS = 1 << 16;
+
+    private final int shift;
+    private final int minCellX;
+    private final int minCellZ;
+    private final int cellsX;
+    private final int cellsZ;
+    private final CompositeSchematicEntry[][] cells;
+
+    public CompositeSchematicIndex(CompositeSchematicEntry[] entries) {
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (CompositeSchematicEntry entry : entries) {
+            if (isEmpty(entry)) {
+                continue;
+            }
+            minX = Math.min(minX, entry.x);
+            minZ = Math.min(minZ, entry.z);
+            maxX = Math.max(maxX, entry.x + entry.schematic.widthX() - 1);
+            maxZ = Math.max(maxZ, entry.z + entry.schematic.lengthZ() - 1);
+        }
+        if (minX > maxX) {
+            this.shift = 4;
+            this.minCellX = 0;
+            this.minCellZ = 0;
+            this.cellsX = 0;
+            this.cellsZ = 0;
+            this.cells = new CompositeSchematicEntry[0][];
+            return;
+        }
+        int shift = 4;
+        while ((long) ((maxX >> shift) - (minX >> shift) + 1)
+                        * ((maxZ >> shift) - (minZ >> shift) + 1)
+                > MAX_CELLS) {
+            shift++;
+        }
+        this.shift = shift;
+        this.minCellX = minX >> shift;
+        this.minCellZ = minZ >> shift;
+        this.cellsX = (maxX >> shift) - this.minCellX + 1;
+        this.cellsZ = (maxZ >> shift) - this.minCellZ + 1;
+
+        List<List<CompositeSchematicEntry>> buckets = new ArrayList<>(this.cellsX * this.cellsZ);
+        for (int i = 0; i < this.cellsX * this.cellsZ; i++) {
+            buckets.add(null);
+        }
+        for (CompositeSchematicEntry entry : entries) {
+            if (isEmpty(entry)) {
+                continue;
+            }
+            int fromX = (entry.x >> shift) - this.minCellX;
+            int toX = ((entry.x + entry.schematic.widthX() - 1) >> shift) - this.minCellX;
+            int fromZ = (entry.z >> shift) - this.minCellZ;
+            int toZ = ((entry.z + entry.schematic.lengthZ() - 1) >> shift) - this.minCellZ;
+            for (int cx = fromX; cx <= toX; cx++) {
+                for (int cz = fromZ; cz <= toZ; cz++) {
+                    int cell = cx * this.cellsZ + cz;
+                    List<CompositeSchematicEntry> bucket = buckets.get(cell);
+                    if (bucket == null) {
+                        bucket = new ArrayList<>(2);
+                        buckets.set(cell, bucket);
+                    }
+                    bucket.add(entry);
+                }
+            }
+        }
+        this.cells = new CompositeSchematicEntry[buckets.size()][];
+        for (int i = 0; i < this.cells.length; i++) {
+            List<CompositeSchematicEntry> bucket = buckets.get(i);
+            this.cells[i] = bucket == null ? NONE : bucket.toArray(NONE);
+        }
+    }
+
+    private static boolean isEmpty(CompositeSchematicEntry entry) {
+        return entry.schematic.widthX() <= 0
+                || entry.schematic.heightY() <= 0
+                || entry.schematic.lengthZ() <= 0;
+    }
+
+    /**
+     * @return The entries whose boxes may contain the column, in their original order
+     */
+    public CompositeSchematicEntry[] candidates(int x, int z) {
+        int cx = (x >> this.shift) - this.minCellX;
+        int cz = (z >> this.shift) - this.minCellZ;
+        if (cx < 0 || cz < 0 || cx >= this.cellsX || cz >= this.cellsZ) {
+            return NONE;
+        }
+        return this.cells[cx * this.cellsZ + cz];
+    }
+
+    /**
+     * @return The first entry whose box contains the position and whose schematic includes it, or
+     *     null
+     */
+    public CompositeSchematicEntry find(int x, int y, int z, BlockState currentState) {
+        for (CompositeSchematicEntry entry : candidates(x, z)) {
+            if (x >= entry.x
+                    && y >= entry.y
+                    && z >= entry.z
+                    && entry.schematic.inSchematic(
+                            x - entry.x, y - entry.y, z - entry.z, currentState)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -15,6 +15,20 @@ public interface ISchematicFormat {
      */
     IStaticSchematic parse(InputStream input) throws IOException;
 
+    /**
+     * Parses the schematic, handing each part to {@code sink} as soon as it is decoded, so large
+     * schematics can be used before they are fully loaded. Formats made of several regions should
+     * override this; by default the whole schematic is decoded and handed over as one part.
+     *
+     * @param input The stream to read the schematic from
+     * @param sink Receives the schematic's size and then its parts
+     */
+    default void parse(InputStream input, ISchematicSink sink) throws IOException {
+        IStaticSchematic schematic = parse(input);
+        sink.begin(schematic.widthX(), schematic.heightY(), schematic.lengthZ(), 1);
+        sink.accept(schematic, 0, 0, 0);
+    }
+
     /**
      * @param file The file to check against
      * @return Whether the specified file matches this schematic format
@@ -0,0 +1,31 @@
+package maestro.schematic.format;
+
+import maestro.schematic.IStaticSchematic;
+
+/**
+ * Receives a schematic while it is being decoded, one independently usable part at a time.
+ *
+ * @see ISchematicFormat#parse(java.io.InputStream, ISchematicSink)
+ */
+public interface ISchematicSink {
+
+    /**
+     * Called once, before any part, as soon as the overall size is known.
+     *
+     * @param widthX The width of the whole schematic
+     * @param heightY The height of the whole schematic
+     * @param lengthZ The length of the whole schematic
+     * @param parts The number of parts that will follow
+     */
+    void begin(int widthX, int heightY, int lengthZ, int parts);
+
+    /**
+     * Called for every decoded part. Parts may be handed over from any thread.
+     *
+     * @param part The decoded part
+     * @param x The X offset of the part within the whole schematic
+     * @param y The Y offset of the part within the whole schematic
+     * @param z The Z offset of the part within the whole schematic
+     */
+    void accept(IStaticSchematic part, int x, int y, int z);
+}
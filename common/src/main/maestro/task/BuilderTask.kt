@@ -1,11 +1,17 @@
 package maestro.task
 
 import com.google.common.collect.ImmutableSet
+import it.unimi.dsi.fastutil.longs.LongArrayList
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet
 import maestro.Agent
+import maestro.event.events.BlockChangeEvent
+import maestro.event.events.ChunkEvent
+import maestro.event.listener.AbstractGameEventListener
+import maestro.gui.Toast
 import maestro.input.Input
 import maestro.pathing.BlockStateInterface
 import maestro.pathing.PathingCommandContext
+import maestro.pathing.goals.BoundedGoal
 import maestro.pathing.goals.Goal
 import maestro.pathing.goals.GoalBlock
 import maestro.pathing.goals.GoalComposite
@@ -24,7 +30,9 @@ import maestro.schematic.SubstituteSchematic
 import maestro.task.schematic.MapArtSchematic
 import maestro.task.schematic.SchematicSystem
 import maestro.task.schematic.SelectionSchematic
+import maestro.task.schematic.StreamingSchematic
 import maestro.task.schematic.litematica.LitematicaBridge
+import maestro.utils.BackgroundExecutors
 import maestro.utils.Loggers
 import maestro.utils.PackedBlockPos
 import maestro.utils.RayTraceUtils
@@ -33,10 +41,12 @@ import maestro.utils.RotationUtils
 import net.minecraft.core.BlockPos
 import net.minecraft.core.Direction
 import net.minecraft.core.Vec3i
+import net.minecraft.network.chat.Component
 import net.minecraft.world.InteractionHand
 import net.minecraft.world.item.BlockItem
 import net.minecraft.world.item.context.BlockPlaceContext
 import net.minecraft.world.item.context.UseOnContext
+import net.minecraft.world.level.ChunkPos
 import net.minecraft.world.level.block.AirBlock
 import net.minecraft.world.level.block.Blocks
 import net.minecraft.world.level.block.HorizontalDirectionalBlock
@@ -55,13 +65,45 @@ import java.io.File
 import java.io.FileInputStream
 import java.util.Optional
 import java.util.OptionalInt
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.RejectedExecutionException
 import java.util.stream.Stream
 
 class BuilderTask(
     agent: Agent,
-) : TaskHelper(agent) {
-    private var incorrectPositions: HashSet<PackedBlockPos>? = null
+) : TaskHelper(agent),
+    AbstractGameEventListener {
+    /** Incorrect positions currently being worked on, at most about [maestro.Settings.incorrectSize] */
+    private var incorrectPositions: LongOpenHashSet? = null
     private var observedCompleted: LongOpenHashSet? = null
+
+    /**
+     * Every position known to be incorrect, kept current from block change and chunk events so the
+     * schematic volume is only scanned once. Null until that scan has finished.
+     */
+    private var diff: SchematicDiff? = null
+
+    /** Whether [diff] is straight from a scan, with no position fixed since */
+    private var diffFresh = false
+    private var scan: CompletableFuture<ScanResult>? = null
+
+    /** A rescan picking up newly loaded parts, while the builder keeps working from [diff] */
+    private var refresh: CompletableFuture<ScanResult>? = null
+
+    /** Positions and chunks changed while [refresh] runs, which it may not have seen */
+    private val refreshPositions = LongOpenHashSet()
+    private val refreshChunks = LongOpenHashSet()
+
+    /** A schematic file being decoded whose size isn't known yet */
+    private var pendingLoad: StreamingSchematic? = null
+
+    /** The schematic being built while parts of it are still being decoded */
+    private var loading: StreamingSchematic? = null
+    private var loadedParts = 0
+
+    /** Positions and chunks changed since they were last verified, packed */
+    private val dirtyPositions = LongOpenHashSet()
+    private val dirtyChunks = LongOpenHashSet()
     private var name: String? = null
     private var realSchematic: ISchematic? = null
     private var schematic: ISchematic? = null
@@ -69,10 +111,17 @@ class BuilderTask(
     private var ticks = 0
     private var paused = false
     private var layer = 0
+
+    /** Schematic y range of the layers being built in layer mode, or null to build every layer */
+    private var buildingLayers: IntRange? = null
     private var numRepeats = 0
     private var approxPlaceable: List<BlockState> = emptyList()
     var stopAtHeight = 0
 
+    init {
+        agent.gameEventHandler.registerEventListener(this)
+    }
+
     /**
      * Requests a build for the specified schematic, labeled as specified, with the specified
      * origin.
@@ -86,6 +135,7 @@ class BuilderTask(
         schematic: ISchematic,
         origin: Vec3i,
     ) {
+        cancelLoad()
         this.name = name
         var currentSchematic: ISchematic = schematic
         this.realSchematic = null
@@ -246,7 +296,7 @@ class BuilderTask(
 
         this.numRepeats = 0
         this.observedCompleted = LongOpenHashSet()
-        this.incorrectPositions = null
+        invalidateDiff()
     }
 
     fun resume() {
@@ -261,12 +311,14 @@ class BuilderTask(
 
     /**
      * Requests a build for the specified schematic, labeled as specified, with the specified
-     * origin.
+     * origin. The file is decoded on [Agent.getExecutor]; building starts as soon as its size is
+     * known and works on the parts decoded so far. Map art waits for the whole schematic, since it
+     * needs every column up front.
      *
      * @param name A user-friendly name for the schematic
      * @param schematic The file path of the schematic
      * @param origin The origin position of the schematic being built
-     * @return Whether the schematic was able to load from file
+     * @return Whether the schematic's format is known. Parse errors are logged once they happen
      */
     fun build(
         name: String,
@@ -277,23 +329,76 @@ class BuilderTask(
         if (format.isEmpty) {
             return false
         }
-        val parsed: IStaticSchematic
-        try {
-            parsed = format.get().parse(FileInputStream(schematic))
-        } catch (e: Exception) {
+        cancelLoad()
+        val loader = StreamingSchematic()
+        pendingLoad = loader
+        val logFailure = { e: Throwable ->
             log
                 .atError()
                 .setCause(e)
                 .addKeyValue("schematic", schematic.absolutePath)
                 .addKeyValue("format", format.get()::class.java.simpleName)
                 .log("Failed to parse schematic")
-            return false
         }
-        val schem = applyMapArtAndSelection(origin, parsed)
-        build(name, schem, origin)
+        val ready =
+            if (Agent
+                    .getPrimaryAgent()
+                    .settings.mapArtMode.value
+            ) {
+                loader.loaded()
+            } else {
+                loader.started()
+            }
+        ready.whenCompleteAsync(
+            { _, e ->
+                // superseded or cancelled in the meantime
+                if (pendingLoad !== loader) {
+                    return@whenCompleteAsync
+                }
+                pendingLoad = null
+                if (e != null) {
+                    logFailure(e)
+                    return@whenCompleteAsync
+                }
+                build(name, applyMapArtAndSelection(origin, loader), origin)
+                loading = loader
+                loadedParts = loader.partCount()
+                Toast.addOrUpdate(
+                    Component.literal("Loading $name"),
+                    Component.literal("${loader.partCount()} / ${loader.expectedParts()} regions"),
+                )
+            },
+            ctx.minecraft(),
+        )
+        loader.loaded().whenCompleteAsync(
+            { _, e ->
+                if (e != null && loading === loader) {
+                    logFailure(e)
+                    onLostControl()
+                }
+            },
+            ctx.minecraft(),
+        )
+        CompletableFuture.runAsync(
+            {
+                try {
+                    FileInputStream(schematic).use { format.get().parse(it, loader) }
+                } catch (e: Exception) {
+                    loader.fail(e)
+                }
+            },
+            Agent.getExecutor(),
+        )
         return true
     }
 
+    private fun cancelLoad() {
+        pendingLoad?.cancel()
+        pendingLoad = null
+        loading?.cancel()
+        loading = null
+    }
+
     private fun applyMapArtAndSelection(
         origin: Vec3i,
         parsed: IStaticSchematic,
@@ -622,6 +727,7 @@ class BuilderTask(
                         .settings.layerHeight.value - 1
                 minYInclusive = 0
             }
+            buildingLayers = minYInclusive..maxYInclusive
             schematic =
                 object : ISchematic {
                     override fun desiredState(
@@ -653,9 +759,15 @@ class BuilderTask(
 
                     override fun lengthZ(): Int = realSchematicLocal.lengthZ()
                 }
+        } else {
+            buildingLayers = null
         }
         val bcc = BuilderCalculationContext()
-        if (!recalc(bcc)) {
+        val remaining =
+            recalc(bcc)
+                // still scanning a large schematic for the first time
+                ?: return PathingCommand(null, PathingCommandType.CANCEL_AND_SET_GOAL)
+        if (!remaining) {
             if (Agent
                     .getPrimaryAgent()
                     .settings.buildInLayers.value &&
@@ -696,6 +808,7 @@ class BuilderTask(
             ) {
                 schematic?.reset()
             }
+            invalidateDiff()
             log
                 .atInfo()
                 .addKeyValue("repeat_vector", repeat)
@@ -799,107 +912,375 @@ class BuilderTask(
         return PathingCommandContext(goal, PathingCommandType.FORCE_REVALIDATE_GOAL_AND_PATH, bcc)
     }
 
-    private fun recalc(bcc: BuilderCalculationContext): Boolean {
-        if (incorrectPositions == null) {
-            incorrectPositions = HashSet()
-            fullRecalc(bcc)
-            if (incorrectPositions!!.isEmpty()) {
-                return false
+    /**
+     * Brings [incorrectPositions] up to date from the changes seen since the last tick, refilling
+     * it from [diff] once it runs empty.
+     *
+     * @return whether anything is left to build, or null while waiting for the first scan or for
+     *     parts of the schematic that are still loading
+     */
+    private fun recalc(bcc: BuilderCalculationContext): Boolean? {
+        pollLoading()
+        if (diff == null) {
+            val pending = scan ?: startScan(true).also { scan = it }
+            if (!pending.isDone) {
+                return null
+            }
+            scan = null
+            if (wasRejected(pending)) {
+                // every scan thread was busy; try again next tick
+                return null
+            }
+            adopt(pending.join())
+        }
+        refresh?.let { pending ->
+            if (wasRejected(pending)) {
+                refresh = startScan(false)
+            } else if (pending.isDone) {
+                refresh = null
+                adopt(pending.join())
+                // changes seen while the rescan ran may be missing from its result
+                dirtyPositions.addAll(refreshPositions)
+                dirtyChunks.addAll(refreshChunks)
+                refreshPositions.clear()
+                refreshChunks.clear()
             }
         }
         recalcNearby(bcc)
-        if (incorrectPositions!!.isEmpty()) {
-            fullRecalc(bcc)
+        applyDirty(bcc)
+        val incorrect = incorrectPositions!!
+        if (incorrect.isEmpty()) {
+            val diff = diff!!
+            if (diff.isEmpty() && !diffFresh) {
+                // rescan once before declaring the build done, in case a change was missed
+                invalidateDiff()
+                return recalc(bcc)
+            }
+            diff.fillLowest(
+                incorrect,
+                Agent
+                    .getPrimaryAgent()
+                    .settings.incorrectSize.value,
+                // in layer mode, only the layers being built
+                buildingLayers ?: SchematicDiff.ALL_LAYERS,
+            ) { packed ->
+                val x = BlockPos.getX(packed)
+                val y = BlockPos.getY(packed)
+                val z = BlockPos.getZ(packed)
+                bcc.getSchematic(x, y, z, bcc.bsi.get0(x, y, z)) != null
+            }
+            if (incorrect.isEmpty() && (loading != null || refresh != null)) {
+                // everything loaded so far is done, but more is on its way
+                return null
+            }
+        }
+        return incorrect.isNotEmpty()
+    }
+
+    /**
+     * Picks up parts of [loading] decoded since the last tick. The new parts are found by a
+     * background rescan while the builder keeps working from the current [diff].
+     */
+    private fun pollLoading() {
+        val loading = loading ?: return
+        // read before the part count, so a part arriving in between isn't missed
+        val loaded = loading.isLoaded()
+        val parts = loading.partCount()
+        if (parts != loadedParts) {
+            loadedParts = parts
+            if (diff == null) {
+                // a scan started before these parts arrived would miss them
+                scan = null
+            } else {
+                refreshPositions.clear()
+                refreshChunks.clear()
+                refresh = startScan(false)
+            }
+            Toast.addOrUpdate(
+                Component.literal("Loading $name"),
+                Component.literal("$parts / ${loading.expectedParts()} regions"),
+            )
+        }
+        if (loaded) {
+            this.loading = null
+            Toast.addOrUpdate(Component.literal("Loaded $name"), Component.literal("$parts regions"))
+            log.atDebug().addKeyValue("parts", parts).log("Schematic fully loaded")
         }
-        return incorrectPositions!!.isNotEmpty()
     }
 
     private fun trim() {
-        val copy = HashSet(incorrectPositions!!)
-        copy.removeIf { pos -> pos.distSqr(PackedBlockPos(ctx.player().blockPosition())) > 200 }
+        val copy = LongOpenHashSet(incorrectPositions!!)
+        val feet = ctx.player().blockPosition()
+        val it = copy.iterator()
+        while (it.hasNext()) {
+            if (BlockPos.of(it.nextLong()).distSqr(feet) > 200) {
+                it.remove()
+            }
+        }
         if (copy.isNotEmpty()) {
             incorrectPositions = copy
         }
     }
 
+    private fun invalidateDiff() {
+        diff = null
+        scan = null
+        refresh = null
+        refreshPositions.clear()
+        refreshChunks.clear()
+        incorrectPositions = null
+        dirtyPositions.clear()
+        dirtyChunks.clear()
+    }
+
+    /** The schematic [diff] is tracked against: the whole schematic, even when building in layers */
+    private fun trackedSchematic(): ISchematic? =
+        if (Agent
+                .getPrimaryAgent()
+                .settings.buildInLayers.value
+        ) {
+            realSchematic ?: schematic
+        } else {
+            schematic
+        }
+
+    private fun inTrackedBounds(
+        x: Int,
+        y: Int,
+        z: Int,
+    ): Boolean {
+        val tracked = trackedSchematic() ?: return false
+        val o = origin ?: return false
+        return x >= o.x &&
+            y >= o.y &&
+            z >= o.z &&
+            x < o.x + tracked.widthX() &&
+            y < o.y + tracked.heightY() &&
+            z < o.z + tracked.lengthZ()
+    }
+
+    override fun onBlockChange(event: BlockChangeEvent) {
+        if (diff == null && scan == null) {
+            return
+        }
+        for ((pos, _) in event.blocks) {
+            if (inTrackedBounds(pos.x, pos.y, pos.z)) {
+                dirtyPositions.add(pos.asLong())
+                if (refresh != null) {
+                    refreshPositions.add(pos.asLong())
+                }
+            }
+        }
+    }
+
+    override fun onChunkEvent(event: ChunkEvent) {
+        if (!event.isPostPopulate || (diff == null && scan == null)) {
+            return
+        }
+        val tracked = trackedSchematic() ?: return
+        val o = origin ?: return
+        val minX = event.x shl 4
+        val minZ = event.z shl 4
+        if (minX + 15 >= o.x && minX < o.x + tracked.widthX() && minZ + 15 >= o.z && minZ < o.z + tracked.lengthZ()) {
+            dirtyChunks.add(ChunkPos.asLong(event.x, event.z))
+            if (refresh != null) {
+                refreshChunks.add(ChunkPos.asLong(event.x, event.z))
+            }
+        }
+    }
+
+    /**
+     * Scans the whole tracked schematic. Small schematics are scanned right away; larger ones on
+     * [SCAN_EXECUTOR] with their own [BuilderCalculationContext]. The future fails if that is full.
+     *
+     * @param replacing whether the scan replaces a missing [diff]; otherwise the builder keeps
+     *     working from the current one until the scan is done
+     */
+    private fun startScan(replacing: Boolean): CompletableFuture<ScanResult> {
+        val tracked = trackedSchematic()
+        val o = origin
+        val observed = observedCompleted
+        if (tracked == null || o == null || observed == null) {
+            return CompletableFuture.completedFuture(ScanResult(SchematicDiff(0, 0), LongArrayList(), LongArrayList()))
+        }
+        if (replacing) {
+            // changes from here on are verified again once the scan is adopted
+            dirtyPositions.clear()
+            dirtyChunks.clear()
+        }
+        val bcc = BuilderCalculationContext()
+        val placeable = approxPlaceable
+        val volume = tracked.widthX().toLong() * tracked.heightY() * tracked.lengthZ()
+        if (volume <= SYNC_SCAN_VOLUME) {
+            return CompletableFuture.completedFuture(scanSchematic(bcc, tracked, o, observed, placeable))
+        }
+        val snapshot = LongOpenHashSet(observed)
+        log
+            .atDebug()
+            .addKeyValue("volume", volume)
+            .log("Scanning schematic in background")
+        return try {
+            CompletableFuture.supplyAsync(
+                { scanSchematic(bcc, tracked, o, snapshot, placeable) },
+                SCAN_EXECUTOR,
+            )
+        } catch (e: RejectedExecutionException) {
+            CompletableFuture.failedFuture(e)
+        }
+    }
+
+    private fun wasRejected(scan: CompletableFuture<ScanResult>): Boolean =
+        scan.isCompletedExceptionally && scan.exceptionNow() is RejectedExecutionException
+
+    private fun adopt(result: ScanResult) {
+        diff = result.diff
+        diffFresh = true
+        incorrectPositions = LongOpenHashSet()
+        observedCompleted?.let { observed ->
+            observed.addAll(result.completed)
+            observed.removeAll(result.broken)
+        }
+    }
+
+    /** Re-verifies everything reported changed by events since the last tick */
+    private fun applyDirty(bcc: BuilderCalculationContext) {
+        if (dirtyPositions.isNotEmpty()) {
+            val it = dirtyPositions.iterator()
+            while (it.hasNext()) {
+                val packed = it.nextLong()
+                verify(bcc, BlockPos.getX(packed), BlockPos.getY(packed), BlockPos.getZ(packed))
+            }
+            dirtyPositions.clear()
+        }
+        if (dirtyChunks.isNotEmpty()) {
+            val tracked = trackedSchematic() ?: return
+            val o = origin ?: return
+            val it = dirtyChunks.iterator()
+            while (it.hasNext()) {
+                val chunk = it.nextLong()
+                val chunkX = ChunkPos.getX(chunk) shl 4
+                val chunkZ = ChunkPos.getZ(chunk) shl 4
+                for (x in maxOf(chunkX, o.x)..minOf(chunkX + 15, o.x + tracked.widthX() - 1)) {
+                    for (z in maxOf(chunkZ, o.z)..minOf(chunkZ + 15, o.z + tracked.lengthZ() - 1)) {
+                        for (y in o.y until o.y + tracked.heightY()) {
+                            verify(bcc, x, y, z)
+                        }
+                    }
+                }
+            }
+            dirtyChunks.clear()
+        }
+    }
+
+    /** Optional safety net on top of events: re-verifies a small cube around the player */
     private fun recalcNearby(bcc: BuilderCalculationContext) {
-        val center = ctx.playerFeet()
         val radius =
             Agent
                 .getPrimaryAgent()
                 .settings.builderTickScanRadius.value
+        if (radius <= 0) {
+            return
+        }
+        val center = ctx.playerFeet()
         for (dx in -radius..radius) {
             for (dy in -radius..radius) {
                 for (dz in -radius..radius) {
                     val x = center.x + dx
                     val y = center.y + dy
                     val z = center.z + dz
-                    val desired = bcc.getSchematic(x, y, z, bcc.bsi.get0(x, y, z))
-                    if (desired != null) {
-                        val pos = PackedBlockPos(x, y, z)
-                        if (valid(bcc.bsi.get0(x, y, z), desired, false)) {
-                            incorrectPositions!!.remove(pos)
-                            observedCompleted!!.add(pos.packed)
-                        } else {
-                            incorrectPositions!!.add(pos)
-                            observedCompleted!!.remove(pos.packed)
-                        }
+                    if (inTrackedBounds(x, y, z)) {
+                        verify(bcc, x, y, z)
                     }
                 }
             }
         }
     }
 
-    private fun fullRecalc(bcc: BuilderCalculationContext) {
-        val currentSchematic = schematic ?: return
-        val currentOrigin = origin ?: return
-        incorrectPositions = HashSet()
-        for (y in 0 until currentSchematic.heightY()) {
-            for (z in 0 until currentSchematic.lengthZ()) {
-                for (x in 0 until currentSchematic.widthX()) {
-                    val blockX = x + currentOrigin.x
-                    val blockY = y + currentOrigin.y
-                    val blockZ = z + currentOrigin.z
+    /** Checks one loaded position against the tracked schematic and updates every set */
+    private fun verify(
+        bcc: BuilderCalculationContext,
+        x: Int,
+        y: Int,
+        z: Int,
+    ) {
+        val tracked = trackedSchematic() ?: return
+        val o = origin ?: return
+        val diff = diff ?: return
+        val incorrect = incorrectPositions ?: return
+        val packed = BlockPos.asLong(x, y, z)
+        val current = bcc.bsi.get0(x, y, z)
+        if (!tracked.inSchematic(x - o.x, y - o.y, z - o.z, current)) {
+            diff.remove(packed)
+            incorrect.remove(packed)
+            return
+        }
+        val desired = tracked.desiredState(x - o.x, y - o.y, z - o.z, current, approxPlaceable)
+        if (valid(current, desired, false)) {
+            if (diff.remove(packed)) {
+                diffFresh = false
+            }
+            incorrect.remove(packed)
+            observedCompleted!!.add(packed)
+        } else {
+            diff.add(packed)
+            observedCompleted!!.remove(packed)
+            if (bcc.getSchematic(x, y, z, current) != null) {
+                incorrect.add(packed)
+            }
+        }
+    }
+
+    /**
+     * Compares the world against the whole schematic. Runs off the client thread for large
+     * schematics, so it only reads its arguments.
+     *
+     * Positions in unloaded chunks count as incorrect unless they were seen completed before.
+     */
+    private fun scanSchematic(
+        bcc: BuilderCalculationContext,
+        schematic: ISchematic,
+        origin: Vec3i,
+        observedCompleted: LongOpenHashSet,
+        approxPlaceable: List<BlockState>,
+    ): ScanResult {
+        val diff = SchematicDiff(origin.y, schematic.heightY())
+        val completed = LongArrayList()
+        val broken = LongArrayList()
+        for (y in 0 until schematic.heightY()) {
+            for (z in 0 until schematic.lengthZ()) {
+                for (x in 0 until schematic.widthX()) {
+                    val blockX = x + origin.x
+                    val blockY = y + origin.y
+                    val blockZ = z + origin.z
                     val current = bcc.bsi.get0(blockX, blockY, blockZ)
-                    if (!currentSchematic.inSchematic(x, y, z, current)) {
+                    if (!schematic.inSchematic(x, y, z, current)) {
                         continue
                     }
+                    val packed = BlockPos.asLong(blockX, blockY, blockZ)
                     if (bcc.bsi.worldContainsLoadedChunk(blockX, blockZ)) {
-                        if (valid(
-                                bcc.bsi.get0(blockX, blockY, blockZ),
-                                currentSchematic.desiredState(x, y, z, current, this.approxPlaceable),
-                                false,
-                            )
-                        ) {
-                            observedCompleted!!.add(PackedBlockPos(blockX, blockY, blockZ).packed)
+                        if (valid(current, schematic.desiredState(x, y, z, current, approxPlaceable), false)) {
+                            completed.add(packed)
                         } else {
-                            incorrectPositions!!.add(PackedBlockPos(blockX, blockY, blockZ))
-                            observedCompleted!!.remove(PackedBlockPos(blockX, blockY, blockZ).packed)
-                            if (incorrectPositions!!.size >
-                                Agent
-                                    .getPrimaryAgent()
-                                    .settings.incorrectSize.value
-                            ) {
-                                return
-                            }
-                        }
-                        continue
-                    }
-                    if (!observedCompleted!!.contains(PackedBlockPos(blockX, blockY, blockZ).packed)) {
-                        incorrectPositions!!.add(PackedBlockPos(blockX, blockY, blockZ))
-                        if (incorrectPositions!!.size >
-                            Agent
-                                .getPrimaryAgent()
-                                .settings.incorrectSize.value
-                        ) {
-                            return
+                            diff.add(packed)
+                            broken.add(packed)
                         }
+                    } else if (!observedCompleted.contains(packed)) {
+                        diff.add(packed)
                     }
                 }
             }
         }
+        return ScanResult(diff, completed, broken)
     }
 
+    private class ScanResult(
+        val diff: SchematicDiff,
+        /** Loaded positions found correct */
+        val completed: LongArrayList,
+        /** Loaded positions found incorrect */
+        val broken: LongArrayList,
+    )
+
     private fun assemble(
         bcc: BuilderCalculationContext,
         approxPlaceable: List<BlockState>,
@@ -916,7 +1297,9 @@ class BuilderTask(
         val flowingLiquids = mutableListOf<PackedBlockPos>()
         val missing = mutableMapOf<BlockState, Int>()
         val outOfBounds = mutableListOf<PackedBlockPos>()
-        incorrectPositions!!.forEach { pos ->
+        val incorrect = incorrectPositions!!.iterator()
+        while (incorrect.hasNext()) {
+            val pos = PackedBlockPos(incorrect.nextLong())
             val state = bcc.bsi.get0(pos.x, pos.y, pos.z)
             if (state.block is AirBlock) {
                 val desired = bcc.getSchematic(pos.x, pos.y, pos.z, state)
@@ -939,7 +1322,7 @@ class BuilderTask(
                 }
             }
         }
-        outOfBounds.forEach { incorrectPositions!!.remove(it) }
+        outOfBounds.forEach { incorrectPositions!!.remove(it.packed) }
         val toBreak = mutableListOf<Goal>()
         breakable.forEach { pos -> toBreak.add(breakGoal(pos.toBlockPos(), bcc)) }
         val toPlace = mutableListOf<Goal>()
@@ -992,7 +1375,7 @@ class BuilderTask(
     class JankyGoalComposite(
         private val primary: Goal,
         private val fallback: Goal,
-    ) : Goal {
+    ) : BoundedGoal {
         override fun isInGoal(
             x: Int,
             y: Int,
@@ -1005,6 +1388,26 @@ class BuilderTask(
             z: Int,
         ): Double = primary.heuristic(x, y, z)
 
+        override fun bounds(
+            out: IntArray,
+            offset: Int,
+        ): Boolean {
+            if (primary !is BoundedGoal || fallback !is BoundedGoal) {
+                return false
+            }
+            val fallbackBounds = IntArray(BoundedGoal.BOUNDS_SIZE)
+            if (!primary.bounds(out, offset) || !fallback.bounds(fallbackBounds, 0)) {
+                return false
+            }
+            for (axis in 0..<3) {
+                out[offset + axis] = minOf(out[offset + axis], fallbackBounds[axis])
+                out[offset + 3 + axis] = maxOf(out[offset + 3 + axis], fallbackBounds[3 + axis])
+            }
+            return true
+        }
+
+        override fun heuristicOffset(): Double = (primary as? BoundedGoal)?.heuristicOffset() ?: 0.0
+
         override fun equals(other: Any?): Boolean {
             if (this === other) return true
             if (other == null || javaClass != other.javaClass) return false
@@ -1128,6 +1531,8 @@ class BuilderTask(
             z: Int,
         ): Double = this.y * 100.0 + super.heuristic(x, y, z)
 
+        override fun heuristicOffset(): Double = this.y * 100.0
+
         override fun equals(other: Any?): Boolean {
             if (!super.equals(other)) {
                 return false
@@ -1162,6 +1567,8 @@ class BuilderTask(
             z: Int,
         ): Double = this.y * 100.0 + super.heuristic(x, y, z)
 
+        override fun heuristicOffset(): Double = this.y * 100.0
+
         override fun hashCode(): Int = super.hashCode() * 1910811835
 
         override fun toString(): String =
@@ -1176,7 +1583,8 @@ class BuilderTask(
     override fun onLostControl() {
         // Clear interaction keys when losing control
         this@BuilderTask.agent.inputOverrideHandler.clearInteractionKeys()
-        incorrectPositions = null
+        cancelLoad()
+        invalidateDiff()
         name = null
         schematic = null
         realSchematic = null
@@ -1362,6 +1770,12 @@ class BuilderTask(
     companion object {
         private val log: Logger = Loggers.Build.get()
 
+        /** Schematics up to this many blocks are scanned on the client thread without waiting a tick */
+        private const val SYNC_SCAN_VOLUME = 1L shl 16
+
+        /** Background scans of every builder; when full, scans are retried on a later tick */
+        private val SCAN_EXECUTOR = BackgroundExecutors.bounded("maestro-builder-scan", 2, 4)
+
         private val ORIENTATION_PROPS: Set<Property<*>> =
             ImmutableSet.of(
                 RotatedPillarBlock.AXIS,
@@ -3,13 +3,18 @@ package maestro.task
 import maestro.Agent
 import maestro.cache.CachedChunk
 import maestro.cache.WorldScanner
+import maestro.coordination.CoordinationClient
+import maestro.coordination.WorkOffer
+import maestro.coordination.WorkUnit
 import maestro.input.Input
 import maestro.pathing.BlockStateInterface
+import maestro.pathing.goals.BoundedGoal
 import maestro.pathing.goals.Goal
 import maestro.pathing.goals.GoalBlock
 import maestro.pathing.goals.GoalComposite
 import maestro.pathing.goals.GoalRunAway
 import maestro.pathing.goals.GoalTwoBlocks
+import maestro.pathing.goals.GoalXZ
 import maestro.pathing.movement.ActionCosts.COST_INF
 import maestro.pathing.movement.CalculationContext
 import maestro.pathing.movement.MovementValidation
@@ -28,12 +33,16 @@ import net.minecraft.world.level.block.AirBlock
 import net.minecraft.world.level.block.Blocks
 import net.minecraft.world.level.block.FallingBlock
 import org.slf4j.Logger
+import java.util.concurrent.CompletableFuture
 import kotlin.math.abs
 
 class MineTask(
     agent: Agent,
 ) : TaskHelper(agent) {
     private var filter: BlockOptionalMetaLookup? = null
+
+    /** What [filter] is reported to the coordinator as */
+    private var resourceType: String? = null
     private var knownOreLocations: MutableList<BlockPos> = mutableListOf()
     private var blacklist: MutableList<BlockPos> = mutableListOf()
     private var anticipatedDrops: Map<BlockPos, Long> = HashMap()
@@ -43,6 +52,34 @@ class MineTask(
     private var tickCount = 0
     private var lastClaimedArea: BlockPos? = null
 
+    /** Claim request still waiting on the coordinator, and where it was made */
+    private var pendingClaim: CompletableFuture<Boolean>? = null
+    private var pendingClaimArea: BlockPos? = null
+
+    /** Unit of the coordinator's work area this worker mines; ores outside it are left to others */
+    private var workUnit: WorkUnit? = null
+    private var pendingWork: CompletableFuture<WorkOffer>? = null
+
+    /** Cleared once the coordinator turns out not to partition work, so areas are claimed instead */
+    private var workPartitioned = true
+
+    /** Matching items held when mining started, and how many mined since were reported */
+    private var progressBaseline: Int? = null
+    private var progressReported = 0
+
+    /** Reported in total per resource type, across mining sessions; the coordinator counts from it */
+    private val reportedTotals = HashMap<String, Int>()
+
+    /** No work request is made before this tick after the coordinator had no unit free */
+    private var nextWorkRequestTick = 0
+
+    /** The unit a rescan was started for, and the one it finished for without finding ores */
+    @Volatile
+    private var unitScanRequested: WorkUnit? = null
+
+    @Volatile
+    private var unitScannedEmpty: WorkUnit? = null
+
     override fun isActive(): Boolean = filter != null
 
     override fun onTick(
@@ -50,13 +87,7 @@ class MineTask(
         isSafeToCancel: Boolean,
     ): PathingCommand? {
         if (desiredQuantity > 0) {
-            val curr =
-                ctx
-                    .player()
-                    .inventory
-                    .items
-                    .filter { stack: ItemStack -> filter!!.has(stack) }
-                    .sumOf { it.count }
+            val curr = inventoryCount()
             if (curr >= desiredQuantity) {
                 log
                     .atInfo()
@@ -69,9 +100,10 @@ class MineTask(
             }
         }
 
-        // Check coordination goal status
+        // Check coordination goal status, as last pushed by the coordinator
         val client = this@MineTask.agent.coordinationClient
         if (client != null && client.isConnected()) {
+            reportProgress(client)
             val status = client.checkGoalStatus()
             if (status.component1()) {
                 log
@@ -81,6 +113,9 @@ class MineTask(
                 cancel()
                 return null
             }
+            if (followAssignment(client)) {
+                return null
+            }
         }
 
         if (calcFailed) {
@@ -221,10 +256,29 @@ class MineTask(
 
         // Release area claim
         val client = this@MineTask.agent.coordinationClient
-        val claimedArea = lastClaimedArea
+        val pending = pendingClaim
+        val claimedArea = lastClaimedArea ?: pendingClaimArea
         if (client != null && claimedArea != null) {
-            client.releaseArea(claimedArea)
-            lastClaimedArea = null
+            if (pending != null) {
+                // a release sent now could reach the coordinator before the claim does
+                pending.thenRun { client.releaseArea(claimedArea) }
+            } else {
+                client.releaseArea(claimedArea)
+            }
+        }
+        lastClaimedArea = null
+        pendingClaim = null
+        pendingClaimArea = null
+
+        // hand an unfinished unit back to the pool
+        val unit = workUnit
+        if (client != null && unit != null) {
+            client.completeWork(unit, abandoned = true)
+        }
+        pendingWork?.thenAccept { offer ->
+            if (client != null && offer.unit != null) {
+                client.completeWork(offer.unit, abandoned = true)
+            }
         }
 
         mine(0, null as BlockOptionalMetaLookup?)
@@ -232,38 +286,213 @@ class MineTask(
 
     override fun displayName0(): String = "Mine $filter"
 
-    private fun updateGoal(): PathingCommand? {
-        val filter = filterFilter() ?: return null
+    /**
+     * With goals per resource type, the coordinator says what each worker mines: switches to the
+     * resource assigned, and stops once the goal for the one mined is complete.
+     *
+     * @return whether mining was switched or stopped
+     */
+    private fun followAssignment(client: CoordinationClient): Boolean {
+        val assigned = client.assignedResource
+        if (assigned != null && assigned != resourceType) {
+            val next =
+                try {
+                    BlockOptionalMetaLookup.fromResourceType(assigned)
+                } catch (e: IllegalArgumentException) {
+                    log.atWarn().setCause(e).addKeyValue("resource", assigned).log("Unknown assigned resource")
+                    return false
+                }
+            log
+                .atInfo()
+                .addKeyValue("from", resourceType)
+                .addKeyValue("to", assigned)
+                .log("Switching to assigned resource")
+            onLostControl()
+            mine(0, next)
+            return true
+        }
 
-        // Area claiming for coordination
-        val client = this@MineTask.agent.coordinationClient
-        if (client != null && client.isConnected()) {
-            val currentPos = ctx.playerFeet().toBlockPos()
-            val needsClaim = lastClaimedArea?.let { currentPos.distSqr(it) > 16 * 16 } ?: true
+        val goal = resourceType?.let { client.resourceGoal(it) } ?: return false
+        if (goal.complete) {
+            log
+                .atInfo()
+                .addKeyValue("resource", resourceType)
+                .addKeyValue("total", goal.total)
+                .log("Resource goal complete")
+            cancel()
+            return true
+        }
+        return false
+    }
 
-            if (needsClaim) {
-                val radius =
-                    Agent
-                        .getPrimaryAgent()
-                        .settings.coordinationClaimRadius.value
-                val claimed = client.claimArea(currentPos, radius)
-
-                if (!claimed) {
-                    log
-                        .atWarn()
-                        .addKeyValue("pos", currentPos.format())
-                        .addKeyValue("radius", radius)
-                        .log("Area claim denied, pausing mining")
-                    return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+    private fun inventoryCount(): Int =
+        ctx
+            .player()
+            .inventory
+            .items
+            .filter { stack: ItemStack -> filter!!.has(stack) }
+            .sumOf { it.count }
+
+    /**
+     * Reports what was mined since mining started to the coordinator. The client holds reports back
+     * and sends them in batches, so this can run every tick.
+     */
+    private fun reportProgress(client: CoordinationClient) {
+        val count = inventoryCount()
+        val baseline = progressBaseline ?: count.also { progressBaseline = it }
+        val collected = count - baseline
+        // items used up or thrown away still count as mined
+        if (collected > progressReported) {
+            val resourceType = resourceType ?: return
+            val quantity = collected - progressReported
+            client.reportProgress(resourceType, quantity, reportedTotals.merge(resourceType, quantity, Int::plus)!!)
+            progressReported = collected
+        }
+    }
+
+    /**
+     * Claims the area around the worker when it has moved away from its last claim.
+     *
+     * @return A command to pause with until the claim is granted, or null to go on mining
+     */
+    private fun updateClaim(client: CoordinationClient): PathingCommand? {
+        val currentPos = ctx.playerFeet().toBlockPos()
+        val needsClaim = lastClaimedArea?.let { currentPos.distSqr(it) > 16 * 16 } ?: true
+
+        if (needsClaim) {
+            val radius =
+                Agent
+                    .getPrimaryAgent()
+                    .settings.coordinationClaimRadius.value
+            val pending =
+                pendingClaim ?: client.claimArea(currentPos, radius).also {
+                    pendingClaim = it
+                    pendingClaimArea = currentPos
                 }
+            if (!pending.isDone) {
+                // don't start mining an area that may turn out to be someone else's
+                return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+            }
+            val claimedPos = pendingClaimArea ?: currentPos
+            pendingClaim = null
+            pendingClaimArea = null
+            // failures already complete the future with false
+            val claimed = pending.join()
 
+            if (!claimed) {
                 log
-                    .atInfo()
-                    .addKeyValue("pos", currentPos.format())
+                    .atWarn()
+                    .addKeyValue("pos", claimedPos.format())
                     .addKeyValue("radius", radius)
-                    .log("Area claimed")
+                    .log("Area claim denied, pausing mining")
+                return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+            }
 
-                lastClaimedArea = currentPos
+            log
+                .atInfo()
+                .addKeyValue("pos", claimedPos.format())
+                .addKeyValue("radius", radius)
+                .log("Area claimed")
+
+            // claims add up on the coordinator, so give back the one left behind
+            lastClaimedArea?.takeIf { it != claimedPos }?.let { client.releaseArea(it) }
+            lastClaimedArea = claimedPos
+        }
+        return null
+    }
+
+    /**
+     * Gets a work unit from the coordinator and keeps mining inside it; once a scan from inside
+     * finds nothing left there, the unit is reported done and the next one requested.
+     *
+     * @return A command to travel or pause with, or null to go on mining the unit
+     */
+    private fun updateWork(client: CoordinationClient): PathingCommand? {
+        val feet = ctx.playerFeet()
+        val unit = workUnit
+        if (unit != null) {
+            if (knownOreLocations.any { unit.contains(it.x, it.z) }) {
+                return null
+            }
+            if (!unit.contains(feet.x, feet.z)) {
+                // nothing known there yet, go and look
+                return PathingCommand(
+                    GoalXZ(unit.centerX, unit.centerZ),
+                    PathingCommandType.REVALIDATE_GOAL_AND_PATH,
+                )
+            }
+            if (unitScannedEmpty != unit) {
+                if (unitScanRequested != unit) {
+                    unitScanRequested = unit
+                    val already: List<BlockPos> = ArrayList(knownOreLocations)
+                    val context = CalculationContext(this@MineTask.agent, true)
+                    Agent.getExecutor().execute {
+                        rescan(already, context)
+                        if (knownOreLocations.none { unit.contains(it.x, it.z) }) {
+                            unitScannedEmpty = unit
+                        } else {
+                            // more to mine; scan again when that is gone too
+                            unitScanRequested = null
+                        }
+                    }
+                }
+                return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+            }
+            log
+                .atInfo()
+                .addKeyValue("unit", unit.id)
+                .log("Work unit mined out")
+            client.completeWork(unit)
+            workUnit = null
+        }
+
+        val pending =
+            pendingWork ?: run {
+                if (tickCount < nextWorkRequestTick) {
+                    return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+                }
+                client.requestWork(feet.toBlockPos()).also { pendingWork = it }
+            }
+        if (!pending.isDone) {
+            return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+        }
+        pendingWork = null
+        // failures already complete the future with an empty offer
+        val offer = pending.join()
+
+        if (!offer.partitioned) {
+            log.atDebug().log("Coordinator doesn't partition work, claiming areas instead")
+            workPartitioned = false
+            return updateClaim(client)
+        }
+        if (offer.unit == null) {
+            if (offer.remaining == 0) {
+                log.atInfo().log("All work units complete")
+                cancel()
+            } else {
+                // every remaining unit is being worked on; ask again in a couple of seconds
+                nextWorkRequestTick = tickCount + 40
+            }
+            return PathingCommand(null, PathingCommandType.REQUEST_PAUSE)
+        }
+
+        log
+            .atInfo()
+            .addKeyValue("unit", offer.unit.id)
+            .addKeyValue("remaining", offer.remaining)
+            .log("Work unit assigned")
+        workUnit = offer.unit
+        return updateWork(client)
+    }
+
+    private fun updateGoal(): PathingCommand? {
+        val filter = filterFilter() ?: return null
+
+        val client = this@MineTask.agent.coordinationClient
+        if (client != null && client.isConnected()) {
+            val command = if (workPartitioned) updateWork(client) else updateClaim(client)
+            if (command != null) {
+                return command
             }
         } else if (Agent
                 .getPrimaryAgent()
@@ -280,7 +509,13 @@ class MineTask(
             Agent
                 .getPrimaryAgent()
                 .settings.legitMine.value
-        val locs = knownOreLocations
+        val unit = workUnit
+        val locs =
+            if (unit != null) {
+                knownOreLocations.filter { unit.contains(it.x, it.z) }
+            } else {
+                knownOreLocations
+            }
         if (locs.isNotEmpty()) {
             val context = CalculationContext(this@MineTask.agent)
             val locs2 =
@@ -492,6 +727,14 @@ class MineTask(
             )
         }
 
+        override fun bounds(
+            out: IntArray,
+            offset: Int,
+        ): Boolean {
+            BoundedGoal.writeBounds(out, offset, x, y, z, 0, 2, 0)
+            return true
+        }
+
         override fun hashCode(): Int = super.hashCode() * 393857768
 
         override fun toString(): String =
@@ -599,12 +842,21 @@ class MineTask(
         if (this.filterFilter() == null) {
             this.filter = null
         }
+        this.resourceType = this.filter?.toResourceType()
         this.desiredQuantity = quantity
         this.knownOreLocations = mutableListOf()
         this.blacklist = mutableListOf()
         this.branchPoint = null
         this.branchPointRunaway = null
         this.anticipatedDrops = HashMap()
+        this.workUnit = null
+        this.pendingWork = null
+        this.workPartitioned = true
+        this.nextWorkRequestTick = 0
+        this.unitScanRequested = null
+        this.unitScannedEmpty = null
+        this.progressBaseline = null
+        this.progressReported = 0
         if (filter != null) {
             rescan(ArrayList(), CalculationContext(this@MineTask.agent))
         }
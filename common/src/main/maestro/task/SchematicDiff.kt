@@ -0,0 +1,86 @@
+package maestro.task
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.minecraft.core.BlockPos
+
+/**
+ * Every position where the world is known to differ from a schematic, bucketed by y so the
+ * builder can keep working bottom-up without scanning the whole set.
+ *
+ * Positions are packed with [BlockPos.asLong]. Not thread-safe; a diff is either being filled by
+ * a scan or owned by the builder, never both.
+ */
+internal class SchematicDiff(
+    /** World y of the schematic's bottom layer */
+    private val minY: Int,
+    height: Int,
+) {
+    private val layers = arrayOfNulls<LongOpenHashSet>(height)
+
+    var size: Int = 0
+        private set
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun add(packed: Long) {
+        val layer = layer(packed)
+        if (layer < 0) {
+            return
+        }
+        val set = layers[layer] ?: LongOpenHashSet().also { layers[layer] = it }
+        if (set.add(packed)) {
+            size++
+        }
+    }
+
+    /** @return whether the position was in the diff */
+    fun remove(packed: Long): Boolean {
+        val layer = layer(packed)
+        if (layer >= 0 && layers[layer]?.remove(packed) == true) {
+            size--
+            return true
+        }
+        return false
+    }
+
+    /**
+     * Copies positions in [layers] into [target], lowest layers first, until it holds [max]
+     * positions. Positions rejected by [accept] stay in the diff but are not copied.
+     *
+     * @param layers schematic y range to copy from; the rest of the diff isn't walked
+     */
+    fun fillLowest(
+        target: LongOpenHashSet,
+        max: Int,
+        layers: IntRange,
+        accept: (Long) -> Boolean,
+    ) {
+        for (layer in maxOf(layers.first, 0)..minOf(layers.last, this.layers.size - 1)) {
+            val set = this.layers[layer]
+            if (set == null || set.isEmpty()) {
+                continue
+            }
+            val it = set.iterator()
+            while (it.hasNext()) {
+                if (target.size >= max) {
+                    return
+                }
+                val packed = it.nextLong()
+                if (accept(packed)) {
+                    target.add(packed)
+                }
+            }
+        }
+    }
+
+    /** @return the layer index of the position, or -1 outside the schematic's height */
+    private fun layer(packed: Long): Int {
+        val layer = BlockPos.getY(packed) - minY
+        return if (layer in layers.indices) layer else -1
+    }
+
+    companion object {
+        /** Every layer, for [fillLowest] outside layer mode */
+        val ALL_LAYERS = 0..Int.MAX_VALUE
+    }
+}
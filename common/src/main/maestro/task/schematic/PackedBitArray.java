@@ -0,0 +1,103 @@
+package maestro.task.schematic;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Fixed-width unsigned integers packed back to back into a {@code long[]}, with entries allowed
+ * to straddle two longs. This is the layout Litematica uses for block states, so a litematic's
+ * array can be used as is.
+ *
+ * <p>Based on the BitArray class from the Litematica mod by maruohon. Usage under LGPLv3 with the
+ * permission of the author. <a href="https://github.com/maruohon/litematica">...</a>
+ */
+public final class PackedBitArray {
+    /** The long array that is used to store the data for this BitArray. */
+    private final long[] longArray;
+
+    /** Number of bits a single entry takes up */
+    private final int bitsPerEntry;
+
+    /**
+     * The maximum value for a single entry. This also works as a bitmask for a single entry. For
+     * instance, if bitsPerEntry were 5, this value would be 31 (ie, {@code 0b00011111}).
+     */
+    private final long maxEntryValue;
+
+    /**
+     * Number of entries in this array (<b>not</b> the length of the long array that internally
+     * backs this array)
+     */
+    private final long arraySize;
+
+    /** Creates a zeroed array */
+    public PackedBitArray(int bitsPerEntry, long arraySize) {
+        this(bitsPerEntry, arraySize, null);
+    }
+
+    /**
+     * @param longArray existing packed data to wrap without copying, or {@code null} to allocate
+     * @throws IllegalArgumentException if {@code longArray} is too short for {@code arraySize}
+     *     entries
+     */
+    public PackedBitArray(int bitsPerEntry, long arraySize, long[] longArray) {
+        Validate.inclusiveBetween(1L, 32L, bitsPerEntry);
+        this.arraySize = arraySize;
+        this.bitsPerEntry = bitsPerEntry;
+        this.maxEntryValue = (1L << bitsPerEntry) - 1L;
+        long required = (arraySize * bitsPerEntry + 63L) >> 6;
+        if (longArray != null) {
+            Validate.isTrue(longArray.length >= required, "Packed array too short");
+            this.longArray = longArray;
+        } else {
+            this.longArray = new long[Math.toIntExact(required)];
+        }
+    }
+
+    /** Smallest entry width that can hold every index of a palette of the given size */
+    public static int bitsFor(int paletteSize) {
+        return paletteSize <= 2 ? 1 : 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    public int get(long index) {
+        long startOffset = index * (long) this.bitsPerEntry;
+        int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
+        int endArrIndex = (int) (((index + 1L) * (long) this.bitsPerEntry - 1L) >> 6);
+        int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
+
+        if (startArrIndex == endArrIndex) {
+            return (int) (this.longArray[startArrIndex] >>> startBitOffset & this.maxEntryValue);
+        } else {
+            int endOffset = 64 - startBitOffset;
+            return (int)
+                    ((this.longArray[startArrIndex] >>> startBitOffset
+                                    | this.longArray[endArrIndex] << endOffset)
+                            & this.maxEntryValue);
+        }
+    }
+
+    public void set(long index, int value) {
+        long startOffset = index * (long) this.bitsPerEntry;
+        int startArrIndex = (int) (startOffset >> 6);
+        int endArrIndex = (int) (((index + 1L) * (long) this.bitsPerEntry - 1L) >> 6);
+        int startBitOffset = (int) (startOffset & 0x3F);
+        long masked = value & this.maxEntryValue;
+
+        this.longArray[startArrIndex] =
+                this.longArray[startArrIndex] & ~(this.maxEntryValue << startBitOffset)
+                        | masked << startBitOffset;
+        if (startArrIndex != endArrIndex) {
+            int endOffset = 64 - startBitOffset;
+            int spill = this.bitsPerEntry - endOffset;
+            this.longArray[endArrIndex] =
+                    this.longArray[endArrIndex] >>> spill << spill | masked >> endOffset;
+        }
+    }
+
+    public int bitsPerEntry() {
+        return this.bitsPerEntry;
+    }
+
+    public long size() {
+        return this.arraySize;
+    }
+}
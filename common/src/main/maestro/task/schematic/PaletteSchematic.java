@@ -0,0 +1,36 @@
+package maestro.task.schematic;
+
+import java.util.List;
+import maestro.schematic.AbstractSchematic;
+import maestro.schematic.IStaticSchematic;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * {@link IStaticSchematic} stored as a palette plus one packed index per block, in the {@code (y
+ * * lengthZ + z) * widthX + x} order shared by the Litematica, Sponge and MCEdit formats. A
+ * schematic with a handful of distinct states costs a few bits per block instead of a reference.
+ */
+public class PaletteSchematic extends AbstractSchematic implements IStaticSchematic {
+
+    protected BlockState[] palette;
+    protected PackedBitArray blocks;
+
+    public PaletteSchematic() {}
+
+    public PaletteSchematic(int x, int y, int z, BlockState[] palette, PackedBitArray blocks) {
+        super(x, y, z);
+        this.palette = palette;
+        this.blocks = blocks;
+    }
+
+    @Override
+    public BlockState desiredState(
+            int x, int y, int z, BlockState current, List<BlockState> approxPlaceable) {
+        return getDirect(x, y, z);
+    }
+
+    @Override
+    public BlockState getDirect(int x, int y, int z) {
+        return this.palette[this.blocks.get(((long) y * this.z + z) * this.x + x)];
+    }
+}
@@ -0,0 +1,140 @@
+package maestro.task.schematic;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import maestro.schematic.AbstractSchematic;
+import maestro.schematic.CompositeSchematicEntry;
+import maestro.schematic.CompositeSchematicIndex;
+import maestro.schematic.IStaticSchematic;
+import maestro.schematic.format.ISchematicSink;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * A schematic that fills in while a loader thread decodes it. The size is known from {@link
+ * #begin}; until a part has been {@link #accept accepted}, its positions are simply not part of
+ * the schematic, so a builder can start on the parts that are ready.
+ *
+ * <p>Parts are published through a volatile array, so readers on other threads always see a
+ * consistent set of fully decoded parts.
+ */
+public final class StreamingSchematic extends AbstractSchematic
+        implements IStaticSchematic, ISchematicSink {
+
+    private final CompletableFuture<StreamingSchematic> started = new CompletableFuture<>();
+    private final CompletableFuture<StreamingSchematic> loaded = new CompletableFuture<>();
+
+    private volatile CompositeSchematicEntry[] parts = new CompositeSchematicEntry[0];
+
+    /** Always covers at least {@link #parts}; written before it */
+    private volatile CompositeSchematicIndex index = new CompositeSchematicIndex(this.parts);
+
+    private volatile int expectedParts = -1;
+    private volatile boolean cancelled;
+
+    /** Completes once the size is known, or exceptionally if loading failed before that */
+    public CompletableFuture<StreamingSchematic> started() {
+        return this.started;
+    }
+
+    /** Completes once every part is in, or exceptionally if loading failed */
+    public CompletableFuture<StreamingSchematic> loaded() {
+        return this.loaded;
+    }
+
+    /** Number of parts decoded so far */
+    public int partCount() {
+        return this.parts.length;
+    }
+
+    /**
+     * @return The number of parts the schematic consists of, or -1 if that isn't known yet
+     */
+    public int expectedParts() {
+        return this.expectedParts;
+    }
+
+    public boolean isLoaded() {
+        return this.loaded.isDone() && !this.loaded.isCompletedExceptionally();
+    }
+
+    /** Makes the loader give up at the next part */
+    public void cancel() {
+        this.cancelled = true;
+        fail(new CancellationException("Schematic loading cancelled"));
+    }
+
+    /** Marks loading as failed, for errors raised by whatever is feeding this sink */
+    public void fail(Throwable cause) {
+        this.started.completeExceptionally(cause);
+        this.loaded.completeExceptionally(cause);
+    }
+
+    @Override
+    public void begin(int widthX, int heightY, int lengthZ, int parts) {
+        checkCancelled();
+        this.x = widthX;
+        this.y = heightY;
+        this.z = lengthZ;
+        this.expectedParts = parts;
+        this.started.complete(this);
+        if (parts == 0) {
+            this.loaded.complete(this);
+        }
+    }
+
+    @Override
+    public void accept(IStaticSchematic part, int x, int y, int z) {
+        checkCancelled();
+        CompositeSchematicEntry[] current = this.parts;
+        CompositeSchematicEntry[] next = new CompositeSchematicEntry[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new CompositeSchematicEntry(part, x, y, z);
+        this.index = new CompositeSchematicIndex(next);
+        this.parts = next;
+        if (next.length >= this.expectedParts) {
+            this.loaded.complete(this);
+        }
+    }
+
+    private void checkCancelled() {
+        if (this.cancelled) {
+            throw new CancellationException("Schematic loading cancelled");
+        }
+    }
+
+    @Override
+    public boolean inSchematic(int x, int y, int z, BlockState currentState) {
+        return this.index.find(x, y, z, currentState) != null;
+    }
+
+    @Override
+    public BlockState desiredState(
+            int x, int y, int z, BlockState current, List<BlockState> approxPlaceable) {
+        CompositeSchematicEntry entry = this.index.find(x, y, z, current);
+        if (entry == null) {
+            throw new IllegalStateException("couldn't find schematic for this position");
+        }
+        return entry.schematic.desiredState(
+                x - entry.x, y - entry.y, z - entry.z, current, approxPlaceable);
+    }
+
+    /** Air for positions no decoded part covers */
+    @Override
+    public BlockState getDirect(int x, int y, int z) {
+        CompositeSchematicEntry entry = this.index.find(x, y, z, null);
+        if (entry == null) {
+            return Blocks.AIR.defaultBlockState();
+        }
+        return ((IStaticSchematic) entry.schematic)
+                .getDirect(x - entry.x, y - entry.y, z - entry.z);
+    }
+
+    @Override
+    public void reset() {
+        for (CompositeSchematicEntry entry : this.parts) {
+            entry.schematic.reset();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.List;
 import maestro.schematic.IStaticSchematic;
 import maestro.schematic.format.ISchematicFormat;
+import maestro.schematic.format.ISchematicSink;
 import maestro.task.schematic.format.defaults.LitematicaSchematic;
 import maestro.task.schematic.format.defaults.MCEditSchematic;
 import maestro.task.schematic.format.defaults.SpongeSchematic;
@@ -52,23 +53,12 @@ public enum DefaultSchematicFormats implements ISchematicFormat {
     LITEMATICA("litematic") {
         @Override
         public IStaticSchematic parse(InputStream input) throws IOException {
-            CompoundTag nbt = NbtIo.readCompressed(input, NbtAccounter.unlimitedHeap());
-            int version = nbt.getInt("Version");
-            // 1.13-1.17
-            // 1.18-1.20
-            return switch (version) { // 1.12
-                case 4, 5 ->
-                        throw new UnsupportedOperationException(
-                                "This litematic Version is too old.");
-                case 6 ->
-                        throw new UnsupportedOperationException(
-                                "This litematic Version is too old.");
-                case 7 -> // 1.21+
-                        new LitematicaSchematic(nbt);
-                default ->
-                        throw new UnsupportedOperationException(
-                                "Unsuported Version of a Litematica Schematic");
-            };
+            return new LitematicaSchematic(readLitematic(input));
+        }
+
+        @Override
+        public void parse(InputStream input, ISchematicSink sink) throws IOException {
+            LitematicaSchematic.stream(readLitematic(input), sink);
         }
     };
 
@@ -87,4 +77,23 @@ public enum DefaultSchematicFormats implements ISchematicFormat {
     public List<String> getFileExtensions() {
         return Collections.singletonList(this.extension);
     }
+
+    /** Reads a litematic's NBT, rejecting versions that aren't supported */
+    private static CompoundTag readLitematic(InputStream input) throws IOException {
+        CompoundTag nbt = NbtIo.readCompressed(input, NbtAccounter.unlimitedHeap());
+        int version = nbt.getInt("Version");
+        // 1.13-1.17
+        // 1.18-1.20
+        return switch (version) { // 1.12
+            case 4, 5 ->
+                    throw new UnsupportedOperationException("This litematic Version is too old.");
+            case 6 ->
+                    throw new UnsupportedOperationException("This litematic Version is too old.");
+            case 7 -> // 1.21+
+                    nbt;
+            default ->
+                    throw new UnsupportedOperationException(
+                            "Unsuported Version of a Litematica Schematic");
+        };
+    }
 }
@@ -2,10 +2,11 @@ package maestro.task.schematic.format.defaults;
 
 import java.util.Collections;
 import java.util.Optional;
-import javax.annotation.Nullable;
 import maestro.schematic.CompositeSchematic;
 import maestro.schematic.IStaticSchematic;
-import maestro.task.schematic.StaticSchematic;
+import maestro.schematic.format.ISchematicSink;
+import maestro.task.schematic.PackedBitArray;
+import maestro.task.schematic.PaletteSchematic;
 import net.minecraft.core.Holder;
 import net.minecraft.core.Vec3i;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -16,7 +17,6 @@ import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.state.properties.Property;
-import org.apache.commons.lang3.Validate;
 
 /** Based on EmersonDove's work <a href="https://github.com/cabaletta/baritone/pull/2544">...</a> */
 public final class LitematicaSchematic extends CompositeSchematic implements IStaticSchematic {
@@ -26,7 +26,46 @@ public final class LitematicaSchematic extends CompositeSchematic implements ISt
      */
     public LitematicaSchematic(CompoundTag nbt) {
         super(0, 0, 0);
-        fillInSchematic(nbt);
+        stream(
+                nbt,
+                new ISchematicSink() {
+                    @Override
+                    public void begin(int widthX, int heightY, int lengthZ, int parts) {}
+
+                    @Override
+                    public void accept(IStaticSchematic part, int x, int y, int z) {
+                        put(part, x, y, z);
+                    }
+                });
+    }
+
+    /**
+     * Decodes the subregions one at a time, handing each to {@code sink} as soon as it is done.
+     *
+     * @param nbt a decompressed file stream aka nbt data.
+     */
+    public static void stream(CompoundTag nbt, ISchematicSink sink) {
+        CompoundTag[] regions = getRegions(nbt);
+        Vec3i offsetMinCorner =
+                new Vec3i(
+                        getMinOfSchematic(nbt, "x"),
+                        getMinOfSchematic(nbt, "y"),
+                        getMinOfSchematic(nbt, "z"));
+        int widthX = 0;
+        int heightY = 0;
+        int lengthZ = 0;
+        for (CompoundTag subReg : regions) {
+            Vec3i offset = getOffsetOfSubregion(subReg, offsetMinCorner);
+            CompoundTag size = subReg.getCompound("Size");
+            widthX = Math.max(widthX, offset.getX() + Math.abs(size.getInt("x")));
+            heightY = Math.max(heightY, offset.getY() + Math.abs(size.getInt("y")));
+            lengthZ = Math.max(lengthZ, offset.getZ() + Math.abs(size.getInt("z")));
+        }
+        sink.begin(widthX, heightY, lengthZ, regions.length);
+        for (CompoundTag subReg : regions) {
+            Vec3i offset = getOffsetOfSubregion(subReg, offsetMinCorner);
+            sink.accept(decodeSubregion(subReg), offset.getX(), offset.getY(), offset.getZ());
+        }
     }
 
     /**
@@ -133,138 +172,46 @@ public final class LitematicaSchematic extends CompositeSchematic implements ISt
         return n;
     }
 
-    /** reads the file data. */
-    private void fillInSchematic(CompoundTag nbt) {
-        Vec3i offsetMinCorner =
-                new Vec3i(
-                        getMinOfSchematic(nbt, "x"),
-                        getMinOfSchematic(nbt, "y"),
-                        getMinOfSchematic(nbt, "z"));
-        for (CompoundTag subReg : getRegions(nbt)) {
-            ListTag usedBlockTypes = subReg.getList("BlockStatePalette", 10);
-            BlockState[] blockList = getBlockList(usedBlockTypes);
-
-            int bitsPerBlock = getBitsPerBlock(usedBlockTypes.size());
-            long regionVolume = getVolume(subReg);
-            long[] blockStateArray = subReg.getLongArray("BlockStates");
-
-            LitematicaBitArray bitArray =
-                    new LitematicaBitArray(bitsPerBlock, regionVolume, blockStateArray);
-            writeSubregionIntoSchematic(subReg, offsetMinCorner, blockList, bitArray);
-        }
+    /**
+     * @return the position of the subregion's lowest corner within the schematic.
+     */
+    private static Vec3i getOffsetOfSubregion(CompoundTag subReg, Vec3i offsetMinCorner) {
+        return new Vec3i(
+                getMinOfSubregion(subReg, "x") - offsetMinCorner.getX(),
+                getMinOfSubregion(subReg, "y") - offsetMinCorner.getY(),
+                getMinOfSubregion(subReg, "z") - offsetMinCorner.getZ());
     }
 
     /**
-     * Writes the file data in to the IBlockstate array.
-     *
-     * @param blockList list with the different block types used in the schematic.
-     * @param bitArray bit array that holds the placement pattern.
+     * Reads a subregion. The file's packed block states are used as is rather than being expanded
+     * into one {@link BlockState} reference per block.
      */
-    private void writeSubregionIntoSchematic(
-            CompoundTag subReg,
-            Vec3i offsetMinCorner,
-            BlockState[] blockList,
-            LitematicaBitArray bitArray) {
-        int offsetX = getMinOfSubregion(subReg, "x") - offsetMinCorner.getX();
-        int offsetY = getMinOfSubregion(subReg, "y") - offsetMinCorner.getY();
-        int offsetZ = getMinOfSubregion(subReg, "z") - offsetMinCorner.getZ();
-        CompoundTag size = subReg.getCompound("Size");
-        int sizeX = Math.abs(size.getInt("x"));
-        int sizeY = Math.abs(size.getInt("y"));
-        int sizeZ = Math.abs(size.getInt("z"));
-        BlockState[][][] states = new BlockState[sizeX][sizeZ][sizeY];
-        int index = 0;
-        for (int y = 0; y < sizeY; y++) {
-            for (int z = 0; z < sizeZ; z++) {
-                for (int x = 0; x < sizeX; x++) {
-                    states[x][z][y] = blockList[bitArray.getAt(index)];
-                    index++;
-                }
+    private static PaletteSchematic decodeSubregion(CompoundTag subReg) {
+        ListTag usedBlockTypes = subReg.getList("BlockStatePalette", 10);
+        BlockState[] blockList = getBlockList(usedBlockTypes);
+
+        int bitsPerBlock = getBitsPerBlock(usedBlockTypes.size());
+        long regionVolume = getVolume(subReg);
+        long[] blockStateArray = subReg.getLongArray("BlockStates");
+
+        PackedBitArray bitArray = new PackedBitArray(bitsPerBlock, regionVolume, blockStateArray);
+        // fail while loading rather than halfway through a build
+        for (long i = 0; i < bitArray.size(); i++) {
+            if (bitArray.get(i) >= blockList.length) {
+                throw new IllegalArgumentException("Invalid Palette Index " + i);
             }
         }
-        this.put(new StaticSchematic(states), offsetX, offsetY, offsetZ);
+        CompoundTag size = subReg.getCompound("Size");
+        return new PaletteSchematic(
+                Math.abs(size.getInt("x")),
+                Math.abs(size.getInt("y")),
+                Math.abs(size.getInt("z")),
+                blockList,
+                bitArray);
     }
 
     @Override
     public BlockState getDirect(int x, int y, int z) {
         return desiredState(x, y, z, null, Collections.emptyList());
     }
-
-    /**
-     * Class from the Litematica mod by maruohon Usage under LGPLv3 with the permission of the
-     * author. <a href="https://github.com/maruohon/litematica">...</a>
-     */
-    private static class LitematicaBitArray {
-        /** The long array that is used to store the data for this BitArray. */
-        private final long[] longArray;
-
-        /** Number of bits a single entry takes up */
-        private final int bitsPerEntry;
-
-        /**
-         * The maximum value for a single entry. This also works as a bitmask for a single entry.
-         * For instance, if bitsPerEntry were 5, this value would be 31 (ie, {@code 0b00011111}).
-         */
-        private final long maxEntryValue;
-
-        /**
-         * Number of entries in this array (<b>not</b> the length of the long array that internally
-         * backs this array)
-         */
-        private final long arraySize;
-
-        public LitematicaBitArray(
-                int bitsPerEntryIn, long arraySizeIn, @Nullable long[] longArrayIn) {
-            Validate.inclusiveBetween(1L, 32L, bitsPerEntryIn);
-            this.arraySize = arraySizeIn;
-            this.bitsPerEntry = bitsPerEntryIn;
-            this.maxEntryValue = (1L << bitsPerEntryIn) - 1L;
-
-            if (longArrayIn != null) {
-                this.longArray = longArrayIn;
-            } else {
-                this.longArray =
-                        new long[(int) (roundUp(arraySizeIn * (long) bitsPerEntryIn, 64L) / 64L)];
-            }
-        }
-
-        public static long roundUp(long number, long interval) {
-            int sign = 1;
-            if (interval == 0) {
-                return 0;
-            } else if (number == 0) {
-                return interval;
-            } else {
-                if (number < 0) {
-                    sign = -1;
-                }
-
-                long i = number % (interval * sign);
-                return i == 0 ? number : number + (interval * sign) - i;
-            }
-        }
-
-        public int getAt(long index) {
-            Validate.inclusiveBetween(0L, this.arraySize - 1L, index);
-            long startOffset = index * (long) this.bitsPerEntry;
-            int startArrIndex = (int) (startOffset >> 6); // startOffset / 64
-            int endArrIndex = (int) (((index + 1L) * (long) this.bitsPerEntry - 1L) >> 6);
-            int startBitOffset = (int) (startOffset & 0x3F); // startOffset % 64
-
-            if (startArrIndex == endArrIndex) {
-                return (int)
-                        (this.longArray[startArrIndex] >>> startBitOffset & this.maxEntryValue);
-            } else {
-                int endOffset = 64 - startBitOffset;
-                return (int)
-                        ((this.longArray[startArrIndex] >>> startBitOffset
-                                        | this.longArray[endArrIndex] << endOffset)
-                                & this.maxEntryValue);
-            }
-        }
-
-        public long size() {
-            return this.arraySize;
-        }
-    }
 }
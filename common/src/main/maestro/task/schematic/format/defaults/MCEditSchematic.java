@@ -1,6 +1,10 @@
 package maestro.task.schematic.format.defaults;
 
-import maestro.task.schematic.StaticSchematic;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import maestro.task.schematic.PackedBitArray;
+import maestro.task.schematic.PaletteSchematic;
 import net.minecraft.core.Holder;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.CompoundTag;
@@ -10,7 +14,7 @@ import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 
-public final class MCEditSchematic extends StaticSchematic {
+public final class MCEditSchematic extends PaletteSchematic {
 
     public MCEditSchematic(CompoundTag schematic) {
         String type = schematic.getString("Materials");
@@ -31,30 +35,37 @@ public final class MCEditSchematic extends StaticSchematic {
                 additional[i * 2 + 1] = (byte) (addBlocks[i] & 0xF); // upper nibble
             }
         }
-        this.states = new BlockState[this.x][this.z][this.y];
-        for (int y = 0; y < this.y; y++) {
-            for (int z = 0; z < this.z; z++) {
-                for (int x = 0; x < this.x; x++) {
-                    int blockInd = (y * this.z + z) * this.x + x;
-
-                    int blockID = blocks[blockInd] & 0xFF;
-                    if (additional != null) {
-                        // additional is 0 through 15 inclusive since it's & 0xF above
-                        blockID |= additional[blockInd] << 8;
-                    }
-                    ResourceLocation blockKey =
-                            ResourceLocation.tryParse(ItemIdFix.getItem(blockID));
-                    Block block =
-                            blockKey == null
-                                    ? Blocks.AIR
-                                    : BuiltInRegistries.BLOCK
-                                            .get(blockKey)
-                                            .map(Holder.Reference::value)
-                                            .orElse(Blocks.AIR);
-
-                    this.states[x][z][y] = block.defaultBlockState();
-                }
+        // block ids are already in (y, z, x) order, so only the palette needs building
+        int volume = this.x * this.y * this.z;
+        Int2IntOpenHashMap paletteIndices = new Int2IntOpenHashMap();
+        List<BlockState> palette = new ArrayList<>();
+        short[] indices = new short[volume];
+        for (int blockInd = 0; blockInd < volume; blockInd++) {
+            int blockID = blocks[blockInd] & 0xFF;
+            if (additional != null) {
+                // additional is 0 through 15 inclusive since it's & 0xF above
+                blockID |= additional[blockInd] << 8;
             }
+            int index = paletteIndices.getOrDefault(blockID, -1);
+            if (index < 0) {
+                ResourceLocation blockKey = ResourceLocation.tryParse(ItemIdFix.getItem(blockID));
+                Block block =
+                        blockKey == null
+                                ? Blocks.AIR
+                                : BuiltInRegistries.BLOCK
+                                        .get(blockKey)
+                                        .map(Holder.Reference::value)
+                                        .orElse(Blocks.AIR);
+                index = palette.size();
+                palette.add(block.defaultBlockState());
+                paletteIndices.put(blockID, index);
+            }
+            indices[blockInd] = (short) index;
+        }
+        this.palette = palette.toArray(new BlockState[0]);
+        this.blocks = new PackedBitArray(PackedBitArray.bitsFor(this.palette.length), volume);
+        for (int i = 0; i < volume; i++) {
+            this.blocks.set(i, indices[i]);
         }
     }
 }
@@ -8,7 +8,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import maestro.task.schematic.StaticSchematic;
+import maestro.task.schematic.PackedBitArray;
+import maestro.task.schematic.PaletteSchematic;
 import maestro.utils.Loggers;
 import net.minecraft.core.Holder;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -20,7 +21,7 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.state.properties.Property;
 import org.slf4j.Logger;
 
-public final class SpongeSchematic extends StaticSchematic {
+public final class SpongeSchematic extends PaletteSchematic {
 
     private static final Logger log = Loggers.Build.get();
 
@@ -28,12 +29,15 @@ public final class SpongeSchematic extends StaticSchematic {
         this.x = nbt.getInt("Width");
         this.y = nbt.getInt("Height");
         this.z = nbt.getInt("Length");
-        this.states = new BlockState[this.x][this.z][this.y];
 
-        Int2ObjectArrayMap<BlockState> palette = new Int2ObjectArrayMap<>();
+        Int2ObjectArrayMap<BlockState> paletteMap = new Int2ObjectArrayMap<>();
+        int maxIndex = -1;
         CompoundTag paletteTag = nbt.getCompound("Palette");
         for (String tag : paletteTag.getAllKeys()) {
             int index = paletteTag.getInt(tag);
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid Palette Index " + index);
+            }
 
             SerializedBlockState serializedState = SerializedBlockState.getFromString(tag);
             if (serializedState == null) {
@@ -45,15 +49,20 @@ public final class SpongeSchematic extends StaticSchematic {
                 throw new IllegalArgumentException("Unable to deserialize palette tag");
             }
 
-            palette.put(index, state);
+            paletteMap.put(index, state);
+            maxIndex = Math.max(maxIndex, index);
         }
+        this.palette = new BlockState[maxIndex + 1];
+        paletteMap.forEach((index, state) -> this.palette[index] = state);
 
         // BlockData is stored as an NBT byte[], however, the actual data that is represented is a
-        // varint[]
+        // varint[]. It's decoded straight into the packed array, which is already in (y, z, x)
+        // order.
         byte[] rawBlockData = nbt.getByteArray("BlockData");
-        int[] blockData = new int[this.x * this.y * this.z];
+        long volume = (long) this.x * this.y * this.z;
+        this.blocks = new PackedBitArray(PackedBitArray.bitsFor(this.palette.length), volume);
         int offset = 0;
-        for (int i = 0; i < blockData.length; i++) {
+        for (long i = 0; i < volume; i++) {
             if (offset >= rawBlockData.length) {
                 throw new IllegalArgumentException(
                         "No remaining bytes in BlockData for complete schematic");
@@ -75,21 +84,10 @@ public final class SpongeSchematic extends StaticSchematic {
                     break;
                 }
             }
-            blockData[i] = value;
-        }
-
-        for (int y = 0; y < this.y; y++) {
-            for (int z = 0; z < this.z; z++) {
-                for (int x = 0; x < this.x; x++) {
-                    int index = (y * this.z + z) * this.x + x;
-                    BlockState state = palette.get(blockData[index]);
-                    if (state == null) {
-                        throw new IllegalArgumentException("Invalid Palette Index " + index);
-                    }
-
-                    this.states[x][z][y] = state;
-                }
+            if (value < 0 || value >= this.palette.length || this.palette[value] == null) {
+                throw new IllegalArgumentException("Invalid Palette Index " + i);
             }
+            this.blocks.set(i, value);
         }
     }
 
@@ -0,0 +1,38 @@
+package maestro.utils
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Small pools for background work that must never run on the thread submitting it, which
+ * [maestro.Agent.getExecutor] does once its queue is full. A full pool throws
+ * [RejectedExecutionException] instead; the caller drops the work or tries again later.
+ */
+object BackgroundExecutors {
+    /**
+     * @param name prefix of the pool's thread names
+     * @param threads most tasks running at once; idle threads die off
+     * @param queueSize most tasks waiting for a thread before new ones are rejected
+     */
+    @JvmStatic
+    fun bounded(
+        name: String,
+        threads: Int,
+        queueSize: Int,
+    ): ExecutorService {
+        val count = AtomicInteger()
+        return ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            ArrayBlockingQueue(queueSize),
+            { runnable -> Thread(runnable, "$name-${count.getAndIncrement()}").apply { isDaemon = true } },
+            ThreadPoolExecutor.AbortPolicy(),
+        ).apply { allowCoreThreadTimeOut(true) }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import maestro.utils.accessor.IItemStack;
 import net.minecraft.world.item.ItemStack;
@@ -62,6 +63,23 @@ public class BlockOptionalMetaLookup {
         return Arrays.asList(boms);
     }
 
+    /**
+     * Names the blocks looked up, sorted and comma separated, like {@code
+     * deepslate_diamond_ore,diamond_ore}. This is the resource type mining progress is reported to
+     * the coordinator as; {@link #fromResourceType} reads it back.
+     */
+    public String toResourceType() {
+        return Stream.of(boms)
+                .map(bom -> BlockUtils.blockToString(bom.getBlock()))
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    public static BlockOptionalMetaLookup fromResourceType(String resourceType) {
+        return new BlockOptionalMetaLookup(resourceType.split(","));
+    }
+
     @Override
     public String toString() {
         return String.format("BlockOptionalMetaLookup{%s}", Arrays.toString(boms));
@@ -0,0 +1,139 @@
+package maestro.cache
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.random.Random
+
+class CachedRegionFileTest {
+    @TempDir
+    lateinit var dir: Path
+
+    private val path by lazy { dir.resolve("r.0.0.bcr2") }
+
+    private fun payload(
+        seed: Int,
+        size: Int,
+    ): ByteArray = Random(seed).nextBytes(size)
+
+    @Test
+    fun `written chunks read back after reopening`() {
+        val file = CachedRegionFile.open(path)
+        assertFalse(file.isPresent(0))
+        file.write(
+            listOf(
+                CachedRegionFile.Change(0, payload(0, 100), 10L, arrayOf("minecraft:chest")),
+                // bigger than a sector
+                CachedRegionFile.Change(5, payload(5, 20_000), 20L),
+                CachedRegionFile.Change(1023, payload(1023, 1), 30L, arrayOf("minecraft:spawner", "minecraft:chest")),
+            ),
+        )
+
+        for (reopened in listOf(file, CachedRegionFile.open(path))) {
+            assertArrayEquals(payload(0, 100), reopened.read(0))
+            assertArrayEquals(payload(5, 20_000), reopened.read(5))
+            assertArrayEquals(payload(1023, 1), reopened.read(1023))
+            assertEquals(10L, reopened.timestamp(0))
+            assertEquals(20L, reopened.timestamp(5))
+            assertArrayEquals(arrayOf("minecraft:chest"), reopened.blocks(0))
+            assertArrayEquals(emptyArray<String>(), reopened.blocks(5))
+            assertArrayEquals(arrayOf("minecraft:spawner", "minecraft:chest"), reopened.blocks(1023))
+            assertFalse(reopened.isPresent(1))
+        }
+    }
+
+    @Test
+    fun `unchanged chunks survive later writes`() {
+        val file = CachedRegionFile.open(path)
+        file.write(
+            listOf(
+                CachedRegionFile.Change(0, payload(0, 5000), 1L, arrayOf("minecraft:chest")),
+                CachedRegionFile.Change(1, payload(1, 5000), 1L),
+            ),
+        )
+        file.write(
+            listOf(
+                CachedRegionFile.Change(0, payload(2, 9000), 2L),
+                CachedRegionFile.Change(1, null, 0L),
+                CachedRegionFile.Change(2, payload(3, 10), 3L, arrayOf("minecraft:furnace")),
+            ),
+        )
+
+        val reopened = CachedRegionFile.open(path)
+        assertArrayEquals(payload(2, 9000), reopened.read(0))
+        assertArrayEquals(emptyArray<String>(), reopened.blocks(0))
+        assertFalse(reopened.isPresent(1))
+        assertArrayEquals(emptyArray<String>(), reopened.blocks(1))
+        assertArrayEquals(payload(3, 10), reopened.read(2))
+        assertArrayEquals(arrayOf("minecraft:furnace"), reopened.blocks(2))
+    }
+
+    @Test
+    fun `truncated file is rejected`() {
+        CachedRegionFile.open(path).write(listOf(CachedRegionFile.Change(0, payload(0, 20_000), 1L)))
+        val full = Files.size(path)
+
+        // cut off the end: the block index written last now points past it
+        RandomAccessFile(path.toFile(), "rw").use { it.setLength(full - 100) }
+        assertThrows(IOException::class.java) { CachedRegionFile.open(path) }
+
+        // cut into the header
+        RandomAccessFile(path.toFile(), "rw").use { it.setLength(100) }
+        assertThrows(IOException::class.java) { CachedRegionFile.open(path) }
+    }
+
+    @Test
+    fun `corrupt header is rejected`() {
+        CachedRegionFile.open(path).write(listOf(CachedRegionFile.Change(0, payload(0, 100), 1L)))
+        RandomAccessFile(path.toFile(), "rw").use {
+            it.seek(0)
+            it.writeInt(0x12345678)
+        }
+        assertThrows(IOException::class.java) { CachedRegionFile.open(path) }
+    }
+
+    @Test
+    fun `corrupt block index is rejected`() {
+        CachedRegionFile.open(path).write(listOf(CachedRegionFile.Change(0, payload(0, 100), 1L, arrayOf("minecraft:chest"))))
+        RandomAccessFile(path.toFile(), "rw").use {
+            it.seek(8)
+            val sector = it.readInt()
+            // overwrite the start of the compressed index
+            it.seek(sector * 4096L)
+            it.write(ByteArray(16) { 0x7f })
+        }
+        assertThrows(IOException::class.java) { CachedRegionFile.open(path) }
+    }
+
+    @Test
+    fun `corrupt chunk data fails only that chunk`() {
+        CachedRegionFile.open(path).write(
+            listOf(
+                CachedRegionFile.Change(0, payload(0, 100), 1L),
+                CachedRegionFile.Change(1, payload(1, 100), 1L),
+            ),
+        )
+        val sector =
+            RandomAccessFile(path.toFile(), "rw").use {
+                // table entry of chunk 0
+                it.seek(16)
+                val sector = it.readInt()
+                it.seek(sector * 4096L)
+                it.write(ByteArray(16) { 0x7f })
+                sector
+            }
+        assertTrue(sector > 0)
+
+        val reopened = CachedRegionFile.open(path)
+        assertThrows(Exception::class.java) { reopened.read(0) }
+        assertArrayEquals(payload(1, 100), reopened.read(1))
+    }
+}
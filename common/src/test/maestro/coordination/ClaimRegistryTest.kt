@@ -0,0 +1,63 @@
+package maestro.coordination
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class ClaimRegistryTest {
+    private fun claim(
+        workerId: String,
+        x: Int,
+        z: Int,
+        radius: Double = 16.0,
+    ) = AreaClaim(workerId, x, 64, z, radius, 0L)
+
+    @Test
+    fun `overlapping claims of other workers conflict`() {
+        val registry = ClaimRegistry()
+        assertTrue(registry.claim(claim("a", 0, 0)).isEmpty())
+        assertEquals(listOf(claim("a", 0, 0)), registry.claim(claim("b", 20, 0)))
+        assertTrue(registry.claim(claim("b", 40, 0)).isEmpty())
+    }
+
+    @Test
+    fun `a worker holds several claims and releases them together`() {
+        val registry = ClaimRegistry()
+        assertTrue(registry.claim(claim("a", 0, 0)).isEmpty())
+        assertTrue(registry.claim(claim("a", 10, 0)).isEmpty())
+        assertTrue(registry.claim(claim("a", 500, 500)).isEmpty())
+        assertEquals(3, registry.claimsOf("a").size)
+
+        assertTrue(registry.release("a", 10, 64, 0))
+        assertFalse(registry.release("a", 10, 64, 0))
+        assertEquals(2, registry.releaseAll("a"))
+        assertEquals(0, registry.size())
+        assertTrue(registry.claim(claim("b", 0, 0)).isEmpty())
+    }
+
+    @Test
+    fun `matches a pairwise scan`() {
+        val random = Random(7)
+        val registry = ClaimRegistry()
+        val granted = mutableListOf<AreaClaim>()
+        repeat(2000) { i ->
+            // a few huge claims exercise the unbucketed path
+            val radius = if (i % 200 == 199) 600.0 else random.nextDouble(1.0, 48.0)
+            val candidate =
+                claim("w${random.nextInt(20)}", random.nextInt(-2000, 2000), random.nextInt(-2000, 2000), radius)
+            val expected = granted.filter { it.workerId != candidate.workerId && it.overlaps(candidate) }
+            val conflicts = registry.claim(candidate)
+            assertEquals(expected.toSet(), conflicts.toSet())
+            if (conflicts.isEmpty()) {
+                granted.removeIf {
+                    it.workerId == candidate.workerId &&
+                        it.isAt(candidate.centerX, candidate.centerY, candidate.centerZ)
+                }
+                granted.add(candidate)
+            }
+        }
+        assertEquals(granted.size, registry.size())
+    }
+}
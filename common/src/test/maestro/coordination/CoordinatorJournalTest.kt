@@ -0,0 +1,95 @@
+package maestro.coordination
+
+import maestro.coordination.proto.Claim
+import maestro.coordination.proto.Position
+import maestro.coordination.proto.ReleaseAreaRequest
+import maestro.coordination.proto.StateRecord
+import maestro.coordination.proto.StateSnapshot
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+class CoordinatorJournalTest {
+    @TempDir
+    lateinit var directory: Path
+
+    private fun claim(
+        workerId: String,
+        x: Int,
+    ): Claim =
+        Claim
+            .newBuilder()
+            .setWorkerId(workerId)
+            .setCenter(Position.newBuilder().setX(x).setY(64).setZ(0))
+            .setRadius(16.0)
+            .build()
+
+    private fun claimRecord(
+        workerId: String,
+        x: Int,
+    ): StateRecord = StateRecord.newBuilder().setClaim(claim(workerId, x)).build()
+
+    private fun open(): CoordinatorJournal.Recovered {
+        val journal = CoordinatorJournal(directory)
+        val recovered = journal.recover()
+        journal.close()
+        return recovered
+    }
+
+    @Test
+    fun `records appended after a compaction are recovered in order`() {
+        val journal = CoordinatorJournal(directory)
+        assertNull(journal.recover().snapshot)
+        journal.compact { StateSnapshot.getDefaultInstance() }
+        val records =
+            listOf(
+                claimRecord("a", 0),
+                claimRecord("b", 100),
+                StateRecord.newBuilder().setRelease(ReleaseAreaRequest.newBuilder().setWorkerId("a")).build(),
+            )
+        records.forEach { journal.append(it) }
+        journal.close()
+
+        val recovered = open()
+        assertEquals(StateSnapshot.getDefaultInstance(), recovered.snapshot)
+        assertEquals(records, recovered.records)
+    }
+
+    @Test
+    fun `a record cut short by a crash is dropped with nothing after it`() {
+        val journal = CoordinatorJournal(directory)
+        journal.recover()
+        journal.compact { StateSnapshot.getDefaultInstance() }
+        journal.append(claimRecord("a", 0))
+        journal.append(claimRecord("b", 100))
+        journal.close()
+
+        val segment = Files.list(directory).use { files -> files.toList().single { it.toString().endsWith(".wal") } }
+        val size = Files.size(segment)
+        Files.newByteChannel(segment, StandardOpenOption.WRITE).use { it.truncate(size - 3) }
+
+        assertEquals(listOf(claimRecord("a", 0)), open().records)
+    }
+
+    @Test
+    fun `compaction replaces the log before it`() {
+        val journal = CoordinatorJournal(directory)
+        journal.recover()
+        journal.compact { StateSnapshot.getDefaultInstance() }
+        journal.append(claimRecord("a", 0))
+        val state = StateSnapshot.newBuilder().addClaims(claim("a", 0)).build()
+        journal.compact { state }
+        journal.append(claimRecord("b", 100))
+        journal.close()
+
+        val recovered = open()
+        assertEquals(state, recovered.snapshot)
+        assertEquals(listOf(claimRecord("b", 100)), recovered.records)
+        // one snapshot and the segment after it
+        assertEquals(2, Files.list(directory).use { it.count() })
+    }
+}
@@ -0,0 +1,61 @@
+package maestro.coordination
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class ResourceGoalsTest {
+    @Test
+    fun `only the report crossing a goal completes it`() {
+        val goals = ResourceGoals(mapOf("diamond_ore" to 10, "oak_log" to 100))
+        assertNull(goals.add("diamond_ore", 6))
+        assertSame(goals["diamond_ore"], goals.add("diamond_ore", 6))
+        assertNull(goals.add("diamond_ore", 6))
+        // no goal, not counted
+        assertNull(goals.add("coal_ore", 50))
+
+        assertEquals(110, goals.goal())
+        // diamonds count for no more than their goal
+        assertEquals(10, goals.total())
+        assertFalse(goals.isComplete())
+        goals.add("oak_log", 100)
+        assertTrue(goals.isComplete())
+    }
+
+    @Test
+    fun `workers are split by what is left to collect`() {
+        val goals = ResourceGoals(mapOf("diamond_ore" to 10, "oak_log" to 25))
+        assertEquals("oak_log", goals.assign("a"))
+        assertEquals("oak_log", goals.assign("b"))
+        // 10 left for nobody beats 25 left for three
+        assertEquals("diamond_ore", goals.assign("c"))
+        // asking again keeps the assignment
+        assertEquals("oak_log", goals.assign("a"))
+    }
+
+    @Test
+    fun `workers move on once their goal completes`() {
+        val goals = ResourceGoals(mapOf("diamond_ore" to 10, "oak_log" to 25))
+        goals.assign("a")
+        goals.assign("b")
+        val diamonds = goals.assign("c")!!
+
+        val completed = goals.add(diamonds, 10)!!
+        assertEquals(mapOf("c" to "oak_log"), goals.reassign(completed))
+
+        goals.add("oak_log", 25)
+        assertNull(goals.assign("a"))
+        assertNull(goals.assignment("a"))
+    }
+
+    @Test
+    fun `recounting replaces the totals`() {
+        val goals = ResourceGoals(mapOf("diamond_ore" to 10))
+        goals.add("diamond_ore", 4)
+        goals.recount(mapOf("diamond_ore" to 7, "oak_log" to 3))
+        assertEquals(7, goals["diamond_ore"]!!.total)
+    }
+}
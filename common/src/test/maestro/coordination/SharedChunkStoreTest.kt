@@ -0,0 +1,81 @@
+package maestro.coordination
+
+import maestro.coordination.proto.CachedChunkData
+import maestro.coordination.proto.ChunkArea
+import maestro.coordination.proto.ChunkSubscription
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class SharedChunkStoreTest {
+    private fun chunk(
+        x: Int,
+        z: Int,
+        timestamp: Long,
+        dimension: String = "minecraft:overworld",
+    ) = CachedChunkData
+        .newBuilder()
+        .setDimension(dimension)
+        .setChunkX(x)
+        .setChunkZ(z)
+        .setTimestamp(timestamp)
+        .build()
+
+    private fun area(
+        x: Int,
+        z: Int,
+        radius: Int,
+    ) = ChunkArea
+        .newBuilder()
+        .setChunkX(x)
+        .setChunkZ(z)
+        .setRadius(radius)
+        .build()
+
+    @Test
+    fun `newest copy wins`() {
+        val store = SharedChunkStore()
+        assertTrue(store.put(chunk(0, 0, 10)))
+        assertFalse(store.put(chunk(0, 0, 5)))
+        assertFalse(store.put(chunk(0, 0, 10)))
+        assertTrue(store.put(chunk(0, 0, 11)))
+        assertEquals(listOf(chunk(0, 0, 11)), store.query("minecraft:overworld", listOf(area(0, 0, 0))))
+    }
+
+    @Test
+    fun `query and covers agree on areas and dimensions`() {
+        val store = SharedChunkStore()
+        for (x in -5..5) {
+            for (z in -5..5) {
+                store.put(chunk(x, z, 1))
+                store.put(chunk(x, z, 1, "minecraft:the_nether"))
+            }
+        }
+        val areas = listOf(area(0, 0, 1), area(1, 1, 1), area(5, -5, 2))
+        val found = store.query("minecraft:overworld", areas)
+        // 3x3 and 3x3 overlapping in 4 chunks, plus the 3x3 part of the last area inside the store
+        assertEquals(9 + 9 - 4 + 9, found.size)
+
+        val subscription =
+            ChunkSubscription
+                .newBuilder()
+                .setDimension("minecraft:overworld")
+                .addAllAreas(areas)
+                .build()
+        assertTrue(found.all { SharedChunkStore.covers(subscription, it) })
+        assertFalse(SharedChunkStore.covers(subscription, chunk(0, 0, 1, "minecraft:the_nether")))
+        assertFalse(SharedChunkStore.covers(subscription, chunk(3, 3, 1)))
+    }
+
+    @Test
+    fun `evicts what was published longest ago`() {
+        val store = SharedChunkStore(capacity = 2)
+        store.put(chunk(0, 0, 1))
+        store.put(chunk(1, 0, 1))
+        store.put(chunk(0, 0, 2))
+        store.put(chunk(2, 0, 1))
+        assertEquals(2, store.size())
+        assertTrue(store.query("minecraft:overworld", listOf(area(1, 0, 0))).isEmpty())
+    }
+}
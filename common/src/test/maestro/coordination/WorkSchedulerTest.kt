@@ -0,0 +1,90 @@
+package maestro.coordination
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class WorkSchedulerTest {
+    @Test
+    fun `units are chunk aligned and cover the area`() {
+        val scheduler = WorkScheduler(-40, -40, 39, 39, 20)
+        // 20 rounds up to 32: -64..63 on each axis
+        assertEquals(16, scheduler.total)
+        val unit = scheduler.assign("a", -40, -40)!!
+        assertEquals(-64, unit.minX)
+        assertEquals(-64, unit.minZ)
+        assertEquals(-33, unit.maxX)
+        assertTrue(unit.contains(-40, -40))
+    }
+
+    @Test
+    fun `each worker gets the nearest free unit`() {
+        val scheduler = WorkScheduler(0, 0, 255, 255, 32)
+        val a = scheduler.assign("a", 100, 100)!!
+        assertTrue(a.contains(100, 100))
+        // asking again returns the same unit
+        assertEquals(a, scheduler.assign("a", 0, 0))
+
+        val b = scheduler.assign("b", 100, 100)!!
+        assertNotEquals(a, b)
+        assertEquals(1, maxOf(Math.abs(a.minX - b.minX), Math.abs(a.minZ - b.minZ)) / 32)
+    }
+
+    @Test
+    fun `released units go back to the pool and completed ones do not`() {
+        val scheduler = WorkScheduler(0, 0, 31, 63, 32)
+        val a = scheduler.assign("a", 0, 0)!!
+        val b = scheduler.assign("b", 0, 0)!!
+        assertNull(scheduler.assign("c", 0, 0))
+
+        assertEquals(a, scheduler.release("a"))
+        assertEquals(a, scheduler.assign("c", 0, 0))
+
+        assertFalse(scheduler.complete("b", a.id))
+        assertTrue(scheduler.complete("b", b.id))
+        assertTrue(scheduler.complete("c", a.id))
+        assertEquals(0, scheduler.remaining())
+        assertNull(scheduler.assign("b", 0, 0))
+    }
+
+    @Test
+    fun `restoring assignments and completions rebuilds the same state`() {
+        val before = WorkScheduler(0, 0, 63, 63, 32)
+        val a = before.assign("a", 0, 0)!!
+        val b = before.assign("b", 0, 0)!!
+        before.complete("b", b.id)
+        before.assign("b", 0, 0)
+
+        val after = WorkScheduler(0, 0, 63, 63, 32)
+        assertEquals(before.layout, after.layout)
+        // applied twice, as when a snapshot and the log after it overlap
+        repeat(2) {
+            before.completed().forEach { after.restoreCompleted(it) }
+            before.assignments().forEach { (worker, unit) -> after.restoreAssigned(worker, unit) }
+        }
+        assertEquals(before.assignments(), after.assignments())
+        assertEquals(before.remaining(), after.remaining())
+        assertEquals(a, after.assign("a", 63, 63))
+    }
+
+    @Test
+    fun `replayed releases only free the unit they name`() {
+        val scheduler = WorkScheduler(0, 0, 63, 63, 32)
+        val first = scheduler.assign("a", 0, 0)!!
+        scheduler.release("a")
+        val second = scheduler.assign("a", 63, 63)!!
+        assertNotEquals(first.id, second.id)
+
+        // the release of the first unit, replayed after the log already has the second assigned
+        scheduler.restoreReleased("a", first.id)
+        assertEquals(mapOf("a" to second.id), scheduler.assignments())
+
+        scheduler.restoreReleased("a", second.id)
+        scheduler.restoreReleased("a", second.id)
+        assertEquals(emptyMap<String, Long>(), scheduler.assignments())
+        assertEquals(second, scheduler.assign("b", 63, 63))
+    }
+}
@@ -0,0 +1,64 @@
+package maestro.pathing
+
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class PathReservationsTest {
+    /** Walks along x at y 64, one block a second from t=0 */
+    private fun walk(
+        owner: String,
+        length: Int,
+    ) = PathReservation(
+        owner,
+        "minecraft:overworld",
+        LongArray(length) { BlockPos.asLong(it, 64, 0) },
+        LongArray(length) { it * 1000L },
+    )
+
+    @Test
+    fun `positions are taken around the time the agent passes`() {
+        val reservations = PathReservations.of(listOf(walk("a", 10)), 0)!!
+        assertTrue(reservations.isReserved(3, 64, 0, 3000))
+        // still there until it moves on, give or take the window
+        assertTrue(reservations.isReserved(3, 64, 0, 3900))
+        assertTrue(reservations.isReserved(3, 64, 0, 2000 + PathReservations.WINDOW_MS))
+        assertFalse(reservations.isReserved(3, 64, 0, 6000))
+        assertFalse(reservations.isReserved(3, 64, 1, 3000))
+    }
+
+    @Test
+    fun `agents are two blocks tall`() {
+        val reservations = PathReservations.of(listOf(walk("a", 10)), 0)!!
+        assertTrue(reservations.isReserved(3, 63, 0, 3000))
+        assertTrue(reservations.isReserved(3, 65, 0, 3000))
+        assertFalse(reservations.isReserved(3, 66, 0, 3000))
+    }
+
+    @Test
+    fun `the last position is held and expired reservations are dropped`() {
+        val reservations = PathReservations.of(listOf(walk("a", 3)), 0)!!
+        assertTrue(reservations.isReserved(2, 64, 0, 2000 + PathReservations.HOLD_MS))
+        assertFalse(reservations.isReserved(2, 64, 0, 3000 + PathReservations.HOLD_MS))
+
+        assertNull(PathReservations.of(listOf(walk("a", 3)), 3000 + PathReservations.HOLD_MS))
+        assertNull(PathReservations.of(emptyList(), 0))
+    }
+
+    @Test
+    fun `crossing paths share a position at different times`() {
+        val crossing =
+            PathReservation(
+                "b",
+                "minecraft:overworld",
+                longArrayOf(BlockPos.asLong(5, 64, -1), BlockPos.asLong(5, 64, 0), BlockPos.asLong(5, 64, 1)),
+                longArrayOf(20_000, 21_000, 22_000),
+            )
+        val reservations = PathReservations.of(listOf(walk("a", 10), crossing), 0)!!
+        assertTrue(reservations.isReserved(5, 64, 0, 5000))
+        assertTrue(reservations.isReserved(5, 64, 0, 21_000))
+        assertFalse(reservations.isReserved(5, 64, 0, 13_000))
+    }
+}
@@ -0,0 +1,131 @@
+package maestro.pathing
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class SearchQueueTest {
+    private class Job(
+        val owner: String,
+        val priority: Int = 1,
+    ) {
+        var cancelled = false
+
+        override fun toString(): String = "$owner/$priority"
+    }
+
+    private var quota = 1
+
+    private val queue = SearchQueue<Job>({ quota }, { it.owner }, { it.priority }, { it.cancelled = true })
+
+    @Test
+    fun `an owner never runs more than its quota`() {
+        quota = 2
+        val a1 = Job("a")
+        val a2 = Job("a")
+        val a3 = Job("a")
+        // queued without superseding each other, as after a worker took the earlier ones
+        queue.add(a1)
+        assertSame(a1, queue.poll())
+        queue.add(a2)
+        assertSame(a2, queue.poll())
+        queue.add(a3)
+
+        assertNull(queue.poll(), "a is at its quota")
+        assertEquals(1, queue.pendingCount)
+        assertEquals(2, queue.runningCount)
+
+        queue.finished(a1)
+        assertSame(a3, queue.poll())
+    }
+
+    @Test
+    fun `other owners run while one is at its quota`() {
+        val a1 = Job("a")
+        val a2 = Job("a")
+        val b = Job("b")
+        queue.add(a1)
+        assertSame(a1, queue.poll())
+        queue.add(a2)
+        queue.add(b)
+
+        assertSame(b, queue.poll())
+        assertNull(queue.poll())
+    }
+
+    @Test
+    fun `oldest submission first among equals`() {
+        val jobs = listOf(Job("a"), Job("b"), Job("c"))
+        jobs.forEach { queue.add(it) }
+        quota = 5
+        assertEquals(jobs, List(3) { queue.poll() })
+    }
+
+    @Test
+    fun `owner with fewer running searches goes first`() {
+        quota = 5
+        val a1 = Job("a")
+        queue.add(a1)
+        assertSame(a1, queue.poll())
+
+        // a submitted first, but already has a search running
+        val a2 = Job("a")
+        val b = Job("b")
+        queue.add(a2)
+        queue.add(b)
+        assertSame(b, queue.poll())
+        assertSame(a2, queue.poll())
+    }
+
+    @Test
+    fun `agents without a path go before planning ahead`() {
+        quota = 5
+        val planAhead = Job("a", priority = 1)
+        val initial = Job("b", priority = 0)
+        queue.add(planAhead)
+        queue.add(initial)
+        assertSame(initial, queue.poll())
+        assertSame(planAhead, queue.poll())
+    }
+
+    @Test
+    fun `new submission supersedes the owner's queued searches`() {
+        val running = Job("a")
+        queue.add(running)
+        assertSame(running, queue.poll())
+
+        val old = Job("a")
+        val other = Job("b")
+        assertEquals(0, queue.add(old))
+        queue.add(other)
+        val newer = Job("a")
+        assertEquals(1, queue.add(newer))
+
+        assertTrue(old.cancelled)
+        assertFalse(newer.cancelled)
+        assertFalse(other.cancelled)
+        // a running search isn't superseded, only queued ones
+        assertFalse(running.cancelled)
+
+        // superseded searches still run, so their owner sees them finish
+        queue.finished(running)
+        quota = 5
+        assertEquals(listOf(old, other, newer), List(3) { queue.poll() })
+    }
+
+    @Test
+    fun `cancel all reaches queued and running searches`() {
+        val running = Job("a")
+        val queued = Job("b")
+        queue.add(running)
+        assertSame(running, queue.poll())
+        queue.add(queued)
+
+        queue.cancelAll()
+        assertTrue(running.cancelled)
+        assertTrue(queued.cancelled)
+    }
+}
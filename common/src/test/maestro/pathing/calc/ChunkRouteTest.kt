@@ -0,0 +1,67 @@
+package maestro.pathing.calc
+
+import maestro.pathing.movement.ActionCosts
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class ChunkRouteTest {
+    /** Open ground, except a wall along x = 5 from z = -10 to 10 */
+    private val walled =
+        object : ChunkGraph {
+            override val minCost = 1.0
+
+            override fun cost(
+                fromX: Int,
+                fromZ: Int,
+                toX: Int,
+                toZ: Int,
+            ): Double = if (toX == 5 && toZ in -10..10) ActionCosts.COST_INF else 1.0
+        }
+
+    @Test
+    fun `route runs from start to goal`() {
+        val route = ChunkRoute.plan(walled, 0, 20, 10, 20, 1000)!!
+        assertEquals(11, route.size)
+        assertEquals(0, route.chunkX(0))
+        assertEquals(10, route.chunkX(route.size - 1))
+        assertEquals(20, route.chunkZ(route.size - 1))
+    }
+
+    @Test
+    fun `route goes around what can't be crossed`() {
+        val route = ChunkRoute.plan(walled, 0, 0, 10, 0, 1000)!!
+        for (i in 0 until route.size) {
+            assertFalse(route.chunkX(i) == 5 && route.chunkZ(i) in -10..10)
+        }
+        assertEquals(10, route.chunkX(route.size - 1))
+    }
+
+    @Test
+    fun `giving up past the limit`() {
+        assertNull(ChunkRoute.plan(walled, 0, 0, 10, 0, 20))
+    }
+
+    @Test
+    fun `corridor and progress along it`() {
+        val route = ChunkRoute.plan(walled, 0, 20, 10, 20, 1000)!!
+        // block coordinates, a chunk beside the route
+        assertTrue(route.isInCorridor(3 * 16 + 8, 21 * 16))
+        assertFalse(route.isInCorridor(3 * 16 + 8, 23 * 16))
+
+        assertEquals(4, route.progress(3, 21))
+        assertEquals(-1, route.progress(3, 23))
+    }
+
+    @Test
+    fun `waypoint stops before chunks that aren't loaded`() {
+        val route = ChunkRoute.plan(walled, 0, 20, 10, 20, 1000)!!
+        assertEquals(4, route.waypoint(0, 4) { _, _ -> true })
+        assertEquals(route.size - 1, route.waypoint(8, 4) { _, _ -> true })
+        assertEquals(2, route.waypoint(0, 8) { x, _ -> x < 3 })
+        // always at least one chunk further
+        assertEquals(1, route.waypoint(0, 8) { _, _ -> false })
+    }
+}
@@ -0,0 +1,174 @@
+package maestro.pathing.calc
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import maestro.pathing.calc.openset.BinaryHeapOpenSet
+import maestro.pathing.calc.openset.NodeHeapOpenSet
+import maestro.pathing.goals.Goal
+import maestro.pathing.movement.ActionCosts
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Test
+import kotlin.math.abs
+import kotlin.random.Random
+
+/**
+ * Runs the relaxation both searches use over one fixture world, once with [PathNode]s in a map and
+ * once with a [NodeStore], and checks they find the same path at the same cost. The searches
+ * themselves need a client world, so this drives their node storage directly.
+ */
+class CompactSearchTest {
+    /** A 64x64 floor with walls and a random cost per block, seeded so every run sees the same one */
+    private class Fixture(
+        seed: Int,
+    ) {
+        private val random = Random(seed)
+        private val costs = Array(SIZE) { DoubleArray(SIZE) { 1.0 + random.nextDouble() * 3.0 } }
+
+        init {
+            // walls with a single gap each, so paths have to wind
+            for (wall in 1..6) {
+                val x = wall * 9
+                val gap = random.nextInt(SIZE)
+                for (z in 0 until SIZE) {
+                    if (z != gap) {
+                        costs[x][z] = ActionCosts.COST_INF
+                    }
+                }
+            }
+        }
+
+        fun cost(
+            x: Int,
+            z: Int,
+        ): Double = if (x !in 0 until SIZE || z !in 0 until SIZE) ActionCosts.COST_INF else costs[x][z]
+    }
+
+    private class Target(
+        val x: Int,
+        val z: Int,
+    ) : Goal {
+        override fun isInGoal(
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Boolean = x == this.x && z == this.z
+
+        // every block costs at least 1, so this never overestimates
+        override fun heuristic(
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Double = (abs(x - this.x) + abs(z - this.z)).toDouble()
+    }
+
+    private data class Found(
+        val cost: Double,
+        val path: List<Long>,
+    )
+
+    private fun searchNodes(
+        world: Fixture,
+        goal: Target,
+    ): Found? {
+        val map = Long2ObjectOpenHashMap<PathNode>()
+        val openSet = BinaryHeapOpenSet()
+        val start = PathNode(0, 0, 0, goal).also { map.put(0L, it) }
+        start.cost = 0.0
+        start.combinedCost = start.estimatedCostToGoal
+        openSet.insert(start)
+        while (!openSet.isEmpty()) {
+            val current = openSet.removeLowest()
+            if (goal.isInGoal(current.x, current.y, current.z)) {
+                val path = ArrayList<Long>()
+                var node: PathNode? = current
+                while (node != null) {
+                    path.add(0, BlockPos.asLong(node.x, node.y, node.z))
+                    node = node.previous
+                }
+                return Found(current.cost, path)
+            }
+            for ((dx, dz) in NEIGHBOURS) {
+                val x = current.x + dx
+                val z = current.z + dz
+                val actionCost = world.cost(x, z)
+                if (actionCost >= ActionCosts.COST_INF) {
+                    continue
+                }
+                val packed = BlockPos.asLong(x, 0, z)
+                val neighbor = map.computeIfAbsent(packed) { PathNode(x, 0, z, goal) }
+                val tentativeCost = current.cost + actionCost
+                if (neighbor.cost - tentativeCost > 0) {
+                    neighbor.previous = current
+                    neighbor.cost = tentativeCost
+                    neighbor.combinedCost = tentativeCost + neighbor.estimatedCostToGoal
+                    if (neighbor.isOpen()) {
+                        openSet.update(neighbor)
+                    } else {
+                        openSet.insert(neighbor)
+                    }
+                }
+            }
+        }
+        return null
+    }
+
+    private fun searchStore(
+        world: Fixture,
+        goal: Target,
+    ): Found? {
+        // deliberately small, so the store grows while the search runs
+        val store = NodeStore(goal, 4)
+        val openSet = NodeHeapOpenSet(store)
+        val start = store.getOrCreate(0, 0, 0, 0L)
+        store.cost[start] = 0.0
+        store.combinedCost[start] = store.heuristic[start]
+        openSet.insert(start)
+        while (!openSet.isEmpty()) {
+            val current = openSet.removeLowest()
+            if (goal.isInGoal(store.x(current), store.y(current), store.z(current))) {
+                return Found(store.cost[current], store.chainTo(current).map { store.pos[it] })
+            }
+            for ((dx, dz) in NEIGHBOURS) {
+                val x = store.x(current) + dx
+                val z = store.z(current) + dz
+                val actionCost = world.cost(x, z)
+                if (actionCost >= ActionCosts.COST_INF) {
+                    continue
+                }
+                val neighbor = store.getOrCreate(x, 0, z, BlockPos.asLong(x, 0, z))
+                val tentativeCost = store.cost[current] + actionCost
+                if (store.cost[neighbor] - tentativeCost > 0) {
+                    store.setPrevious(neighbor, current, null, null)
+                    store.cost[neighbor] = tentativeCost
+                    store.combinedCost[neighbor] = tentativeCost + store.heuristic[neighbor]
+                    if (store.isOpen(neighbor)) {
+                        openSet.update(neighbor)
+                    } else {
+                        openSet.insert(neighbor)
+                    }
+                }
+            }
+        }
+        return null
+    }
+
+    @Test
+    fun `compact and standard nodes find the same path`() {
+        for (seed in 0 until 20) {
+            val world = Fixture(seed)
+            val goal = Target(SIZE - 1, SIZE - 1)
+            val standard = searchNodes(world, goal)
+            val compact = searchStore(world, goal)
+            assertNotNull(standard, "seed $seed")
+            assertEquals(standard!!.cost, compact!!.cost, 0.0, "seed $seed")
+            assertEquals(standard.path, compact.path, "seed $seed")
+        }
+    }
+
+    companion object {
+        private const val SIZE = 64
+
+        private val NEIGHBOURS = listOf(1 to 0, -1 to 0, 0 to 1, 0 to -1)
+    }
+}
@@ -0,0 +1,122 @@
+package maestro.pathing.calc
+
+import maestro.pathing.calc.PortfolioPathFinder.Member
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.Timeout
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/** Members here return a distance to the goal; 0 means they reached it */
+@Timeout(10)
+class PortfolioRaceTest {
+    private val executor = Executors.newFixedThreadPool(4)
+
+    @AfterEach
+    fun shutdown() {
+        executor.shutdownNow()
+    }
+
+    /** A member that keeps searching until cancelled, then finds nothing */
+    private class Endless {
+        val cancelled = CountDownLatch(1)
+        val member =
+            Member<Int>(
+                {
+                    cancelled.await()
+                    null
+                },
+                { cancelled.countDown() },
+            )
+    }
+
+    private fun finished(
+        result: Int?,
+        cancelled: AtomicBoolean = AtomicBoolean(),
+    ): Member<Int> = Member({ result }, { cancelled.set(true) })
+
+    private fun race(
+        members: List<Member<Int>>,
+        cancelled: () -> Boolean = { false },
+        on: Executor = executor,
+    ): Int? = PortfolioPathFinder.race(on, members, cancelled, { it == 0 }, { it.toDouble() })
+
+    @Test
+    fun `first member to reach the goal wins while the others still run`() {
+        val losers = List(3) { Endless() }
+        val result = race(losers.map { it.member } + finished(0))
+
+        assertEquals(0, result)
+        // the losers were told to stop, and do
+        for (loser in losers) {
+            assertTrue(loser.cancelled.await(5, TimeUnit.SECONDS))
+        }
+    }
+
+    @Test
+    fun `without a winner the closest partial result is taken`() {
+        assertEquals(2, race(listOf(finished(7), finished(2), finished(null), finished(5))))
+    }
+
+    @Test
+    fun `failed members count as finding nothing`() {
+        val failing = Member<Int>({ throw IllegalStateException("boom") }, {})
+        assertEquals(3, race(listOf(failing, finished(3))))
+        assertNull(race(listOf(failing)))
+    }
+
+    @Test
+    fun `members are cancelled once the race is over`() {
+        val cancelled = List(3) { AtomicBoolean() }
+        race(listOf(finished(4, cancelled[0]), finished(0, cancelled[1]), finished(9, cancelled[2])))
+        assertTrue(cancelled.all { it.get() })
+    }
+
+    @Test
+    fun `cancelling the portfolio cancels every member`() {
+        val members = List(2) { Endless() }
+        val stop = AtomicBoolean()
+        executor.execute {
+            Thread.sleep(50)
+            stop.set(true)
+        }
+
+        assertNull(race(members.map { it.member }, { stop.get() }))
+        for (member in members) {
+            assertTrue(member.cancelled.await(5, TimeUnit.SECONDS))
+        }
+    }
+
+    @Test
+    fun `rejected members are skipped`() {
+        var submitted = 0
+        // takes the first member, rejects the rest
+        val full =
+            Executor { task ->
+                if (submitted++ > 0) {
+                    throw RejectedExecutionException()
+                }
+                executor.execute(task)
+            }
+        val rejectedRan = AtomicBoolean()
+        val rejected =
+            Member(
+                {
+                    rejectedRan.set(true)
+                    0
+                },
+                {},
+            )
+
+        assertEquals(6, race(listOf(finished(6), rejected), on = full))
+        assertFalse(rejectedRan.get())
+    }
+}
@@ -0,0 +1,97 @@
+package maestro.pathing.calc
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import maestro.pathing.goals.Goal
+import maestro.pathing.movement.ActionCosts
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class SearchRepairTest {
+    private val goal =
+        object : Goal {
+            override fun isInGoal(
+                x: Int,
+                y: Int,
+                z: Int,
+            ): Boolean = x == 10
+
+            override fun heuristic(
+                x: Int,
+                y: Int,
+                z: Int,
+            ): Double = (10 - x).toDouble()
+        }
+
+    /** A search that walked along x at y 64 from 0 to the goal at 10, one tick a block */
+    private fun walked(): Long2ObjectOpenHashMap<PathNode> {
+        val nodes = Long2ObjectOpenHashMap<PathNode>()
+        var previous: PathNode? = null
+        for (x in 0..10) {
+            val node = PathNode(x, 64, 0, goal)
+            node.cost = x.toDouble()
+            node.previous = previous
+            nodes.put(BlockPos.asLong(x, 64, 0), node)
+            previous = node
+        }
+        return nodes
+    }
+
+    /** Blocks under the walk */
+    private fun changed(vararg x: Int): LongOpenHashSet = LongOpenHashSet(x.map { BlockPos.asLong(it, 63, 0) })
+
+    @Test
+    fun `costs count from the new start`() {
+        val nodes = walked()
+        val result = SearchRepair(nodes, LongOpenHashSet()).repair(BlockPos.asLong(3, 64, 0), goal)!!
+        assertEquals(8, result.kept)
+        assertEquals(3, result.dropped)
+        assertEquals(2.0, nodes.get(BlockPos.asLong(5, 64, 0)).cost)
+        assertNull(nodes.get(BlockPos.asLong(3, 64, 0)).previous)
+        assertEquals(ActionCosts.COST_INF, nodes.get(BlockPos.asLong(2, 64, 0)).cost)
+        // the goal is still in reach, from the start
+        val end = nodes.get(BlockPos.asLong(10, 64, 0))
+        assertTrue(end in result.open)
+        assertEquals(7.0, result.best.combinedCost)
+    }
+
+    @Test
+    fun `nodes past a change are searched again`() {
+        val nodes = walked()
+        // under the node at x = 9, and close enough to affect moves from x = 7 on
+        val result = SearchRepair(nodes, changed(9)).repair(BlockPos.asLong(0, 64, 0), goal)!!
+        assertEquals(7, result.kept)
+        assertEquals(ActionCosts.COST_INF, nodes.get(BlockPos.asLong(7, 64, 0)).cost)
+        assertNull(nodes.get(BlockPos.asLong(10, 64, 0)).previous)
+        // next to what was dropped, so its moves are tried again
+        assertTrue(nodes.get(BlockPos.asLong(6, 64, 0)) in result.open)
+    }
+
+    @Test
+    fun `the start of a long move into a dropped node is searched again`() {
+        val nodes = Long2ObjectOpenHashMap<PathNode>()
+        var previous: PathNode? = null
+        // walks to x = 3, then jumps a gap to x = 7 and walks on
+        for (x in listOf(0, 1, 2, 3, 7, 8, 9, 10)) {
+            val node = PathNode(x, 64, 0, goal)
+            node.cost = x.toDouble()
+            node.previous = previous
+            nodes.put(BlockPos.asLong(x, 64, 0), node)
+            previous = node
+        }
+        // drops x = 7 on, too far from x = 3 for it to be dirty or next to anything dropped
+        val result = SearchRepair(nodes, changed(9)).repair(BlockPos.asLong(0, 64, 0), goal)!!
+        assertEquals(ActionCosts.COST_INF, nodes.get(BlockPos.asLong(7, 64, 0)).cost)
+        assertTrue(nodes.get(BlockPos.asLong(3, 64, 0)) in result.open)
+        assertFalse(nodes.get(BlockPos.asLong(1, 64, 0)) in result.open)
+    }
+
+    @Test
+    fun `starting where the last search never got to`() {
+        assertNull(SearchRepair(walked(), LongOpenHashSet()).repair(BlockPos.asLong(3, 65, 0), goal))
+    }
+}
@@ -1,10 +1,13 @@
 package maestro.pathing.calc.openset
 
+import maestro.pathing.calc.NodeStore
 import maestro.pathing.calc.PathNode
 import maestro.pathing.goals.Goal
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotEquals
 import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
 import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.MethodSource
 import java.util.stream.Stream
@@ -122,6 +125,101 @@ class OpenSetsTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("testSizes")
+    fun testNodeStoreHeap(size: Int) {
+        // BinaryHeapOpenSet over PathNode objects is the reference for the handle-based heap
+        val store = NodeStore(ZERO_GOAL, 16)
+        val heap = NodeHeapOpenSet(store, 4)
+        val reference = BinaryHeapOpenSet()
+        val nodes = arrayOfNulls<PathNode>(size)
+
+        for (i in 0 until size) {
+            val handle = store.getOrCreate(i, 0, 0, i.toLong())
+            assertEquals(i, handle)
+            val combined = Random.nextDouble()
+            store.combinedCost[handle] = combined
+            nodes[i] = PathNode(i, 0, 0, ZERO_GOAL).apply { combinedCost = combined }
+            heap.insert(handle)
+            reference.insert(nodes[i]!!)
+            assertTrue(store.isOpen(handle))
+        }
+        assertEquals(size, store.size)
+        assertEquals(size, heap.size())
+
+        // remove a quarter, then decrease-key half of the remainder
+        val removed = BooleanArray(size)
+        for (j in 0 until size / 4) {
+            val handle = heap.removeLowest()
+            val node = reference.removeLowest()
+            assertEquals(node.combinedCost, store.combinedCost[handle], 0.0)
+            assertFalse(store.isOpen(handle))
+            removed[handle] = true
+        }
+        var cnt = 0
+        for (i in 0 until size) {
+            if (removed[i] || cnt >= size / 2) {
+                continue
+            }
+            val decreased = store.combinedCost[i] * Random.nextDouble()
+            store.combinedCost[i] = decreased
+            nodes[i]!!.combinedCost = decreased
+            heap.update(i)
+            reference.update(nodes[i]!!)
+            cnt++
+        }
+
+        var previous = Double.NEGATIVE_INFINITY
+        while (!reference.isEmpty()) {
+            assertFalse(heap.isEmpty())
+            val handle = heap.removeLowest()
+            val node = reference.removeLowest()
+            assertEquals(node.combinedCost, store.combinedCost[handle], 0.0)
+            assertTrue(previous <= store.combinedCost[handle])
+            previous = store.combinedCost[handle]
+        }
+        assertTrue(heap.isEmpty())
+    }
+
+    @Test
+    fun testNodeStoreRebuildWithEpsilon() {
+        val store = NodeStore(DISTANCE_GOAL, 4)
+        val heap = NodeHeapOpenSet(store)
+        for (i in 0 until 100) {
+            val handle = store.getOrCreate(i, 0, 0, i.toLong())
+            // cheap to reach but far from the goal, so epsilon flips the order
+            store.cost[handle] = (100 - i).toDouble()
+            store.combinedCost[handle] = store.cost[handle] + store.heuristic[handle]
+            heap.insert(handle)
+        }
+
+        heap.rebuildWithEpsilon(10.0)
+        var previous = Double.NEGATIVE_INFINITY
+        while (!heap.isEmpty()) {
+            val handle = heap.removeLowest()
+            assertEquals(store.cost[handle] + store.heuristic[handle] * 10.0, store.combinedCost[handle], 1e-9)
+            assertTrue(previous <= store.combinedCost[handle])
+            previous = store.combinedCost[handle]
+        }
+    }
+
+    @Test
+    fun testNodeStoreLookupAndChain() {
+        val store = NodeStore(ZERO_GOAL, 1)
+        val a = store.getOrCreate(0, 0, 0, 0L)
+        val b = store.getOrCreate(1, 0, 0, 1L)
+        val c = store.getOrCreate(2, 0, 0, 2L)
+        assertEquals(a, store.getOrCreate(0, 0, 0, 0L))
+        assertNotEquals(a, b)
+        assertEquals(NodeStore.NONE, store.find(3L))
+        assertEquals(3, store.size)
+
+        store.setPrevious(b, a, null, null)
+        store.setPrevious(c, b, null, null)
+        assertEquals(listOf(a, b, c), store.chainTo(c).toList())
+        assertEquals(listOf(a), store.chainTo(a).toList())
+    }
+
     private fun removeAndTest(
         amount: Int,
         test: Array<IOpenSet>,
@@ -154,6 +252,37 @@ class OpenSetsTest {
     }
 
     companion object {
+        // can't use an existing goal, see testSize
+        private val ZERO_GOAL =
+            object : Goal {
+                override fun isInGoal(
+                    x: Int,
+                    y: Int,
+                    z: Int,
+                ): Boolean = false
+
+                override fun heuristic(
+                    x: Int,
+                    y: Int,
+                    z: Int,
+                ): Double = 0.0
+            }
+
+        private val DISTANCE_GOAL =
+            object : Goal {
+                override fun isInGoal(
+                    x: Int,
+                    y: Int,
+                    z: Int,
+                ): Boolean = false
+
+                override fun heuristic(
+                    x: Int,
+                    y: Int,
+                    z: Int,
+                ): Double = x.toDouble()
+            }
+
         @JvmStatic
         fun testSizes(): Stream<Int> {
             val sizes = mutableListOf<Int>()
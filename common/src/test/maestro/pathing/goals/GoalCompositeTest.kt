@@ -0,0 +1,148 @@
+package maestro.pathing.goals
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import kotlin.math.abs
+import kotlin.random.Random
+
+class GoalCompositeTest {
+    @Test
+    fun indexedIsInGoalMatchesLinearScan() {
+        val random = Random(42)
+        val goals =
+            Array(500) {
+                val x = random.nextInt(-40, 40)
+                val y = random.nextInt(-10, 10)
+                val z = random.nextInt(-40, 40)
+                when (random.nextInt(4)) {
+                    0 -> GoalBlock(x, y, z)
+                    1 -> GoalGetToBlock(x, y, z)
+                    2 -> GoalTwoBlocks(x, y, z)
+                    // not bounded, so the index has to fall back to scanning it
+                    else ->
+                        object : Goal {
+                            override fun isInGoal(
+                                x: Int,
+                                y: Int,
+                                z: Int,
+                            ): Boolean = x == y && y == z
+
+                            override fun heuristic(
+                                x: Int,
+                                y: Int,
+                                z: Int,
+                            ): Double = 0.0
+                        }
+                }
+            }
+        val composite = GoalComposite(*goals)
+        for (x in -45..45) {
+            for (y in -15..15) {
+                for (z in -45..45) {
+                    val expected = goals.any { it.isInGoal(x, y, z) }
+                    assertEquals(expected, composite.isInGoal(x, y, z), "$x,$y,$z")
+                }
+            }
+        }
+    }
+
+    /**
+     * A box goal whose heuristic is the bound [BoundedGoal] allows, plus up to twice [slack], so the index has
+     * bounds that aren't tight to prune with. The built-in goals can't be used: their heuristics
+     * read the agent's settings.
+     */
+    private class BoxGoal(
+        val minX: Int,
+        val minY: Int,
+        val minZ: Int,
+        val size: Int,
+        val base: Double,
+        val slack: Double,
+    ) : BoundedGoal {
+        override fun isInGoal(
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Boolean = x in minX..minX + size && y in minY..minY + size && z in minZ..minZ + size
+
+        override fun heuristic(
+            x: Int,
+            y: Int,
+            z: Int,
+        ): Double =
+            DISTANCE.estimate(
+                excess(x, minX, minX + size).toDouble(),
+                excess(y, minY, minY + size),
+                excess(z, minZ, minZ + size).toDouble(),
+            ) + base + slack * ((x + z).mod(3))
+
+        override fun bounds(
+            out: IntArray,
+            offset: Int,
+        ): Boolean {
+            intArrayOf(minX, minY, minZ, minX + size, minY + size, minZ + size).copyInto(out, offset)
+            return true
+        }
+
+        override fun heuristicOffset(): Double = base
+
+        private fun excess(
+            value: Int,
+            min: Int,
+            max: Int,
+        ): Int = if (value < min) value - min else if (value > max) value - max else 0
+    }
+
+    @Test
+    fun indexedHeuristicMatchesLinearScan() {
+        for (seed in 0..<20) {
+            val random = Random(seed)
+            val goals =
+                Array(random.nextInt(1, 400)) {
+                    val gx = random.nextInt(-200, 200)
+                    val gy = random.nextInt(-30, 30)
+                    val gz = random.nextInt(-200, 200)
+                    if (random.nextInt(20) == 0) {
+                        // not bounded, so the index scans it
+                        object : Goal {
+                            override fun isInGoal(
+                                x: Int,
+                                y: Int,
+                                z: Int,
+                            ): Boolean = false
+
+                            override fun heuristic(
+                                x: Int,
+                                y: Int,
+                                z: Int,
+                            ): Double = DISTANCE.estimate((x - gx).toDouble(), y - gy, (z - gz).toDouble())
+                        }
+                    } else {
+                        BoxGoal(
+                            gx,
+                            gy,
+                            gz,
+                            random.nextInt(0, 4),
+                            if (random.nextBoolean()) 0.0 else random.nextDouble(0.0, 20.0),
+                            random.nextDouble(0.0, 5.0),
+                        )
+                    }
+                }
+            val index = GoalIndex.build(goals, DISTANCE)
+            repeat(2000) {
+                // mostly among the goals, some far outside
+                val spread = if (random.nextInt(10) == 0) 2000 else 220
+                val x = random.nextInt(-spread, spread)
+                val y = random.nextInt(-40, 40)
+                val z = random.nextInt(-spread, spread)
+                val expected = goals.minOf { it.heuristic(x, y, z) }
+                assertEquals(expected, index.heuristic(x, y, z), "seed $seed at $x,$y,$z")
+            }
+        }
+    }
+
+    companion object {
+        /** Stands in for [GoalBlock.calculate], with vertical moves costing more */
+        private val DISTANCE = GoalIndex.Distance { xDiff, yDiff, zDiff -> abs(xDiff) + abs(zDiff) + 2.0 * abs(yDiff) }
+    }
+}
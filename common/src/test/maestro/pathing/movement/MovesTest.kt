@@ -0,0 +1,31 @@
+package maestro.pathing.movement
+
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class MovesTest {
+    private val descends = listOf(Moves.DESCEND_EAST, Moves.DESCEND_WEST, Moves.DESCEND_NORTH, Moves.DESCEND_SOUTH)
+
+    @Test
+    fun `single-block descends can be built`() {
+        for (move in descends) {
+            assertTrue(move.canBuild(64, 63), move.name)
+        }
+    }
+
+    @Test
+    fun `3-block drops are left out of the search`() {
+        // MovementDescend.cost reports the landing spot of the fall, which apply0 can't build
+        for (move in descends) {
+            assertFalse(move.canBuild(64, 61), move.name)
+        }
+    }
+
+    @Test
+    fun `fixed offset moves are unaffected`() {
+        for (move in Moves.entries.filter { it !in descends }) {
+            assertTrue(move.canBuild(64, 64 + move.yOffset), move.name)
+        }
+    }
+}
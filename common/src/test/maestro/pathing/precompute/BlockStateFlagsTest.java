@@ -0,0 +1,50 @@
+package maestro.pathing.precompute;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.SlabBlock;
+import net.minecraft.world.level.block.state.properties.SlabType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class BlockStateFlagsTest {
+
+    @BeforeAll
+    public static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    @Test
+    public void testInitFinishes() {
+        // building the table in parallel must not wait on the class being initialized
+        assertTimeoutPreemptively(Duration.ofSeconds(30), BlockStateFlags::init);
+    }
+
+    @Test
+    public void testFlags() {
+        assertTrue(BlockStateFlags.has(Blocks.AIR.defaultBlockState(), BlockStateFlags.AIR));
+        assertTrue(BlockStateFlags.has(Blocks.WATER.defaultBlockState(), BlockStateFlags.WATER));
+        assertTrue(
+                BlockStateFlags.has(
+                        Blocks.WATER.defaultBlockState(), BlockStateFlags.AVOID_WALKING_INTO));
+        assertFalse(
+                BlockStateFlags.has(
+                        Blocks.WATER.defaultBlockState(), BlockStateFlags.POSSIBLY_FLOWING));
+        assertTrue(BlockStateFlags.has(Blocks.STONE.defaultBlockState(), BlockStateFlags.NORMAL_CUBE));
+        assertTrue(
+                BlockStateFlags.has(
+                        Blocks.OAK_SLAB.defaultBlockState().setValue(SlabBlock.TYPE, SlabType.BOTTOM),
+                        BlockStateFlags.BOTTOM_SLAB));
+        assertFalse(
+                BlockStateFlags.has(
+                        Blocks.OAK_SLAB.defaultBlockState().setValue(SlabBlock.TYPE, SlabType.TOP),
+                        BlockStateFlags.BOTTOM_SLAB));
+    }
+}
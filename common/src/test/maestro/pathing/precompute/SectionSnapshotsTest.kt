@@ -0,0 +1,109 @@
+package maestro.pathing.precompute
+
+import net.minecraft.SharedConstants
+import net.minecraft.core.BlockPos
+import net.minecraft.server.Bootstrap
+import net.minecraft.world.level.LevelHeightAccessor
+import net.minecraft.world.level.block.Block
+import net.minecraft.world.level.block.Blocks
+import net.minecraft.world.level.chunk.LevelChunkSection
+import net.minecraft.world.level.chunk.PalettedContainer
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotSame
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+
+class SectionSnapshotsTest {
+    /** Four sections, 0 to 63 */
+    private val world = LevelHeightAccessor.create(0, 64)
+
+    /** The sections of the chunk at 0, 0 */
+    private val sections =
+        Array(4) {
+            // biomes are never read here
+            LevelChunkSection(
+                PalettedContainer(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES),
+                null,
+            )
+        }
+
+    private val snapshots = SectionSnapshots()
+
+    private fun get(
+        index: Int,
+        loaded: Boolean = true,
+    ): SectionSnapshot = snapshots.get(0, 0, sections, index) { loaded }
+
+    /** Sets a block the way the client does, and tells the snapshots as the chunk mixin does */
+    private fun set(
+        x: Int,
+        y: Int,
+        z: Int,
+    ) {
+        sections[world.getSectionIndex(y)].setBlockState(x and 15, y and 15, z and 15, Blocks.STONE.defaultBlockState())
+        snapshots.blockChanged(world, BlockPos(x, y, z))
+    }
+
+    @Test
+    fun `snapshots are shared until their section changes`() {
+        val before = get(1)
+        assertSame(before, get(1))
+
+        set(3, 20, 5)
+        assertFalse(before.isCurrent(sections[1]))
+        val after = get(1)
+        assertNotSame(before, after)
+        assertTrue(after.isCurrent(sections[1]))
+        assertEquals(Blocks.STONE.defaultBlockState(), after.state(3, 20, 5))
+        assertEquals(Blocks.AIR.defaultBlockState(), before.state(3, 20, 5))
+    }
+
+    @Test
+    fun `a block set only invalidates its own section`() {
+        val below = get(0)
+        val changed = get(2)
+        set(0, 40, 0)
+        assertTrue(below.isCurrent(sections[0]))
+        assertFalse(changed.isCurrent(sections[2]))
+        assertSame(below, get(0))
+    }
+
+    @Test
+    fun `blocks set outside the world are ignored`() {
+        val snapshot = get(3)
+        snapshots.blockChanged(world, BlockPos(0, 64, 0))
+        snapshots.blockChanged(world, BlockPos(0, -1, 0))
+        assertTrue(snapshot.isCurrent(sections[3]))
+    }
+
+    @Test
+    fun `unloading invalidates every section`() {
+        val held = List(4) { get(it) }
+        snapshots.chunkChanged(0, 0)
+        for ((index, snapshot) in held.withIndex()) {
+            assertFalse(snapshot.isCurrent(sections[index]))
+        }
+    }
+
+    @Test
+    fun `chunks that already unloaded are read but not kept`() {
+        val first = get(1, loaded = false)
+        assertNotSame(first, get(1, loaded = false))
+        // once the chunk source has it again, it is kept as usual
+        val tracked = get(1)
+        assertNotSame(first, tracked)
+        assertSame(tracked, get(1))
+    }
+
+    companion object {
+        @JvmStatic
+        @BeforeAll
+        fun bootstrap() {
+            SharedConstants.tryDetectVersion()
+            Bootstrap.bootStrap()
+        }
+    }
+}
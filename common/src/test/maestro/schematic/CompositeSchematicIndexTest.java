@@ -0,0 +1,72 @@
+package maestro.schematic;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Random;
+import net.minecraft.world.level.block.state.BlockState;
+import org.junit.jupiter.api.Test;
+
+public class CompositeSchematicIndexTest {
+
+    private static ISchematic box(int width, int height, int length) {
+        return new ISchematic() {
+            @Override
+            public BlockState desiredState(
+                    int x, int y, int z, BlockState current, List<BlockState> approxPlaceable) {
+                return null;
+            }
+
+            @Override
+            public int widthX() {
+                return width;
+            }
+
+            @Override
+            public int heightY() {
+                return height;
+            }
+
+            @Override
+            public int lengthZ() {
+                return length;
+            }
+        };
+    }
+
+    private static CompositeSchematicEntry linear(
+            CompositeSchematicEntry[] entries, int x, int y, int z) {
+        for (CompositeSchematicEntry entry : entries) {
+            if (x >= entry.x
+                    && y >= entry.y
+                    && z >= entry.z
+                    && entry.schematic.inSchematic(x - entry.x, y - entry.y, z - entry.z, null)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void findMatchesLinearScan() {
+        Random random = new Random(7);
+        // overlapping boxes, so the first match in insertion order has to win
+        CompositeSchematicEntry[] entries = new CompositeSchematicEntry[60];
+        for (int i = 0; i < entries.length; i++) {
+            ISchematic box =
+                    box(1 + random.nextInt(40), 1 + random.nextInt(8), 1 + random.nextInt(40));
+            int x = random.nextInt(100) - 20;
+            int y = random.nextInt(10);
+            int z = random.nextInt(100) - 20;
+            entries[i] = new CompositeSchematicEntry(box, x, y, z);
+        }
+        CompositeSchematicIndex index = new CompositeSchematicIndex(entries);
+        for (int x = -30; x < 130; x++) {
+            for (int y = -2; y < 20; y++) {
+                for (int z = -30; z < 130; z++) {
+                    assertSame(linear(entries, x, y, z), index.find(x, y, z, null));
+                }
+            }
+        }
+    }
+}
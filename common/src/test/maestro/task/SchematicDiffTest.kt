@@ -0,0 +1,95 @@
+package maestro.task
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import net.minecraft.core.BlockPos
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class SchematicDiffTest {
+    /** A 10 block tall schematic with its bottom layer at y = 60 */
+    private val diff = SchematicDiff(60, 10)
+
+    @Test
+    fun `add and remove track size`() {
+        assertTrue(diff.isEmpty())
+        diff.add(BlockPos.asLong(1, 60, 1))
+        diff.add(BlockPos.asLong(2, 65, 1))
+        // adding again doesn't count twice
+        diff.add(BlockPos.asLong(1, 60, 1))
+        assertEquals(2, diff.size)
+
+        assertTrue(diff.remove(BlockPos.asLong(1, 60, 1)))
+        assertFalse(diff.remove(BlockPos.asLong(1, 60, 1)))
+        assertEquals(1, diff.size)
+        assertFalse(diff.isEmpty())
+    }
+
+    @Test
+    fun `positions outside the schematic height are ignored`() {
+        diff.add(BlockPos.asLong(0, 59, 0))
+        diff.add(BlockPos.asLong(0, 70, 0))
+        assertTrue(diff.isEmpty())
+        assertFalse(diff.remove(BlockPos.asLong(0, 59, 0)))
+    }
+
+    @Test
+    fun `fills lowest layers first`() {
+        for (y in 69 downTo 60) {
+            for (x in 0 until 3) {
+                diff.add(BlockPos.asLong(x, y, 0))
+            }
+        }
+        val target = LongOpenHashSet()
+        diff.fillLowest(target, 5, SchematicDiff.ALL_LAYERS) { true }
+
+        assertEquals(5, target.size)
+        val ys = target.toLongArray().map { BlockPos.getY(it) }
+        assertEquals(3, ys.count { it == 60 })
+        assertEquals(2, ys.count { it == 61 })
+        // copied, not moved
+        assertEquals(30, diff.size)
+    }
+
+    @Test
+    fun `rejected positions stay in the diff`() {
+        diff.add(BlockPos.asLong(0, 60, 0))
+        diff.add(BlockPos.asLong(1, 60, 0))
+        val target = LongOpenHashSet()
+        diff.fillLowest(target, 10, SchematicDiff.ALL_LAYERS) { BlockPos.getX(it) == 1 }
+
+        assertEquals(setOf(BlockPos.asLong(1, 60, 0)), target.toSet())
+        assertEquals(2, diff.size)
+    }
+
+    @Test
+    fun `only the given layers are walked`() {
+        for (y in 60 until 70) {
+            diff.add(BlockPos.asLong(0, y, 0))
+        }
+        val walked = ArrayList<Int>()
+        val target = LongOpenHashSet()
+        diff.fillLowest(target, 100, 3..4) {
+            walked.add(BlockPos.getY(it))
+            true
+        }
+
+        assertEquals(listOf(63, 64), walked)
+        assertEquals(2, target.size)
+    }
+
+    @Test
+    fun `layer ranges beyond the schematic are clamped`() {
+        diff.add(BlockPos.asLong(0, 60, 0))
+        diff.add(BlockPos.asLong(0, 69, 0))
+        val target = LongOpenHashSet()
+        diff.fillLowest(target, 100, -5..50) { true }
+        assertEquals(2, target.size)
+
+        // an empty range, as layer mode computes before the first layer
+        target.clear()
+        diff.fillLowest(target, 100, 10..9) { true }
+        assertTrue(target.isEmpty())
+    }
+}
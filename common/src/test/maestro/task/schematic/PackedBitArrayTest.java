@@ -0,0 +1,39 @@
+package maestro.task.schematic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class PackedBitArrayTest {
+
+    @Test
+    public void setThenGetRoundTrips() {
+        // widths that don't divide 64 make entries straddle two longs
+        for (int bits : new int[] {1, 2, 5, 7, 12, 31, 32}) {
+            Random random = new Random(bits);
+            int size = 1000;
+            int[] expected = new int[size];
+            PackedBitArray array = new PackedBitArray(bits, size);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < size; i++) {
+                    expected[i] = (int) (random.nextLong() & ((1L << bits) - 1));
+                    array.set(i, expected[i]);
+                }
+                for (int i = 0; i < size; i++) {
+                    assertEquals(expected[i], array.get(i), bits + " bits, index " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bitsFor() {
+        assertEquals(1, PackedBitArray.bitsFor(1));
+        assertEquals(1, PackedBitArray.bitsFor(2));
+        assertEquals(2, PackedBitArray.bitsFor(3));
+        assertEquals(2, PackedBitArray.bitsFor(4));
+        assertEquals(3, PackedBitArray.bitsFor(5));
+        assertEquals(12, PackedBitArray.bitsFor(4096));
+    }
+}
@@ -3,7 +3,6 @@ package maestro.launch.mixins;
 import java.util.ArrayList;
 import java.util.List;
 import maestro.Agent;
-import maestro.cache.CachedChunk;
 import maestro.event.events.BlockChangeEvent;
 import maestro.event.events.ChatEvent;
 import maestro.event.events.ChunkEvent;
@@ -97,24 +96,18 @@ public abstract class MixinClientPlayNetHandler extends ClientCommonPacketListen
 
     @Inject(method = "handleBlockUpdate", at = @At("RETURN"))
     private void postHandleBlockChange(ClientboundBlockUpdatePacket packetIn, CallbackInfo ci) {
-        if (!Agent.getPrimaryAgent().getSettings().repackOnAnyBlockChange.value) {
-            return;
-        }
-        if (!CachedChunk.BLOCKS_TO_KEEP_TRACK_OF.contains(packetIn.getBlockState().getBlock())) {
+        Agent agent = Agent.getAgentForConnection((ClientPacketListener) (Object) this);
+        if (agent == null) {
             return;
         }
-        for (Agent agent : Agent.getAllAgents()) {
-            LocalPlayer player = agent.getPlayerContext().player();
-            if (player != null && player.connection == (Object) this) {
-                agent.getGameEventHandler()
-                        .onChunkEvent(
-                                new ChunkEvent(
-                                        EventState.POST,
-                                        ChunkEvent.Type.POPULATE_FULL,
-                                        packetIn.getPos().getX() >> 4,
-                                        packetIn.getPos().getZ() >> 4));
-            }
-        }
+        // The event handler repacks the chunk if this is a block we keep track of
+        agent.getGameEventHandler()
+                .onBlockChange(
+                        new BlockChangeEvent(
+                                new ChunkPos(packetIn.getPos()),
+                                List.of(
+                                        new kotlin.Pair<>(
+                                                packetIn.getPos(), packetIn.getBlockState()))));
     }
 
     @Inject(method = "handleChunkBlocksUpdate", at = @At("RETURN"))
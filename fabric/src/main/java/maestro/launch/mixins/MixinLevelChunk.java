@@ -0,0 +1,33 @@
+package maestro.launch.mixins;
+
+import maestro.Agent;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(LevelChunk.class)
+public class MixinLevelChunk {
+
+    @Final @Shadow Level level;
+
+    @Inject(method = "setBlockState", at = @At("RETURN"))
+    private void postSetBlockState(
+            BlockPos pos, BlockState state, boolean moved, CallbackInfoReturnable<BlockState> cir) {
+        // null when nothing changed
+        if (cir.getReturnValue() == null || !this.level.isClientSide()) {
+            return;
+        }
+        for (Agent agent : Agent.getAllAgents()) {
+            if (agent.getPlayerContext().world() == this.level) {
+                agent.getGameEventHandler().onBlockSet(this.level, pos);
+            }
+        }
+    }
+}